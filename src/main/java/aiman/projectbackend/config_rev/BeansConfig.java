@@ -1,9 +1,15 @@
 package aiman.projectbackend.config_rev;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /** Teoria:
  * Questa classe mi serve per centralizzare la parte di gestione delle crittografia delle password. Serve a Spring security
@@ -20,12 +26,28 @@ public class BeansConfig {
      */
     @Bean
 
-    public PasswordEncoder getBCrypt() {
+    public PasswordEncoder getBCrypt(@Value("${auth.password.encoder:bcrypt}") String encoderId,
+                                     @Value("${auth.password.bcrypt-strength:10}") int bcryptStrength) {
         /**
          * Qui mi cripta la mia password, dove 10 (2^10 interazioni) è un parametro che indica la complessità per il calcolo del hash
          * più altro questo numero e più sarà difficile da individuare la password con le combinazioni
          * Quindi occorre un trade off tra tempo per la generazione di questo hash e il livello di sicurezza
+         *
+         * DelegatingPasswordEncoder --> ogni hash salvato inizia con l'algoritmo usato, ad esempio {bcrypt}$2a$10$...
+         * 1) I nuovi hash usano l'algoritmo di auth.password.encoder con il costo configurato
+         * 2) Gli hash vecchi (senza prefisso, salvati prima di questa modifica) vengono verificati con bcrypt
+         * 3) upgradeEncoding dice se un hash è stato fatto con un algoritmo o un costo diverso da quello attuale, così
+         * al login riuscito AuthService lo ricalcola (vedi PasswordHasher)
          */
-        return new BCryptPasswordEncoder(10);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        encoders.put("bcrypt", bcrypt);
+        encoders.put("pbkdf2", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        if (!encoders.containsKey(encoderId)) {
+            throw new IllegalStateException("auth.password.encoder non supportato: " + encoderId + " (ammessi: bcrypt, pbkdf2)");
+        }
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(encoderId, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
     }
-}
\ No newline at end of file
+}
@@ -2,9 +2,14 @@ package aiman.projectbackend.config_rev;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import jakarta.servlet.MultipartConfigElement;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Map;
 
 // Questa annotazione @Configuration serve per dire a spring di leggerlo per configurare i componenti dell'applicazione
 @Configuration
@@ -21,6 +26,10 @@ public class CloudinaryConfig {
     @Value("${cloudinary.secret}")
     private String apiSecret;
 
+    // Facoltativo: indirizzo alternativo delle API (es. un finto cloudinary locale per provare i caricamenti)
+    @Value("${cloudinary.upload-prefix:}")
+    private String uploadPrefix;
+
     /**
      * Bean è un oggetto gestito dal contenitore di Spring, quando un oggetto diventa bean lo posso usarlo ovunque nel
      * progetto. Quindi non creo manualmente l'ogetto , ma lo inietto quando mi serve
@@ -30,9 +39,29 @@ public class CloudinaryConfig {
     public Cloudinary cloudinary() {
         // Creo l'oggetto cloudinary passando una mappa delle mie credenziali (richiesto da cloduinary, lista chiave valore)
         // ObjectUtils.asMap è un servizio cloudinary per velocizzare la creazione dell'oggetto
-        return new Cloudinary(ObjectUtils.asMap(
+        Map<String, Object> config = ObjectUtils.asMap(
                 "cloud_name", cloudName,
                 "api_key", apiKey,
-                "api_secret", apiSecret));
+                "api_secret", apiSecret);
+        if (!uploadPrefix.isBlank()) {
+            config.put("upload_prefix", uploadPrefix);
+        }
+        return new Cloudinary(config);
+    }
+
+    /**
+     * Limiti dei file caricati (multipart): sotto upload.memory-threshold-kb il file resta in memoria, sopra Tomcat lo
+     * scrive su disco mentre lo riceve, quindi un'immagine grande non finisce tutta nell'heap
+     * upload.max-file-size-mb --> oltre questa dimensione la richiesta viene rifiutata
+     */
+    @Bean
+    public MultipartConfigElement multipartConfigElement(@Value("${upload.max-file-size-mb:20}") long maxFileSizeMb,
+                                                         @Value("${upload.memory-threshold-kb:256}") long memoryThresholdKb) {
+        MultipartConfigFactory factory = new MultipartConfigFactory();
+        factory.setMaxFileSize(DataSize.ofMegabytes(maxFileSizeMb));
+        // Il resto della richiesta multipart (campi, intestazioni) ha un piccolo margine in più
+        factory.setMaxRequestSize(DataSize.ofMegabytes(maxFileSizeMb + 1));
+        factory.setFileSizeThreshold(DataSize.ofKilobytes(memoryThresholdKb));
+        return factory.createMultipartConfig();
     }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package aiman.projectbackend.config_rev;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/** Teoria:
+ * Questa classe mi serve per attivare i lavori pianificati (@Scheduled), ad esempio la riconciliazione periodica della
+ * spesa utenti. Senza @EnableScheduling spring ignora le annotazioni @Scheduled
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,43 @@
+package aiman.projectbackend.config_rev;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/** Teoria:
+ * La ricerca degli utenti per inizio di email o username (UserSearchService) usa LOWER(email) LIKE 'testo%'. Gli indici
+ * unici su email e username non servono: sono sulla colonna e non su lower(colonna), e con la collation del db un indice
+ * normale non viene usato per LIKE. Servono indici di espressione con text_pattern_ops (confronto carattere per carattere)
+ *
+ * @Index di JPA non sa descrivere un indice su un'espressione, quindi li creo qui all'avvio con IF NOT EXISTS:
+ * è idempotente e, come SequenceMigration, gira prima che il server accetti richieste e dopo l'aggiornamento dello
+ * schema di Hibernate (dipende da EntityManagerFactory)
+ */
+@Component
+public class SearchIndexMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexMigration.class);
+
+    private static final List<String> INDEXES = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_users_email_prefix ON users (lower(email) text_pattern_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_users_username_prefix ON users (lower(username) text_pattern_ops)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // EntityManagerFactory non lo uso, ma chiederlo nel costruttore obbliga spring a crearlo prima (schema già aggiornato)
+    public SearchIndexMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        INDEXES.forEach(jdbcTemplate::execute);
+        log.info("Indici di ricerca degli utenti presenti ({})", INDEXES.size());
+    }
+}
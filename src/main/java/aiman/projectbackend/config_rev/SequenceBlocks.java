@@ -0,0 +1,46 @@
+package aiman.projectbackend.config_rev;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Teoria:
+ * Le entità prendono gli id dalle sequenze a blocchi di ALLOCATION_SIZE (@SequenceGenerator con l'ottimizzatore pooled
+ * di Hibernate): ogni nextval v riserva il blocco [v - ALLOCATION_SIZE + 1, v]
+ *
+ * Gli inserimenti JDBC a batch (BulkOrderService, UserImportService) devono seguire la stessa regola, altrimenti i loro
+ * id si sovrapporrebbero con quelli generati da Hibernate. Regola e dimensione dei blocchi stanno solo qui: le entità
+ * (allocationSize) e SequenceMigration (INCREMENT BY) usano ALLOCATION_SIZE
+ */
+@Component
+public class SequenceBlocks {
+
+    // Dimensione dei blocchi di tutte le sequenze degli id
+    public static final int ALLOCATION_SIZE = 50;
+
+    private static final String NEXT_BLOCKS_SQL =
+            "SELECT nextval(CAST(? AS regclass)) FROM generate_series(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SequenceBlocks(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Prendo n id dalla sequenza con una sola query (un nextval per ogni blocco necessario)
+    public List<Long> nextIds(String sequence, int n) {
+        if (n == 0) {
+            return List.of();
+        }
+        int blocks = (n + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+        List<Long> ids = new ArrayList<>(n);
+        for (Long hi : jdbcTemplate.queryForList(NEXT_BLOCKS_SQL, Long.class, sequence, blocks)) {
+            for (long id = hi - ALLOCATION_SIZE + 1; id <= hi && ids.size() < n; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
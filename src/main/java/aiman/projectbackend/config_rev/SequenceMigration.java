@@ -0,0 +1,65 @@
+package aiman.projectbackend.config_rev;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Teoria:
+ * Le entità sono passate da id IDENTITY (colonna autoincrementale) a id SEQUENCE a blocchi di 50 (pooled).
+ * Hibernate con ddl-auto=update crea le sequenze nuove partendo da 1, ma le tabelle hanno già righe, quindi senza questa
+ * migrazione i primi id generati andrebbero in conflitto con quelli esistenti
+ *
+ * All'avvio, per ogni tabella:
+ * 1) creo la sequenza se manca (es: db gestito senza ddl-auto)
+ * 2) porto la sequenza almeno al massimo id esistente, il prossimo nextval riserva il blocco subito dopo
+ * 3) tolgo l'IDENTITY dalla colonna id, così nessuno può più inserire righe con la vecchia numerazione
+ *
+ * È idempotente, quindi può girare ad ogni avvio. Gira dentro la creazione dei bean (@PostConstruct), quindi prima che
+ * il server accetti richieste, e dipende da EntityManagerFactory, quindi dopo l'aggiornamento dello schema di Hibernate
+ */
+@Component
+public class SequenceMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(SequenceMigration.class);
+
+    // Tabella --> sequenza usata dalla sua entità (i nomi sono quelli dei @SequenceGenerator)
+    private static final Map<String, String> SEQUENCES = new LinkedHashMap<>();
+
+    static {
+        SEQUENCES.put("users", "users_seq");
+        SEQUENCES.put("addresses", "addresses_seq");
+        SEQUENCES.put("categories", "categories_seq");
+        SEQUENCES.put("products", "products_seq");
+        SEQUENCES.put("orders", "orders_seq");
+        SEQUENCES.put("order_items", "order_items_seq");
+        SEQUENCES.put("order_outbox", "order_outbox_seq");
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // EntityManagerFactory non lo uso, ma chiederlo nel costruttore obbliga spring a crearlo prima (schema già aggiornato)
+    public SequenceMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        SEQUENCES.forEach((table, sequence) -> {
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " START WITH 1 INCREMENT BY " + SequenceBlocks.ALLOCATION_SIZE);
+            // GREATEST --> la sequenza non torna mai indietro, se è già avanti la lascio com'è
+            Long value = jdbcTemplate.queryForObject(
+                    "SELECT setval('" + sequence + "', GREATEST(" +
+                            "(SELECT COALESCE(MAX(id), 0) FROM " + table + "), " +
+                            "(SELECT last_value FROM " + sequence + ")))",
+                    Long.class);
+            jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+            log.info("Sequenza {} allineata a {} per la tabella {}", sequence, value, table);
+        });
+    }
+}
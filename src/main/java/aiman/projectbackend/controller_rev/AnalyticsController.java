@@ -0,0 +1,90 @@
+package aiman.projectbackend.controller_rev;
+
+import aiman.projectbackend.dto_rev.DailySalesDTO;
+import aiman.projectbackend.dto_rev.SalesStatDTO;
+import aiman.projectbackend.service_rev.SalesAnalyticsService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Serve per indicare che la classe gestisce la richieste di tipo REST, quindi ogni metodo restituisce
+// dati (JSON) nel corpo della risposta
+@RestController
+
+// Serve per definire la radice URL per tutti i metodi / endpoint di questa classe
+// Tutti i report vengono letti dalle statistiche in memoria, quindi nessuna query di aggregazione sul db
+@RequestMapping("/api/analytics")
+public class AnalyticsController {
+
+    private final SalesAnalyticsService salesAnalyticsService;
+
+    // Costruttore della classe che usa la logica del dependency injection,
+    // ovvero inietta l'istanza SalesAnalyticsService dove ho la mia logica di business che userò
+    public AnalyticsController(SalesAnalyticsService salesAnalyticsService) {
+
+        this.salesAnalyticsService = salesAnalyticsService;
+    }
+
+    /**
+     * Utilità del endpoint? Incasso e numero di ordini giorno per giorno (di default tutta la finestra disponibile)
+     * Metodo? GET
+     * Url di esempio? /api/analytics/daily?from=2026-01-01&to=2026-01-31
+     */
+    @GetMapping("/daily")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<List<DailySalesDTO>> getDailySales(
+            // @DateTimeFormat --> dico a spring come leggere la data dalla query string (formato 2026-01-31)
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(salesAnalyticsService.getDailySales(from, to));
+    }
+
+    /**
+     * Utilità del endpoint? I prodotti più venduti (per incasso) negli ultimi giorni
+     * Metodo? GET
+     * Url di esempio? /api/analytics/top-products?days=30&limit=10
+     */
+    @GetMapping("/top-products")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<List<SalesStatDTO>> getTopProducts(
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "10") int limit) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(salesAnalyticsService.getTopProducts(days, limit));
+    }
+
+    /**
+     * Utilità del endpoint? Vendite per categoria negli ultimi giorni, dalla più venduta
+     * Metodo? GET
+     * Url di esempio? /api/analytics/categories?days=30
+     */
+    @GetMapping("/categories")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<List<SalesStatDTO>> getCategorySales(
+            @RequestParam(defaultValue = "30") int days) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(salesAnalyticsService.getCategorySales(days));
+    }
+
+    /**
+     * Utilità del endpoint? Ricostruisco da zero le statistiche leggendo gli ordini dal db (es: dopo modifiche a mano)
+     * Metodo? POST
+     * Url? /api/analytics/rebuild
+     */
+    @PostMapping("/rebuild")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, solo il superadmin
+    @PreAuthorize("hasRole('SUPERADMIN')")
+    public ResponseEntity<Void> rebuild() {
+        salesAnalyticsService.rebuild();
+        // 204 --> operazione riuscita, non ho nulla da restituire
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -2,6 +2,7 @@ package aiman.projectbackend.controller_rev;
 
 import aiman.projectbackend.dto_rev.LoginDTO;
 import aiman.projectbackend.dto_rev.LoginRespDTO;
+import aiman.projectbackend.dto_rev.RefreshRequestDTO;
 import aiman.projectbackend.dto_rev.UserDTO;
 import aiman.projectbackend.entity_rev.User;
 import aiman.projectbackend.service_rev.AuthService;
@@ -63,7 +64,32 @@ public class AuthController {
             // @RequestBody --> trasforma il corpo della richiesta JSON in un oggetto XXX
             @RequestBody LoginDTO body) {
         // Chiamo il service per verificare le credenziali. Se sono corrette, restituisco il Token (LoginRespDTO).
-        return new LoginRespDTO(this.authService.checkCredentialsAndGenerateToken(body));
+        return this.authService.checkCredentialsAndGenerateToken(body);
+    }
+
+    /**
+     * Utilità del endpoint? Rinnovo dei token: ricevo il refresh token e restituisco nuovi access e refresh token
+     * Metodo? POST
+     * Url? /auth/refresh
+     */
+    @PostMapping("/refresh")
+    public LoginRespDTO refresh(@RequestBody RefreshRequestDTO body) {
+        // Il refresh token si usa una volta sola, da ora vale quello restituito
+        return this.authService.refresh(body.refreshToken());
+    }
+
+    /**
+     * Utilità del endpoint? Logout: revoco il refresh token (e l'access token dell'header Authorization, se c'è)
+     * Metodo? POST
+     * Url? /auth/logout
+     */
+    @PostMapping("/logout")
+    // Se non ho avuto nessun errore mando il 204 no content
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void logout(@RequestBody RefreshRequestDTO body,
+                       @RequestHeader(value = "Authorization", required = false) String authorization) {
+        String accessToken = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7) : null;
+        this.authService.logout(body.refreshToken(), accessToken);
     }
 
     /**
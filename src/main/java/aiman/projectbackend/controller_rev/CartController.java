@@ -0,0 +1,111 @@
+package aiman.projectbackend.controller_rev;
+
+import aiman.projectbackend.dto_rev.CartDTO;
+import aiman.projectbackend.dto_rev.OrderRequestDTO;
+import aiman.projectbackend.dto_rev.OrderSummaryDTO;
+import aiman.projectbackend.service_rev.cart_rev.CartService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+// Serve per indicare che la classe gestisce la richieste di tipo REST, quindi ogni metodo restituisce
+// dati (JSON) nel corpo della risposta
+@RestController
+
+// Serve per definire la radice URL per tutti i metodi / endpoint di questa classe
+// Ogni endpoint restituisce il carrello aggiornato (righe, subtotale, spedizione stimata e totale)
+@RequestMapping("/api/cart")
+public class CartController {
+
+    private final CartService cartService;
+
+    // Costruttore della classe che usa la logica del dependency injection,
+    // ovvero inietta l'istanza CartService dove ho la mia logica di business che userò
+    public CartController(CartService cartService) {
+
+        this.cartService = cartService;
+    }
+
+    /**
+     * Utilità del endpoint? Visualizzo il carrello dell'utente
+     * Metodo? GET
+     * Url? /api/cart/{userId}
+     */
+    @GetMapping("/{userId}")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, lo stesso utente o il superadmin
+    @PreAuthorize("#userId == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<CartDTO> getCart(@PathVariable Long userId) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(cartService.getCart(userId));
+    }
+
+    /**
+     * Utilità del endpoint? Aggiungo un prodotto al carrello (se c'è già sommo la quantità)
+     * Metodo? POST
+     * Url? /api/cart/{userId}/items
+     * Body? { "productId": 1, "quantity": 2 } (stessa riga usata in POST /api/orders)
+     */
+    @PostMapping("/{userId}/items")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, lo stesso utente o il superadmin
+    @PreAuthorize("#userId == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<CartDTO> addItem(@PathVariable Long userId,
+                                           // @Valid --> controllo productId e qty prima di arrivare al service
+                                           @Valid @RequestBody OrderRequestDTO.OrderItemRequestDTO item) {
+        return ResponseEntity.ok(cartService.addItem(userId, item.getProductId(), item.getQuantity()));
+    }
+
+    /**
+     * Utilità del endpoint? Cambio la quantità di un prodotto nel carrello (quantity=0 lo rimuove)
+     * Metodo? PATCH
+     * Url di esempio? /api/cart/{userId}/items/{productId}?quantity=3
+     */
+    @PatchMapping("/{userId}/items/{productId}")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, lo stesso utente o il superadmin
+    @PreAuthorize("#userId == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<CartDTO> updateItem(@PathVariable Long userId,
+                                              @PathVariable Long productId,
+                                              @RequestParam int quantity) {
+        return ResponseEntity.ok(cartService.updateItem(userId, productId, quantity));
+    }
+
+    /**
+     * Utilità del endpoint? Rimuovo un prodotto dal carrello
+     * Metodo? DELETE
+     * Url? /api/cart/{userId}/items/{productId}
+     */
+    @DeleteMapping("/{userId}/items/{productId}")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, lo stesso utente o il superadmin
+    @PreAuthorize("#userId == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<CartDTO> removeItem(@PathVariable Long userId, @PathVariable Long productId) {
+        return ResponseEntity.ok(cartService.removeItem(userId, productId));
+    }
+
+    /**
+     * Utilità del endpoint? Svuoto il carrello
+     * Metodo? DELETE
+     * Url? /api/cart/{userId}
+     */
+    @DeleteMapping("/{userId}")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, lo stesso utente o il superadmin
+    @PreAuthorize("#userId == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<Void> clear(@PathVariable Long userId) {
+        cartService.clear(userId);
+        // ResponseEntity.noContent --> status 204, nessun corpo nella risposta
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Utilità del endpoint? Trasformo il carrello (già prezzato) in un ordine e lo svuoto
+     * Metodo? POST
+     * Url? /api/cart/{userId}/checkout
+     */
+    @PostMapping("/{userId}/checkout")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, lo stesso utente o il superadmin
+    @PreAuthorize("#userId == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<OrderSummaryDTO> checkout(@PathVariable Long userId) {
+        // HttpStatus.CREATED --> status 201, l'ordine è stato creato
+        return ResponseEntity.status(HttpStatus.CREATED).body(cartService.checkout(userId));
+    }
+}
@@ -0,0 +1,37 @@
+package aiman.projectbackend.controller_rev;
+
+import aiman.projectbackend.security_rev.JwtKeyStore;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+// Serve per indicare che la classe gestisce la richieste di tipo REST, quindi ogni metodo restituisce
+// dati (JSON) nel corpo della risposta
+@RestController
+// Qui espongo le chiavi pubbliche con cui verificare i nostri token, così altri servizi li verificano senza il segreto
+public class JwksController {
+
+    private final JwtKeyStore jwtKeyStore;
+
+    // Costruttore della classe che usa la logica del dependency injection, inietto le chiavi dei token
+    public JwksController(JwtKeyStore jwtKeyStore) {
+        this.jwtKeyStore = jwtKeyStore;
+    }
+
+    /**
+     * Utilità del endpoint? Chiavi pubbliche valide in formato JWKS (una per kid), è pubblico
+     * Metodo? GET
+     * Url? /.well-known/jwks.json
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        // Chi verifica può tenere le chiavi in cache per qualche minuto, un kid nuovo lo rilegge da qui
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                .body(jwtKeyStore.jwks());
+    }
+}
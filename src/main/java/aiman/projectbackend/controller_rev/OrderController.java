@@ -1,14 +1,36 @@
 package aiman.projectbackend.controller_rev;
 
+import aiman.projectbackend.dto_rev.ArchiveRunDTO;
+import aiman.projectbackend.dto_rev.BulkOrderRequestDTO;
+import aiman.projectbackend.dto_rev.BulkOrderResultDTO;
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
 import aiman.projectbackend.dto_rev.OrderRequestDTO;
+import aiman.projectbackend.dto_rev.OrderSearchDTO;
+import aiman.projectbackend.dto_rev.OrderSummaryDTO;
+import aiman.projectbackend.dto_rev.OutboxStatsDTO;
+import aiman.projectbackend.dto_rev.SpendingReconciliationDTO;
 import aiman.projectbackend.entity_rev.Order;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.service_rev.BulkOrderService;
+import aiman.projectbackend.service_rev.OrderExportService;
+import aiman.projectbackend.service_rev.OrderSearchService;
 import aiman.projectbackend.service_rev.OrderService;
+import aiman.projectbackend.service_rev.UserSpendingReconciler;
+import aiman.projectbackend.service_rev.archive_rev.OrderArchiveService;
+import aiman.projectbackend.service_rev.event_rev.OrderEventDispatcher;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /** BREVE TEORIA DEI CONTROLLER
  *
@@ -40,13 +62,36 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
+    private final UserSpendingReconciler userSpendingReconciler;
+    private final OrderEventDispatcher orderEventDispatcher;
+    private final BulkOrderService bulkOrderService;
+    private final OrderArchiveService orderArchiveService;
+    private final OrderExportService orderExportService;
+    private final OrderSearchService orderSearchService;
+    private final long exportTimeoutMs;
 
     // Costruttore della classe che usa la logica del dependency injection,
     // ovvero inietta l'istanza OrderService dove ho la mia logica di business che userò
-    // Quando inietta cercherà la classe @Service di tipo OrderService
-    public OrderController(OrderService orderService) {
+    // Quando inietta cercherà la classe @Service di tipo OrderService (più la riconciliazione della spesa, il dispatcher
+    // degli eventi, l'invio massivo, l'archiviazione degli ordini vecchi, l'esportazione per la contabilità e la ricerca admin)
+    // e il tempo massimo di un export (con valore di default: un'ora)
+    public OrderController(OrderService orderService,
+                           UserSpendingReconciler userSpendingReconciler,
+                           OrderEventDispatcher orderEventDispatcher,
+                           BulkOrderService bulkOrderService,
+                           OrderArchiveService orderArchiveService,
+                           OrderExportService orderExportService,
+                           OrderSearchService orderSearchService,
+                           @Value("${export.timeout-ms:3600000}") long exportTimeoutMs) {
 
         this.orderService = orderService;
+        this.userSpendingReconciler = userSpendingReconciler;
+        this.orderEventDispatcher = orderEventDispatcher;
+        this.bulkOrderService = bulkOrderService;
+        this.orderArchiveService = orderArchiveService;
+        this.orderExportService = orderExportService;
+        this.orderSearchService = orderSearchService;
+        this.exportTimeoutMs = exportTimeoutMs;
     }
 
     /**
@@ -65,6 +110,22 @@ public class OrderController {
         return orderService.createOrderFromDto(orderDto);
     }
 
+    /**
+     * Utilità del endpoint? Invio massivo di ordini (fino a 200), ogni ordine ha il suo esito (CREATED o REJECTED con i motivi)
+     * Metodo? POST
+     * Url? /api/orders/bulk
+     */
+    @PostMapping("/bulk")
+    // Stabilisco le autorizzazioni: il superadmin oppure un utente che invia solo ordini intestati a sè stesso
+    // #root.authentication --> dentro la selezione .?[...] i nomi si riferiscono al singolo ordine, quindi risalgo alla radice
+    @PreAuthorize("hasRole('SUPERADMIN') or #request.orders.?[userId != #root.authentication.principal.id].isEmpty()")
+    public ResponseEntity<List<BulkOrderResultDTO>> createBulk(
+            // @Valid --> valido la lista e ogni ordine al suo interno come per la POST singola
+            @Valid @RequestBody BulkOrderRequestDTO request) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok), l'esito di ogni ordine è nel corpo
+        return ResponseEntity.ok(bulkOrderService.createOrders(request.getOrders()));
+    }
+
     /**
      * Utilità del endpoint? Visualizzo lista ordini totali
      * Metodo? GET
@@ -78,6 +139,83 @@ public class OrderController {
         return orderService.getAllOrders();
     }
 
+    /**
+     * Utilità del endpoint? Lista ordini per l'admin paginata e filtrata, restituisce solo il riepilogo (DTO) e non le entità
+     * Metodo? GET
+     * Url di esempio? /api/orders/summary?status=PENDING&from=2025-01-01T00:00:00&size=20
+     * Pagina successiva? ripeto la chiamata passando lastDate e lastId dell'ultimo ordine ricevuto
+     */
+    @GetMapping("/summary")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<List<OrderSummaryDTO>> getOrderSummaries(
+            // @RequestParam(required = false) --> i filtri sono tutti opzionali
+            @RequestParam(required = false) OrderStatus status,
+            // @DateTimeFormat --> converto la stringa della query in LocalDateTime (formato ISO, es: 2025-01-31T10:00:00)
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime lastDate,
+            @RequestParam(required = false) Long lastId,
+            @RequestParam(defaultValue = "20") int size) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        // orderService.getOrderSummaries(...) --> delego al service la ricerca paginata
+        return ResponseEntity.ok(orderService.getOrderSummaries(status, from, to, lastDate, lastId, size));
+    }
+
+    /**
+     * Utilità del endpoint? Ricerca admin degli ordini per periodo, totale, status, email del cliente e prodotto,
+     * paginata dal più recente (criteri tutti opzionali e combinabili)
+     * Metodo? GET
+     * Url di esempio? /api/orders/search?status=SHIPPED&from=2025-01-01T00:00:00&minTotal=50&email=mario@mail.it&size=20
+     * Pagina successiva? ripeto la chiamata passando lastDate e lastId dell'ultimo ordine ricevuto
+     */
+    @GetMapping("/search")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    // @ModelAttribute --> spring riempie il DTO dei criteri con i parametri della query string
+    public ResponseEntity<List<OrderSummaryDTO>> searchOrders(@ModelAttribute OrderSearchDTO criteria) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(orderSearchService.search(criteria));
+    }
+
+    /**
+     * Utilità del endpoint? Esporto per la contabilità le righe d'ordine di un periodo [from, to) in CSV o NDJSON,
+     * scritte direttamente nella risposta mentre le leggo dal db (anche compresse in gzip)
+     * Metodo? GET
+     * Url di esempio? /api/orders/export?from=2025-01-01T00:00:00&to=2025-02-01T00:00:00&format=csv&gzip=true
+     */
+    @GetMapping("/export")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public WebAsyncTask<Void> exportOrders(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) {
+        // Controllo i parametri prima di iniziare lo stream, così un errore diventa ancora un 400
+        OrderExportService.Format exportFormat = orderExportService.validate(from, to, format);
+
+        String extension = exportFormat == OrderExportService.Format.CSV ? "csv" : "ndjson";
+        String fileName = "orders-" + from.toLocalDate() + "-" + to.toLocalDate() + "." + extension + (gzip ? ".gz" : "");
+        String contentType = gzip
+                ? "application/gzip"
+                : exportFormat == OrderExportService.Format.CSV
+                        ? "text/csv;charset=UTF-8"
+                        : "application/x-ndjson;charset=UTF-8";
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        response.setContentType(contentType);
+
+        // WebAsyncTask --> il corpo viene scritto dopo che il metodo è terminato, riga per riga, su un thread a parte.
+        // Il timeout vale solo per l'export (export.timeout-ms), le altre richieste asincrone tengono quello globale
+        // (spring.mvc.async.request-timeout), così un export lungo non viene interrotto ma nessun altro endpoint resta
+        // appeso per sempre
+        return new WebAsyncTask<>(exportTimeoutMs, () -> {
+            orderExportService.export(from, to, exportFormat, gzip, response.getOutputStream());
+            return null;
+        });
+    }
+
     /**
      * Utilità del endpoint? Calcolo il totale della spesa del singolo utente, specificando id
      * Metodo? GET
@@ -95,19 +233,78 @@ public class OrderController {
     }
 
     /**
-     * Utilità del endpoint? Visualizzo lista ordini totali dello specifico utente (id)
+     * Utilità del endpoint? Ricalcolo la spesa aggregata di tutti gli utenti partendo dagli ordini e correggo le differenze
+     * (lo stesso lavoro viene eseguito periodicamente in automatico)
+     * Metodo? POST
+     * Url? /api/orders/spending/reconcile
+     */
+    @PostMapping("/spending/reconcile")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, solo il superadmin
+    @PreAuthorize("hasRole('SUPERADMIN')")
+    public ResponseEntity<SpendingReconciliationDTO> reconcileSpending() {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(userSpendingReconciler.reconcile());
+    }
+
+    /**
+     * Utilità del endpoint? Visualizzo il resoconto dell'ultima riconciliazione (204 se non è ancora stata eseguita)
+     * Metodo? GET
+     * Url? /api/orders/spending/reconcile
+     */
+    @GetMapping("/spending/reconcile")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<SpendingReconciliationDTO> getLastReconciliation() {
+        SpendingReconciliationDTO report = userSpendingReconciler.getLastReport();
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Utilità del endpoint? Stato della pipeline degli eventi degli ordini (buffer, eventi in lavorazione, consegnati, in attesa)
      * Metodo? GET
-     * Url? /api/orders/user/{userId}
+     * Url? /api/orders/outbox/stats
+     */
+    @GetMapping("/outbox/stats")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<OutboxStatsDTO> getOutboxStats() {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(orderEventDispatcher.getStats());
+    }
+
+    /**
+     * Utilità del endpoint? Sposto subito nell'archivio su file gli ordini più vecchi della soglia configurata
+     * (lo stesso lavoro viene eseguito ogni notte se abilitato)
+     * Metodo? POST
+     * Url? /api/orders/archive/run
+     */
+    @PostMapping("/archive/run")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, solo il superadmin
+    @PreAuthorize("hasRole('SUPERADMIN')")
+    public ResponseEntity<ArchiveRunDTO> runArchive() {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(orderArchiveService.archiveOldOrders());
+    }
+
+    /**
+     * Utilità del endpoint? Visualizzo lo storico ordini dello specifico utente (id), paginato dal più recente
+     * Metodo? GET
+     * Url? /api/orders/user/{userId}?size=20
+     * Pagina successiva? ripeto la chiamata passando lastDate e lastId dell'ultimo ordine ricevuto
      */
     @GetMapping("/user/{userId}")
     // Stabilisco le autorizzazioni su chi può usare questo endpoint, admin, superadmin e lo stesso utente
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN') or #userId == authentication.principal.id")
-    public ResponseEntity<List<Order>> getOrdersByUser(
+    public ResponseEntity<List<OrderHistoryDTO>> getOrdersByUser(
             // @PathVariable --> prendo il valore dell'url ovvero ID e lo passo al metodo
-            @PathVariable Long userId) {
+            @PathVariable Long userId,
+            // Cursore keyset opzionale + dimensione della pagina
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime lastDate,
+            @RequestParam(required = false) Long lastId,
+            @RequestParam(defaultValue = "20") int size) {
         // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
-        // orderService.getOrdersByUser(userId) --> delego la ricerca dei ordini del singolo utente
-        return ResponseEntity.ok(orderService.getOrdersByUser(userId));
+        // orderService.getOrdersByUser(...) --> delego la ricerca dei ordini del singolo utente
+        return ResponseEntity.ok(orderService.getOrdersByUser(userId, lastDate, lastId, size));
     }
 
     /**
@@ -119,10 +316,41 @@ public class OrderController {
     // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
     public ResponseEntity<List<Order>> getByStatus(
-            // @RequestParam --> lego il parametro della string di query, dopo il "?"
-            @RequestParam String status) {
+            // @RequestParam --> lego il parametro della string di query, dopo il "?" (spring lo converte nell'enum OrderStatus)
+            @RequestParam OrderStatus status) {
         // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
         // orderService.getOrdersByStatus(status) --> delego il filtraggio degli ordini con uno specifico status
         return ResponseEntity.ok(orderService.getOrdersByStatus(status));
     }
+
+    /**
+     * Utilità del endpoint? Conteggio degli ordini per ogni status (dashboard admin), letto dalla memoria senza query
+     * Metodo? GET
+     * Url? /api/orders/status/counts
+     */
+    @GetMapping("/status/counts")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<Map<OrderStatus, Long>> getStatusCounts() {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(orderService.getStatusCounts());
+    }
+
+    /**
+     * Utilità del endpoint? Cambio lo status di un ordine (es: da PAID a SHIPPED), solo i passaggi previsti sono accettati
+     * Metodo? PATCH (modifica parziale)
+     * Url di esempio? /api/orders/{id}/status?status=SHIPPED
+     */
+    @PatchMapping("/{id}/status")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<OrderSummaryDTO> updateStatus(
+            // @PathVariable --> prendo il valore dell'url ovvero ID e lo passo al metodo
+            @PathVariable Long id,
+            // @RequestParam --> il nuovo status richiesto
+            @RequestParam OrderStatus status) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        // orderService.updateOrderStatus(id, status) --> delego il controllo del passaggio di stato e il salvataggio
+        return ResponseEntity.ok(orderService.updateOrderStatus(id, status));
+    }
 }
\ No newline at end of file
@@ -1,15 +1,25 @@
 package aiman.projectbackend.controller_rev;
 
+import aiman.projectbackend.dto_rev.PrincipalCacheStatsDTO;
+import aiman.projectbackend.dto_rev.ProfileImageUploadDTO;
 import aiman.projectbackend.dto_rev.UserDTO;
+import aiman.projectbackend.dto_rev.UserDeletionDTO;
+import aiman.projectbackend.dto_rev.UserImportReportDTO;
+import aiman.projectbackend.entity_rev.Role;
 import aiman.projectbackend.entity_rev.User;
-import aiman.projectbackend.service_rev.api_rev.CloudinaryService;
+import aiman.projectbackend.service_rev.ProfileImageUploadService;
+import aiman.projectbackend.service_rev.UserImportService;
 import aiman.projectbackend.service_rev.UserService;
 import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.security.access.prepost.PreAuthorize;
 
@@ -43,17 +53,21 @@ import org.springframework.security.access.prepost.PreAuthorize;
 public class UserController {
 
     private final UserService userService;
-    private final CloudinaryService cloudinaryService;
+    private final ProfileImageUploadService profileImageUploadService;
+    private final UserImportService userImportService;
 
     // Costruttore della classe che usa la logica del dependency injection,
-    // ovvero inietta l'istanza UserService e CloudinaryService dove ho la mia logica di business che userò
-    // Quando inietta cercherà la classe @Service di tipo UserService e CloudinaryService
+    // ovvero inietta l'istanza UserService e ProfileImageUploadService dove ho la mia logica di business che userò
+    // Quando inietta cercherà la classe @Service di tipo UserService e ProfileImageUploadService
 
-    // Cloudinary mi è servito per gestire il caricamento della foto profilo
+    // ProfileImageUploadService mi serve per il caricamento della foto profilo su cloudinary (in background),
+    // UserImportService per l'importazione massiva
 
-    public UserController(UserService userService, CloudinaryService cloudinaryService) {
+    public UserController(UserService userService, ProfileImageUploadService profileImageUploadService,
+                          UserImportService userImportService) {
         this.userService = userService;
-        this.cloudinaryService = cloudinaryService;
+        this.profileImageUploadService = profileImageUploadService;
+        this.userImportService = userImportService;
     }
 
     /**
@@ -70,6 +84,23 @@ public class UserController {
         return ResponseEntity.ok(userService.getAllUsers());
     }
 
+    /**
+     * Utilità del endpoint? Elenco paginato degli utenti, con ricerca per inizio di email o username
+     * Metodo? GET
+     * Url di esempio? /api/users/page?q=mario&size=20
+     * Pagina successiva? ripeto la chiamata passando afterId = id dell'ultimo utente ricevuto
+     */
+    @GetMapping("/page")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<List<UserDTO>> getUsersPage(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int size) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(userService.getUsersPage(q, afterId, size));
+    }
+
     /**
      * Utilità del endpoint? Salvo / creo un nuovo utente
      * Metodo? POST
@@ -86,6 +117,24 @@ public class UserController {
         return new ResponseEntity<>(userService.saveUser(user), HttpStatus.CREATED);
     }
 
+    /**
+     * Utilità del endpoint? Importazione massiva di utenti da file CSV o NDJSON (il file è il corpo della richiesta),
+     * restituisce quanti utenti sono stati creati, le righe scartate con il motivo e le righe al secondo
+     * Metodo? POST
+     * Url di esempio? /api/users/import?format=csv
+     */
+    @PostMapping("/import")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero l'admin e il superadmin
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERADMIN')")
+    public ResponseEntity<UserImportReportDTO> importUsers(
+            @RequestParam(defaultValue = "csv") String format,
+            // InputStream --> leggo il corpo della richiesta man mano, senza caricare tutto il file in memoria
+            InputStream body) throws IOException {
+        UserImportService.Format parsed = userImportService.validate(format);
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok), l'esito di ogni riga scartata è nel corpo
+        return ResponseEntity.ok(userImportService.importUsers(parsed, body));
+    }
+
     /**
      * Utilità del endpoint? Cerco lo specifico utente guardando id
      * Metodo? GET
@@ -127,28 +176,88 @@ public class UserController {
     }
 
     /**
-     * Utilità del endpoint? Carico l'immagine profilo
+     * Utilità del endpoint? Cancellazione massiva degli utenti (con ordini, indirizzi e gli altri dati collegati), filtrati
+     * per ruolo e/o data di registrazione; senza filtri serve all=true. Restituisce quanti utenti e ordini sono stati cancellati
+     * Metodo? DELETE
+     * Url esempio? /api/users?role=USER&registeredBefore=2020-01-01T00:00:00
+     */
+    @DeleteMapping
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, solo il superadmin
+    @PreAuthorize("hasRole('SUPERADMIN')")
+    public ResponseEntity<UserDeletionDTO> deleteUsers(
+            // @RequestParam(required = false) --> i filtri sono tutti opzionali
+            @RequestParam(required = false) Role role,
+            // @DateTimeFormat --> converto la stringa della query in LocalDateTime (formato ISO, es: 2025-01-31T10:00:00)
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime registeredBefore,
+            @RequestParam(defaultValue = "false") boolean all) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok), il resoconto è nel corpo
+        return ResponseEntity.ok(userService.deleteUsers(role, registeredBefore, all));
+    }
+
+    /**
+     * Utilità del endpoint? Cambio il ruolo di uno specifico utente (i suoi token già emessi vengono revocati)
+     * Metodo? PATCH
+     * Url esempio? /api/users/{id}/role?role=ADMIN
+     */
+    @PatchMapping("/{id}/role")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, solo il superadmin
+    @PreAuthorize("hasRole('SUPERADMIN')")
+    public ResponseEntity<UserDTO> updateRole(@PathVariable Long id, @RequestParam Role role) {
+        // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
+        return ResponseEntity.ok(userService.updateRole(id, role));
+    }
+
+    /**
+     * Utilità del endpoint? Statistiche della cache degli utenti autenticati (dimensione, hit, miss, evizioni)
+     * Metodo? GET
+     * Url esempio? /api/users/principal-cache/stats
+     */
+    @GetMapping("/principal-cache/stats")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, solo il superadmin
+    @PreAuthorize("hasRole('SUPERADMIN')")
+    public ResponseEntity<PrincipalCacheStatsDTO> getPrincipalCacheStats() {
+        return ResponseEntity.ok(userService.getPrincipalCacheStats());
+    }
+
+    /**
+     * Utilità del endpoint? Carico l'immagine profilo: il file viene accettato subito e inviato a cloudinary in background,
+     * rispondo 202 con l'indirizzo dello stato (header Location e campo statusUrl)
      * Metodo? PATCH (e non PUT perchè è una modifica parziale)
-     * Url esempio? /api/users/{id}/image
+     * Url esempio? /api/users/{id}/profile-image
      */
     @PatchMapping("/{id}/profile-image")
     // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero lo stesso utente e il superadmin
     @PreAuthorize("#id == authentication.principal.id or hasRole('SUPERADMIN')")
-    public ResponseEntity<UserDTO> uploadProfileImage(
+    public ResponseEntity<ProfileImageUploadDTO> uploadProfileImage(
             // @PathVariable --> prendo il valore dell'url ovvero ID e lo passo al metodo
             @PathVariable Long id,
             // @RequestParam --> leggo il file passato, dopo il "?"
             // MultipartFile? --> rappresenta il file caricato e contiene anche dati del file
             // Gestisco anche le eccezioni di caricamento, lettura e scrittura dati
-            @RequestParam("file") MultipartFile file) throws IOException, IOException {
+            @RequestParam("file") MultipartFile file) throws IOException {
+
+        // Qui metto da parte il file e avvio il caricamento su cloudinary, a caricamento finito l'url viene salvato
+        // sull'utente (UserService.updateProfileImage)
+        ProfileImageUploadDTO upload = profileImageUploadService.submit(id, file);
 
-        // Qui carico l'immagine su cloudinary
-        String imageUrl = cloudinaryService.uploadImage(file);
-        // Qui aggiorno i dati dell'utente riportando url dell'immagine
-        UserDTO updatedUser = userService.updateProfileImage(id, imageUrl);
+        // ResponseEntity.accepted() --> status 202: la richiesta è accettata ma il lavoro non è ancora finito
+        return ResponseEntity.accepted()
+                .location(URI.create(upload.getStatusUrl()))
+                .body(upload);
+    }
 
-        // Ritorno l'utente aggiornato
+    /**
+     * Utilità del endpoint? Stato del caricamento dell'immagine profilo (PENDING, UPLOADING, COMPLETED con l'url, FAILED)
+     * Metodo? GET
+     * Url esempio? /api/users/{id}/profile-image/uploads/{uploadId}
+     */
+    @GetMapping("/{id}/profile-image/uploads/{uploadId}")
+    // Stabilisco le autorizzazioni su chi può usare questo endpoint, ovvero lo stesso utente e il superadmin
+    @PreAuthorize("#id == authentication.principal.id or hasRole('SUPERADMIN')")
+    public ResponseEntity<ProfileImageUploadDTO> getProfileImageUpload(
+            @PathVariable Long id,
+            @PathVariable String uploadId) {
         // ResponseEntity.ok --> metodo che imposta come risposta status 200 (ok)
-        return ResponseEntity.ok(updatedUser);
+        return ResponseEntity.ok(profileImageUploadService.getStatus(id, uploadId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package aiman.projectbackend.dto_rev;
+
+import java.time.LocalDateTime;
+
+// Resoconto di un'esecuzione dell'archiviazione degli ordini: data limite usata, quanti ordini e blocchi sono stati
+// spostati nell'archivio, quanti blocchi contiene ora l'archivio e quanto è durata
+public class ArchiveRunDTO {
+    private LocalDateTime startedAt;
+    private LocalDateTime cutoff;
+    private long archivedOrders;
+    private int writtenBlocks;
+    private int totalBlocks;
+    private long durationMs;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public ArchiveRunDTO() {}
+
+    public ArchiveRunDTO(LocalDateTime startedAt, LocalDateTime cutoff, long archivedOrders, int writtenBlocks,
+                         int totalBlocks, long durationMs) {
+        this.startedAt = startedAt;
+        this.cutoff = cutoff;
+        this.archivedOrders = archivedOrders;
+        this.writtenBlocks = writtenBlocks;
+        this.totalBlocks = totalBlocks;
+        this.durationMs = durationMs;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getCutoff() {
+        return cutoff;
+    }
+
+    public void setCutoff(LocalDateTime cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    public long getArchivedOrders() {
+        return archivedOrders;
+    }
+
+    public void setArchivedOrders(long archivedOrders) {
+        this.archivedOrders = archivedOrders;
+    }
+
+    public int getWrittenBlocks() {
+        return writtenBlocks;
+    }
+
+    public void setWrittenBlocks(int writtenBlocks) {
+        this.writtenBlocks = writtenBlocks;
+    }
+
+    public int getTotalBlocks() {
+        return totalBlocks;
+    }
+
+    public void setTotalBlocks(int totalBlocks) {
+        this.totalBlocks = totalBlocks;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+}
@@ -0,0 +1,27 @@
+package aiman.projectbackend.dto_rev;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+// Richiesta di invio massivo di ordini (clienti B2B che caricano molti ordini insieme dal loro gestionale)
+// Ogni elemento ha la stessa forma di una singola richiesta POST /api/orders
+public class BulkOrderRequestDTO {
+
+    @NotEmpty(message = "la richiesta deve contenere almeno un ordine")
+    @Size(max = 200, message = "al massimo 200 ordini per richiesta")
+    private List<@Valid OrderRequestDTO> orders;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public BulkOrderRequestDTO() {}
+
+    public List<OrderRequestDTO> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<OrderRequestDTO> orders) {
+        this.orders = orders;
+    }
+}
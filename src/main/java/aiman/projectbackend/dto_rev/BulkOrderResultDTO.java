@@ -0,0 +1,90 @@
+package aiman.projectbackend.dto_rev;
+
+import java.util.List;
+
+// Esito di un singolo ordine dell'invio massivo: posizione nella richiesta, esito, id dell'ordine creato e importi
+// oppure la lista degli errori che hanno fatto scartare l'ordine (gli altri ordini vengono comunque creati)
+public class BulkOrderResultDTO {
+
+    public static final String CREATED = "CREATED";
+    public static final String REJECTED = "REJECTED";
+
+    private int index;
+    private String outcome;
+    private Long orderId;
+    private Double totalAmount;
+    private Double shippingCost;
+    private List<String> errors;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public BulkOrderResultDTO() {}
+
+    public static BulkOrderResultDTO created(int index, Long orderId, Double totalAmount, Double shippingCost) {
+        BulkOrderResultDTO result = new BulkOrderResultDTO();
+        result.index = index;
+        result.outcome = CREATED;
+        result.orderId = orderId;
+        result.totalAmount = totalAmount;
+        result.shippingCost = shippingCost;
+        result.errors = List.of();
+        return result;
+    }
+
+    public static BulkOrderResultDTO rejected(int index, List<String> errors) {
+        BulkOrderResultDTO result = new BulkOrderResultDTO();
+        result.index = index;
+        result.outcome = REJECTED;
+        result.errors = errors;
+        return result;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public Double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(Double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public Double getShippingCost() {
+        return shippingCost;
+    }
+
+    public void setShippingCost(Double shippingCost) {
+        this.shippingCost = shippingCost;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+}
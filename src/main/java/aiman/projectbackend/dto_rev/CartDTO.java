@@ -0,0 +1,150 @@
+package aiman.projectbackend.dto_rev;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Questo è il carrello del cliente come lo vede il front end: le righe già prezzate, il subtotale, la stima della
+// spedizione e il totale (gli stessi valori diventano l'ordine al checkout). Lo stesso JSON viene usato anche per
+// salvare il carrello nel db quando la persistenza è attiva
+public class CartDTO {
+    private Long userId;
+    private List<CartLineDTO> lines = new ArrayList<>();
+    private Double subtotal;
+    // Stima della spedizione verso l'indirizzo del cliente (null se non ha un indirizzo)
+    private Double shippingCost;
+    private Double total;
+    private Integer itemCount;
+    private LocalDateTime updatedAt;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public CartDTO() {}
+
+    public CartDTO(Long userId, List<CartLineDTO> lines, Double subtotal, Double shippingCost, Double total,
+                   Integer itemCount, LocalDateTime updatedAt) {
+        this.userId = userId;
+        this.lines = lines;
+        this.subtotal = subtotal;
+        this.shippingCost = shippingCost;
+        this.total = total;
+        this.itemCount = itemCount;
+        this.updatedAt = updatedAt;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public List<CartLineDTO> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<CartLineDTO> lines) {
+        this.lines = lines;
+    }
+
+    public Double getSubtotal() {
+        return subtotal;
+    }
+
+    public void setSubtotal(Double subtotal) {
+        this.subtotal = subtotal;
+    }
+
+    public Double getShippingCost() {
+        return shippingCost;
+    }
+
+    public void setShippingCost(Double shippingCost) {
+        this.shippingCost = shippingCost;
+    }
+
+    public Double getTotal() {
+        return total;
+    }
+
+    public void setTotal(Double total) {
+        this.total = total;
+    }
+
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    // La singola riga del carrello: prodotto, prezzo unitario al momento dell'aggiunta, quantità e totale della riga
+    public static class CartLineDTO {
+        private Long productId;
+        private String productName;
+        private Double unitPrice;
+        private Integer quantity;
+        private Double lineTotal;
+
+        public CartLineDTO() {}
+
+        public CartLineDTO(Long productId, String productName, Double unitPrice, Integer quantity, Double lineTotal) {
+            this.productId = productId;
+            this.productName = productName;
+            this.unitPrice = unitPrice;
+            this.quantity = quantity;
+            this.lineTotal = lineTotal;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        public Double getUnitPrice() {
+            return unitPrice;
+        }
+
+        public void setUnitPrice(Double unitPrice) {
+            this.unitPrice = unitPrice;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(Integer quantity) {
+            this.quantity = quantity;
+        }
+
+        public Double getLineTotal() {
+            return lineTotal;
+        }
+
+        public void setLineTotal(Double lineTotal) {
+            this.lineTotal = lineTotal;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package aiman.projectbackend.dto_rev;
+
+import java.time.LocalDate;
+
+// Riga del report giornaliero delle vendite: giorno, numero di ordini e incasso (totale ordini, spedizione compresa)
+public class DailySalesDTO {
+    private LocalDate date;
+    private long orders;
+    private double revenue;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public DailySalesDTO() {}
+
+    public DailySalesDTO(LocalDate date, long orders, double revenue) {
+        this.date = date;
+        this.orders = orders;
+        this.revenue = revenue;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public void setOrders(long orders) {
+        this.orders = orders;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(double revenue) {
+        this.revenue = revenue;
+    }
+}
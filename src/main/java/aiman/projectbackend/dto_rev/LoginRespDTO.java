@@ -12,6 +12,7 @@ package aiman.projectbackend.dto_rev;
  * 4) DTO mi permettono di fare validazione come il @Notnull o @Size prima che arrivino al service
  */
 
-// Mi serve per gestire la restituzione del token (per la sessione) quando l'utente è verificato
-public record LoginRespDTO(String accessToken) {
+// Mi serve per gestire la restituzione dei token (per la sessione) quando l'utente è verificato
+// accessToken --> breve, va nell'header Authorization | refreshToken --> lungo, serve solo per /auth/refresh
+public record LoginRespDTO(String accessToken, String refreshToken) {
 }
\ No newline at end of file
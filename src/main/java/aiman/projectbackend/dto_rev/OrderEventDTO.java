@@ -0,0 +1,173 @@
+package aiman.projectbackend.dto_rev;
+
+import aiman.projectbackend.entity_rev.OrderEventType;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Questo è l'evento di un ordine che viaggia nella outbox (salvato come JSON nel payload) e arriva ai consumatori
+// Contiene già tutto quello che serve ai consumatori, così non devono tornare sul db a rileggere l'ordine
+public class OrderEventDTO {
+    // Id della riga outbox, non fa parte del JSON salvato ma viene impostato dal dispatcher alla consegna
+    @JsonIgnore
+    private Long eventId;
+    // Quante volte la riga outbox è stata presa in carico (compresa questa consegna), anche questo fuori dal JSON
+    @JsonIgnore
+    private int attempts;
+    private OrderEventType eventType;
+    private Long orderId;
+    private Long userId;
+    private LocalDateTime orderDate;
+    private Double totalAmount;
+    private Double shippingCost;
+    // Nel caso di ORDER_PLACED oldStatus è null
+    private OrderStatus oldStatus;
+    private OrderStatus newStatus;
+    private List<OrderEventLineDTO> lines = new ArrayList<>();
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public OrderEventDTO() {}
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public Long getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(Long eventId) {
+        this.eventId = eventId;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public OrderEventType getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(OrderEventType eventType) {
+        this.eventType = eventType;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+
+    public void setOrderDate(LocalDateTime orderDate) {
+        this.orderDate = orderDate;
+    }
+
+    public Double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(Double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public Double getShippingCost() {
+        return shippingCost;
+    }
+
+    public void setShippingCost(Double shippingCost) {
+        this.shippingCost = shippingCost;
+    }
+
+    public OrderStatus getOldStatus() {
+        return oldStatus;
+    }
+
+    public void setOldStatus(OrderStatus oldStatus) {
+        this.oldStatus = oldStatus;
+    }
+
+    public OrderStatus getNewStatus() {
+        return newStatus;
+    }
+
+    public void setNewStatus(OrderStatus newStatus) {
+        this.newStatus = newStatus;
+    }
+
+    public List<OrderEventLineDTO> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<OrderEventLineDTO> lines) {
+        this.lines = lines;
+    }
+
+    // Riga dell'ordine nell'evento: prodotto, categoria, quantità e prezzo al momento dell'acquisto
+    public static class OrderEventLineDTO {
+        private Long productId;
+        private Long categoryId;
+        private int quantity;
+        private double priceAtPurchase;
+
+        // Costruttore vuoto per la de/serializzazione del JSON
+        public OrderEventLineDTO() {}
+
+        public OrderEventLineDTO(Long productId, Long categoryId, int quantity, double priceAtPurchase) {
+            this.productId = productId;
+            this.categoryId = categoryId;
+            this.quantity = quantity;
+            this.priceAtPurchase = priceAtPurchase;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public Long getCategoryId() {
+            return categoryId;
+        }
+
+        public void setCategoryId(Long categoryId) {
+            this.categoryId = categoryId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        public double getPriceAtPurchase() {
+            return priceAtPurchase;
+        }
+
+        public void setPriceAtPurchase(double priceAtPurchase) {
+            this.priceAtPurchase = priceAtPurchase;
+        }
+    }
+}
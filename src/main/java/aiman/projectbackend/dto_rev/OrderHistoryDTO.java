@@ -0,0 +1,154 @@
+package aiman.projectbackend.dto_rev;
+
+import aiman.projectbackend.entity_rev.OrderStatus;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/** BREVE TEORIA DEI DTO
+ *
+ * DEF: DTO (Data transfer object) è un oggetto che trasferisce i dati tra diversi layer dell'applicazione, ad esempio Controller --> Service
+ *
+ * CARATTERISTICHE:
+ * 1) DTO non sono mappati direttamente sulle tabelle del database e non sono entità
+ * 2) Con i DTO decido quali dati esporre, infatti risulta rischioso esporre le entità del database tramite API REST perchè
+ * potrei avere campi sensibili o dettagli tecnici da non far vedere
+ * 3) DTO evita che API sia legato strettamente allo schema del database, quindi se cambio le colonne della tabella API continuerà a funzionare
+ * 4) DTO mi permettono di fare validazione come il @Notnull o @Size prima che arrivino al service
+ */
+
+// Questo è il DTO dello storico ordini del cliente: l'ordine con le sue righe e per ogni riga solo id e nome del prodotto
+// (niente user, niente categoria, niente entità che Jackson andrebbe a caricare in lazy)
+public class OrderHistoryDTO {
+    // Indico i campi dell'ordine, ovvero id, data, status, totale, spedizione e la lista delle righe
+    private Long id;
+    private LocalDateTime orderDate;
+    private OrderStatus status;
+    private Double totalAmount;
+    private Double shippingCost;
+    private List<OrderHistoryItemDTO> items = new ArrayList<>();
+
+    // Costruttore vuoto per la de/serializzazione del JSON, ovvero quando postman (client) invia i dati JSON questo costruttore
+    // mi permette di creare un oggetto Java vuoto su cui andrò a riempire
+    public OrderHistoryDTO() {}
+
+    // Costruttore per la creazione del DTO nel service (le righe le aggiungo dopo, una alla volta)
+    public OrderHistoryDTO(Long id, LocalDateTime orderDate, OrderStatus status, Double totalAmount, Double shippingCost) {
+        this.id = id;
+        this.orderDate = orderDate;
+        this.status = status;
+        this.totalAmount = totalAmount;
+        this.shippingCost = shippingCost;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati. Anche se vedo che alcuni non sono usati, quando il controller riceverà
+    // un JSON dal client userà questi metodi per iniettare i valori nel campo o leggere valori dell'oggetto e trasformarli in JSON da
+    // far vedere al client (postman)
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+
+    public void setOrderDate(LocalDateTime orderDate) {
+        this.orderDate = orderDate;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+
+    public Double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(Double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public Double getShippingCost() {
+        return shippingCost;
+    }
+
+    public void setShippingCost(Double shippingCost) {
+        this.shippingCost = shippingCost;
+    }
+
+    public List<OrderHistoryItemDTO> getItems() {
+        return items;
+    }
+
+    public void setItems(List<OrderHistoryItemDTO> items) {
+        this.items = items;
+    }
+
+    /** Breve spiegazione di questo DTO nidificato
+     * Rappresenta la singola riga dell'ordine nello storico, quindi prodotto (id e nome), qty e prezzo pagato
+     *
+     * Osservazione:
+     * Static --> inteso che posso tranquillamente creare questa classe nidificata senza creare
+     * istanza della classe esterna
+     */
+    public static class OrderHistoryItemDTO {
+        private Long productId;
+        private String productName;
+        private Integer quantity;
+        private Double priceAtPurchase;
+
+        // Costruttore vuoto per la de/serializzazione del JSON
+        public OrderHistoryItemDTO() {}
+
+        // Costruttore per la creazione del DTO nel service
+        public OrderHistoryItemDTO(Long productId, String productName, Integer quantity, Double priceAtPurchase) {
+            this.productId = productId;
+            this.productName = productName;
+            this.quantity = quantity;
+            this.priceAtPurchase = priceAtPurchase;
+        }
+
+        // Getter e Setter per l'accesso ai campi privati
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(Integer quantity) {
+            this.quantity = quantity;
+        }
+
+        public Double getPriceAtPurchase() {
+            return priceAtPurchase;
+        }
+
+        public void setPriceAtPurchase(Double priceAtPurchase) {
+            this.priceAtPurchase = priceAtPurchase;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package aiman.projectbackend.dto_rev;
+
+import aiman.projectbackend.entity_rev.OrderStatus;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+// Criteri della ricerca admin degli ordini (GET /api/orders/search), arrivano come parametri della query string e sono
+// tutti opzionali: ogni criterio indicato diventa una condizione della WHERE, quelli assenti non compaiono nella query
+public class OrderSearchDTO {
+    private OrderStatus status;
+    // @DateTimeFormat --> converto la stringa della query in LocalDateTime (formato ISO, es: 2025-01-31T10:00:00)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    private Double minTotal;
+    private Double maxTotal;
+    // Email esatta del cliente
+    private String email;
+    // Ordini che contengono questo prodotto
+    private Long productId;
+    // Cursore keyset (data e id dell'ultimo ordine ricevuto) e dimensione della pagina
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime lastDate;
+    private Long lastId;
+    private int size = 20;
+
+    // Costruttore vuoto, spring crea l'oggetto e poi lo riempie con i parametri della richiesta
+    public OrderSearchDTO() {}
+
+    // Getter e Setter per l'accesso ai campi privati (spring usa i setter per iniettare i parametri)
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public Double getMinTotal() {
+        return minTotal;
+    }
+
+    public void setMinTotal(Double minTotal) {
+        this.minTotal = minTotal;
+    }
+
+    public Double getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(Double maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public LocalDateTime getLastDate() {
+        return lastDate;
+    }
+
+    public void setLastDate(LocalDateTime lastDate) {
+        this.lastDate = lastDate;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Long lastId) {
+        this.lastId = lastId;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,105 @@
+package aiman.projectbackend.dto_rev;
+
+import aiman.projectbackend.entity_rev.OrderStatus;
+import java.time.LocalDateTime;
+
+/** BREVE TEORIA DEI DTO
+ *
+ * DEF: DTO (Data transfer object) è un oggetto che trasferisce i dati tra diversi layer dell'applicazione, ad esempio Controller --> Service
+ *
+ * CARATTERISTICHE:
+ * 1) DTO non sono mappati direttamente sulle tabelle del database e non sono entità
+ * 2) Con i DTO decido quali dati esporre, infatti risulta rischioso esporre le entità del database tramite API REST perchè
+ * potrei avere campi sensibili o dettagli tecnici da non far vedere
+ * 3) DTO evita che API sia legato strettamente allo schema del database, quindi se cambio le colonne della tabella API continuerà a funzionare
+ * 4) DTO mi permettono di fare validazione come il @Notnull o @Size prima che arrivino al service
+ */
+
+// Questo è il riepilogo "piatto" dell'ordine per la lista admin, quindi niente user completo, niente items e niente prodotti
+// ma solo i campi che servono alla tabella ordini (viene riempito direttamente dalla query con SELECT new ...)
+public class OrderSummaryDTO {
+    // Indico i campi del riepilogo, ovvero id ordine, data, status, email del cliente, totale, spedizione e numero di righe
+    private Long id;
+    private LocalDateTime orderDate;
+    private OrderStatus status;
+    private String userEmail;
+    private Double totalAmount;
+    private Double shippingCost;
+    private Long itemCount;
+
+    // Costruttore vuoto per la de/serializzazione del JSON, ovvero quando postman (client) invia i dati JSON questo costruttore
+    // mi permette di creare un oggetto Java vuoto su cui andrò a riempire
+    public OrderSummaryDTO() {}
+
+    // Costruttore usato dalla query JPQL (SELECT new ...), l'ordine dei parametri deve essere identico a quello della query
+    public OrderSummaryDTO(Long id, LocalDateTime orderDate, OrderStatus status, String userEmail,
+                           Double totalAmount, Double shippingCost, Long itemCount) {
+        this.id = id;
+        this.orderDate = orderDate;
+        this.status = status;
+        this.userEmail = userEmail;
+        this.totalAmount = totalAmount;
+        this.shippingCost = shippingCost;
+        this.itemCount = itemCount;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati. Anche se vedo che alcuni non sono usati, quando il controller riceverà
+    // un JSON dal client userà questi metodi per iniettare i valori nel campo o leggere valori dell'oggetto e trasformarli in JSON da
+    // far vedere al client (postman)
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+
+    public void setOrderDate(LocalDateTime orderDate) {
+        this.orderDate = orderDate;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public Double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(Double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public Double getShippingCost() {
+        return shippingCost;
+    }
+
+    public void setShippingCost(Double shippingCost) {
+        this.shippingCost = shippingCost;
+    }
+
+    public Long getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Long itemCount) {
+        this.itemCount = itemCount;
+    }
+}
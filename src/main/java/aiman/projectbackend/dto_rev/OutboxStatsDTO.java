@@ -0,0 +1,97 @@
+package aiman.projectbackend.dto_rev;
+
+// Stato della pipeline degli eventi degli ordini: quanto è pieno il buffer in memoria, quanti eventi sono in lavorazione,
+// quanti sono stati consegnati o sono falliti, quanti aspettano ancora nella tabella outbox e quanti sono stati scartati
+// (dead letter: payload illeggibile o troppi tentativi, vanno controllati a mano)
+public class OutboxStatsDTO {
+    private int bufferSize;
+    private int bufferCapacity;
+    private int inFlight;
+    private long delivered;
+    private long failed;
+    // Quante volte il dispatcher non ha letto nuovi eventi perchè il buffer era pieno (backpressure)
+    private long backpressureSkips;
+    private long pendingInDb;
+    private long deadLettered;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public OutboxStatsDTO() {}
+
+    public OutboxStatsDTO(int bufferSize, int bufferCapacity, int inFlight, long delivered, long failed,
+                          long backpressureSkips, long pendingInDb, long deadLettered) {
+        this.bufferSize = bufferSize;
+        this.bufferCapacity = bufferCapacity;
+        this.inFlight = inFlight;
+        this.delivered = delivered;
+        this.failed = failed;
+        this.backpressureSkips = backpressureSkips;
+        this.pendingInDb = pendingInDb;
+        this.deadLettered = deadLettered;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    public void setBufferCapacity(int bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public void setDelivered(long delivered) {
+        this.delivered = delivered;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getBackpressureSkips() {
+        return backpressureSkips;
+    }
+
+    public void setBackpressureSkips(long backpressureSkips) {
+        this.backpressureSkips = backpressureSkips;
+    }
+
+    public long getPendingInDb() {
+        return pendingInDb;
+    }
+
+    public void setPendingInDb(long pendingInDb) {
+        this.pendingInDb = pendingInDb;
+    }
+
+    public long getDeadLettered() {
+        return deadLettered;
+    }
+
+    public void setDeadLettered(long deadLettered) {
+        this.deadLettered = deadLettered;
+    }
+}
@@ -0,0 +1,86 @@
+package aiman.projectbackend.dto_rev;
+
+// Stato della cache degli utenti autenticati: quanti utenti contiene, quante richieste sono state servite dalla memoria
+// (hit) e quante hanno dovuto leggere il db (miss), quante voci sono uscite perchè la cache era piena o sono state
+// invalidate da una modifica dell'utente
+public class PrincipalCacheStatsDTO {
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long invalidations;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public PrincipalCacheStatsDTO() {}
+
+    public PrincipalCacheStatsDTO(int size, int maxSize, long hits, long misses, double hitRate, long evictions,
+                                  long invalidations) {
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitRate = hitRate;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public void setHitRate(double hitRate) {
+        this.hitRate = hitRate;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public void setInvalidations(long invalidations) {
+        this.invalidations = invalidations;
+    }
+}
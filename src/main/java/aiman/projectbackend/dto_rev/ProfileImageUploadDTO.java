@@ -0,0 +1,104 @@
+package aiman.projectbackend.dto_rev;
+
+import java.time.LocalDateTime;
+
+// Stato di un caricamento asincrono dell'immagine profilo: PENDING (in attesa), UPLOADING (invio a cloudinary in corso),
+// COMPLETED (immagine salvata sull'utente, con il suo url) oppure FAILED (con il motivo). statusUrl è l'indirizzo da
+// interrogare per seguire il caricamento
+public class ProfileImageUploadDTO {
+
+    public static final String PENDING = "PENDING";
+    public static final String UPLOADING = "UPLOADING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private String uploadId;
+    private Long userId;
+    private String status;
+    private String imageUrl;
+    private String error;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+    private String statusUrl;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public ProfileImageUploadDTO() {}
+
+    public ProfileImageUploadDTO(String uploadId, Long userId, String status, String imageUrl, String error,
+                                 LocalDateTime submittedAt, LocalDateTime completedAt, String statusUrl) {
+        this.uploadId = uploadId;
+        this.userId = userId;
+        this.status = status;
+        this.imageUrl = imageUrl;
+        this.error = error;
+        this.submittedAt = submittedAt;
+        this.completedAt = completedAt;
+        this.statusUrl = statusUrl;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public String getStatusUrl() {
+        return statusUrl;
+    }
+
+    public void setStatusUrl(String statusUrl) {
+        this.statusUrl = statusUrl;
+    }
+}
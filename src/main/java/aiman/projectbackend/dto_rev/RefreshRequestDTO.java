@@ -0,0 +1,5 @@
+package aiman.projectbackend.dto_rev;
+
+// Mi serve per ricevere il refresh token nel corpo di /auth/refresh e /auth/logout
+public record RefreshRequestDTO(String refreshToken) {
+}
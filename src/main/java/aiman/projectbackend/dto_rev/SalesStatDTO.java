@@ -0,0 +1,54 @@
+package aiman.projectbackend.dto_rev;
+
+// Riga del report vendite per prodotto o per categoria: id, nome, pezzi venduti e incasso delle righe d'ordine
+// (prezzo al momento dell'acquisto per quantità, senza spedizione)
+public class SalesStatDTO {
+    private Long id;
+    private String name;
+    private long units;
+    private double revenue;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public SalesStatDTO() {}
+
+    public SalesStatDTO(Long id, String name, long units, double revenue) {
+        this.id = id;
+        this.name = name;
+        this.units = units;
+        this.revenue = revenue;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public void setUnits(long units) {
+        this.units = units;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(double revenue) {
+        this.revenue = revenue;
+    }
+}
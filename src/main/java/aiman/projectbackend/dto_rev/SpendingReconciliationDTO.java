@@ -0,0 +1,90 @@
+package aiman.projectbackend.dto_rev;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Questo è il resoconto di una riconciliazione della spesa utenti, ovvero quanti utenti ho controllato, quanti avevano
+// l'aggregato sbagliato (drift) e di quanto, così l'admin capisce se qualcosa aggiorna gli ordini senza passare dal service
+public class SpendingReconciliationDTO {
+    private LocalDateTime startedAt;
+    private long durationMs;
+    private int chunks;
+    private long checkedUsers;
+    private long driftedUsers;
+    // Somma in valore assoluto delle differenze di totale trovate
+    private double totalDrift;
+    // Solo i primi id con drift, per non restituire liste enormi
+    private List<Long> sampleDriftedUserIds;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public SpendingReconciliationDTO() {}
+
+    public SpendingReconciliationDTO(LocalDateTime startedAt, long durationMs, int chunks, long checkedUsers,
+                                     long driftedUsers, double totalDrift, List<Long> sampleDriftedUserIds) {
+        this.startedAt = startedAt;
+        this.durationMs = durationMs;
+        this.chunks = chunks;
+        this.checkedUsers = checkedUsers;
+        this.driftedUsers = driftedUsers;
+        this.totalDrift = totalDrift;
+        this.sampleDriftedUserIds = sampleDriftedUserIds;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(int chunks) {
+        this.chunks = chunks;
+    }
+
+    public long getCheckedUsers() {
+        return checkedUsers;
+    }
+
+    public void setCheckedUsers(long checkedUsers) {
+        this.checkedUsers = checkedUsers;
+    }
+
+    public long getDriftedUsers() {
+        return driftedUsers;
+    }
+
+    public void setDriftedUsers(long driftedUsers) {
+        this.driftedUsers = driftedUsers;
+    }
+
+    public double getTotalDrift() {
+        return totalDrift;
+    }
+
+    public void setTotalDrift(double totalDrift) {
+        this.totalDrift = totalDrift;
+    }
+
+    public List<Long> getSampleDriftedUserIds() {
+        return sampleDriftedUserIds;
+    }
+
+    public void setSampleDriftedUserIds(List<Long> sampleDriftedUserIds) {
+        this.sampleDriftedUserIds = sampleDriftedUserIds;
+    }
+}
@@ -0,0 +1,54 @@
+package aiman.projectbackend.dto_rev;
+
+// Resoconto di una cancellazione massiva di utenti: quanti utenti e ordini sono stati cancellati, in quanti blocchi
+// (transazioni) e quanto è durata
+public class UserDeletionDTO {
+    private long deletedUsers;
+    private long deletedOrders;
+    private int blocks;
+    private long durationMs;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public UserDeletionDTO() {}
+
+    public UserDeletionDTO(long deletedUsers, long deletedOrders, int blocks, long durationMs) {
+        this.deletedUsers = deletedUsers;
+        this.deletedOrders = deletedOrders;
+        this.blocks = blocks;
+        this.durationMs = durationMs;
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public long getDeletedUsers() {
+        return deletedUsers;
+    }
+
+    public void setDeletedUsers(long deletedUsers) {
+        this.deletedUsers = deletedUsers;
+    }
+
+    public long getDeletedOrders() {
+        return deletedOrders;
+    }
+
+    public void setDeletedOrders(long deletedOrders) {
+        this.deletedOrders = deletedOrders;
+    }
+
+    public int getBlocks() {
+        return blocks;
+    }
+
+    public void setBlocks(int blocks) {
+        this.blocks = blocks;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+}
@@ -0,0 +1,116 @@
+package aiman.projectbackend.dto_rev;
+
+import java.util.List;
+
+// Esito dell'importazione massiva degli utenti: righe lette, utenti creati, righe scartate (con il numero di riga del file
+// e i motivi, al massimo import.max-reported-errors) e velocità dell'importazione
+public class UserImportReportDTO {
+    private long totalRows;
+    private long created;
+    private long rejected;
+    private long elapsedMs;
+    private double rowsPerSecond;
+    private boolean errorsTruncated;
+    private List<RowError> errors;
+
+    // Costruttore vuoto per la de/serializzazione del JSON
+    public UserImportReportDTO() {}
+
+    public UserImportReportDTO(long totalRows, long created, long rejected, long elapsedMs, double rowsPerSecond,
+                               boolean errorsTruncated, List<RowError> errors) {
+        this.totalRows = totalRows;
+        this.created = created;
+        this.rejected = rejected;
+        this.elapsedMs = elapsedMs;
+        this.rowsPerSecond = rowsPerSecond;
+        this.errorsTruncated = errorsTruncated;
+        this.errors = errors;
+    }
+
+    // Riga scartata: numero di riga nel file (la prima riga è 1) e motivi
+    public static class RowError {
+        private long line;
+        private List<String> errors;
+
+        public RowError() {}
+
+        public RowError(long line, List<String> errors) {
+            this.line = line;
+            this.errors = errors;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public void setErrors(List<String> errors) {
+            this.errors = errors;
+        }
+    }
+
+    // Getter e Setter per l'accesso ai campi privati
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public void setTotalRows(long totalRows) {
+        this.totalRows = totalRows;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public void setErrorsTruncated(boolean errorsTruncated) {
+        this.errorsTruncated = errorsTruncated;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+}
@@ -1,5 +1,6 @@
 package aiman.projectbackend.entity_rev;
 
+import aiman.projectbackend.config_rev.SequenceBlocks;
 import com.fasterxml.jackson.annotation.JsonIgnore; // Importa questo
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
@@ -67,8 +68,10 @@ public class Address {
 
     // Definisco la chiave primaria
     @Id
-    // Dico come viene generata questa chiave, IDENTITY --> serve per dire che la strategia è un id autoincrementato
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dico come viene generata questa chiave, SEQUENCE --> l'id viene preso dalla sequenza addresses_seq a blocchi di 50
+    // (stessa logica di Order, così le INSERT possono andare in batch)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "addresses_seq")
+    @SequenceGenerator(name = "addresses_seq", sequenceName = "addresses_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
     private Long id;
 
     // NotBlank è per la validaizone, impedisce che il campo sia vuoto con anche il msg di errore
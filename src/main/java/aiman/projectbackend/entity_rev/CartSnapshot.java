@@ -0,0 +1,66 @@
+package aiman.projectbackend.entity_rev;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Qui salvo la copia del carrello del cliente quando la persistenza dei carrelli è attiva (cart.persistence.enabled)
+ *
+ * OSSERVAZIONI:
+ * - Il carrello "vivo" resta in memoria, questa riga serve solo a ritrovarlo dopo un riavvio o dopo che è uscito dalla
+ * memoria (troppi carrelli o inattivo da troppo tempo)
+ * - La chiave primaria è direttamente l'id dell'utente, un carrello per utente
+ * - payload --> il carrello in JSON (lo stesso formato restituito dalle API), così non servono tabelle per le righe
+ */
+
+// @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
+@Entity
+// @Table serve per indicare il nome della tabella nel db associato, se non lo metto prende quello della classe
+@Table(name = "cart_snapshots")
+public class CartSnapshot {
+
+    // Definisco la chiave primaria, è l'id dell'utente quindi non viene generata
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Questo costruttore vuoto perchè JPA lo usa per istanziare l'oggetto e recuperare i dati
+    public CartSnapshot() {}
+
+    public CartSnapshot(Long userId, String payload, LocalDateTime updatedAt) {
+        this.userId = userId;
+        this.payload = payload;
+        this.updatedAt = updatedAt;
+    }
+
+    // Getter e setter servono a JPA per accedere ai campi privati in questa classe
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -1,5 +1,6 @@
 package aiman.projectbackend.entity_rev;
 
+import aiman.projectbackend.config_rev.SequenceBlocks;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank; // Importa questo
@@ -65,8 +66,10 @@ public class Category {
 
     // Definisco la chiave primaria
     @Id
-    // Dico come viene generata questa chiave, IDENTITY --> serve per dire che la strategia è un id autoincrementato
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dico come viene generata questa chiave, SEQUENCE --> l'id viene preso dalla sequenza categories_seq a blocchi di 50
+    // (stessa logica di Order, così le INSERT possono andare in batch)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "categories_seq")
+    @SequenceGenerator(name = "categories_seq", sequenceName = "categories_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
     private Long id;
 
     // NotBlank è per la validaizone, impedisce che il campo sia vuoto con anche il msg di errore
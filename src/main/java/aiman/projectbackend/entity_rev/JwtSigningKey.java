@@ -0,0 +1,104 @@
+package aiman.projectbackend.entity_rev;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Qui salvo le coppie di chiavi (ES256) usate per firmare e verificare i token JWT
+ *
+ * OSSERVAZIONI:
+ * - Ogni chiave ha un kid (id della chiave) che finisce nell'header dei token, così chi verifica sa quale chiave pubblica usare
+ * - La chiave privata è cifrata (AES-GCM con una chiave derivata da jwt.secret): chi legge solo il db non può firmare token
+ * - expires_at null --> chiave attiva; dopo la rotazione la vecchia chiave resta valida solo per la verifica, fino alla
+ * scadenza degli ultimi token firmati con lei
+ * - Tutte le istanze dell'applicazione leggono le chiavi da questa tabella, quindi verificano i token in locale
+ */
+
+// @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
+@Entity
+// @Table serve per indicare il nome della tabella nel db associato
+@Table(name = "jwt_signing_keys")
+public class JwtSigningKey {
+
+    // Definisco la chiave primaria, è il kid (UUID) quindi non viene generata dal db
+    @Id
+    @Column(length = 36)
+    private String kid;
+
+    @Column(nullable = false, length = 10)
+    private String algorithm;
+
+    // Chiave pubblica in formato X.509, codificata in Base64
+    @Column(name = "public_key", nullable = false, columnDefinition = "TEXT")
+    private String publicKey;
+
+    // Chiave privata in formato PKCS#8, cifrata e codificata in Base64
+    @Column(name = "private_key", nullable = false, columnDefinition = "TEXT")
+    private String privateKey;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    // Questo costruttore vuoto perchè JPA lo usa per istanziare l'oggetto e recuperare i dati
+    public JwtSigningKey() {}
+
+    public JwtSigningKey(String kid, String algorithm, String publicKey, String privateKey, LocalDateTime createdAt) {
+        this.kid = kid;
+        this.algorithm = algorithm;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.createdAt = createdAt;
+    }
+
+    // Getter e setter servono a JPA per accedere ai campi privati in questa classe
+    public String getKid() {
+        return kid;
+    }
+
+    public void setKid(String kid) {
+        this.kid = kid;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    public void setPublicKey(String publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    public String getPrivateKey() {
+        return privateKey;
+    }
+
+    public void setPrivateKey(String privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
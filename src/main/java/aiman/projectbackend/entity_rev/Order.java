@@ -1,5 +1,6 @@
 package aiman.projectbackend.entity_rev;
 
+import aiman.projectbackend.config_rev.SequenceBlocks;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -53,7 +54,16 @@ import java.util.List;
 // @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
 @Entity
 // @Table serve per indicare il nome della tabella nel db associato, se non lo metto prende quello della classe
-@Table(name = "orders")
+// indexes --> chiedo a JPA di creare l'indice sulla colonna status, così il filtro per stato (e i conteggi) non scorrono tutta la tabella
+// e quello su data + id, usato dall'esportazione per periodo (e dall'archiviazione) per leggere solo l'intervallo di date
+// Gli indici composti status + data e utente + data servono alla ricerca admin e allo storico del cliente: il db legge
+// solo l'intervallo già ordinato per data (id in coda per lo spareggio del cursore keyset)
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_status", columnList = "status"),
+        @Index(name = "idx_orders_order_date", columnList = "order_date, id"),
+        @Index(name = "idx_orders_status_date", columnList = "status, order_date, id"),
+        @Index(name = "idx_orders_user_date", columnList = "user_id, order_date, id")
+})
 public class Order {
 
     /**
@@ -68,13 +78,21 @@ public class Order {
 
     // Definisco la chiave primaria
     @Id
-    // Dico come viene generata questa chiave, IDENTITY --> serve per dire che la strategia è un id autoincrementato
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dico come viene generata questa chiave, SEQUENCE --> l'id viene preso dalla sequenza orders_seq del db
+    // allocationSize = 50 --> con un solo nextval Hibernate si riserva 50 id (ottimizzatore pooled), quindi conosce l'id
+    // prima della INSERT e può mandare ordine e righe a blocchi (batch), con IDENTITY invece deve fare una INSERT alla
+    // volta per farsi restituire l'id dal db
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
     private Long id;
 
     private LocalDateTime orderDate;
     private Double totalAmount;
-    private String status;
+
+    // Salvo questo valore ENUM come stringa (come per il ruolo dell'utente), quindi i vecchi ordini "PENDING" restano validi
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private OrderStatus status;
 
     // ManyToOne --> stabilisco la relazione, dicendo n ordini associato 1 utente
     @ManyToOne
@@ -100,7 +118,7 @@ public class Order {
     public Order() {}
 
     // Questo costruttore mi serve per creare i miei oggetti order
-    public Order(LocalDateTime orderDate, Double totalAmount, String status, User user) {
+    public Order(LocalDateTime orderDate, Double totalAmount, OrderStatus status, User user) {
         this.orderDate = orderDate;
         this.totalAmount = totalAmount;
         this.status = status;
@@ -132,11 +150,11 @@ public class Order {
         this.totalAmount = totalAmount;
     }
 
-    public String getStatus() {
+    public OrderStatus getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
+    public void setStatus(OrderStatus status) {
         this.status = status;
     }
 
@@ -0,0 +1,11 @@
+package aiman.projectbackend.entity_rev;
+
+/**
+ * Tipi di evento che un ordine può generare nella outbox
+ * ORDER_PLACED --> ordine creato
+ * ORDER_STATUS_CHANGED --> lo status dell'ordine è cambiato (es: PAID --> SHIPPED oppure annullato)
+ */
+public enum OrderEventType {
+    ORDER_PLACED,
+    ORDER_STATUS_CHANGED
+}
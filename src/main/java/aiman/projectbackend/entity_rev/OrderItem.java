@@ -1,5 +1,6 @@
 package aiman.projectbackend.entity_rev;
 
+import aiman.projectbackend.config_rev.SequenceBlocks;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
@@ -52,7 +53,12 @@ import jakarta.persistence.*;
 // @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
 @Entity
 // @Table serve per indicare il nome della tabella nel db associato, se non lo metto prende quello della classe
-@Table(name = "order_items")
+// indexes --> postgres non crea da solo gli indici sulle foreign key: quello su order_id serve a leggere le righe di un
+// ordine, quello su prodotto + ordine alla ricerca admin degli ordini che contengono un prodotto
+@Table(name = "order_items", indexes = {
+        @Index(name = "idx_order_items_order", columnList = "order_id"),
+        @Index(name = "idx_order_items_product", columnList = "product_id, order_id")
+})
 public class OrderItem {
 
     /**
@@ -64,8 +70,10 @@ public class OrderItem {
 
     // Definisco la chiave primaria
     @Id
-    // Dico come viene generata questa chiave, IDENTITY --> serve per dire che la strategia è un id autoincrementato
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dico come viene generata questa chiave, SEQUENCE --> l'id viene preso dalla sequenza order_items_seq a blocchi di 50
+    // (stessa logica di Order, così le INSERT possono andare in batch)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_items_seq")
+    @SequenceGenerator(name = "order_items_seq", sequenceName = "order_items_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
     private Long id;
 
     private Integer quantity;
@@ -0,0 +1,157 @@
+package aiman.projectbackend.entity_rev;
+
+import aiman.projectbackend.config_rev.SequenceBlocks;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Qui definisco la tabella outbox degli eventi degli ordini (transactional outbox)
+ *
+ * Idea: invece di fare notifiche, statistiche, sincronizzazioni ... dentro la richiesta HTTP, scrivo una riga evento nella
+ * stessa transazione dell'ordine. Se l'ordine viene salvato allora anche l'evento esiste, se va in rollback non esiste
+ * nessuno dei due. Poi un dispatcher in background legge le righe non ancora consegnate e le passa ai consumatori
+ *
+ * Colonne:
+ * - payload --> l'evento in JSON (OrderEventDTO)
+ * - leaseUntil --> fino a quando l'evento è "preso in carico" da un dispatcher, se scade senza conferma viene ripreso
+ * - dispatchedAt --> quando tutti i consumatori lo hanno elaborato (null = ancora da consegnare)
+ * - attempts --> quante volte è stato preso in carico
+ * - failedAt / lastError --> evento scartato (dead letter): payload illeggibile o troppi tentativi falliti, non viene più
+ * ripreso e resta nella tabella con il motivo, per essere controllato a mano
+ */
+
+// @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
+@Entity
+// @Table serve per indicare il nome della tabella nel db associato
+// indexes --> il dispatcher cerca sempre le righe non consegnate in ordine di id
+@Table(name = "order_outbox", indexes = {
+        @Index(name = "idx_order_outbox_pending", columnList = "dispatched_at, id")
+})
+public class OrderOutboxEvent {
+
+    // Definisco la chiave primaria presa dalla sequenza a blocchi di 50 (come gli ordini), l'ordine degli id è anche
+    // l'ordine degli eventi (a parte la piccola finestra tra transazioni concorrenti)
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_outbox_seq")
+    @SequenceGenerator(name = "order_outbox_seq", sequenceName = "order_outbox_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
+    private Long id;
+
+    // Salvo il tipo di evento come stringa (come per lo status dell'ordine)
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 40)
+    private OrderEventType eventType;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    // TEXT --> il JSON può essere lungo (righe dell'ordine)
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime dispatchedAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    private LocalDateTime failedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    // Questo costruttore vuoto perchè JPA lo usa per istanziare l'oggetto e recuperare i dati
+    public OrderOutboxEvent() {}
+
+    // Questo costruttore mi serve per creare un nuovo evento da consegnare
+    public OrderOutboxEvent(OrderEventType eventType, Long orderId, String payload) {
+        this.eventType = eventType;
+        this.orderId = orderId;
+        this.payload = payload;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getter e setter servono a JPA per accedere ai campi privati in questa classe
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public OrderEventType getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(OrderEventType eventType) {
+        this.eventType = eventType;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(LocalDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    public LocalDateTime getDispatchedAt() {
+        return dispatchedAt;
+    }
+
+    public void setDispatchedAt(LocalDateTime dispatchedAt) {
+        this.dispatchedAt = dispatchedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getFailedAt() {
+        return failedAt;
+    }
+
+    public void setFailedAt(LocalDateTime failedAt) {
+        this.failedAt = failedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
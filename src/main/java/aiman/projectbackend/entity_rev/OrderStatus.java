@@ -0,0 +1,37 @@
+package aiman.projectbackend.entity_rev;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Qui definisco un enum sullo stato dell'ordine, come per Role ho un numero limitato di valori, quindi non posso più salvare
+ * uno status scritto a mano (es: "spedito", "SHIPED") che poi nessuna query riesce a trovare
+ *
+ * Oltre ai valori, l'enum fa anche da macchina a stati, ovvero indica da quale stato posso passare a quale altro:
+ * PENDING --> PAID o CANCELLED
+ * PAID --> SHIPPED o CANCELLED
+ * SHIPPED --> DELIVERED
+ * DELIVERED e CANCELLED sono stati finali, da lì non mi muovo più
+ */
+public enum OrderStatus {
+    PENDING,
+    PAID,
+    SHIPPED,
+    DELIVERED,
+    CANCELLED;
+
+    // Restituisco gli stati raggiungibili da quello attuale (switch sui valori dell'enum)
+    public Set<OrderStatus> allowedTransitions() {
+        return switch (this) {
+            case PENDING -> EnumSet.of(PAID, CANCELLED);
+            case PAID -> EnumSet.of(SHIPPED, CANCELLED);
+            case SHIPPED -> EnumSet.of(DELIVERED);
+            case DELIVERED, CANCELLED -> EnumSet.noneOf(OrderStatus.class);
+        };
+    }
+
+    // Verifico se il passaggio dallo stato attuale a quello richiesto è permesso
+    public boolean canTransitionTo(OrderStatus next) {
+        return allowedTransitions().contains(next);
+    }
+}
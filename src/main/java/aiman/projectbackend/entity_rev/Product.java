@@ -1,5 +1,6 @@
 package aiman.projectbackend.entity_rev;
 
+import aiman.projectbackend.config_rev.SequenceBlocks;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import jakarta.validation.constraints.*;
@@ -106,8 +107,10 @@ public abstract class Product {
 
     // Definisco la chiave primaria
     @Id
-    // Dico come viene generata questa chiave, IDENTITY --> serve per dire che la strategia è un id autoincrementato
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dico come viene generata questa chiave, SEQUENCE --> l'id viene preso dalla sequenza products_seq a blocchi di 50
+    // (stessa logica di Order, così le INSERT possono andare in batch)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
     private Long id;
 
     // NotBlank è per la validaizone, impedisce che il campo sia vuoto con anche il msg di errore
@@ -0,0 +1,118 @@
+package aiman.projectbackend.entity_rev;
+
+import aiman.projectbackend.config_rev.SequenceBlocks;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Qui salvo i refresh token, cioè i token lunghi che servono solo a ottenere un nuovo access token (POST /auth/refresh)
+ *
+ * OSSERVAZIONI:
+ * - Non salvo il token ma il suo hash SHA-256: chi legge il db non può usarli
+ * - Ogni refresh token si usa una volta sola (rotazione): al refresh viene segnato come usato e ne emetto uno nuovo
+ * della stessa famiglia (familyId = tutti i token nati dallo stesso login)
+ * - Se arriva un token già usato qualcuno lo ha copiato: revoco tutta la famiglia, così anche il token "buono" smette
+ * di funzionare e l'utente deve rifare il login
+ * - user_id è una colonna semplice e non una relazione, così cancellare un utente non è bloccato dai suoi token
+ * (al refresh l'utente non esiste più e la richiesta viene rifiutata)
+ */
+
+// @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
+@Entity
+// @Table serve per indicare il nome della tabella nel db associato
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_tokens_expires", columnList = "expires_at")
+})
+public class RefreshToken {
+
+    // Definisco la chiave primaria presa dalla sequenza a blocchi di 50
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_tokens_seq")
+    @SequenceGenerator(name = "refresh_tokens_seq", sequenceName = "refresh_tokens_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // Hash del token in Base64 (44 caratteri), unico perchè è la chiave di ricerca al refresh
+    @Column(name = "token_hash", nullable = false, unique = true, length = 44)
+    private String tokenHash;
+
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    // Quando è stato usato per il refresh (null = non ancora usato)
+    @Column(name = "used_at")
+    private LocalDateTime usedAt;
+
+    // Quando è stato revocato (logout o riuso), null = valido
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+
+    // Questo costruttore vuoto perchè JPA lo usa per istanziare l'oggetto e recuperare i dati
+    public RefreshToken() {}
+
+    public RefreshToken(Long userId, String tokenHash, String familyId, LocalDateTime expiresAt) {
+        this.userId = userId;
+        this.tokenHash = tokenHash;
+        this.familyId = familyId;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getter e setter servono a JPA per accedere ai campi privati in questa classe
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(String familyId) {
+        this.familyId = familyId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getUsedAt() {
+        return usedAt;
+    }
+
+    public void setUsedAt(LocalDateTime usedAt) {
+        this.usedAt = usedAt;
+    }
+
+    public LocalDateTime getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(LocalDateTime revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+}
@@ -0,0 +1,69 @@
+package aiman.projectbackend.entity_rev;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Qui salvo gli access token revocati prima della scadenza (ad esempio al logout), identificati dal loro jti
+ *
+ * OSSERVAZIONI:
+ * - Il filtro JWT non legge questa tabella: all'avvio viene caricata in memoria (TokenRevocationList) e ogni revoca
+ * aggiorna sia la tabella che la memoria
+ * - expires_at è la scadenza del token: dopo quella data il token è comunque rifiutato, quindi la riga si può cancellare
+ * - revoked_at è l'ora del db al momento della revoca: le altre istanze leggono ogni pochi secondi solo le righe nuove
+ * (null per le righe salvate prima che la colonna esistesse, arrivano con la ricostruzione completa)
+ */
+
+// @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
+@Entity
+// @Table serve per indicare il nome della tabella nel db associato
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_tokens_expires", columnList = "expires_at"),
+        @Index(name = "idx_revoked_tokens_revoked_at", columnList = "revoked_at")
+})
+public class RevokedToken {
+
+    // Definisco la chiave primaria, è il jti (UUID) del token quindi non viene generata
+    @Id
+    @Column(length = 36)
+    private String jti;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+
+    // Questo costruttore vuoto perchè JPA lo usa per istanziare l'oggetto e recuperare i dati
+    public RevokedToken() {}
+
+    public RevokedToken(String jti, LocalDateTime expiresAt) {
+        this.jti = jti;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getter e setter servono a JPA per accedere ai campi privati in questa classe
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(LocalDateTime revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+}
@@ -1,5 +1,6 @@
 package aiman.projectbackend.entity_rev;
 
+import aiman.projectbackend.config_rev.SequenceBlocks;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
@@ -81,8 +82,10 @@ public class User implements UserDetails {
 
     // Definisco la chiave primaria
     @Id
-    // Dico come viene generata questa chiave, IDENTITY --> serve per dire che la strategia è un id autoincrementato
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dico come viene generata questa chiave, SEQUENCE --> l'id viene preso dalla sequenza users_seq a blocchi di 50
+    // (stessa logica di Order, così le INSERT possono andare in batch)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = SequenceBlocks.ALLOCATION_SIZE)
     private Long id;
 
     // NotBlank è per la validaizone, impedisce che il campo sia vuoto con anche il msg di errore
@@ -129,6 +132,13 @@ public class User implements UserDetails {
     @Enumerated(EnumType.STRING)
     private Role role;
 
+    // Versione dei token dell'utente: viene scritta nel token al login e aumenta quando cambia il ruolo, così i token
+    // emessi prima non valgono più (il filtro confronta la versione del token con quella in memoria di UserTokenVersions)
+    // columnDefinition con default --> ddl-auto=update può aggiungere la colonna anche sulle righe già esistenti
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long tokenVersion = 0L;
+
     // Relazione 1 a 1, quindi l'utente ha 1 solo address e cascade, quindi se elimino utente elimino il suo indirizzo nell'altra tabella
     @OneToOne(mappedBy = "user", cascade = CascadeType.ALL)
     private Address address;
@@ -299,4 +309,12 @@ public class User implements UserDetails {
     public void setRole(Role role) {
         this.role = role;
     }
+
+    public Long getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public void setTokenVersion(Long tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
 }
\ No newline at end of file
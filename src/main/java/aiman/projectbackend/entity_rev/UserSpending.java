@@ -0,0 +1,96 @@
+package aiman.projectbackend.entity_rev;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Qui tengo l'aggregato della spesa di ogni utente (totale speso, numero di ordini e data dell'ultimo ordine), così il
+ * profilo non deve fare una SUM su tutti gli ordini dell'utente ad ogni apertura ma legge una sola riga
+ *
+ * OSSERVAZIONI:
+ * - La riga viene aggiornata nella stessa transazione dell'ordine (creazione e annullamento), quindi o vengono salvati
+ * entrambi o nessuno dei due
+ * - Gli ordini annullati (CANCELLED) non contano nel totale e nel numero di ordini
+ * - La chiave primaria è direttamente l'id dell'utente, una riga per utente e niente id autoincrementale
+ * - archivedSpent / archivedCount --> la parte del totale che viene da ordini spostati nell'archivio (non più nella
+ * tabella orders), la riconciliazione la somma a quello che ricalcola dagli ordini ancora presenti
+ */
+
+// @Entity mi serve per indicare che questa classe è entity a JPA e quindi di mapparlo nella tabella
+@Entity
+// @Table serve per indicare il nome della tabella nel db associato, se non lo metto prende quello della classe
+@Table(name = "user_spending")
+public class UserSpending {
+
+    // Definisco la chiave primaria, è l'id dell'utente quindi non viene generata
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private Double totalSpent;
+
+    @Column(nullable = false)
+    private Long orderCount;
+
+    private LocalDateTime lastOrderDate;
+
+    // columnDefinition con default --> ddl-auto=update può aggiungere la colonna anche sulle righe già esistenti
+    @Column(nullable = false, columnDefinition = "double precision default 0")
+    private Double archivedSpent = 0.0;
+
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long archivedCount = 0L;
+
+    // Questo costruttore vuoto perchè JPA lo usa per istanziare l'oggetto e recuperare i dati
+    public UserSpending() {}
+
+    // Getter e setter servono a JPA per accedere ai campi privati in questa classe
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Double getTotalSpent() {
+        return totalSpent;
+    }
+
+    public void setTotalSpent(Double totalSpent) {
+        this.totalSpent = totalSpent;
+    }
+
+    public Long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(Long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public LocalDateTime getLastOrderDate() {
+        return lastOrderDate;
+    }
+
+    public void setLastOrderDate(LocalDateTime lastOrderDate) {
+        this.lastOrderDate = lastOrderDate;
+    }
+
+    public Double getArchivedSpent() {
+        return archivedSpent;
+    }
+
+    public void setArchivedSpent(Double archivedSpent) {
+        this.archivedSpent = archivedSpent;
+    }
+
+    public Long getArchivedCount() {
+        return archivedCount;
+    }
+
+    public void setArchivedCount(Long archivedCount) {
+        this.archivedCount = archivedCount;
+    }
+}
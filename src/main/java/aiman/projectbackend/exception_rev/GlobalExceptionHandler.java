@@ -1,6 +1,7 @@
 package aiman.projectbackend.exception_rev;
 
 import aiman.projectbackend.exception_rev.exception_dto_rev.ErrorResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -132,6 +133,39 @@ public class GlobalExceptionHandler {
         );
     }
 
+    // UnauthorizedException --> Credenziali o token non validi (login, refresh) --> 401
+
+    // Qui gestisco gli errori di autenticazione lanciati dai controller, prima finivano nel 500 del RuntimeException
+    @ExceptionHandler(UnauthorizedException.class)
+    public ResponseEntity<ErrorResponse> handleUnauthorizedException(UnauthorizedException ex, WebRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                // Codice 401 del non autenticato
+                HttpStatus.UNAUTHORIZED.value(),
+                "Unauthorized",
+                ex.getMessage(),
+                request.getDescription(false).replace("uri=", "")
+        );
+        return new ResponseEntity<>(error, HttpStatus.UNAUTHORIZED);
+    }
+
+    // ServiceUnavailableException --> Servizio momentaneamente sovraccarico (ad esempio troppi login insieme) --> 503
+
+    // Qui gestisco il rifiuto veloce quando il lavoro pesante (hash delle password) ha già la coda piena
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleServiceUnavailableException(ServiceUnavailableException ex, WebRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                // Codice 503 del servizio non disponibile
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getDescription(false).replace("uri=", "")
+        );
+        // Retry-After --> dico al client dopo quanti secondi riprovare
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(error);
+    }
+
     // AccessDeniedException --> Errore di non accesso per autorizzazione per esempio --> 403
 
     // Qui ho gestito gli errori del 403 forbidden --> ad esempio token non valido o ruolo insufficiente
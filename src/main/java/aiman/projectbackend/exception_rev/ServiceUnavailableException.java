@@ -0,0 +1,21 @@
+package aiman.projectbackend.exception_rev;
+
+// Mi serve per gestire il ritorno dell'eccezioni nel GlbalExceptioHandler
+
+// Qui gestisco l'eccezione di servizio momentaneamente sovraccarico (503), il client può riprovare più tardi
+public class ServiceUnavailableException extends RuntimeException {
+
+    // Dopo quanti secondi ha senso riprovare (finisce nell'header Retry-After)
+    private final int retryAfterSeconds;
+
+    // Costruttore che prende il messaggio e i secondi di attesa consigliati
+    public ServiceUnavailableException(String message, int retryAfterSeconds) {
+        //  Passa il msg al padre RuntimeException e restituisce il log
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
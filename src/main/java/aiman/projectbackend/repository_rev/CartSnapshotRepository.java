@@ -0,0 +1,41 @@
+package aiman.projectbackend.repository_rev;
+
+import aiman.projectbackend.entity_rev.CartSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+// Specifico l'annotazione Repository per completezza, ma non è necessario
+// perchè spring lo capisce quando lo estendi JpaRepository
+@Repository
+public interface CartSnapshotRepository extends JpaRepository<CartSnapshot, Long> {
+
+    /**
+     * Tipo di query? Nativa (upsert)
+     * Utilità? Salvo la copia del carrello con una sola istruzione (save di JPA farebbe prima una SELECT per capire
+     * se la riga esiste, visto che l'id non è generato)
+     * @Transactional --> il carrello viene salvato fuori da altre transazioni, quindi ne apro una qui
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO cart_snapshots (user_id, payload, updated_at) VALUES (:userId, :payload, :updatedAt) " +
+            "ON CONFLICT (user_id) DO UPDATE SET payload = EXCLUDED.payload, updated_at = EXCLUDED.updated_at",
+            nativeQuery = true)
+    void upsert(@Param("userId") Long userId,
+                @Param("payload") String payload,
+                @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Cancello le copie dei carrelli abbandonati (non modificati da prima della data indicata)
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM CartSnapshot c WHERE c.updatedAt < :before")
+    int deleteUpdatedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,44 @@
+package aiman.projectbackend.repository_rev;
+
+import aiman.projectbackend.entity_rev.JwtSigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Specifico l'annotazione Repository per completezza, ma non è necessario
+// perchè spring lo capisce quando lo estendi JpaRepository
+@Repository
+public interface JwtSigningKeyRepository extends JpaRepository<JwtSigningKey, String> {
+
+    /**
+     * Tipo di query? JPQL
+     * Utilità? Chiavi ancora valide per la verifica (attive o non ancora scadute), dalla più recente
+     */
+    @Query("SELECT k FROM JwtSigningKey k WHERE k.expiresAt IS NULL OR k.expiresAt > :now ORDER BY k.createdAt DESC")
+    List<JwtSigningKey> findUsable(@Param("now") LocalDateTime now);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Rotazione: tutte le chiavi attive tranne la nuova diventano solo di verifica fino alla data indicata
+     * @Transactional --> la rotazione avviene fuori da altre transazioni, quindi ne apro una qui
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE JwtSigningKey k SET k.expiresAt = :expiresAt WHERE k.expiresAt IS NULL AND k.kid <> :newKid")
+    int retireAllExcept(@Param("newKid") String newKid, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Cancello le chiavi scadute (nessun token firmato con loro è ancora valido)
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM JwtSigningKey k WHERE k.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,34 @@
+package aiman.projectbackend.repository_rev;
+
+import aiman.projectbackend.entity_rev.OrderOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+// Specifico l'annotazione Repository per completezza, ma non è necessario
+// perchè spring lo capisce quando lo estendi JpaRepository
+@Repository
+public interface OrderOutboxRepository extends JpaRepository<OrderOutboxEvent, Long> {
+
+    /**
+     * Tipo di query? JPQL
+     * Utilità? L'id dell'ultimo evento scritto, lo uso come "segnalibro" quando ricostruisco dati derivati dal db
+     * (gli eventi fino a questo id sono già compresi nello stato del db)
+     */
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM OrderOutboxEvent e")
+    Long findMaxId();
+
+    /**
+     * Tipo di query? Derivata
+     * Utilità? Quanti eventi devono ancora essere consegnati (quelli scartati non verranno più consegnati)
+     * Interpretazione di Spring? SELECT COUNT(*) FROM order_outbox WHERE dispatched_at IS NULL AND failed_at IS NULL
+     */
+    long countByDispatchedAtIsNullAndFailedAtIsNull();
+
+    /**
+     * Tipo di query? Derivata
+     * Utilità? Quanti eventi sono stati scartati (dead letter)
+     * Interpretazione di Spring? SELECT COUNT(*) FROM order_outbox WHERE failed_at IS NOT NULL
+     */
+    long countByFailedAtIsNotNull();
+}
@@ -1,12 +1,19 @@
 package aiman.projectbackend.repository_rev;
 
 import aiman.projectbackend.entity_rev.Order;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /** BREVE TEORIA DELLA REPOSITORY
  * DEF: la repository fa da interfaccia tra le mie classi java e  il mio database
@@ -46,8 +53,17 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      * Tipo di query? Derivate
      * Utilità? Cerco gli ordini con uno stato specifico
      * Interpretazione di Spring?  SELECT * FROM orders WHERE status = YYY
+     * Osservazione: status è un enum salvato come stringa e la colonna ha l'indice idx_orders_status, quindi niente scansione completa
      */
-    List<Order> findByStatus(String status);
+    List<Order> findByStatus(OrderStatus status);
+
+    /**
+     * Tipo di query? Derivate con lock
+     * Utilità? Recupero l'ordine bloccando la riga (SELECT ... FOR UPDATE) per cambiare lo status, così due admin che
+     * cambiano lo stesso ordine nello stesso momento non partono entrambi dallo status vecchio
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Order> findWithLockById(Long id);
 
     // QUI HO LA MIA IMPLEMENTAZIONI DI QUERY JPQL:
 
@@ -74,4 +90,162 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      */
     @Query("SELECT SUM(o.totalAmount) FROM Order o WHERE o.user.id = :userId")
     Double getTotalSpentByUser(@Param("userId") Long userId);
-}
\ No newline at end of file
+
+    /**
+     * Tipo di query? JPQL
+     * Utilità? Conteggio degli ordini per ogni status, la uso solo all'avvio per inizializzare i contatori in memoria
+     */
+    @Query("SELECT o.status, COUNT(o) FROM Order o GROUP BY o.status")
+    List<Object[]> countOrdersGroupedByStatus();
+
+    // QUI HO LA MIA IMPLEMENTAZIONE DI QUERY NATIVA (sql vero e proprio, sulle tabelle e non sulle entità):
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Prima pagina dello storico ordini del cliente (ordini + righe + nome prodotto) in un solo giro verso il db
+     */
+    /** Spiegazione generale
+     * Sotto-query su orders --> prima scelgo la pagina di ordini (ORDER BY order_date e id + LIMIT), così il limite
+     * vale sugli ordini e non sulle righe (con JOIN FETCH + paginazione Hibernate caricherebbe tutto in memoria)
+     * LEFT JOIN order_items e products --> poi attacco le righe di quei soli ordini e il nome del prodotto
+     * List<Object[]> --> ogni riga è un array di colonne, la raggruppo io per ordine nel service
+     * Senza cursore non metto nessuna condizione sulla data: postgres legge l'indice idx_orders_user_date (user_id,
+     * order_date, id) all'indietro e si ferma dopo :limit ordini
+     */
+    @Query(value = "SELECT o.id, o.order_date, o.status, o.total_amount, o.shipping_cost, " +
+            "i.quantity, i.price_at_purchase, p.id, p.name " +
+            "FROM (SELECT * FROM orders " +
+            "      WHERE user_id = :userId " +
+            "      ORDER BY order_date DESC, id DESC " +
+            "      LIMIT :limit) o " +
+            "LEFT JOIN order_items i ON i.order_id = o.id " +
+            "LEFT JOIN products p ON p.id = i.product_id " +
+            "ORDER BY o.order_date DESC, o.id DESC, i.id",
+            nativeQuery = true)
+    List<Object[]> findOrderHistoryFirstRows(@Param("userId") Long userId,
+                                             @Param("limit") int limit);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Pagine successive dello storico ordini del cliente, dopo l'ultimo ordine ricevuto (keyset)
+     */
+    /** Spiegazione generale
+     * Come la prima pagina, in più la condizione del cursore (order_date, id) < (:lastDate, :lastId): il confronto tra
+     * righe è proprio l'ordine dell'indice idx_orders_user_date, quindi postgres parte dal cursore dentro l'indice
+     * invece di filtrare gli ordini uno per uno. Qui il cursore c'è sempre, niente "(:lastDate IS NULL OR ...)"
+     */
+    @Query(value = "SELECT o.id, o.order_date, o.status, o.total_amount, o.shipping_cost, " +
+            "i.quantity, i.price_at_purchase, p.id, p.name " +
+            "FROM (SELECT * FROM orders " +
+            "      WHERE user_id = :userId " +
+            "      AND (order_date, id) < (:lastDate, :lastId) " +
+            "      ORDER BY order_date DESC, id DESC " +
+            "      LIMIT :limit) o " +
+            "LEFT JOIN order_items i ON i.order_id = o.id " +
+            "LEFT JOIN products p ON p.id = i.product_id " +
+            "ORDER BY o.order_date DESC, o.id DESC, i.id",
+            nativeQuery = true)
+    List<Object[]> findOrderHistoryRowsAfter(@Param("userId") Long userId,
+                                             @Param("lastDate") LocalDateTime lastDate,
+                                             @Param("lastId") Long lastId,
+                                             @Param("limit") int limit);
+
+    // QUERY PER LA COSTRUZIONE DELLE STATISTICHE DI VENDITA (lette solo all'avvio o su ricostruzione):
+
+    /**
+     * Tipo di query? JPQL
+     * Utilità? Il minimo e il massimo id degli ordini da una certa data, mi servono per dividere la scansione in blocchi
+     */
+    @Query("SELECT MIN(o.id), MAX(o.id) FROM Order o WHERE o.orderDate >= :since")
+    List<Object[]> findIdRangeSince(@Param("since") LocalDateTime since);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Gli ordini non annullati di un blocco di id con le loro righe e la categoria del prodotto
+     * Colonne: id ordine, data, totale ordine, id prodotto, id categoria, quantità, prezzo d'acquisto
+     */
+    @Query(value = "SELECT o.id, o.order_date, o.total_amount, i.product_id, p.category_id, i.quantity, i.price_at_purchase " +
+            "FROM orders o " +
+            "LEFT JOIN order_items i ON i.order_id = o.id " +
+            "LEFT JOIN products p ON p.id = i.product_id " +
+            "WHERE o.id BETWEEN :fromId AND :toId " +
+            "AND o.order_date >= :since " +
+            "AND (o.status IS NULL OR o.status <> 'CANCELLED') " +
+            "ORDER BY o.id",
+            nativeQuery = true)
+    List<Object[]> findSalesRowsInRange(@Param("fromId") Long fromId,
+                                        @Param("toId") Long toId,
+                                        @Param("since") LocalDateTime since);
+
+    // QUERY PER L'ARCHIVIAZIONE DEGLI ORDINI VECCHI (lavoro pianificato, fuori dal percorso delle richieste):
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Il prossimo blocco di id di ordini più vecchi della data indicata, in ordine di id, dopo l'ultimo id del
+     * blocco precedente (gli ordini saltati perchè cambiati durante l'archiviazione restano per il giro successivo)
+     */
+    @Query(value = "SELECT id FROM orders WHERE order_date < :cutoff AND id > :afterId ORDER BY id LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findIdsToArchive(@Param("cutoff") LocalDateTime cutoff, @Param("afterId") long afterId,
+                                @Param("limit") int limit);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Gli ordini indicati con le righe e il nome del prodotto, nello stesso formato dello storico ordini
+     * Colonne: id ordine, id utente, data, status, totale, spedizione, quantità, prezzo d'acquisto, id prodotto, nome prodotto
+     */
+    @Query(value = "SELECT o.id, o.user_id, o.order_date, o.status, o.total_amount, o.shipping_cost, " +
+            "i.quantity, i.price_at_purchase, p.id, p.name " +
+            "FROM orders o " +
+            "LEFT JOIN order_items i ON i.order_id = o.id " +
+            "LEFT JOIN products p ON p.id = i.product_id " +
+            "WHERE o.id IN (:ids) " +
+            "ORDER BY o.id, i.id",
+            nativeQuery = true)
+    List<Object[]> findArchiveRows(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Tipo di query? Nativa con lock
+     * Utilità? Come findArchiveRows, ma blocca gli ordini (FOR UPDATE OF o) fino alla fine della transazione di
+     * cancellazione: un cambio di status concorrente aspetta, e quello che leggo qui è quello che cancello
+     * OF o --> blocco solo le righe di orders (FOR UPDATE non si può fare sul lato nullable di una LEFT JOIN)
+     */
+    @Query(value = "SELECT o.id, o.user_id, o.order_date, o.status, o.total_amount, o.shipping_cost, " +
+            "i.quantity, i.price_at_purchase, p.id, p.name " +
+            "FROM orders o " +
+            "LEFT JOIN order_items i ON i.order_id = o.id " +
+            "LEFT JOIN products p ON p.id = i.product_id " +
+            "WHERE o.id IN (:ids) " +
+            "ORDER BY o.id, i.id " +
+            "FOR UPDATE OF o",
+            nativeQuery = true)
+    List<Object[]> findArchiveRowsForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Tipo di query? Nativa di modifica
+     * Utilità? Cancello le righe degli ordini archiviati (prima le righe, poi gli ordini per la foreign key)
+     */
+    @Modifying
+    @Query(value = "DELETE FROM order_items WHERE order_id IN (:ids)", nativeQuery = true)
+    int deleteItemsByOrderIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM orders WHERE id IN (:ids)", nativeQuery = true)
+    int deleteOrdersByIds(@Param("ids") Collection<Long> ids);
+
+    // QUERY PER LA CANCELLAZIONE MASSIVA DEGLI UTENTI:
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Il prossimo blocco di id di ordini degli utenti indicati (usa l'indice idx_orders_user_date)
+     */
+    @Query(value = "SELECT id FROM orders WHERE user_id IN (:userIds) ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findIdsByUserIds(@Param("userIds") Collection<Long> userIds, @Param("limit") int limit);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Quanti degli ordini indicati ci sono per status (per aggiornare i contatori in memoria dopo la cancellazione)
+     */
+    @Query(value = "SELECT status, COUNT(*) FROM orders WHERE id IN (:ids) GROUP BY status", nativeQuery = true)
+    List<Object[]> countByStatusForIds(@Param("ids") Collection<Long> ids);
+}
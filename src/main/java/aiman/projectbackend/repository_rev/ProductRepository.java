@@ -2,8 +2,11 @@ package aiman.projectbackend.repository_rev;
 
 import aiman.projectbackend.entity_rev.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /** BREVE TEORIA DELLA REPOSITORY
@@ -64,6 +67,16 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * Interpretazione di Spring? SELECT * FROM products WHERE stock_quantity > quantity
      */
     List<Product> findByStockQuantityGreaterThan(Integer quantity);
+
+    // QUI HO LA MIA IMPLEMENTAZIONE DI QUERY JPQL:
+
+    /**
+     * Tipo di query? JPQL con JOIN FETCH
+     * Utilità? Carico in una sola query più prodotti insieme alla loro categoria (invio massivo degli ordini), senza
+     * JOIN FETCH la categoria verrebbe caricata con una query in più per ogni categoria diversa
+     */
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.id IN :ids")
+    List<Product> findAllWithCategoryByIdIn(@Param("ids") Collection<Long> ids);
 }
 
 /**
@@ -0,0 +1,52 @@
+package aiman.projectbackend.repository_rev;
+
+import aiman.projectbackend.entity_rev.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// Specifico l'annotazione Repository per completezza, ma non è necessario
+// perchè spring lo capisce quando lo estendi JpaRepository
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    /**
+     * Tipo di query? Derivata
+     * Utilità? Cerco il refresh token dal suo hash (indice unico su token_hash)
+     */
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Segno il token come usato solo se non lo era già: con due refresh concorrenti dello stesso token solo
+     * uno aggiorna la riga (1), l'altro riceve 0 e viene trattato come riuso
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.usedAt = :now WHERE r.id = :id AND r.usedAt IS NULL AND r.revokedAt IS NULL")
+    int markUsed(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Revoco tutti i token ancora validi nati dallo stesso login (logout o riuso di un token già usato)
+     * @Transactional --> può essere chiamata fuori da altre transazioni, quindi ne apro una qui
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefreshToken r SET r.revokedAt = :now WHERE r.familyId = :familyId AND r.revokedAt IS NULL")
+    int revokeFamily(@Param("familyId") String familyId, @Param("now") LocalDateTime now);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Cancello i token scaduti (non servono più neanche per riconoscere un riuso)
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RefreshToken r WHERE r.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,54 @@
+package aiman.projectbackend.repository_rev;
+
+import aiman.projectbackend.entity_rev.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Specifico l'annotazione Repository per completezza, ma non è necessario
+// perchè spring lo capisce quando lo estendi JpaRepository
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Tipo di query? Nativa (insert che ignora i doppioni)
+     * Utilità? Salvo la revoca con una sola istruzione, revocare due volte lo stesso token non è un errore
+     * revoked_at prende l'ora del db (non quella dell'istanza), così tutte le istanze confrontano la stessa ora
+     * @Transactional --> la revoca avviene fuori da altre transazioni, quindi ne apro una qui
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO revoked_tokens (jti, expires_at, revoked_at) VALUES (:jti, :expiresAt, LOCALTIMESTAMP) " +
+            "ON CONFLICT (jti) DO NOTHING",
+            nativeQuery = true)
+    int insertIgnore(@Param("jti") String jti, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Tipo di query? JPQL con proiezione
+     * Utilità? jti, scadenza e ora della revoca dei token revocati non ancora scaduti, per ricostruire la lista in memoria
+     */
+    @Query("SELECT r.jti, r.expiresAt, r.revokedAt FROM RevokedToken r WHERE r.expiresAt > :now")
+    List<Object[]> findActive(@Param("now") LocalDateTime now);
+
+    /**
+     * Tipo di query? JPQL con proiezione (usa l'indice su revoked_at)
+     * Utilità? Solo le revoche fatte dopo "since" (anche dalle altre istanze), per aggiornare la lista ogni pochi secondi
+     */
+    @Query("SELECT r.jti, r.expiresAt, r.revokedAt FROM RevokedToken r WHERE r.revokedAt > :since AND r.expiresAt > :now")
+    List<Object[]> findRevokedSince(@Param("since") LocalDateTime since, @Param("now") LocalDateTime now);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Cancello le revoche di token già scaduti
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") LocalDateTime before);
+}
@@ -1,8 +1,17 @@
 package aiman.projectbackend.repository_rev;
 
+import aiman.projectbackend.entity_rev.Role;
 import aiman.projectbackend.entity_rev.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /** BREVE TEORIA DELLA REPOSITORY
@@ -36,4 +45,74 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * (String email) --> indico il valore che sto cercando che verrà tradotto nella query sql come WHERE
      */
     Optional<User> findByEmail(String email);
-}
\ No newline at end of file
+
+    /**
+     * Tipo di query? Derivata
+     * Utilità? Conferma esatta che email / username sono già registrati (solo quando il filtro delle registrazioni dice
+     * "forse sì")
+     * Interpretazione di Spring?  SELECT ... FROM users WHERE email = XXX LIMIT 1
+     */
+    boolean existsByEmail(String email);
+
+    boolean existsByUsername(String username);
+
+    // QUI HO LA MIA IMPLEMENTAZIONE DI QUERY JPQL:
+
+    /**
+     * Tipo di query? JPQL con JOIN FETCH
+     * Utilità? Carico in una sola query più utenti insieme al loro indirizzo (invio massivo degli ordini)
+     */
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.address WHERE u.id IN :ids")
+    List<User> findAllWithAddressByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Tipo di query? JPQL di modifica
+     * Utilità? Aggiorno solo l'hash della password (ricalcolo al login), senza caricare e risalvare tutto l'utente
+     * @Transactional --> il login non è dentro una transazione, quindi ne apro una qui
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
+
+    // QUERY PER LA CANCELLAZIONE MASSIVA (a blocchi, senza caricare le entità; girano dentro la transazione del blocco):
+
+    /**
+     * Tipo di query? JPQL
+     * Utilità? Il prossimo blocco di id di utenti da cancellare, in ordine di id, con i filtri facoltativi (null = tutti)
+     * Quanti? lo decide il Pageable (solo il LIMIT, la pagina è sempre la prima)
+     */
+    @Query("SELECT u.id FROM User u " +
+            "WHERE (:role IS NULL OR u.role = :role) " +
+            "AND (:registeredBefore IS NULL OR u.registrationDate < :registeredBefore) " +
+            "AND u.id > :afterId " +
+            "ORDER BY u.id")
+    List<Long> findIdsToDelete(@Param("role") Role role,
+                               @Param("registeredBefore") LocalDateTime registeredBefore,
+                               @Param("afterId") Long afterId,
+                               Pageable pageable);
+
+    /**
+     * Tipo di query? Nativa di modifica
+     * Utilità? Cancello i dati collegati agli utenti indicati e poi gli utenti (prima le tabelle con la foreign key)
+     */
+    @Modifying
+    @Query(value = "DELETE FROM addresses WHERE user_id IN (:ids)", nativeQuery = true)
+    int deleteAddressesByUserIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_spending WHERE user_id IN (:ids)", nativeQuery = true)
+    int deleteSpendingByUserIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM cart_snapshots WHERE user_id IN (:ids)", nativeQuery = true)
+    int deleteCartsByUserIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM refresh_tokens WHERE user_id IN (:ids)", nativeQuery = true)
+    int deleteRefreshTokensByUserIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM users WHERE id IN (:ids)", nativeQuery = true)
+    int deleteUsersByIds(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,141 @@
+package aiman.projectbackend.repository_rev;
+
+import aiman.projectbackend.entity_rev.UserSpending;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Specifico l'annotazione Repository per completezza, ma non è necessario
+// perchè spring lo capisce quando lo estendi JpaRepository
+@Repository
+public interface UserSpendingRepository extends JpaRepository<UserSpending, Long> {
+
+    // QUI HO LA MIA IMPLEMENTAZIONE DI QUERY NATIVA (sql vero e proprio, sulle tabelle e non sulle entità):
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Aggiungo uno o più ordini alla spesa dell'utente, restituisco quante righe ho aggiornato
+     */
+    /** Spiegazione generale
+     * UPDATE ... WHERE user_id --> aggiorno solo una riga già esistente: il db la blocca fino al commit, quindi due ordini
+     * concorrenti dello stesso utente non perdono importi
+     * Se la riga non esiste ancora (primo ordine, o utente con ordini precedenti alla tabella non ancora riconciliato)
+     * restituisco 0 e il service la crea con recomputeRow, che somma tutti gli ordini dell'utente: creare la riga con il
+     * solo importo di questo ordine perderebbe gli ordini già presenti
+     * GREATEST --> la data dell'ultimo ordine non torna mai indietro
+     * @Modifying --> dico a Spring che la query modifica i dati e non restituisce righe
+     */
+    @Modifying
+    @Query(value = "UPDATE user_spending SET " +
+            "total_spent = total_spent + :amount, " +
+            "order_count = order_count + :count, " +
+            "last_order_date = GREATEST(last_order_date, CAST(:orderDate AS timestamp)) " +
+            "WHERE user_id = :userId",
+            nativeQuery = true)
+    int addOrders(@Param("userId") Long userId,
+                  @Param("amount") double amount,
+                  @Param("count") long count,
+                  @Param("orderDate") LocalDateTime orderDate);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Tolgo un ordine annullato dalla spesa dell'utente (la data dell'ultimo ordine resta quella dell'ultimo effettuato)
+     * Come addOrders restituisce 0 se la riga non esiste, in quel caso il service la crea con recomputeRow
+     */
+    @Modifying
+    @Query(value = "UPDATE user_spending SET total_spent = total_spent - :amount, order_count = order_count - 1 " +
+            "WHERE user_id = :userId",
+            nativeQuery = true)
+    int removeOrder(@Param("userId") Long userId, @Param("amount") double amount);
+
+    /**
+     * Tipo di query? Nativa (upsert)
+     * Utilità? Alcuni ordini dell'utente sono stati spostati nell'archivio (e già cancellati da orders): il totale non
+     * cambia, ma segno quanto di quel totale ora vive nell'archivio. Se la riga non esiste la creo con gli ordini rimasti
+     * in orders più quelli appena archiviati (lavoro pianificato, la somma sugli ordini dell'utente qui non pesa)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_spending (user_id, total_spent, order_count, last_order_date, archived_spent, archived_count) " +
+            "SELECT :userId, " +
+            "COALESCE(SUM(total_amount) FILTER (WHERE status IS NULL OR status <> 'CANCELLED'), 0) + :amount, " +
+            "COUNT(*) FILTER (WHERE status IS NULL OR status <> 'CANCELLED') + :count, " +
+            "MAX(order_date), :amount, :count " +
+            "FROM orders WHERE user_id = :userId " +
+            "ON CONFLICT (user_id) DO UPDATE SET " +
+            "archived_spent = user_spending.archived_spent + EXCLUDED.archived_spent, " +
+            "archived_count = user_spending.archived_count + EXCLUDED.archived_count",
+            nativeQuery = true)
+    void addArchived(@Param("userId") Long userId, @Param("amount") double amount, @Param("count") long count);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Spesa dell'utente calcolata dagli ordini (gli annullati non contano), la uso solo quando l'utente non ha
+     * ancora la riga aggregata
+     */
+    @Query(value = "SELECT COALESCE(SUM(total_amount), 0) FROM orders " +
+            "WHERE user_id = :userId AND (status IS NULL OR status <> 'CANCELLED')",
+            nativeQuery = true)
+    Double computeTotalSpent(@Param("userId") Long userId);
+
+    // QUERY PER LA RICONCILIAZIONE (ricalcolo degli aggregati a blocchi di id utente):
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Il minimo e il massimo id utente, mi servono per dividere il ricalcolo in blocchi
+     */
+    @Query(value = "SELECT MIN(id), MAX(id) FROM users", nativeQuery = true)
+    List<Object[]> findUserIdRange();
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Ricalcolo dagli ordini i valori attesi degli utenti con id nel blocco [fromId, toId]
+     * FILTER (WHERE ...) --> sommo e conto solo gli ordini non annullati, ma la data dell'ultimo ordine li considera tutti
+     */
+    @Query(value = "SELECT user_id, " +
+            "COALESCE(SUM(total_amount) FILTER (WHERE status IS NULL OR status <> 'CANCELLED'), 0), " +
+            "COUNT(*) FILTER (WHERE status IS NULL OR status <> 'CANCELLED'), " +
+            "MAX(order_date) " +
+            "FROM orders WHERE user_id BETWEEN :fromId AND :toId GROUP BY user_id",
+            nativeQuery = true)
+    List<Object[]> computeExpectedInRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    /**
+     * Tipo di query? Derivata
+     * Utilità? Le righe aggregate già salvate per gli utenti del blocco
+     */
+    List<UserSpending> findByUserIdBetween(Long fromId, Long toId);
+
+    /**
+     * Tipo di query? Nativa
+     * Utilità? Blocco la riga aggregata dell'utente prima di correggerla, così un ordine in corso per lo stesso utente
+     * aspetta la correzione (o la correzione aspetta il suo commit) e il suo importo non viene perso
+     */
+    @Query(value = "SELECT user_id FROM user_spending WHERE user_id = :userId FOR UPDATE", nativeQuery = true)
+    List<Long> lockRow(@Param("userId") Long userId);
+
+    /**
+     * Tipo di query? Nativa (upsert)
+     * Utilità? Riscrivo la riga aggregata dell'utente con i valori ricalcolati dagli ordini (più la parte archiviata,
+     * che non posso ricalcolare dal db); se tutti gli ordini sono archiviati tengo la data dell'ultimo ordine salvata
+     * flushAutomatically --> prima scrivo sul db le modifiche in sospeso (es: l'ordine appena salvato o annullato), così
+     * la somma le comprende
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO user_spending (user_id, total_spent, order_count, last_order_date) " +
+            "SELECT :userId, " +
+            "COALESCE(SUM(total_amount) FILTER (WHERE status IS NULL OR status <> 'CANCELLED'), 0), " +
+            "COUNT(*) FILTER (WHERE status IS NULL OR status <> 'CANCELLED'), " +
+            "MAX(order_date) " +
+            "FROM orders WHERE user_id = :userId " +
+            "ON CONFLICT (user_id) DO UPDATE SET " +
+            "total_spent = EXCLUDED.total_spent + user_spending.archived_spent, " +
+            "order_count = EXCLUDED.order_count + user_spending.archived_count, " +
+            "last_order_date = COALESCE(EXCLUDED.last_order_date, user_spending.last_order_date)",
+            nativeQuery = true)
+    void recomputeRow(@Param("userId") Long userId);
+}
@@ -0,0 +1,210 @@
+package aiman.projectbackend.security_rev;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Qui limito le richieste agli endpoint pubblici /auth/** (login e registrazioni), prima di qualsiasi hash o accesso al db
+ *
+ * Perchè? Questi endpoint non richiedono il token e ognuno costa un hash della password: un attacco con liste di
+ * credenziali potrebbe occupare tutta la cpu
+ * 1) Un token bucket per indirizzo ip (auth.rate-limit.ip.*): limita chi prova tante email diverse
+ * 2) Un token bucket per email (auth.rate-limit.email.*): limita chi prova tante password sulla stessa email, anche da ip diversi
+ * 3) L'ip viene controllato prima di leggere il corpo, quindi un ip bloccato non costa neanche il parsing del JSON
+ * 4) Richiesta bloccata --> 429 Too Many Requests con l'header Retry-After
+ * 5) Dietro un load balancer l'ip è quello del client (X-Forwarded-For dei soli proxy fidati), non quello del proxy:
+ * altrimenti tutti i client dividerebbero lo stesso secchio
+ * 6) Corpo più grande di MAX_BODY_BYTES --> 413 Payload Too Large. Login e registrazioni sono piccoli: un corpo gonfiato
+ * (es. un campo lungo prima dell'email) non deve poter saltare il limite per email
+ *
+ * Il corpo letto per trovare l'email viene rimesso a disposizione del controller (CachedBodyRequest)
+ */
+@Component
+public class AuthRateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthRateLimitFilter.class);
+
+    // I corpi di login e registrazione sono piccoli, oltre questa dimensione la richiesta viene rifiutata
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+
+    private final TokenBucketLimiter ipLimiter;
+    private final TokenBucketLimiter emailLimiter;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    // Costruttore che inietta il mapper JSON e i parametri dei limiti (con valori di default)
+    public AuthRateLimitFilter(ObjectMapper objectMapper,
+                               @Value("${auth.rate-limit.enabled:true}") boolean enabled,
+                               @Value("${auth.rate-limit.ip.capacity:20}") int ipCapacity,
+                               @Value("${auth.rate-limit.ip.per-minute:20}") int ipPerMinute,
+                               @Value("${auth.rate-limit.email.capacity:5}") int emailCapacity,
+                               @Value("${auth.rate-limit.email.per-minute:5}") int emailPerMinute) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.ipLimiter = new TokenBucketLimiter(ipCapacity, ipPerMinute);
+        this.emailLimiter = new TokenBucketLimiter(emailCapacity, emailPerMinute);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        long now = System.nanoTime();
+
+        // 1) Limite per ip, senza leggere il corpo
+        // Dietro un proxy fidato getRemoteAddr è già l'ip del client preso da X-Forwarded-For (server.forward-headers-strategy),
+        // un X-Forwarded-For mandato direttamente dal client invece viene ignorato
+        // Ip ed email hanno limiter separati, quindi la chiave è il valore stesso (nessuna stringa creata)
+        long wait = ipLimiter.tryConsume(request.getRemoteAddr(), now);
+        if (wait > 0) {
+            reject(response, wait);
+            return;
+        }
+
+        // 2) Limite per email, solo per le richieste con un corpo JSON
+        HttpServletRequest forwarded = request;
+        if ("POST".equalsIgnoreCase(request.getMethod())) {
+            // Content-Length dichiarato troppo grande --> rifiuto senza leggere niente
+            if (request.getContentLengthLong() > MAX_BODY_BYTES) {
+                rejectTooLarge(response);
+                return;
+            }
+            byte[] body = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+            // Corpo senza Content-Length (chunked) più lungo del limite
+            if (body.length > MAX_BODY_BYTES) {
+                rejectTooLarge(response);
+                return;
+            }
+            forwarded = new CachedBodyRequest(request, body);
+            String email = readEmail(body);
+            if (email != null) {
+                wait = emailLimiter.tryConsume(email, now);
+                if (wait > 0) {
+                    reject(response, wait);
+                    return;
+                }
+            }
+        }
+
+        filterChain.doFilter(forwarded, response);
+    }
+
+    // Il filtro vale solo per gli endpoint di autenticazione
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+        return !enabled || !request.getServletPath().startsWith("/auth/");
+    }
+
+    // Pulizia periodica dei secchi inattivi (tornati pieni), così la memoria non cresce con le chiavi viste una volta sola
+    @Scheduled(fixedDelayString = "${auth.rate-limit.cleanup-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        int removed = ipLimiter.evictIdle(now) + emailLimiter.evictIdle(now);
+        if (removed > 0) {
+            log.debug("Rate limit auth: rimossi {} secchi inattivi, restano {} ip e {} email",
+                    removed, ipLimiter.size(), emailLimiter.size());
+        }
+    }
+
+    private void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        // Arrotondo per eccesso ai secondi interi
+        long seconds = Math.max(1, (TimeUnit.NANOSECONDS.toMillis(waitNanos) + 999) / 1000);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Troppi tentativi, riprova tra " + seconds + " secondi");
+    }
+
+    private void rejectTooLarge(HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                "Corpo della richiesta troppo grande (massimo " + MAX_BODY_BYTES + " byte)");
+    }
+
+    // Email del corpo JSON in minuscolo, null se il corpo non è JSON o non ha il campo email
+    private String readEmail(byte[] body) {
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            JsonNode email = objectMapper.readTree(body).get("email");
+            if (email == null || !email.isTextual() || email.asText().isBlank()) {
+                return null;
+            }
+            return email.asText().trim().toLowerCase(Locale.ROOT);
+        } catch (IOException e) {
+            // Corpo non valido: ci penserà il controller a rispondere 400
+            return null;
+        }
+    }
+
+    // Richiesta con il corpo (al massimo MAX_BODY_BYTES) già letto in memoria, che il controller può rileggere
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            InputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                private boolean finished;
+
+                @Override
+                public boolean isFinished() {
+                    return finished;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    finished = b < 0;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    finished = n < 0;
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.Role;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Qui ho l'utente autenticato della richiesta, costruito dai dati del token (id, username, ruolo e versione)
+ *
+ * Prima il filtro caricava dal db l'entità User completa (con l'indirizzo) ad ogni richiesta solo per creare
+ * l'Authentication, ora basta il token. Le regole @PreAuthorize continuano a usare authentication.principal.id
+ */
+public class AuthenticatedUser {
+
+    private final Long id;
+    private final String username;
+    private final Role role;
+    private final long tokenVersion;
+    // Le autorizzazioni non cambiano, le calcolo una volta sola
+    private final List<GrantedAuthority> authorities;
+
+    public AuthenticatedUser(Long id, String username, Role role, long tokenVersion) {
+        this.id = id;
+        this.username = username;
+        this.role = role;
+        this.tokenVersion = tokenVersion;
+        // Stessa regola di User.getAuthorities: ROLE_ + ruolo, nessuna autorizzazione se il ruolo manca
+        this.authorities = role != null ? List.of(new SimpleGrantedAuthority("ROLE_" + role.name())) : List.of();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public long getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    // Spring usa il toString del principal come nome dell'utente autenticato (es: nei log)
+    @Override
+    public String toString() {
+        return username;
+    }
+}
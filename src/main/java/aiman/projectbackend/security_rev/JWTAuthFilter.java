@@ -1,8 +1,7 @@
 package aiman.projectbackend.security_rev;
 
-import aiman.projectbackend.entity_rev.User;
 import aiman.projectbackend.exception_rev.UnauthorizedException;
-import aiman.projectbackend.service_rev.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -23,13 +22,20 @@ import java.io.IOException;
 // Estende OncePerRequestFilter per assicurarci che viene fatto una volta per richiesta http per ridurre duplici chiamate
 public class JWTAuthFilter extends OncePerRequestFilter {
 
+    // Un solo matcher per tutte le richieste (non ha stato, non serve crearlo ogni volta)
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
     //Inietto jwttools --> mmi serve per generare e verificare il token
     @Autowired
     private JWTTools jwtTools;
 
-    // Inietto  userservice per recuperare i dati dell'utente
+    // Inietto la cache degli utenti autenticati, per non leggere il db ad ogni richiesta
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
+    // Inietto la lista in memoria dei token revocati
     @Autowired
-    private UserService userService;
+    private TokenRevocationList tokenRevocationList;
 
     // Questo fa un filtro alle richieste http prima del controller
     @Override
@@ -47,19 +53,29 @@ public class JWTAuthFilter extends OncePerRequestFilter {
             // Se header c'è ed è nel formatto giusto estraggo il token togliendo bearer
             String accessToken = authorizationHeader.substring(7);
 
-            // Verifico la validità del token
-            jwtTools.verifyToken(accessToken);
+            // Verifico la validità del token e ne leggo i dati in un solo passaggio
+            Claims claims = jwtTools.verify(accessToken);
+
+            // Token revocato prima della scadenza (logout)? Controllo in memoria, senza query
+            if (claims.getId() == null || tokenRevocationList.isRevoked(claims.getId()))
+                throw new UnauthorizedException("Token revocato rifai il login");
+
+            // Leggo id e versione dal token
+            AuthenticatedUser fromToken = jwtTools.toPrincipal(claims);
 
-            // Estraggo id nel token
-            Long userId = jwtTools.getIdFromToken(accessToken);
+            // Recupero l'utente dalla cache in memoria, senza query: prima controlla con UserTokenVersions che l'utente
+            // esista ancora e che la versione dei token sia quella attuale
+            AuthenticatedUser principal = userPrincipalCache.get(fromToken);
 
-            // Cerco con questo id l'utente nel db
-            User found = userService.findById(userId);
+            // Utente cancellato, disabilitato o versione dei token cambiata dopo l'emissione (es: cambio ruolo) --> il
+            // token non vale più
+            if (principal == null)
+                throw new UnauthorizedException("Token revocato o utente non più valido rifai il login");
 
             // Creo l'oggetto autenticazione e lo passo a spring security
             // I parametri sono X, Y e Z
-            // X = l'utente trovato | Y = null perchè non password in chiaro poi l'ho verificato l'utente | Z = prendo i ruoli dell'utente
-            Authentication authentication = new UsernamePasswordAuthenticationToken(found, null, found.getAuthorities());
+            // X = l'utente della cache (ruolo aggiornato) | Y = null perchè non password in chiaro poi l'ho verificato il token | Z = i ruoli dell'utente
+            Authentication authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
 
             // Dico a spring che per la durate della richieste l'untente autenticato è questo
             SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -83,8 +99,10 @@ public class JWTAuthFilter extends OncePerRequestFilter {
     protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
         // Non filtro quando ho l'autenticazione oppure se ho un errore nel sistema non voglio
         // che mi blocchi il msg di errore da visualizzare
-        return new AntPathMatcher().match("/auth/**", request.getServletPath()) ||
-                new AntPathMatcher().match("/error/**", request.getServletPath());
+        // Le letture pubbliche del catalogo hanno la loro catena senza questo filtro (vedi PublicEndpoints)
+        return PublicEndpoints.matches(request) ||
+                PATH_MATCHER.match("/auth/**", request.getServletPath()) ||
+                PATH_MATCHER.match("/error/**", request.getServletPath());
     }
 
 
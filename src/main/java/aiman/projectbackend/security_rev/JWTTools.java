@@ -1,72 +1,180 @@
 package aiman.projectbackend.security_rev;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.RequiredTypeException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import aiman.projectbackend.entity_rev.Role;
 import aiman.projectbackend.entity_rev.User;
 import aiman.projectbackend.exception_rev.UnauthorizedException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // @Component --> annotazione che serve a Sprin per dire di gestire come bean questa classe e quindi chiunque ha bisogno
 // di usare @Autowirde per iniettaserlo
 @Component
 public class JWTTools {
 
-    // Riporto la chiave segreta per la generazione dei miei token, è variabile ambiente e non nel applicaiton properties
-    // perchè è segreta
-    @Value("${jwt.secret}")
-    private String secret;
+    // Nomi dei dati aggiuntivi nel token
+    private static final String USERNAME_CLAIM = "username";
+    private static final String ROLE_CLAIM = "role";
+    private static final String VERSION_CLAIM = "ver";
+
+    // Chiavi asimmetriche con cui firmo e verifico i token (ES256 con kid e rotazione, vedi JwtKeyStore)
+    @Autowired
+    private JwtKeyStore keyStore;
+
+    // Quanti token già verificati tengo in memoria al massimo
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    // Durata degli access token: brevi, per i rinnovi c'è il refresh token (POST /auth/refresh)
+    @Value("${jwt.access-ttl-minutes:15}")
+    private long accessTtlMinutes;
+
+    // Il parser viene costruito una sola volta all'avvio (è immutabile e si può usare da più thread): per ogni token
+    // sceglie la chiave pubblica dal kid dell'header
+    private JwtParser parser;
+
+    // Token verificati di recente: hash del token --> claims. ConcurrentHashMap --> le richieste leggono e scrivono senza
+    // un lock comune. Tengo l'hash e non il token, così in memoria non restano token validi
+    // Limite: quando la mappa è piena tolgo i token scaduti (sweep), se è ancora piena il nuovo token non viene messo in
+    // memoria (viene solo verificato). Gli access token durano jwt.access-ttl-minutes, quindi la mappa si svuota da sola
+    private ConcurrentHashMap<String, Claims> verified;
+    private int maxSize;
+    // Un solo thread alla volta fa lo sweep, gli altri non aspettano; al massimo uno sweep al secondo, così con la mappa
+    // piena di token validi non scorro tutta la mappa ad ogni token nuovo
+    private static final long SWEEP_INTERVAL_MS = 1000;
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private volatile long lastSweep;
+
+    @PostConstruct
+    public void init() {
+        parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        // Kid sconosciuto o chiave scaduta --> null, il parser rifiuta il token
+                        return keyStore.verificationKey(header.getKeyId());
+                    }
+                })
+                .build();
+        maxSize = Math.max(0, cacheMaxSize);
+        verified = new ConcurrentHashMap<>();
+    }
 
     // Creo i token per coloro che hanno fatto il login
     public String createToken(User user) {
         return Jwts.builder()
+                // Nell'header indico il kid della chiave di firma, così chi verifica sa quale chiave pubblica usare
+                .header().keyId(keyStore.signingKid()).and()
                 // Indico la data emissione del token
                 .issuedAt(new Date(System.currentTimeMillis()))
-                // Data di scadenza del token, ad esempio 7 gg
-                .expiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 24 * 7))
+                // Data di scadenza del token, breve (jwt.access-ttl-minutes): per restare collegati si usa il refresh token
+                .expiration(new Date(System.currentTimeMillis() + accessTtlMinutes * 60 * 1000))
+                // Identificativo unico del token (jti), serve per revocarlo prima della scadenza (logout)
+                .id(UUID.randomUUID().toString())
                 // Inseriamo id utente proprietario del token
                 .subject(String.valueOf(user.getId()))
-                // Qui avviene la firma del token, combina l'agoritmo con il nostro segreto, una modifica dei campi
-                // precedenti portano a una variazione signficiative del hash
-                .signWith(Keys.hmacShaKeyFor(secret.getBytes()))
+                // Username, ruolo e versione dei token: il filtro confronta la versione con quella in memoria (UserTokenVersions)
+                .claim(USERNAME_CLAIM, user.getUsername())
+                .claim(ROLE_CLAIM, user.getRole() != null ? user.getRole().name() : null)
+                .claim(VERSION_CLAIM, user.getTokenVersion() != null ? user.getTokenVersion() : 0L)
+                // Qui avviene la firma del token con la chiave privata attiva (ES256), una modifica dei campi
+                // precedenti rende la firma non valida
+                .signWith(keyStore.signingKey(), Jwts.SIG.ES256)
                 // Compatta tutto in una stringa url
                 .compact();
     }
 
-    // Qui verifico la validità del token
-    public void verifyToken(String token) {
+    // Qui verifico il token e ne leggo i dati in un solo passaggio (firma, scadenza e claims), prima il filtro
+    // verificava il token e poi lo rileggeva da capo per estrarre l'id
+    public Claims verify(String token) {
+        String hash = hash(token);
+        Claims cached = verified.get(hash);
+        // Token già verificato e non ancora scaduto --> niente firma da ricalcolare e niente JSON da leggere
+        if (cached != null && cached.getExpiration().getTime() > System.currentTimeMillis()) {
+            return cached;
+        }
+        if (cached != null) {
+            // Era in memoria ma è scaduto, lo tolgo (solo se nel frattempo nessuno l'ha sostituito)
+            verified.remove(hash, cached);
+        }
+        Claims claims;
+        try {
+            // Prova a leggere il token, se la firma non corrisponde o è scaduto lancia una specifica eccezione
+            claims = parser.parseSignedClaims(token).getPayload();
+        } catch (JwtException | IllegalArgumentException ex) {
+            throw new UnauthorizedException("Token non valido rifai il login");
+        }
+        // Metto in memoria solo i token con una scadenza, così l'hit controlla sempre la scadenza
+        if (claims.getExpiration() != null) {
+            if (verified.size() >= maxSize) {
+                sweepExpired();
+            }
+            if (verified.size() < maxSize) {
+                verified.put(hash, claims);
+            }
+        }
+        return claims;
+    }
+
+    // Tolgo dalla memoria i token scaduti (un solo thread alla volta, gli altri proseguono senza aspettare)
+    private void sweepExpired() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < SWEEP_INTERVAL_MS || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            // uso jwts.parser per la lettura del token
-            Jwts.parser()
-                    // configuro il parse con la chiave segreta usata nella firma, se la forma del token non
-                    // corrisponde a quella calcolata col segreto mi dai errore
-                    .verifyWith(Keys.hmacShaKeyFor(secret.getBytes()))
-                    // Costruisce l'stanza del parser configurata
-                    .build()
-                    // Prova a leggere il token se è scaduto per esempio lancio una specifica eccezione
-                    .parse(token);
-        } catch (Exception ex) {
+            lastSweep = now;
+            verified.values().removeIf(claims -> claims.getExpiration().getTime() <= now);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    // Costruisco l'utente autenticato dai dati del token, serve per capire chi fa la richiesta
+    public AuthenticatedUser toPrincipal(Claims claims) {
+        try {
+            // Lo riconverto visto che JWT tratta i subject come stringa e non numeri
+            Long id = Long.parseLong(claims.getSubject());
+            String role = claims.get(ROLE_CLAIM, String.class);
+            Number version = claims.get(VERSION_CLAIM, Number.class);
+            // I token emessi prima dell'aggiunta di ruolo e versione non hanno questi dati --> nuovo login
+            if (version == null) {
+                throw new UnauthorizedException("Token non valido rifai il login");
+            }
+            return new AuthenticatedUser(id, claims.get(USERNAME_CLAIM, String.class),
+                    role != null ? Role.valueOf(role) : null, version.longValue());
+        } catch (IllegalArgumentException | RequiredTypeException ex) {
+            // NumberFormatException (subject) e ruolo sconosciuto sono entrambe IllegalArgumentException
             throw new UnauthorizedException("Token non valido rifai il login");
         }
     }
 
-    // Estrago id dell'utente dal token, serve per capire chi fa la richiesta
-    public Long getIdFromToken(String token) {
-        // Configurazione del lettore
-        String id = Jwts.parser()
-                // Verifica se il token è firmato con il mio segreto
-                .verifyWith(Keys.hmacShaKeyFor(secret.getBytes()))
-                // Costruisce l'stanza del parse configurata
-                .build()
-                // LEgge il token se è scaduto lancia eccezione
-                .parseSignedClaims(token)
-                // Accesso ai dati, quindi recuperiamo il corpo del json contenuto nel token
-                .getPayload()
-                // Estraco il subject che sarebbe il proprietario del token
-                .getSubject();
-        // Lo riconverto visto che JWT tratta i subject come stringa e non numeri
-        return Long.parseLong(id);
+    // Hash SHA-256 del token, usato come chiave della cache
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 è sempre presente nella JVM
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
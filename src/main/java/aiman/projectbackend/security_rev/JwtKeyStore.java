@@ -0,0 +1,306 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.JwtSigningKey;
+import aiman.projectbackend.repository_rev.JwtSigningKeyRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Qui gestisco le chiavi asimmetriche (ES256) con cui firmo e verifico i token JWT
+ *
+ * Funzionamento:
+ * 1) Le chiavi sono nella tabella jwt_signing_keys: ogni istanza dell'applicazione le legge da lì e tiene in memoria le
+ * chiavi pubbliche per kid, quindi verifica i token in locale senza coordinarsi con le altre
+ * 2) Firmo con la chiave attiva più recente e metto il suo kid nell'header del token
+ * 3) Rotazione: quando la chiave attiva è più vecchia di jwt.keys.rotation-hours ne creo una nuova; la vecchia resta
+ * solo per la verifica finché i token firmati con lei non sono scaduti, quindi nessuno viene disconnesso
+ * 4) Ogni jwt.keys.check-interval-ms rileggo le chiavi dal db (così vedo anche quelle create da un'altra istanza) e
+ * controllo se è il momento di ruotare
+ * 5) Le chiavi pubbliche sono esposte in formato JWKS (GET /.well-known/jwks.json) per chi deve verificare i nostri token
+ * 6) Una sola istanza alla volta ruota: la rotazione prende un advisory lock di postgres nella sua transazione e
+ * ricontrolla la chiave attiva con il lock preso. Senza, due istanze che ruotano insieme salverebbero ognuna la sua
+ * chiave e ritirerebbero quella dell'altra, lasciando nessuna chiave attiva
+ * 7) Un token con kid sconosciuto viene rifiutato subito: la rilettura del db parte in background (al massimo ogni
+ * 5 secondi), la richiesta non aspetta il db e non prende nessun lock
+ */
+@Component
+public class JwtKeyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyStore.class);
+
+    private static final String ALGORITHM = "ES256";
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // Tempo minimo tra due riletture del db per un kid sconosciuto
+    private static final long UNKNOWN_KID_RELOAD_MILLIS = 5000;
+    // Chiave dell'advisory lock della rotazione, uguale per tutte le istanze ("JWKEYROT")
+    private static final long ROTATION_LOCK_KEY = 0x4a574b4559524f54L;
+
+    // Chiave di firma attuale + tutte le chiavi pubbliche valide per kid, sostituite insieme ad ogni rilettura
+    private record KeySet(String signingKid, PrivateKey signingKey, LocalDateTime signingCreatedAt,
+                          Map<String, PublicKey> publicKeys) {}
+
+    private final JwtSigningKeyRepository keyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecretKeySpec encryptionKey;
+    private final Duration rotationInterval;
+    private final Duration verificationGrace;
+
+    private volatile KeySet keys = new KeySet(null, null, null, Map.of());
+    private volatile long lastReloadMillis;
+    // Vero mentre una rilettura chiesta da un kid sconosciuto è in corso (al massimo una alla volta)
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+
+    // Costruttore che inietta la repository, JDBC e il template delle transazioni (per il lock della rotazione) e i
+    // parametri delle chiavi (con valori di default)
+    // jwt.secret non firma più i token: serve solo a cifrare le chiavi private salvate nel db
+    public JwtKeyStore(JwtSigningKeyRepository keyRepository,
+                       JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${jwt.secret}") String secret,
+                       @Value("${jwt.keys.rotation-hours:24}") long rotationHours,
+                       @Value("${jwt.access-ttl-minutes:15}") long accessTtlMinutes) {
+        this.keyRepository = keyRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.encryptionKey = new SecretKeySpec(sha256(secret.getBytes(StandardCharsets.UTF_8)), "AES");
+        this.rotationInterval = Duration.ofHours(Math.max(1, rotationHours));
+        // Una chiave ritirata deve verificare ancora i token che ha firmato fino alla loro scadenza (+ 5 minuti di margine)
+        this.verificationGrace = Duration.ofMinutes(Math.max(1, accessTtlMinutes) + 5);
+    }
+
+    // All'avvio carico le chiavi, se non ce n'è nessuna attiva ne creo una
+    @PostConstruct
+    public void init() {
+        reload();
+        if (keys.signingKey() == null) {
+            rotateIfDue();
+        }
+    }
+
+    // Controllo periodico: rileggo le chiavi e ruoto quella attiva se è troppo vecchia
+    @Scheduled(fixedDelayString = "${jwt.keys.check-interval-ms:60000}",
+            initialDelayString = "${jwt.keys.check-interval-ms:60000}")
+    public void refresh() {
+        reload();
+        KeySet current = keys;
+        if (current.signingKey() == null || isDue(current.signingCreatedAt(), LocalDateTime.now())) {
+            rotateIfDue();
+        }
+        keyRepository.deleteExpiredBefore(LocalDateTime.now());
+    }
+
+    // Metodo 1 - kid della chiave con cui firmare
+    public String signingKid() {
+        return keys.signingKid();
+    }
+
+    // Metodo 2 - chiave privata con cui firmare
+    public PrivateKey signingKey() {
+        return keys.signingKey();
+    }
+
+    // Metodo 3 - chiave pubblica per verificare un token con questo kid (null se sconosciuto o scaduto)
+    public PublicKey verificationKey(String kid) {
+        if (kid == null) {
+            return null;
+        }
+        PublicKey key = keys.publicKeys().get(kid);
+        // Kid sconosciuto: forse è una chiave appena creata da un'altra istanza, la cerco nel db in background e intanto
+        // il token viene rifiutato (le richieste dopo la rilettura trovano la chiave)
+        if (key == null) {
+            requestReload();
+        }
+        return key;
+    }
+
+    // Metodo 4 - chiavi pubbliche valide in formato JWKS (RFC 7517)
+    public Map<String, Object> jwks() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        keys.publicKeys().forEach((kid, key) -> {
+            ECPublicKey ec = (ECPublicKey) key;
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("use", "sig");
+            jwk.put("alg", ALGORITHM);
+            jwk.put("kid", kid);
+            jwk.put("x", base64Url(ec.getW().getAffineX()));
+            jwk.put("y", base64Url(ec.getW().getAffineY()));
+            list.add(jwk);
+        });
+        return Map.of("keys", list);
+    }
+
+    private synchronized void reload() {
+        lastReloadMillis = System.currentTimeMillis();
+        List<JwtSigningKey> rows = keyRepository.findUsable(LocalDateTime.now());
+        Map<String, PublicKey> publicKeys = new HashMap<>();
+        for (JwtSigningKey row : rows) {
+            publicKeys.put(row.getKid(), decodePublic(row.getPublicKey()));
+        }
+        JwtSigningKey newestActive = newestActive(rows);
+        KeySet current = keys;
+        PrivateKey signingKey = null;
+        if (newestActive != null) {
+            // Decifro la chiave privata solo se è cambiata
+            signingKey = newestActive.getKid().equals(current.signingKid())
+                    ? current.signingKey()
+                    : decodePrivate(decrypt(newestActive.getPrivateKey()));
+        }
+        keys = new KeySet(newestActive != null ? newestActive.getKid() : null, signingKey,
+                newestActive != null ? newestActive.getCreatedAt() : null, Map.copyOf(publicKeys));
+    }
+
+    // Rilettura in background chiesta da un kid sconosciuto, al massimo una alla volta e non più di una ogni 5 secondi
+    // (così token con kid inventati non generano una query ciascuno)
+    private void requestReload() {
+        if (System.currentTimeMillis() - lastReloadMillis <= UNKNOWN_KID_RELOAD_MILLIS
+                || !reloadRequested.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("jwt-key-reload").start(() -> {
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                log.warn("Rilettura delle chiavi JWT fallita", e);
+            } finally {
+                reloadRequested.set(false);
+            }
+        });
+    }
+
+    // Creo una nuova coppia di chiavi, la salvo come attiva e ritiro le precedenti, se nessun'altra istanza l'ha appena fatto
+    private void rotateIfDue() {
+        String kid = transactionTemplate.execute(status -> {
+            // Lock fino alla fine della transazione: un'altra istanza che ruota insieme aspetta qui il mio commit
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + ROTATION_LOCK_KEY + ")");
+            // Ricontrollo con il lock preso: se un'altra istanza ha appena ruotato uso la sua chiave
+            LocalDateTime now = LocalDateTime.now();
+            JwtSigningKey active = newestActive(keyRepository.findUsable(now));
+            if (active != null && !isDue(active.getCreatedAt(), now)) {
+                return null;
+            }
+            KeyPair pair = generate();
+            String newKid = UUID.randomUUID().toString();
+            keyRepository.save(new JwtSigningKey(newKid, ALGORITHM,
+                    Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()),
+                    encrypt(pair.getPrivate().getEncoded()), now));
+            int retired = keyRepository.retireAllExcept(newKid, now.plus(verificationGrace));
+            log.info("Nuova chiave di firma JWT {} (chiavi precedenti ritirate: {})", newKid, retired);
+            return newKid;
+        });
+        reload();
+        if (kid == null) {
+            log.info("Chiave di firma JWT già ruotata da un'altra istanza, uso {}", keys.signingKid());
+        }
+    }
+
+    private boolean isDue(LocalDateTime createdAt, LocalDateTime now) {
+        return createdAt.plus(rotationInterval).isBefore(now);
+    }
+
+    // Le righe arrivano dalla più recente: la prima attiva è quella con cui firmare
+    private static JwtSigningKey newestActive(List<JwtSigningKey> rows) {
+        for (JwtSigningKey row : rows) {
+            if (row.getExpiresAt() == null) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private static KeyPair generate() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("impossibile generare la chiave ES256", e);
+        }
+    }
+
+    private static PublicKey decodePublic(String encoded) {
+        try {
+            return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(encoded)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("chiave pubblica JWT non valida", e);
+        }
+    }
+
+    private static PrivateKey decodePrivate(byte[] encoded) {
+        try {
+            return KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("chiave privata JWT non valida", e);
+        }
+    }
+
+    // AES-GCM: Base64(iv + testo cifrato), un iv casuale diverso per ogni chiave
+    private String encrypt(byte[] plain) {
+        try {
+            byte[] iv = new byte[GCM_IV_BYTES];
+            new SecureRandom().nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(plain);
+            byte[] out = Arrays.copyOf(iv, iv.length + encrypted.length);
+            System.arraycopy(encrypted, 0, out, iv.length, encrypted.length);
+            return Base64.getEncoder().encodeToString(out);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("impossibile cifrare la chiave privata JWT", e);
+        }
+    }
+
+    private byte[] decrypt(String encoded) {
+        try {
+            byte[] in = Base64.getDecoder().decode(encoded);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, in, 0, GCM_IV_BYTES));
+            return cipher.doFinal(in, GCM_IV_BYTES, in.length - GCM_IV_BYTES);
+        } catch (GeneralSecurityException e) {
+            // Di solito jwt.secret è cambiato dopo che la chiave è stata salvata
+            throw new IllegalStateException("impossibile decifrare la chiave privata JWT (jwt.secret è cambiato?)", e);
+        }
+    }
+
+    private static byte[] sha256(byte[] value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 è sempre presente nella JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Coordinata della curva in 32 byte senza segno, codificata Base64 url senza padding
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] fixed = new byte[32];
+        int copy = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - copy, fixed, 32 - copy, copy);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+}
@@ -0,0 +1,99 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.exception_rev.ServiceUnavailableException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Qui calcolo e verifico gli hash delle password su un pool di thread dedicato, invece che direttamente sui thread
+ * delle richieste http
+ *
+ * Perchè? Un hash bcrypt costa decine di millisecondi di cpu: con tanti login insieme tutti i thread di tomcat
+ * finirebbero a fare hash e anche gli endpoint leggeri (catalogo, ordini) resterebbero in attesa
+ * 1) Il pool ha al massimo auth.hashing.threads thread (di default quanti sono i core), quindi gli hash non possono
+ * occupare più cpu di così
+ * 2) La coda è limitata (auth.hashing.queue-size): se è piena rispondo subito 503 con Retry-After, invece di accumulare
+ * richieste che scadrebbero comunque
+ * 3) Se un hash non finisce entro auth.hashing.timeout-ms rispondo 503, il thread della richiesta non resta bloccato
+ */
+@Component
+public class PasswordHasher {
+
+    // Secondi consigliati al client prima di riprovare
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    // Costruttore che inietta l'encoder (configurato in BeansConfig) e i parametri del pool (con valori di default)
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          @Value("${auth.hashing.threads:0}") int threads,
+                          @Value("${auth.hashing.queue-size:64}") int queueSize,
+                          @Value("${auth.hashing.timeout-ms:5000}") long timeoutMs) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeoutMs = Math.max(1, timeoutMs);
+        // 0 --> un thread per core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        // AbortPolicy --> con la coda piena execute lancia RejectedExecutionException, che trasformo in 503
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Metodo 1 - hash di una nuova password (registrazione o ricalcolo dopo il login)
+    public String encode(String rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    // Metodo 2 - verifico la password inserita con l'hash salvato
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // Metodo 3 - l'hash salvato usa un algoritmo o un costo diverso da quello configurato? (nessun calcolo, solo lettura del prefisso)
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException("Troppe richieste di autenticazione in corso, riprova tra poco", RETRY_AFTER_SECONDS);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ServiceUnavailableException("Autenticazione troppo lenta, riprova tra poco", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("calcolo dell'hash interrotto", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("errore nel calcolo dell'hash", e.getCause());
+        }
+    }
+
+    // Alla chiusura dell'applicazione fermo il pool
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,32 @@
+package aiman.projectbackend.security_rev;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+/**
+ * Qui elenco gli endpoint pubblici in sola lettura (catalogo e chiavi pubbliche JWKS), che non richiedono il token
+ *
+ * La tabella dei matcher viene costruita una sola volta all'avvio della classe: per ogni richiesta si confrontano solo
+ * metodo e percorso, nessun matcher creato per la richiesta. La usa la catena di sicurezza pubblica in SecurityConfig, che per queste
+ * richieste non legge il token, non lancia eccezioni e non crea il contesto di sicurezza
+ */
+public final class PublicEndpoints {
+
+    // GET del catalogo: prodotti (lista, ricerca, filtri, disponibili) e categorie, più le chiavi pubbliche per verificare i token
+    public static final RequestMatcher PUBLIC_READS = new OrRequestMatcher(
+            // "/**" comprende anche /api/products
+            AntPathRequestMatcher.antMatcher(HttpMethod.GET, "/api/products/**"),
+            AntPathRequestMatcher.antMatcher(HttpMethod.GET, "/api/categories"),
+            AntPathRequestMatcher.antMatcher(HttpMethod.GET, "/.well-known/jwks.json")
+    );
+
+    private PublicEndpoints() {}
+
+    // La richiesta è una lettura pubblica?
+    public static boolean matches(HttpServletRequest request) {
+        return PUBLIC_READS.matches(request);
+    }
+}
@@ -0,0 +1,94 @@
+package aiman.projectbackend.security_rev;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per chiave (ip o email), senza lock
+ *
+ * Funzionamento:
+ * 1) Ogni chiave ha un secchio con al massimo "capacity" gettoni, che si riempie di "refillPerMinute" gettoni al minuto
+ * 2) Il secchio non viene riempito da un timer: per ogni chiave salvo un solo numero (l'istante in cui il secchio
+ * tornerà pieno) e i gettoni disponibili li calcolo al momento della richiesta (riempimento "pigro")
+ * 3) Consumare un gettone è un compareAndSet su quel numero, quindi niente lock e niente oggetti creati per le chiavi
+ * già presenti
+ * 4) Le chiavi sono divise in più mappe (shard) scelte dall'hash della chiave, così la pulizia periodica ne scorre una
+ * alla volta e le mappe restano piccole anche con centinaia di migliaia di chiavi
+ * 5) Un secchio tornato pieno è identico a un secchio nuovo, quindi la pulizia lo toglie senza perdere informazioni
+ */
+public class TokenBucketLimiter {
+
+    private static final int SHARDS = 16;
+
+    // Nanosecondi necessari per un gettone e tolleranza (capacità - 1 gettoni già "anticipati")
+    private final long nanosPerToken;
+    private final long burstNanos;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<String, AtomicLong>[] shards = new ConcurrentHashMap[SHARDS];
+
+    public TokenBucketLimiter(int capacity, int refillPerMinute) {
+        this.nanosPerToken = 60_000_000_000L / Math.max(1, refillPerMinute);
+        this.burstNanos = (long) (Math.max(1, capacity) - 1) * nanosPerToken;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Provo a consumare un gettone per la chiave
+     * @return 0 se la richiesta è permessa, altrimenti i nanosecondi da attendere prima del prossimo gettone
+     */
+    public long tryConsume(String key, long nowNanos) {
+        ConcurrentHashMap<String, AtomicLong> shard = shard(key);
+        // get e poi putIfAbsent solo per le chiavi nuove: niente lambda che cattura nowNanos (un oggetto per chiamata)
+        AtomicLong fullAt = shard.get(key);
+        if (fullAt == null) {
+            AtomicLong created = new AtomicLong(nowNanos);
+            AtomicLong existing = shard.putIfAbsent(key, created);
+            fullAt = existing != null ? existing : created;
+        }
+        while (true) {
+            long current = fullAt.get();
+            // Secchio pieno da prima di adesso --> riparto da adesso
+            long base = current - nowNanos < 0 ? nowNanos : current;
+            long next = base + nanosPerToken;
+            long wait = next - nowNanos - burstNanos - nanosPerToken;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Tolgo i secchi tornati pieni (chiavi inattive)
+    public int evictIdle(long nowNanos) {
+        int removed = 0;
+        for (ConcurrentHashMap<String, AtomicLong> shard : shards) {
+            Iterator<AtomicLong> it = shard.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().get() - nowNanos <= 0) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, AtomicLong> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private ConcurrentHashMap<String, AtomicLong> shard(String key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+}
@@ -0,0 +1,187 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.repository_rev.RefreshTokenRepository;
+import aiman.projectbackend.repository_rev.RevokedTokenRepository;
+import aiman.projectbackend.util_rev.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Qui tengo in memoria gli access token revocati (jti), così il filtro JWT controlla la revoca senza query
+ *
+ * Funzionamento:
+ * 1) Filtro di Bloom (BloomFilter): ogni jti revocato accende 7 bit. Se anche uno solo dei bit di un jti è spento il
+ * token sicuramente non è revocato, ed è il caso di quasi tutte le richieste
+ * 2) Insieme esatto: se tutti i bit sono accesi (token revocato o raro falso positivo) controllo la mappa dei jti
+ * revocati, quindi un token valido non viene mai rifiutato per errore
+ * 3) All'avvio e poi periodicamente (auth.revocation.rebuild-interval-ms) ricostruisco filtro e mappa dal db, così
+ * le revoche scadute escono dalla memoria e le righe scadute vengono cancellate
+ * 4) La revoca scrive prima nel db e poi in memoria
+ * 5) Ogni pochi secondi (auth.revocation.poll-interval-ms) leggo solo le revoche nuove (revoked_at dopo l'ultima vista),
+ * così con più istanze dell'applicazione un logout fatto su un'altra istanza vale anche qui entro pochi secondi, molto
+ * prima che l'access token scada da solo
+ *
+ * Perchè rileggo anche gli ultimi POLL_OVERLAP secondi? revoked_at è l'ora di inizio della transazione, una revoca può
+ * diventare visibile (commit) dopo una revoca più recente già letta. Rileggerla non costa nulla, aggiungere è idempotente
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    // Finestra riletta ad ogni controllo delle revoche nuove
+    private static final Duration POLL_OVERLAP = Duration.ofSeconds(30);
+    private static final LocalDateTime NEVER = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Filtro di Bloom + jti esatti con la scadenza (millisecondi), sostituiti insieme ad ogni ricostruzione
+    private record Snapshot(BloomFilter filter, Map<String, Long> exact) {}
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final int expectedEntries;
+
+    private volatile Snapshot snapshot;
+
+    // revoked_at più recente già in memoria (ora del db), null se non ne ho ancora viste
+    private volatile LocalDateTime lastRevokedAt;
+
+    // Le revoche (lettura) possono avvenire insieme, la sostituzione dello snapshot (scrittura) no: così nessuna revoca
+    // fatta durante la ricostruzione va persa
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Costruttore che inietta le repository e la dimensione prevista del filtro (con valore di default)
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository,
+                               RefreshTokenRepository refreshTokenRepository,
+                               @Value("${auth.revocation.expected-entries:100000}") int expectedEntries) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.expectedEntries = Math.max(1024, expectedEntries);
+        this.snapshot = newSnapshot(this.expectedEntries);
+    }
+
+    // All'avvio carico le revoche dal db
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild();
+    }
+
+    // Ricostruzione periodica: tolgo dalla memoria e dal db le revoche e i refresh token scaduti
+    @Scheduled(fixedDelayString = "${auth.revocation.rebuild-interval-ms:3600000}",
+            initialDelayString = "${auth.revocation.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        LocalDateTime now = LocalDateTime.now();
+        int deletedRevocations = revokedTokenRepository.deleteExpiredBefore(now);
+        int deletedRefresh = refreshTokenRepository.deleteExpiredBefore(now);
+
+        List<Object[]> rows = revokedTokenRepository.findActive(now);
+        // Il filtro è dimensionato per il doppio delle revoche attuali, così resta preciso anche se crescono
+        Snapshot rebuilt = newSnapshot(Math.max(expectedEntries, rows.size() * 2));
+        for (Object[] row : rows) {
+            add(rebuilt, (String) row[0], toMillis((LocalDateTime) row[1]));
+            advanceLastRevokedAt((LocalDateTime) row[2]);
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Le revoche in memoria non ancora scadute restano (anche quelle arrivate mentre leggevo il db)
+            long nowMillis = System.currentTimeMillis();
+            snapshot.exact().forEach((jti, expiresAt) -> {
+                if (expiresAt > nowMillis && !rebuilt.exact().containsKey(jti)) {
+                    add(rebuilt, jti, expiresAt);
+                }
+            });
+            snapshot = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Lista token revocati ricostruita: {} revoche attive, cancellate {} revoche e {} refresh token scaduti",
+                rebuilt.exact().size(), deletedRevocations, deletedRefresh);
+    }
+
+    // Lettura delle sole revoche nuove, fatte da questa o da altre istanze dopo l'ultima vista
+    @Scheduled(fixedDelayString = "${auth.revocation.poll-interval-ms:5000}",
+            initialDelayString = "${auth.revocation.poll-interval-ms:5000}")
+    public void pollNewRevocations() {
+        LocalDateTime last = lastRevokedAt;
+        // Nessuna revoca vista finora --> leggo tutte quelle con revoked_at (sono poche, altrimenti ne avrei viste)
+        LocalDateTime since = last != null ? last.minus(POLL_OVERLAP) : NEVER;
+        List<Object[]> rows = revokedTokenRepository.findRevokedSince(since, LocalDateTime.now());
+        if (rows.isEmpty()) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            for (Object[] row : rows) {
+                add(snapshot, (String) row[0], toMillis((LocalDateTime) row[1]));
+                advanceLastRevokedAt((LocalDateTime) row[2]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.debug("Lista token revocati aggiornata con {} revoche recenti", rows.size());
+    }
+
+    // Metodo 1 - revoco l'access token con questo jti fino alla sua scadenza
+    public void revoke(String jti, LocalDateTime expiresAt) {
+        revokedTokenRepository.insertIgnore(jti, expiresAt);
+        lock.readLock().lock();
+        try {
+            add(snapshot, jti, toMillis(expiresAt));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Metodo 2 - il token con questo jti è stato revocato? (nessun lock e nessuna query)
+    public boolean isRevoked(String jti) {
+        Snapshot current = snapshot;
+        UUID id = toUuid(jti);
+        // Almeno un bit spento --> sicuramente non revocato
+        return current.filter().mightContain(id.getMostSignificantBits(), id.getLeastSignificantBits())
+                && current.exact().containsKey(jti);
+    }
+
+    private synchronized void advanceLastRevokedAt(LocalDateTime revokedAt) {
+        if (revokedAt != null && (lastRevokedAt == null || revokedAt.isAfter(lastRevokedAt))) {
+            lastRevokedAt = revokedAt;
+        }
+    }
+
+    private static void add(Snapshot target, String jti, long expiresAtMillis) {
+        target.exact().put(jti, expiresAtMillis);
+        UUID id = toUuid(jti);
+        target.filter().add(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static Snapshot newSnapshot(int entries) {
+        return new Snapshot(new BloomFilter(entries), new ConcurrentHashMap<>());
+    }
+
+    // I jti sono UUID casuali: le due metà sono già due hash indipendenti, niente da calcolare
+    // (un jti che non è un UUID viene rimescolato dal suo hashCode)
+    private static UUID toUuid(String jti) {
+        try {
+            return UUID.fromString(jti);
+        } catch (IllegalArgumentException e) {
+            return new UUID(BloomFilter.mix(jti.hashCode()), BloomFilter.mix(jti.hashCode() * 31L + jti.length()));
+        }
+    }
+}
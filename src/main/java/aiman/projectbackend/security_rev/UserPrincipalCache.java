@@ -0,0 +1,121 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.dto_rev.PrincipalCacheStatsDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Qui tengo in memoria gli utenti autenticati (id, username, ruolo, versione dei token e abilitato), così il filtro JWT
+ * non crea un principal nuovo ad ogni richiesta. L'autenticazione non fa nessuna query
+ *
+ * Funzionamento:
+ * 1) Prima di tutto la revoca: UserTokenVersions (in memoria) dice se l'utente esiste ancora e se la versione del token
+ * è quella attuale, altrimenti il token non vale
+ * 2) Cache limitata (auth.principal-cache.max-size): quando è piena esce l'utente usato meno di recente (LRU)
+ * 3) Ogni voce scade dopo auth.principal-cache.ttl-seconds
+ * 4) Al primo accesso (o dopo la scadenza) il principal è quello letto dal token: con la versione attuale ruolo e
+ * username del token sono quelli dell'utente (il ruolo cambia solo insieme alla versione, lo username non cambia)
+ * 5) UserService e UserDeletionService invalidano la voce quando creano, modificano o cancellano l'utente
+ */
+@Component
+public class UserPrincipalCache {
+
+    // Voce della cache: il principal porta la versione dei token con cui è stato creato
+    private record Entry(AuthenticatedUser principal, boolean enabled, long expiresAt) {}
+
+    private final UserTokenVersions userTokenVersions;
+    private final int maxSize;
+    private final long ttlNanos;
+
+    // Mappa LRU protetta da synchronized (accessOrder = true --> get sposta la voce in fondo)
+    private final Map<Long, Entry> entries;
+
+    // Contatore delle invalidazioni: una voce creata prima di un'invalidazione non viene messa in cache
+    // (potrebbe contenere i dati vecchi)
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    // Costruttore che inietta le versioni dei token in memoria e i parametri della cache (con valori di default)
+    public UserPrincipalCache(UserTokenVersions userTokenVersions,
+                              @Value("${auth.principal-cache.max-size:10000}") int maxSize,
+                              @Value("${auth.principal-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userTokenVersions = userTokenVersions;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = Math.max(1, ttlSeconds) * 1_000_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > UserPrincipalCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Metodo 1 - l'utente autenticato del token (null se è stato cancellato, se la versione del token non è più quella
+    // attuale o se non è abilitato)
+    public AuthenticatedUser get(AuthenticatedUser fromToken) {
+        Long userId = fromToken.getId();
+        if (!userTokenVersions.isCurrent(userId, fromToken.getTokenVersion())) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long startGeneration = generation.get();
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null && now - entry.expiresAt() < 0
+                    && entry.principal().getTokenVersion() == fromToken.getTokenVersion()) {
+                hits.increment();
+                return entry.enabled() ? entry.principal() : null;
+            }
+            misses.increment();
+            // Oggi ogni utente è abilitato (User.isEnabled), il flag è pronto per quando verrà aggiunta la disattivazione
+            Entry created = new Entry(fromToken, true, now + ttlNanos);
+            if (generation.get() == startGeneration) {
+                entries.put(userId, created);
+            }
+            return created.principal();
+        }
+    }
+
+    // Metodo 2 - l'utente è stato creato, modificato o cancellato: tolgo la sua voce
+    public void invalidate(Long userId) {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            entries.remove(userId);
+        }
+        invalidations.increment();
+    }
+
+    // Metodo 3 - tutti gli utenti sono stati cancellati: svuoto la cache
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+        }
+        invalidations.increment();
+    }
+
+    // Metodo 4 - statistiche della cache
+    public PrincipalCacheStatsDTO getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long h = hits.sum();
+        long m = misses.sum();
+        double hitRate = h + m == 0 ? 0 : (double) h / (h + m);
+        return new PrincipalCacheStatsDTO(size, maxSize, h, m, hitRate, evictions.sum(), invalidations.sum());
+    }
+}
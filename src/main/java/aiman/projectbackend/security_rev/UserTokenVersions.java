@@ -0,0 +1,175 @@
+package aiman.projectbackend.security_rev;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Qui tengo in memoria quali utenti esistono e la versione attuale dei loro token, così il filtro JWT può rifiutare i
+ * token revocati senza fare query
+ *
+ * Funzionamento:
+ * 1) All'avvio leggo una volta id e versione di tutti gli utenti
+ * 2) Un token vale solo se l'utente esiste ancora e la versione scritta nel token è quella attuale
+ * 3) UserService, UserDeletionService e UserImportService aggiornano questa mappa quando creano un utente, ne cambiano
+ * il ruolo (versione + 1) o lo cancellano
+ * 4) Ogni auth.token-versions.reload-interval-ms rileggo tutto dal db in background (mai sul percorso della richiesta),
+ * così le modifiche fatte da un'altra istanza o direttamente nel db arrivano anche qui entro quel tempo
+ *
+ * Memoria: gli utenti esistenti stanno in un BitSet indicizzato per id (1 bit per id), nella mappa delle versioni metto
+ * solo gli utenti con versione diversa da 0 (cioè quelli a cui è cambiato il ruolo almeno una volta)
+ */
+@Component
+public class UserTokenVersions {
+
+    private static final Logger log = LoggerFactory.getLogger(UserTokenVersions.class);
+
+    // Versione usata per dire "utente cancellato" e id usato per dire "tutti gli utenti" nelle modifiche
+    private static final long REMOVED = -1L;
+    private static final long ALL_USERS = -1L;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // STATO PROTETTO DAL LOCK
+    private BitSet existing = new BitSet();
+    private Map<Long, Long> versions = new HashMap<>();
+    // Modifiche fatte mentre rileggo il db (null se non sto rileggendo): le riapplico sopra i dati letti, che
+    // potrebbero non contenerle
+    private List<long[]> changedWhileReloading;
+    // Finchè non ho letto gli utenti dal db non posso rifiutare nessun token
+    private volatile boolean loaded;
+
+    // Costruttore che inietta il template JDBC (leggo solo due colonne, non serve caricare le entità)
+    public UserTokenVersions(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Metodo 1 - all'avvio (a schema già aggiornato) e poi periodicamente leggo id e versione di tutti gli utenti
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${auth.token-versions.reload-interval-ms:300000}",
+            initialDelayString = "${auth.token-versions.reload-interval-ms:300000}")
+    public synchronized void load() {
+        lock.writeLock().lock();
+        try {
+            changedWhileReloading = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        BitSet ids = new BitSet();
+        Map<Long, Long> changed = new HashMap<>();
+        try {
+            jdbcTemplate.query("SELECT id, token_version FROM users", rs -> {
+                long id = rs.getLong(1);
+                long version = rs.getLong(2);
+                if (id >= 0 && id <= Integer.MAX_VALUE) {
+                    ids.set((int) id);
+                }
+                if (version != 0) {
+                    changed.put(id, version);
+                }
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedWhileReloading = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Le modifiche arrivate durante la lettura restano (sono più recenti di quello che ho letto)
+            for (long[] change : changedWhileReloading) {
+                apply(ids, changed, change[0], change[1]);
+            }
+            changedWhileReloading = null;
+            existing = ids;
+            versions = changed;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Versioni dei token caricate: {} utenti", ids.cardinality());
+    }
+
+    // Metodo 2 - il token dell'utente con questa versione è ancora valido?
+    public boolean isCurrent(Long userId, long tokenVersion) {
+        if (userId == null || userId < 0 || userId > Integer.MAX_VALUE) {
+            return false;
+        }
+        if (!loaded) {
+            // Prime richieste prima della fine dell'avvio: accetto le firme valide (non ho ancora i dati per rifiutarle)
+            return true;
+        }
+        lock.readLock().lock();
+        try {
+            return existing.get(userId.intValue()) && versions.getOrDefault(userId, 0L) == tokenVersion;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Metodo 3 - utente creato o aggiornato con questa versione
+    public void register(Long userId, Long tokenVersion) {
+        change(userId, tokenVersion != null ? tokenVersion : 0L);
+    }
+
+    // Metodo 4 - utente cancellato --> i suoi token non valgono più
+    public void remove(Long userId) {
+        change(userId, REMOVED);
+    }
+
+    // Metodo 5 - tutti gli utenti cancellati
+    public void clear() {
+        change(ALL_USERS, REMOVED);
+    }
+
+    private void change(Long userId, long version) {
+        if (userId == null || (userId < 0 && userId != ALL_USERS) || userId > Integer.MAX_VALUE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            apply(existing, versions, userId, version);
+            if (changedWhileReloading != null) {
+                changedWhileReloading.add(new long[]{userId, version});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void apply(BitSet existing, Map<Long, Long> versions, long userId, long version) {
+        if (userId == ALL_USERS) {
+            existing.clear();
+            versions.clear();
+            return;
+        }
+        if (version == REMOVED) {
+            existing.clear((int) userId);
+            versions.remove(userId);
+            return;
+        }
+        existing.set((int) userId);
+        if (version != 0) {
+            versions.put(userId, version);
+        } else {
+            versions.remove(userId);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package aiman.projectbackend.security_rev.security_config_rev;
 
+import aiman.projectbackend.security_rev.AuthRateLimitFilter;
 import aiman.projectbackend.security_rev.JWTAuthFilter;
+import aiman.projectbackend.security_rev.PublicEndpoints;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -29,12 +33,41 @@ public class SecurityConfig {
     @Autowired
     private JWTAuthFilter jwtAuthFilter;
 
+    // Inietto il filtro che limita i tentativi su login e registrazione
+    @Autowired
+    private AuthRateLimitFilter authRateLimitFilter;
+
+    /**
+     * Catena pubblica per le letture del catalogo e delle chiavi JWKS (vedi PublicEndpoints), controllata per prima (@Order(0))
+     * Qui non c'è il filtro JWT: nessun token letto, nessuna eccezione per il token mancante e nessun utente anonimo o
+     * contesto di sicurezza da creare, la richiesta passa quasi direttamente al controller
+     */
+    @Bean
+    @Order(0)
+    public SecurityFilterChain publicCatalogFilterChain(HttpSecurity httpSecurity) throws Exception {
+        // Questa catena vale solo per le richieste della tabella PublicEndpoints, le altre passano alla catena successiva
+        httpSecurity.securityMatcher(PublicEndpoints.PUBLIC_READS);
+        httpSecurity.formLogin(http -> http.disable());
+        httpSecurity.httpBasic(http -> http.disable());
+        httpSecurity.csrf(http -> http.disable());
+        httpSecurity.logout(http -> http.disable());
+        httpSecurity.requestCache(http -> http.disable());
+        // Nessun utente anonimo e nessun contesto salvato tra le richieste
+        httpSecurity.anonymous(http -> http.disable());
+        httpSecurity.securityContext(http -> http.disable());
+        httpSecurity.sessionManagement(http -> http.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+        httpSecurity.authorizeHttpRequests(http -> http.anyRequest().permitAll());
+        httpSecurity.cors(Customizer.withDefaults());
+        return httpSecurity.build();
+    }
+
     /**
      * Bean è un oggetto gestito dal contenitore di Spring, quando un oggetto diventa bean lo posso usarlo ovunque nel
      * progetto. Quindi non creo manualmente l'ogetto , ma lo inietto quando mi serve
      * @Bean questa annotazione registra l'oggetto nel contesto di spring
      */
     @Bean
+    @Order(1)
     // Qui definisco il mio filter chain, ovvero controlli ad ogni richiesta http prima di arrivare ai miei controller
     public SecurityFilterChain securityFilterChain(HttpSecurity httpSecurity) throws Exception {
 
@@ -48,6 +81,8 @@ public class SecurityConfig {
         httpSecurity.sessionManagement(http -> http.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
         // Qui specifico di aggiungere il mio filtro personalizzato, ovvero fai controllo del token prima (non dopo la ricerca di username e password)
         httpSecurity.addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
+        // Il limite sui tentativi di /auth/** viene prima di tutto, così una richiesta bloccata non arriva all'hash o al db
+        httpSecurity.addFilterBefore(authRateLimitFilter, JWTAuthFilter.class);
         // Qui imposto regole di autorizzazioni
         httpSecurity.authorizeHttpRequests(http -> http
                 //chiunque può accedere ai url per la registrazione e login
@@ -65,6 +100,24 @@ public class SecurityConfig {
         return httpSecurity.build();
     }
 
+    // Il filtro è un @Component, quindi spring boot lo registrerebbe anche come filtro normale del server: lo disattivo
+    // lì, altrimenti ogni richiesta consumerebbe due gettoni (una volta fuori e una dentro la catena di sicurezza)
+    @Bean
+    public FilterRegistrationBean<AuthRateLimitFilter> authRateLimitFilterRegistration(AuthRateLimitFilter filter) {
+        FilterRegistrationBean<AuthRateLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    // Stesso discorso per il filtro JWT: registrato come filtro del server verrebbe eseguito per ogni richiesta prima
+    // delle catene di sicurezza, anche per le letture pubbliche del catalogo. Così gira solo nella catena principale
+    @Bean
+    public FilterRegistrationBean<JWTAuthFilter> jwtAuthFilterRegistration(JWTAuthFilter filter) {
+        FilterRegistrationBean<JWTAuthFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
     /**
      * Bean è un oggetto gestito dal contenitore di Spring, quando un oggetto diventa bean lo posso usarlo ovunque nel
      * progetto. Quindi non creo manualmente l'ogetto , ma lo inietto quando mi serve
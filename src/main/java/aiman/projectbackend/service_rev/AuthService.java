@@ -1,13 +1,20 @@
 package aiman.projectbackend.service_rev;
 
 import aiman.projectbackend.dto_rev.LoginDTO;
+import aiman.projectbackend.dto_rev.LoginRespDTO;
 import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.exception_rev.ServiceUnavailableException;
 import aiman.projectbackend.exception_rev.UnauthorizedException;
 import aiman.projectbackend.security_rev.JWTTools;
+import aiman.projectbackend.security_rev.PasswordHasher;
+import aiman.projectbackend.security_rev.TokenRevocationList;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
 /** BREVE TEORIA DEL SERVICE
  * DEF: Nel service ho la mia logica di business, quindi qui mostro come deve funzionare la mia applicazione back-end
  *
@@ -35,22 +42,72 @@ public class AuthService {
 
     // @Autowired --> inietto le dipendenze
     @Autowired
-    // Mi serve per gestire la crittografia delle password
-    private PasswordEncoder bcrypt;
+    // Mi serve per gestire la crittografia delle password (hash calcolati sul pool dedicato, 503 se è saturo)
+    private PasswordHasher passwordHasher;
+
+    // @Autowired --> inietto le dipendenze
+    @Autowired
+    // Mi serve per emettere, ruotare e revocare i refresh token
+    private RefreshTokenService refreshTokenService;
+
+    // @Autowired --> inietto le dipendenze
+    @Autowired
+    // Mi serve per revocare gli access token al logout
+    private TokenRevocationList tokenRevocationList;
 
-    public String checkCredentialsAndGenerateToken(LoginDTO body) {
+    public LoginRespDTO checkCredentialsAndGenerateToken(LoginDTO body) {
 
         // Verifico le credenziali, guardando nel db se esiste l'email (se no lo trovo il metodo findbyemail lancia eccezione notfound)
         User found = this.usersService.findByEmail(body.email());
 
         // Verifico se la password inserite e uguale alla password cifrata nel db
-        // bcrypt converte in hash la password inserite e fa la comparazione con il db già con hash
-        if (bcrypt.matches(body.password(), found.getPassword())) {
-            // Se okay genero il token
-            return jwtTools.createToken(found);
+        // L'encoder converte in hash la password inserita e fa la comparazione con quella già hashata nel db
+        if (passwordHasher.matches(body.password(), found.getPassword())) {
+            // Hash fatto con un algoritmo o un costo vecchio? Ora che conosco la password in chiaro lo ricalcolo
+            if (passwordHasher.needsRehash(found.getPassword())) {
+                try {
+                    usersService.updatePasswordHash(found.getId(), passwordHasher.encode(body.password()));
+                } catch (ServiceUnavailableException e) {
+                    // Pool pieno: il login va comunque a buon fine, ci riprovo al prossimo login
+                }
+            }
+            // Se okay genero l'access token (breve) e il refresh token (per rinnovarlo)
+            return new LoginRespDTO(jwtTools.createToken(found), refreshTokenService.issue(found.getId()));
         } else {
             // Se non okay genero errore 401 di errore nelel credenziali
             throw new UnauthorizedException("Ce un errore nelle credenziali");
         }
     }
-}
\ No newline at end of file
+
+    // Rinnovo della sessione: consumo il refresh token e restituisco un nuovo access token e un nuovo refresh token
+    public LoginRespDTO refresh(String refreshToken) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+        User user;
+        try {
+            // Rileggo l'utente, così il nuovo access token ha ruolo e versione aggiornati
+            user = usersService.findById(rotation.userId());
+        } catch (RuntimeException e) {
+            // L'utente è stato cancellato dopo il login
+            refreshTokenService.revoke(rotation.refreshToken());
+            throw new UnauthorizedException("Utente non più valido rifai il login");
+        }
+        return new LoginRespDTO(jwtTools.createToken(user), rotation.refreshToken());
+    }
+
+    // Logout: revoco la famiglia del refresh token e, se presente e ancora valido, anche l'access token della richiesta
+    public void logout(String refreshToken, String accessToken) {
+        refreshTokenService.revoke(refreshToken);
+        if (accessToken == null) {
+            return;
+        }
+        try {
+            Claims claims = jwtTools.verify(accessToken);
+            if (claims.getId() != null) {
+                tokenRevocationList.revoke(claims.getId(),
+                        LocalDateTime.ofInstant(claims.getExpiration().toInstant(), ZoneId.systemDefault()));
+            }
+        } catch (UnauthorizedException e) {
+            // Access token già scaduto o non valido: non c'è niente da revocare
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.config_rev.SequenceBlocks;
+import aiman.projectbackend.dto_rev.BulkOrderResultDTO;
+import aiman.projectbackend.dto_rev.OrderRequestDTO;
+import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.repository_rev.UserSpendingRepository;
+import aiman.projectbackend.service_rev.api_rev.ShippingService;
+import aiman.projectbackend.service_rev.event_rev.OrderEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Qui gestisco l'invio massivo degli ordini (POST /api/orders/bulk)
+ *
+ * Rispetto a N chiamate singole a createOrderFromDto:
+ * 1) Utenti (con indirizzo) e prodotti (con categoria) vengono caricati con 2 query in totale, non 1 per ordine e per riga
+ * 2) Il preventivo di spedizione viene chiesto a ORS una sola volta per indirizzo e riusato
+ * 3) Ordini e righe vengono salvati con JDBC batch (una INSERT preparata inviata a blocchi), gli id li prendo in blocco
+ * dalla sequenza dell'entità (ogni nextval riserva 50 id)
+ * 4) Aggregato della spesa, eventi outbox e contatori vengono aggiornati come nel percorso singolo, tutto in una transazione
+ *
+ * Gli ordini con errori (utente o prodotto inesistente) vengono scartati con il motivo, gli altri vengono creati
+ */
+@Service
+public class BulkOrderService {
+
+    // Quante righe per ogni invio del batch JDBC
+    private static final int BATCH_SIZE = 100;
+
+    private static final String INSERT_ORDER_SQL =
+            "INSERT INTO orders (id, order_date, total_amount, status, user_id, shipping_cost) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ITEM_SQL =
+            "INSERT INTO order_items (id, quantity, price_at_purchase, order_id, product_id) VALUES (?, ?, ?, ?, ?)";
+
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final UserSpendingRepository userSpendingRepository;
+    private final ShippingService shippingService;
+    private final OrderEventPublisher orderEventPublisher;
+    private final OrderStatusCounter orderStatusCounter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SequenceBlocks sequenceBlocks;
+
+    // Costruttore che inietta repository, servizi e gli strumenti JDBC / transazioni / id dalle sequenze
+    public BulkOrderService(UserRepository userRepository,
+                            ProductRepository productRepository,
+                            UserSpendingRepository userSpendingRepository,
+                            ShippingService shippingService,
+                            OrderEventPublisher orderEventPublisher,
+                            OrderStatusCounter orderStatusCounter,
+                            JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            SequenceBlocks sequenceBlocks) {
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+        this.userSpendingRepository = userSpendingRepository;
+        this.shippingService = shippingService;
+        this.orderEventPublisher = orderEventPublisher;
+        this.orderStatusCounter = orderStatusCounter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.sequenceBlocks = sequenceBlocks;
+    }
+
+    // Metodo 1 - logica di business --> creo tutti gli ordini validi della richiesta e restituisco l'esito di ognuno
+    public List<BulkOrderResultDTO> createOrders(List<OrderRequestDTO> requests) {
+
+        // Raccolgo tutti gli id che mi servono e li carico con una query per tipo
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> productIds = new HashSet<>();
+        for (OrderRequestDTO request : requests) {
+            userIds.add(request.getUserId());
+            request.getItems().forEach(item -> productIds.add(item.getProductId()));
+        }
+        Map<Long, User> users = userRepository.findAllWithAddressByIdIn(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        Map<Long, Product> products = productRepository.findAllWithCategoryByIdIn(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        // Preventivi di spedizione già calcolati, per indirizzo
+        Map<String, Double> shippingQuotes = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        BulkOrderResultDTO[] results = new BulkOrderResultDTO[requests.size()];
+        List<Order> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            OrderRequestDTO request = requests.get(i);
+
+            // Controllo che utente e prodotti esistano, raccogliendo tutti gli errori dell'ordine
+            List<String> errors = new ArrayList<>();
+            User user = users.get(request.getUserId());
+            if (user == null) {
+                errors.add("l'utente con id: " + request.getUserId() + " non è stato trovato");
+            }
+            for (OrderRequestDTO.OrderItemRequestDTO itemDto : request.getItems()) {
+                if (!products.containsKey(itemDto.getProductId())) {
+                    errors.add("il prodotto con id: " + itemDto.getProductId() + " non è stato trovato");
+                }
+            }
+            if (!errors.isEmpty()) {
+                results[i] = BulkOrderResultDTO.rejected(i, errors);
+                continue;
+            }
+
+            // Costruisco l'ordine come in createOrderFromDto (stesso calcolo di totale e spedizione)
+            Order order = new Order();
+            order.setUser(user);
+            order.setOrderDate(now);
+            order.setStatus(OrderStatus.PENDING);
+
+            double total = 0;
+            List<OrderItem> items = new ArrayList<>();
+            for (OrderRequestDTO.OrderItemRequestDTO itemDto : request.getItems()) {
+                Product product = products.get(itemDto.getProductId());
+                OrderItem item = new OrderItem();
+                item.setProduct(product);
+                item.setQuantity(itemDto.getQuantity());
+                item.setPriceAtPurchase(product.getPrice());
+                item.setOrder(order);
+                items.add(item);
+                total += product.getPrice() * itemDto.getQuantity();
+            }
+            order.setItems(items);
+            order.setTotalAmount(total);
+
+            Address address = user.getAddress();
+            if (address != null) {
+                // computeIfAbsent --> chiamo ORS solo la prima volta che incontro questo indirizzo
+                String key = address.getStreet() + "|" + address.getCity() + "|" + address.getZipCode();
+                double shipCost = shippingQuotes.computeIfAbsent(key, k -> shippingService.calculateShippingCost(
+                        address.getStreet(), address.getCity(), address.getZipCode()));
+                order.setShippingCost(shipCost);
+                order.setTotalAmount(total + shipCost);
+            }
+
+            accepted.add(order);
+            acceptedIndexes.add(i);
+        }
+
+        // Salvo tutti gli ordini validi in una sola transazione
+        if (!accepted.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> persist(accepted));
+            for (int k = 0; k < accepted.size(); k++) {
+                Order order = accepted.get(k);
+                int index = acceptedIndexes.get(k);
+                results[index] = BulkOrderResultDTO.created(index, order.getId(), order.getTotalAmount(), order.getShippingCost());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    // Scrivo ordini, righe, spesa aggregata ed eventi (gira dentro la transazione)
+    private void persist(List<Order> orders) {
+        // Id degli ordini presi in blocco dalla sequenza, così posso collegare subito le righe
+        List<Long> orderIds = sequenceBlocks.nextIds("orders_seq", orders.size());
+        List<OrderItem> items = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            orders.get(i).setId(orderIds.get(i));
+            items.addAll(orders.get(i).getItems());
+        }
+        List<Long> itemIds = sequenceBlocks.nextIds("order_items_seq", items.size());
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setId(itemIds.get(i));
+        }
+
+        // INSERT a blocchi (batch JDBC)
+        jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, orders, BATCH_SIZE, (ps, order) -> {
+            ps.setLong(1, order.getId());
+            ps.setTimestamp(2, Timestamp.valueOf(order.getOrderDate()));
+            ps.setDouble(3, order.getTotalAmount());
+            ps.setString(4, order.getStatus().name());
+            ps.setLong(5, order.getUser().getId());
+            if (order.getShippingCost() != null) {
+                ps.setDouble(6, order.getShippingCost());
+            } else {
+                ps.setNull(6, Types.DOUBLE);
+            }
+        });
+        jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, items, BATCH_SIZE, (ps, item) -> {
+            ps.setLong(1, item.getId());
+            ps.setInt(2, item.getQuantity());
+            ps.setDouble(3, item.getPriceAtPurchase());
+            ps.setLong(4, item.getOrder().getId());
+            ps.setLong(5, item.getProduct().getId());
+        });
+
+        // Spesa aggregata: un solo update per utente con la somma dei suoi ordini della richiesta
+        Map<Long, double[]> spendingByUser = new HashMap<>();
+        for (Order order : orders) {
+            double[] spending = spendingByUser.computeIfAbsent(order.getUser().getId(), id -> new double[2]);
+            spending[0] += order.getTotalAmount();
+            spending[1]++;
+        }
+        LocalDateTime orderDate = orders.get(0).getOrderDate();
+        spendingByUser.forEach((userId, spending) -> {
+            // Utente senza riga: la creo sommando tutti i suoi ordini, compresi quelli appena inseriti
+            if (userSpendingRepository.addOrders(userId, spending[0], (long) spending[1], orderDate) == 0) {
+                userSpendingRepository.recomputeRow(userId);
+            }
+        });
+
+        // Eventi ORDER_PLACED nella outbox e contatori in memoria dopo il commit
+        orderEventPublisher.publishPlacedAll(orders);
+        int created = orders.size();
+        OrderService.afterCommit(() -> orderStatusCounter.add(OrderStatus.PENDING, created));
+    }
+}
@@ -0,0 +1,269 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.exception_rev.ValidationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Qui gestisco l'esportazione degli ordini per la contabilità (GET /api/orders/export)
+ *
+ * Invece di caricare tutti gli ordini come entità (con user, righe e prodotti) e poi filtrarli:
+ * 1) Una sola query sulle tabelle restituisce già le righe "piatte" (una per riga d'ordine) del periodo richiesto
+ * 2) La query viene letta con un cursore del db (fetch size + transazione in sola lettura), quindi il driver tiene in
+ * memoria solo un blocco di righe alla volta
+ * 3) Ogni riga viene scritta subito nella risposta (CSV o NDJSON, eventualmente compressa in gzip), quindi la memoria
+ * usata non dipende dalla lunghezza del periodo
+ */
+@Service
+public class OrderExportService {
+
+    public enum Format { CSV, NDJSON }
+
+    private static final String EXPORT_SQL =
+            "SELECT o.id, o.order_date, o.status, o.user_id, u.email, o.shipping_cost, o.total_amount, " +
+            "i.id, i.product_id, p.name, c.name, i.quantity, i.price_at_purchase " +
+            "FROM orders o " +
+            "LEFT JOIN users u ON u.id = o.user_id " +
+            "LEFT JOIN order_items i ON i.order_id = o.id " +
+            "LEFT JOIN products p ON p.id = i.product_id " +
+            "LEFT JOIN categories c ON c.id = p.category_id " +
+            "WHERE o.order_date >= ? AND o.order_date < ? " +
+            "ORDER BY o.order_date, o.id, i.id";
+
+    private static final String[] COLUMNS = {
+            "orderId", "orderDate", "status", "userId", "userEmail", "shippingCost", "orderTotal",
+            "itemId", "productId", "productName", "categoryName", "quantity", "priceAtPurchase", "lineTotal"
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+
+    // Costruttore: creo un JdbcTemplate dedicato con la fetch size (quante righe il driver chiede al db per volta) e un
+    // template per le transazioni in sola lettura, postgres usa il cursore solo con l'autocommit disattivato
+    public OrderExportService(DataSource dataSource,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(Math.max(1, fetchSize));
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    // Metodo 1 - controllo i parametri prima di iniziare a scrivere la risposta (dopo non posso più restituire un 400)
+    public Format validate(LocalDateTime from, LocalDateTime to, String format) {
+        List<String> errors = new ArrayList<>();
+        if (from == null || to == null) {
+            errors.add("from e to sono obbligatori");
+        } else if (!to.isAfter(from)) {
+            errors.add("to deve essere successivo a from");
+        }
+        Format parsed = null;
+        try {
+            parsed = Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            errors.add("formato non supportato: " + format + " (ammessi: csv, ndjson)");
+        }
+        if (!errors.isEmpty()) {
+            throw new ValidationException(errors);
+        }
+        return parsed;
+    }
+
+    // Metodo 2 - scrivo le righe del periodo [from, to) direttamente nello stream della risposta
+    public void export(LocalDateTime from, LocalDateTime to, Format format, boolean gzip, OutputStream out) throws IOException {
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip ? gzipStream : out, StandardCharsets.UTF_8), 64 * 1024);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+
+        rowWriter.header();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(EXPORT_SQL, rs -> {
+                try {
+                    rowWriter.row(rs);
+                } catch (IOException e) {
+                    // Il client ha chiuso la connessione: interrompo la lettura del cursore
+                    throw new UncheckedIOException(e);
+                }
+            }, Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        rowWriter.finish();
+        writer.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        out.flush();
+    }
+
+    // Scrittura di una riga del cursore nel formato scelto
+    private interface RowWriter {
+        void header() throws IOException;
+
+        void row(ResultSet rs) throws SQLException, IOException;
+
+        void finish() throws IOException;
+    }
+
+    // CSV: intestazione + una riga per riga d'ordine, i testi con virgole, virgolette o a capo vanno tra virgolette
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+        }
+
+        @Override
+        public void row(ResultSet rs) throws SQLException, IOException {
+            Timestamp orderDate = rs.getTimestamp(2);
+            writer.write(rs.getString(1));
+            writer.write(',');
+            writer.write(orderDate != null ? orderDate.toLocalDateTime().toString() : "");
+            writer.write(',');
+            writeText(rs.getString(3));
+            writer.write(',');
+            writeText(rs.getString(4));
+            writer.write(',');
+            writeText(rs.getString(5));
+            writer.write(',');
+            writeText(rs.getString(6));
+            writer.write(',');
+            writeText(rs.getString(7));
+            writer.write(',');
+            writeText(rs.getString(8));
+            writer.write(',');
+            writeText(rs.getString(9));
+            writer.write(',');
+            writeText(rs.getString(10));
+            writer.write(',');
+            writeText(rs.getString(11));
+            writer.write(',');
+            writeText(rs.getString(12));
+            writer.write(',');
+            writeText(rs.getString(13));
+            writer.write(',');
+            Double lineTotal = lineTotal(rs);
+            writer.write(lineTotal != null ? lineTotal.toString() : "");
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        private void writeText(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    // NDJSON: un oggetto JSON per riga, scritto con il generatore di Jackson (niente oggetti intermedi)
+    private class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header() throws IOException {
+            generator = objectMapper.getFactory().createGenerator(writer);
+            // Il writer lo chiudo io, il generatore deve solo scriverci dentro
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void row(ResultSet rs) throws SQLException, IOException {
+            Timestamp orderDate = rs.getTimestamp(2);
+            generator.writeStartObject();
+            writeLong(COLUMNS[0], rs, 1);
+            generator.writeStringField(COLUMNS[1], orderDate != null ? orderDate.toLocalDateTime().toString() : null);
+            generator.writeStringField(COLUMNS[2], rs.getString(3));
+            writeLong(COLUMNS[3], rs, 4);
+            generator.writeStringField(COLUMNS[4], rs.getString(5));
+            writeDouble(COLUMNS[5], rs, 6);
+            writeDouble(COLUMNS[6], rs, 7);
+            writeLong(COLUMNS[7], rs, 8);
+            writeLong(COLUMNS[8], rs, 9);
+            generator.writeStringField(COLUMNS[9], rs.getString(10));
+            generator.writeStringField(COLUMNS[10], rs.getString(11));
+            writeLong(COLUMNS[11], rs, 12);
+            writeDouble(COLUMNS[12], rs, 13);
+            Double lineTotal = lineTotal(rs);
+            if (lineTotal != null) {
+                generator.writeNumberField(COLUMNS[13], lineTotal);
+            } else {
+                generator.writeNullField(COLUMNS[13]);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.close();
+        }
+
+        private void writeLong(String name, ResultSet rs, int column) throws SQLException, IOException {
+            long value = rs.getLong(column);
+            if (rs.wasNull()) {
+                generator.writeNullField(name);
+            } else {
+                generator.writeNumberField(name, value);
+            }
+        }
+
+        private void writeDouble(String name, ResultSet rs, int column) throws SQLException, IOException {
+            double value = rs.getDouble(column);
+            if (rs.wasNull()) {
+                generator.writeNullField(name);
+            } else {
+                generator.writeNumberField(name, value);
+            }
+        }
+    }
+
+    // Totale della riga (quantità per prezzo d'acquisto), null per gli ordini senza righe
+    private static Double lineTotal(ResultSet rs) throws SQLException {
+        int quantity = rs.getInt(12);
+        if (rs.wasNull()) {
+            return null;
+        }
+        double price = rs.getDouble(13);
+        return rs.wasNull() ? null : quantity * price;
+    }
+}
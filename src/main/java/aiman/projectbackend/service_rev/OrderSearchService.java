@@ -0,0 +1,131 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.OrderSearchDTO;
+import aiman.projectbackend.dto_rev.OrderSummaryDTO;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.exception_rev.ValidationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Qui gestisco la ricerca admin degli ordini con più criteri (GET /api/orders/search)
+ *
+ * Costruisco una sola query SQL con dentro solo le condizioni dei criteri indicati, invece di una query fissa piena di
+ * "(:x IS NULL OR ...)": così postgres vede una WHERE semplice e può scegliere l'indice giusto per ogni combinazione
+ * 1) status + periodo --> indice idx_orders_status_date (status, order_date)
+ * 2) email --> prima trovo l'utente (indice unico su email), poi indice idx_orders_user_date (user_id, order_date)
+ * 3) solo periodo o nessun criterio --> indice idx_orders_order_date (order_date, id)
+ * 4) prodotto --> EXISTS sulle righe con l'indice idx_order_items_product (product_id, order_id)
+ * La paginazione è keyset (data + id dell'ultimo ordine ricevuto), come nel riepilogo admin
+ */
+@Service
+public class OrderSearchService {
+
+    // Dimensione massima di una pagina, come nelle altre liste di ordini
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Costruttore che inietta il template JDBC con i parametri con nome (:status, :from ...)
+    public OrderSearchService(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Metodo 1 - logica di business --> controllo i criteri, costruisco la query e restituisco la pagina di riepiloghi
+    public List<OrderSummaryDTO> search(OrderSearchDTO criteria) {
+        validate(criteria);
+        SearchQuery query = buildQuery(criteria);
+
+        return jdbcTemplate.query(query.sql(), query.params(), (rs, rowNum) -> {
+            Timestamp orderDate = rs.getTimestamp(2);
+            String status = rs.getString(3);
+            double shippingCost = rs.getDouble(6);
+            Double shipping = rs.wasNull() ? null : shippingCost;
+            double totalAmount = rs.getDouble(5);
+            Double total = rs.wasNull() ? null : totalAmount;
+            return new OrderSummaryDTO(
+                    rs.getLong(1),
+                    orderDate != null ? orderDate.toLocalDateTime() : null,
+                    status != null ? OrderStatus.valueOf(status) : null,
+                    rs.getString(4),
+                    total,
+                    shipping,
+                    rs.getLong(7));
+        });
+    }
+
+    // La query di una ricerca: testo SQL e parametri
+    record SearchQuery(String sql, MapSqlParameterSource params) {}
+
+    // Costruisco la query con le sole condizioni dei criteri indicati (package-private per il test dei piani di esecuzione)
+    SearchQuery buildQuery(OrderSearchDTO criteria) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT o.id, o.order_date, o.status, u.email, o.total_amount, o.shipping_cost, " +
+                "(SELECT COUNT(*) FROM order_items ic WHERE ic.order_id = o.id) AS item_count " +
+                "FROM orders o LEFT JOIN users u ON u.id = o.user_id " +
+                "WHERE 1 = 1");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        if (criteria.getStatus() != null) {
+            sql.append(" AND o.status = :status");
+            params.addValue("status", criteria.getStatus().name());
+        }
+        if (criteria.getFrom() != null) {
+            sql.append(" AND o.order_date >= :from");
+            params.addValue("from", Timestamp.valueOf(criteria.getFrom()));
+        }
+        if (criteria.getTo() != null) {
+            sql.append(" AND o.order_date < :to");
+            params.addValue("to", Timestamp.valueOf(criteria.getTo()));
+        }
+        if (criteria.getMinTotal() != null) {
+            sql.append(" AND o.total_amount >= :minTotal");
+            params.addValue("minTotal", criteria.getMinTotal());
+        }
+        if (criteria.getMaxTotal() != null) {
+            sql.append(" AND o.total_amount <= :maxTotal");
+            params.addValue("maxTotal", criteria.getMaxTotal());
+        }
+        if (criteria.getEmail() != null && !criteria.getEmail().isBlank()) {
+            // Sotto-query sull'utente --> il filtro diventa user_id = ..., che usa l'indice (user_id, order_date)
+            sql.append(" AND o.user_id = (SELECT us.id FROM users us WHERE us.email = :email)");
+            params.addValue("email", criteria.getEmail().trim());
+        }
+        if (criteria.getProductId() != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM order_items ip WHERE ip.order_id = o.id AND ip.product_id = :productId)");
+            params.addValue("productId", criteria.getProductId());
+        }
+        if (criteria.getLastDate() != null) {
+            sql.append(" AND (o.order_date < :lastDate OR (o.order_date = :lastDate AND o.id < :lastId))");
+            params.addValue("lastDate", Timestamp.valueOf(criteria.getLastDate()));
+            params.addValue("lastId", criteria.getLastId());
+        }
+        sql.append(" ORDER BY o.order_date DESC, o.id DESC LIMIT :limit");
+        params.addValue("limit", Math.max(1, Math.min(criteria.getSize(), MAX_PAGE_SIZE)));
+        return new SearchQuery(sql.toString(), params);
+    }
+
+    // Raccolgo tutti gli errori dei criteri e li restituisco insieme (400)
+    private void validate(OrderSearchDTO criteria) {
+        List<String> errors = new ArrayList<>();
+        // Il cursore è formato da data e id dell'ultimo ordine ricevuto, quindi devono arrivare sempre insieme
+        if ((criteria.getLastDate() == null) != (criteria.getLastId() == null)) {
+            errors.add("lastDate e lastId devono essere indicati insieme");
+        }
+        if (criteria.getFrom() != null && criteria.getTo() != null && !criteria.getTo().isAfter(criteria.getFrom())) {
+            errors.add("to deve essere successivo a from");
+        }
+        if (criteria.getMinTotal() != null && criteria.getMaxTotal() != null
+                && criteria.getMinTotal() > criteria.getMaxTotal()) {
+            errors.add("minTotal non può essere maggiore di maxTotal");
+        }
+        if (!errors.isEmpty()) {
+            throw new ValidationException(errors);
+        }
+    }
+}
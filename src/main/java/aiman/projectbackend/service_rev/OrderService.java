@@ -1,16 +1,30 @@
 package aiman.projectbackend.service_rev;
 
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
 import aiman.projectbackend.dto_rev.OrderRequestDTO;
+import aiman.projectbackend.dto_rev.OrderSearchDTO;
+import aiman.projectbackend.dto_rev.OrderSummaryDTO;
 import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.exception_rev.ValidationException;
 import aiman.projectbackend.repository_rev.OrderRepository;
 import aiman.projectbackend.repository_rev.ProductRepository;
 import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.repository_rev.UserSpendingRepository;
 import aiman.projectbackend.service_rev.api_rev.ShippingService;
+import aiman.projectbackend.service_rev.archive_rev.OrderArchiveService;
+import aiman.projectbackend.service_rev.event_rev.OrderEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /** BREVE TEORIA DEL SERVICE
  * DEF: Nel service ho la mia logica di business, quindi qui mostro come deve funzionare la mia applicazione back-end
@@ -26,23 +40,47 @@ import java.util.List;
 @Service
 public class OrderService {
 
+    // Dimensione massima di una pagina, così un client non può chiedere tutta la tabella ordini in una volta
+    private static final int MAX_PAGE_SIZE = 100;
+
     // Indico le dipendenze che saranno cambiate solo all'interno di questa classe "private" e dopo che sono stati
     // inizializzate non cambiano più "final"
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
     private final ShippingService shippingService;
+    private final OrderStatusCounter orderStatusCounter;
+    private final UserSpendingRepository userSpendingRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderEventPublisher orderEventPublisher;
+    private final OrderArchiveService orderArchiveService;
+    private final OrderSearchService orderSearchService;
 
     // Costruttore che inietta le repository, quindi spring crea le istanze delle repository e le inietta nel mio servizio
     // qui ho 3 repository e 1 servizio esterno iniettato (calcolo della distanza su cui ho fatto il calcolo della spedizione con tariffa fissa)
+    // più i contatori in memoria degli ordini per status, la repository della spesa aggregata per utente e il template
+    // per aprire le transazioni solo dove servono, il publisher degli eventi degli ordini (outbox) e infine l'archivio
+    // degli ordini vecchi (per completare lo storico del cliente) e la ricerca admin (per la lista paginata)
     public OrderService(OrderRepository orderRepository,
                         UserRepository userRepository,
                         ProductRepository productRepository,
-                        ShippingService shippingService) {
+                        ShippingService shippingService,
+                        OrderStatusCounter orderStatusCounter,
+                        UserSpendingRepository userSpendingRepository,
+                        TransactionTemplate transactionTemplate,
+                        OrderEventPublisher orderEventPublisher,
+                        OrderArchiveService orderArchiveService,
+                        OrderSearchService orderSearchService) {
         this.orderRepository = orderRepository;
         this.userRepository = userRepository;
         this.productRepository = productRepository;
         this.shippingService = shippingService;
+        this.orderStatusCounter = orderStatusCounter;
+        this.userSpendingRepository = userSpendingRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.orderEventPublisher = orderEventPublisher;
+        this.orderArchiveService = orderArchiveService;
+        this.orderSearchService = orderSearchService;
     }
 
     // Metodo 1 - logica di business --> creazione dell'ordine
@@ -56,7 +94,7 @@ public class OrderService {
         Order order = new Order();
         order.setUser(user);
         order.setOrderDate(LocalDateTime.now());
-        order.setStatus("PENDING");
+        order.setStatus(OrderStatus.PENDING);
 
         // Inizializzo la mia variabile total che farà la somma di tuti i prezzi dei prodotti nell'ordine
         double total = 0;
@@ -115,34 +153,208 @@ public class OrderService {
             // Salvo l'ammontare totale (prodotto/i + spedizione)
             order.setTotalAmount(total + shipCost);
         }
-        // Salvo il mio ordine con tutti i dati (lista prodotti, costo spedizione, costo totale ...)
-        return orderRepository.save(order);
+        // Apro la transazione solo ora, così la chiamata esterna per la spedizione non tiene occupata una connessione al db
+        return placeOrder(order);
+    }
+
+    // Metodo 1b - logica di business --> salvo un ordine già prezzato (lo usa anche il checkout del carrello)
+    // L'ordine e l'aggiornamento della spesa dell'utente vengono salvati insieme (o nessuno dei due)
+    public Order placeOrder(Order order) {
+        return transactionTemplate.execute(status -> {
+            // Salvo il mio ordine con tutti i dati (lista prodotti, costo spedizione, costo totale ...)
+            Order saved = orderRepository.save(order);
+            // Aggiungo l'ordine alla spesa aggregata dell'utente (update di una sola riga), se l'utente non ha ancora la
+            // riga la creo sommando tutti i suoi ordini, compreso questo
+            Long userId = saved.getUser().getId();
+            if (userSpendingRepository.addOrders(userId, saved.getTotalAmount(), 1, saved.getOrderDate()) == 0) {
+                userSpendingRepository.recomputeRow(userId);
+            }
+            // Scrivo l'evento ORDER_PLACED nella outbox (una INSERT), tutto il resto (statistiche, notifiche ...)
+            // viene fatto in background dai consumatori degli eventi
+            orderEventPublisher.publishPlaced(saved);
+            // Aggiorno il contatore in memoria solo quando il salvataggio è confermato
+            afterCommit(() -> orderStatusCounter.increment(OrderStatus.PENDING));
+            return saved;
+        });
     }
 
     // Metodo 2 - logica di business --> ottengo tutti gli ordini
+    // Solo gli ordini nel db: gli archiviati su file sono nello storico del cliente (Metodo 3), vedi OrderArchiveService
     public List<Order> getAllOrders() {
         return orderRepository.findAll();
     }
 
-    // Metodo 3 - logica di business --> ottengo tutti gli ordini di uno specifico user
-    public List<Order> getOrdersByUser(Long userId) {
-        
-        // Controllo l'esistenza dello user guardando id
-        if (!userRepository.existsById(userId)) {
+    // Metodo 3 - logica di business --> ottengo lo storico ordini di uno specifico user (paginato keyset e già in DTO)
+    public List<OrderHistoryDTO> getOrdersByUser(Long userId, LocalDateTime lastDate, Long lastId, int size) {
+        // Il cursore è formato da data e id dell'ultimo ordine ricevuto, quindi devono arrivare sempre insieme
+        if ((lastDate == null) != (lastId == null)) {
+            throw new ValidationException(List.of("lastDate e lastId devono essere indicati insieme"));
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // Una sola query: ordini della pagina + righe + nome prodotto
+        // La condizione del cursore c'è solo dalla seconda pagina in poi (due query distinte, ognuna col suo piano)
+        List<Object[]> rows = lastDate == null
+                ? orderRepository.findOrderHistoryFirstRows(userId, pageSize)
+                : orderRepository.findOrderHistoryRowsAfter(userId, lastDate, lastId, pageSize);
+
+        // Raggruppo le righe per ordine, LinkedHashMap mantiene l'ordine della query (dal più recente)
+        Map<Long, OrderHistoryDTO> orders = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            // computeIfAbsent --> la prima volta che incontro l'ordine creo il DTO, le volte successive lo riprendo
+            OrderHistoryDTO order = orders.computeIfAbsent(((Number) row[0]).longValue(), id -> new OrderHistoryDTO(
+                    id,
+                    toLocalDateTime(row[1]),
+                    row[2] != null ? OrderStatus.valueOf((String) row[2]) : null,
+                    toDouble(row[3]),
+                    toDouble(row[4])
+            ));
+            // Se l'ordine non ha righe la LEFT JOIN mi restituisce colonne null, in quel caso non aggiungo nulla
+            if (row[5] != null) {
+                order.getItems().add(new OrderHistoryDTO.OrderHistoryItemDTO(
+                        row[7] != null ? ((Number) row[7]).longValue() : null,
+                        (String) row[8],
+                        ((Number) row[5]).intValue(),
+                        toDouble(row[6])
+                ));
+            }
+        }
+        List<OrderHistoryDTO> page = new ArrayList<>(orders.values());
+
+        // Se il db non riempie la pagina completo con gli ordini archiviati (sono tutti più vecchi di quelli nel db),
+        // partendo dall'ultimo ordine della pagina o dal cursore ricevuto
+        if (page.size() < pageSize) {
+            LocalDateTime archiveDate = lastDate;
+            Long archiveId = lastId;
+            if (!page.isEmpty()) {
+                OrderHistoryDTO last = page.get(page.size() - 1);
+                archiveDate = last.getOrderDate();
+                archiveId = last.getId();
+            }
+            for (OrderHistoryDTO archived : orderArchiveService.findUserHistory(userId, archiveDate, archiveId, pageSize - page.size())) {
+                // Salto un ordine già letto dal db (archiviato ma non ancora cancellato, es. dopo un'interruzione)
+                if (!orders.containsKey(archived.getId())) {
+                    page.add(archived);
+                }
+            }
+        }
+
+        // Controllo l'esistenza dello user solo se non ho trovato nulla nella prima pagina, quindi nel caso normale
+        // (utente con ordini) risparmio la query existsById
+        if (page.isEmpty() && lastDate == null && !userRepository.existsById(userId)) {
             throw new RuntimeException("utente " + userId + " non trovato");
         }
-        return orderRepository.findByUserId(userId);
+        return page;
     }
 
-    // Metodo 4 - logica di business --> ottengo la spesa totale dell'user
+    // Metodo 4 - logica di business --> ottengo la spesa totale dell'user (gli ordini annullati non contano)
+    // Leggo una sola riga dalla tabella aggregata invece di sommare tutti gli ordini dell'utente
     public Double getUserTotalSpending(Long userId) {
-        Double total = orderRepository.getTotalSpentByUser(userId);
-        // Se il totale è diverso da null ritorna totale altrimenti 0
-        return (total != null) ? total : 0.0;
+        // Se l'utente non ha ancora una riga (nessun ordine da quando esiste la tabella e la prima riconciliazione non è
+        // ancora passata) sommo i suoi ordini, di solito nessuno
+        return userSpendingRepository.findById(userId)
+                .map(UserSpending::getTotalSpent)
+                .orElseGet(() -> userSpendingRepository.computeTotalSpent(userId));
     }
 
-    // Metodo 5 - logica di business --> filtri gli ordini in base allo status
-    public List<Order> getOrdersByStatus(String status) {
+    // Metodo 5 - logica di business --> filtri gli ordini in base allo status (solo ordini nel db, non gli archiviati)
+    public List<Order> getOrdersByStatus(OrderStatus status) {
         return orderRepository.findByStatus(status);
     }
+
+    // Metodo 6 - logica di business --> lista admin degli ordini paginata (keyset) e già convertita in DTO
+    // È la ricerca admin con i soli filtri di status e data: la query viene costruita con le sole condizioni passate,
+    // così con lo status postgres usa l'indice (status, order_date) invece di una WHERE fissa con "(:status IS NULL OR ...)"
+    // Come la ricerca, copre solo gli ordini nel db: quelli più vecchi di archive.age-days giorni archiviati su file
+    // si leggono dallo storico del cliente
+    public List<OrderSummaryDTO> getOrderSummaries(OrderStatus status, LocalDateTime from, LocalDateTime to,
+                                                   LocalDateTime lastDate, Long lastId, int size) {
+        OrderSearchDTO criteria = new OrderSearchDTO();
+        criteria.setStatus(status);
+        criteria.setFrom(from);
+        criteria.setTo(to);
+        criteria.setLastDate(lastDate);
+        criteria.setLastId(lastId);
+        // La ricerca limita la dimensione della pagina tra 1 e 100 e controlla che il cursore sia completo
+        criteria.setSize(size);
+        return orderSearchService.search(criteria);
+    }
+
+    // Metodo 7 - logica di business --> cambio lo status dell'ordine rispettando la macchina a stati dell'enum
+    // @Transactional --> lettura con lock, controllo e salvataggio avvengono nella stessa transazione
+    @Transactional
+    public OrderSummaryDTO updateOrderStatus(Long orderId, OrderStatus newStatus) {
+        // Recupero l'ordine bloccando la riga, se non esiste lancio l'eccezione
+        Order order = orderRepository.findWithLockById(orderId)
+                .orElseThrow(() -> new RuntimeException("cambio status fallito perchè l'ordine con id: " + orderId + " non è stato trovato"));
+
+        OrderStatus oldStatus = order.getStatus();
+        // Gli ordini vecchi potrebbero non avere lo status, in quel caso li considero PENDING
+        OrderStatus current = oldStatus != null ? oldStatus : OrderStatus.PENDING;
+        // Se il passaggio non è previsto dalla macchina a stati restituisco un 400 con il motivo
+        if (!current.canTransitionTo(newStatus)) {
+            throw new ValidationException(List.of("non è possibile passare da " + current + " a " + newStatus
+                    + ", stati ammessi: " + current.allowedTransitions()));
+        }
+        order.setStatus(newStatus);
+
+        // Un ordine annullato non conta più nella spesa dell'utente (stessa transazione del cambio status)
+        if (newStatus == OrderStatus.CANCELLED && order.getUser() != null) {
+            Long userId = order.getUser().getId();
+            if (userSpendingRepository.removeOrder(userId, order.getTotalAmount() != null ? order.getTotalAmount() : 0.0) == 0) {
+                // Riga non ancora creata: la calcolo dagli ordini (l'annullamento viene scritto prima della somma)
+                userSpendingRepository.recomputeRow(userId);
+            }
+        }
+        // Evento ORDER_STATUS_CHANGED nella outbox, nella stessa transazione del cambio status
+        orderEventPublisher.publishStatusChanged(order, oldStatus, newStatus);
+
+        // Aggiorno i contatori in memoria solo dopo il commit
+        afterCommit(() -> orderStatusCounter.transition(oldStatus, newStatus));
+
+        // Restituisco il riepilogo dell'ordine aggiornato
+        return new OrderSummaryDTO(
+                order.getId(),
+                order.getOrderDate(),
+                order.getStatus(),
+                order.getUser() != null ? order.getUser().getEmail() : null,
+                order.getTotalAmount(),
+                order.getShippingCost(),
+                order.getItems() != null ? (long) order.getItems().size() : 0L
+        );
+    }
+
+    // Metodo 8 - logica di business --> conteggio degli ordini per status, letto dai contatori in memoria (zero query)
+    // Conta solo gli ordini nel db: l'archiviazione toglie dai contatori gli ordini che sposta su file
+    public Map<OrderStatus, Long> getStatusCounts() {
+        return orderStatusCounter.snapshot();
+    }
+
+    // Metodo di supporto --> eseguo l'azione dopo il commit della transazione in corso (se c'è), altrimenti subito
+    // così i contatori in memoria non contano ordini che poi vengono annullati da un rollback (è pubblico perchè lo usa
+    // anche l'archiviazione degli ordini, che sta in un altro package)
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Metodi di supporto per convertire le colonne della query nativa (il driver restituisce Timestamp e Number)
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    private static Double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** BREVE TEORIA DEL SERVICE
+ * DEF: Nel service ho la mia logica di business, quindi qui mostro come deve funzionare la mia applicazione back-end
+ *
+ * CARATTERISTICHE:
+ * 1) Risiede la logica di business, ad esempio il calcolo del prezzo totale dei ordini
+ * 2) Ha il ruolo di intermediario tra il Controller (gestisce le richieste HTTP) e Repository (comunica con il DB)
+ * 3) Disaccopia, quindi il Controller non deve sapere come sono processati i dati, deve solo delegare il servizio richiesto
+ */
+
+// Qui tengo in memoria quanti ordini ci sono per ogni status, così la dashboard admin (che chiede i conteggi ogni pochi secondi)
+// non deve fare una COUNT sul db ad ogni chiamata
+// SmartLifecycle --> i conteggi li leggo in start(), che spring chiama prima di avviare il web server e i lavori
+// pianificati: quando arriva la prima richiesta che crea o modifica un ordine i contatori sono già pronti, quindi la
+// lettura dal db non può sovrascrivere un incremento fatto nel frattempo (con ApplicationReadyEvent il server era già
+// aperto e un ordine creato durante la GROUP BY andava perso)
+@Service
+public class OrderStatusCounter implements SmartLifecycle {
+
+    // Fase bassa --> parto prima del web server, che usa una fase vicina a Integer.MAX_VALUE
+    private static final int SEED_PHASE = 0;
+
+    private final OrderRepository orderRepository;
+    private volatile boolean running;
+
+    // AtomicLongArray --> un contatore per ogni status (la posizione è l'ordinal dell'enum), atomico perchè più richieste
+    // possono creare o modificare ordini nello stesso momento
+    private final AtomicLongArray counts = new AtomicLongArray(OrderStatus.values().length);
+
+    // Costruttore che inietta la repository, mi serve solo all'avvio per leggere i conteggi iniziali
+    public OrderStatusCounter(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    // Metodo 1 - logica di business --> all'avvio dell'applicazione leggo i conteggi dal db (una sola GROUP BY)
+    @Override
+    public void start() {
+        reseed(orderRepository.countOrdersGroupedByStatus());
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SEED_PHASE;
+    }
+
+    // Metodo 2 - logica di business --> sostituisco tutti i contatori con i valori letti dal db
+    public void reseed(List<Object[]> rows) {
+        // Prima azzero tutto, poi scrivo i valori letti (gli ordini vecchi con status null non vengono contati)
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                counts.set(((OrderStatus) row[0]).ordinal(), ((Number) row[1]).longValue());
+            }
+        }
+    }
+
+    // Metodo 3 - logica di business --> è stato creato un nuovo ordine con questo status
+    public void increment(OrderStatus status) {
+        counts.incrementAndGet(status.ordinal());
+    }
+
+    // Metodo 3b - logica di business --> sono stati creati più ordini insieme con questo status (invio massivo)
+    public void add(OrderStatus status, long count) {
+        counts.addAndGet(status.ordinal(), count);
+    }
+
+    // Metodo 4 - logica di business --> un ordine è passato da uno status all'altro
+    public void transition(OrderStatus from, OrderStatus to) {
+        if (from != null) {
+            counts.decrementAndGet(from.ordinal());
+        }
+        counts.incrementAndGet(to.ordinal());
+    }
+
+    // Metodo 5 - logica di business --> fotografia dei contatori, EnumMap mantiene l'ordine dell'enum nel json
+    public Map<OrderStatus, Long> snapshot() {
+        Map<OrderStatus, Long> result = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus status : OrderStatus.values()) {
+            result.put(status, counts.get(status.ordinal()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,212 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.ProfileImageUploadDTO;
+import aiman.projectbackend.exception_rev.ServiceUnavailableException;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.service_rev.api_rev.CloudinaryService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Qui gestisco il caricamento asincrono dell'immagine profilo (PATCH /api/users/{id}/profile-image)
+ *
+ * Prima la richiesta leggeva tutto il file in un array di byte (file.getBytes()) e aspettava cloudinary sul suo thread.
+ * Ora:
+ * 1) Il file viene tenuto in memoria solo se è piccolo (fino a upload.memory-threshold-kb), altrimenti lo copio in un
+ * file temporaneo (upload.spool-dir) a blocchi, quindi la memoria usata non dipende dalla dimensione dell'immagine
+ * 2) L'invio a cloudinary gira su un virtual thread: al massimo upload.max-concurrent invii insieme e al massimo
+ * upload.max-pending caricamenti accettati e non ancora finiti, oltre rispondo 503 con Retry-After
+ * 3) La richiesta risponde subito 202 con l'indirizzo dello stato; a invio finito aggiorno l'utente con
+ * UserService.updateProfileImage e lo stato diventa COMPLETED (o FAILED con il motivo)
+ * 4) Gli stati dei caricamenti finiti restano in memoria per upload.status-ttl-minutes, poi li tolgo
+ *
+ * Gli stati sono in memoria: con più istanze lo stato va chiesto all'istanza che ha ricevuto il caricamento
+ */
+@Service
+public class ProfileImageUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileImageUploadService.class);
+
+    // Secondi suggeriti al client quando ci sono troppi caricamenti in corso
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    // Un caricamento: lo scrive il virtual thread che invia, lo legge chi chiede lo stato
+    private static final class Job {
+        final String id;
+        final Long userId;
+        final LocalDateTime submittedAt = LocalDateTime.now();
+        volatile String status = ProfileImageUploadDTO.PENDING;
+        volatile String imageUrl;
+        volatile String error;
+        volatile LocalDateTime completedAt;
+
+        Job(String id, Long userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+    }
+
+    private final CloudinaryService cloudinaryService;
+    private final UserService userService;
+    private final ExecutorService executor;
+    private final Semaphore uploadSlots;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final int maxPending;
+    private final long memoryThresholdBytes;
+    private final Path spoolDir;
+    private final long statusTtlMinutes;
+
+    // Costruttore che inietta cloudinary, il servizio degli utenti e i parametri del caricamento (con valori di default)
+    public ProfileImageUploadService(CloudinaryService cloudinaryService,
+                                     UserService userService,
+                                     @Value("${upload.max-concurrent:4}") int maxConcurrent,
+                                     @Value("${upload.max-pending:64}") int maxPending,
+                                     @Value("${upload.memory-threshold-kb:256}") long memoryThresholdKb,
+                                     @Value("${upload.spool-dir:${java.io.tmpdir}}") String spoolDir,
+                                     @Value("${upload.status-ttl-minutes:60}") long statusTtlMinutes) throws IOException {
+        this.cloudinaryService = cloudinaryService;
+        this.userService = userService;
+        // Un virtual thread per caricamento: mentre aspetta cloudinary non occupa un thread della piattaforma, il
+        // semaforo limita quanti invii partono insieme
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("profile-image-upload-", 0).factory());
+        this.uploadSlots = new Semaphore(Math.max(1, maxConcurrent));
+        this.maxPending = Math.max(1, maxPending);
+        this.memoryThresholdBytes = Math.max(0, memoryThresholdKb) * 1024;
+        this.spoolDir = Files.createDirectories(Path.of(spoolDir));
+        this.statusTtlMinutes = Math.max(1, statusTtlMinutes);
+    }
+
+    // Allo spegnimento aspetto un po' gli invii in corso, poi li interrompo
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Metodo 1 - logica di business --> accetto il file, lo metto da parte e avvio l'invio in background
+    public ProfileImageUploadDTO submit(Long userId, MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new ValidationException(List.of("il file dell'immagine è vuoto"));
+        }
+        // Prenoto il posto prima di copiare il file, così oltre il limite non scrivo niente su disco
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new ServiceUnavailableException("troppi caricamenti di immagini in corso, riprova più tardi",
+                    RETRY_AFTER_SECONDS);
+        }
+        Object source;
+        try {
+            // Il file della richiesta viene cancellato a fine richiesta: lo copio prima di rispondere
+            source = spool(file);
+        } catch (IOException | RuntimeException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+        Job job = new Job(UUID.randomUUID().toString(), userId);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, source));
+        } catch (RejectedExecutionException e) {
+            // Applicazione in spegnimento
+            jobs.remove(job.id);
+            pending.decrementAndGet();
+            if (source instanceof File spooled) {
+                Files.deleteIfExists(spooled.toPath());
+            }
+            throw new ServiceUnavailableException("caricamento delle immagini non disponibile", RETRY_AFTER_SECONDS);
+        }
+        return toDTO(job);
+    }
+
+    // Metodo 2 - stato del caricamento (solo se appartiene a questo utente)
+    public ProfileImageUploadDTO getStatus(Long userId, String uploadId) {
+        Job job = jobs.get(uploadId);
+        if (job == null || !job.userId.equals(userId)) {
+            throw new RuntimeException("caricamento " + uploadId + " non trovato per l'utente con id " + userId);
+        }
+        return toDTO(job);
+    }
+
+    // Tolgo dalla memoria gli stati dei caricamenti finiti da più di upload.status-ttl-minutes
+    @Scheduled(fixedDelayString = "${upload.cleanup-interval-ms:300000}",
+            initialDelayString = "${upload.cleanup-interval-ms:300000}")
+    public void evictFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(statusTtlMinutes);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(cutoff));
+    }
+
+    // File piccolo --> byte in memoria; file grande --> copia su disco (Tomcat sposta il suo file temporaneo se può,
+    // altrimenti lo copia a blocchi)
+    private Object spool(MultipartFile file) throws IOException {
+        if (file.getSize() <= memoryThresholdBytes) {
+            return file.getBytes();
+        }
+        Path target = Files.createTempFile(spoolDir, "profile-image-", ".upload");
+        try {
+            file.transferTo(target.toFile());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        return target.toFile();
+    }
+
+    // Gira sul virtual thread: aspetto un posto libero, invio a cloudinary e aggiorno l'utente
+    private void run(Job job, Object source) {
+        try {
+            uploadSlots.acquire();
+            try {
+                job.status = ProfileImageUploadDTO.UPLOADING;
+                String imageUrl = source instanceof File spooled
+                        ? cloudinaryService.uploadImage(spooled)
+                        : cloudinaryService.uploadImage((byte[]) source);
+                userService.updateProfileImage(job.userId, imageUrl);
+                job.imageUrl = imageUrl;
+                job.status = ProfileImageUploadDTO.COMPLETED;
+            } finally {
+                uploadSlots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, "caricamento interrotto");
+        } catch (Exception e) {
+            log.warn("Caricamento dell'immagine profilo {} dell'utente {} fallito", job.id, job.userId, e);
+            fail(job, e.getMessage());
+        } finally {
+            job.completedAt = LocalDateTime.now();
+            pending.decrementAndGet();
+            if (source instanceof File spooled && !spooled.delete()) {
+                log.warn("Impossibile cancellare il file temporaneo {}", spooled);
+            }
+        }
+    }
+
+    private static void fail(Job job, String error) {
+        job.error = error;
+        job.status = ProfileImageUploadDTO.FAILED;
+    }
+
+    private static ProfileImageUploadDTO toDTO(Job job) {
+        return new ProfileImageUploadDTO(job.id, job.userId, job.status, job.imageUrl, job.error, job.submittedAt,
+                job.completedAt, "/api/users/" + job.userId + "/profile-image/uploads/" + job.id);
+    }
+}
@@ -0,0 +1,114 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.entity_rev.RefreshToken;
+import aiman.projectbackend.exception_rev.UnauthorizedException;
+import aiman.projectbackend.repository_rev.RefreshTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Qui gestisco i refresh token con rotazione
+ *
+ * Funzionamento:
+ * 1) Al login creo un token casuale (256 bit) e salvo nel db solo il suo hash, con una nuova famiglia
+ * 2) Al refresh il token viene segnato come usato e ne emetto uno nuovo della stessa famiglia: ogni token vale una volta
+ * 3) Un token già usato che torna indietro è stato copiato da qualcuno: revoco tutta la famiglia
+ * 4) Al logout revoco la famiglia del token
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    // Un solo generatore casuale sicuro per tutta l'applicazione (si può usare da più thread)
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlDays;
+
+    // Costruttore che inietta la repository, il template delle transazioni e la durata dei token (con valore di default)
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${jwt.refresh-ttl-days:14}") long ttlDays) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.ttlDays = Math.max(1, ttlDays);
+    }
+
+    // Metodo 1 - nuovo refresh token per un login (nuova famiglia)
+    public String issue(Long userId) {
+        return issue(userId, UUID.randomUUID().toString());
+    }
+
+    // Metodo 2 - consumo il refresh token e ne emetto uno nuovo della stessa famiglia, restituisco id utente e nuovo token
+    public Rotation rotate(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            throw new UnauthorizedException("Refresh token assente");
+        }
+        RefreshToken token = refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .orElseThrow(() -> new UnauthorizedException("Refresh token non valido rifai il login"));
+        LocalDateTime now = LocalDateTime.now();
+        if (token.getRevokedAt() != null || !token.getExpiresAt().isAfter(now)) {
+            throw new UnauthorizedException("Refresh token non valido rifai il login");
+        }
+
+        // Segno come usato ed emetto il nuovo token nella stessa transazione
+        String next = transactionTemplate.execute(status -> {
+            if (refreshTokenRepository.markUsed(token.getId(), now) == 0) {
+                return null;
+            }
+            return issue(token.getUserId(), token.getFamilyId());
+        });
+        if (next == null) {
+            // Già usato (anche da una richiesta concorrente) --> qualcuno ha copiato il token, revoco tutta la famiglia
+            int revoked = refreshTokenRepository.revokeFamily(token.getFamilyId(), now);
+            log.warn("Riuso del refresh token dell'utente {}: revocati {} token della famiglia {}",
+                    token.getUserId(), revoked, token.getFamilyId());
+            throw new UnauthorizedException("Refresh token già usato rifai il login");
+        }
+        return new Rotation(token.getUserId(), next);
+    }
+
+    // Metodo 3 - logout: revoco tutta la famiglia del token (se esiste)
+    public void revoke(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return;
+        }
+        refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId(), LocalDateTime.now()));
+    }
+
+    // Risultato della rotazione: di chi è il token e il nuovo refresh token da restituire
+    public record Rotation(Long userId, String refreshToken) {}
+
+    private String issue(Long userId, String familyId) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String raw = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        refreshTokenRepository.save(new RefreshToken(userId, hash(raw), familyId, LocalDateTime.now().plusDays(ttlDays)));
+        return raw;
+    }
+
+    // Hash SHA-256 del token in Base64 (44 caratteri), è quello che salvo nel db
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 è sempre presente nella JVM
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.util_rev.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Qui tengo in memoria un filtro di Bloom delle email e degli username già registrati, così la registrazione scarta i
+ * doppioni prima di calcolare l'hash della password e la maggior parte delle registrazioni nuove non fa nessuna query
+ *
+ * Funzionamento:
+ * 1) Ogni email (e ogni username, in un BloomFilter separato) accende 7 bit. Se anche uno solo dei bit è spento il valore
+ * sicuramente non è registrato, quindi non serve controllare il db
+ * 2) Se tutti i bit sono accesi il valore è probabilmente registrato (o è un raro falso positivo): UserService lo
+ * conferma con una query esatta sul db
+ * 3) All'avvio leggo email e username dal db (a blocchi, con il cursore) e ad ogni salvataggio aggiungo i nuovi
+ * 4) Un filtro di Bloom non può togliere valori: le cancellazioni le conto e, quando sono troppe rispetto ai valori
+ * presenti (o il filtro è vecchio), lo ricostruisco dal db. Nel frattempo un utente cancellato è solo un falso positivo
+ * in più, cioè una query di conferma
+ *
+ * Con più istanze dell'applicazione un utente registrato su un'altra istanza arriva qui alla ricostruzione successiva:
+ * fino ad allora il vincolo unique del db resta l'ultima difesa
+ */
+@Component
+public class RegistrationBloomFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistrationBloomFilter.class);
+
+    private static final String LOAD_SQL = "SELECT email, username FROM users";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM users";
+
+    // Filtri di email e username, sostituiti insieme ad ogni ricostruzione
+    private record Snapshot(BloomFilter emails, BloomFilter usernames, long createdAtMillis) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int expectedEntries;
+    private final long maxAgeMillis;
+
+    private volatile Snapshot snapshot;
+    // Filtro in costruzione: i salvataggi fatti durante la lettura del db finiscono anche qui, così non vanno persi
+    private volatile Snapshot building;
+    // Falso finchè il primo caricamento non è finito: fino ad allora ogni valore va confermato con il db
+    private volatile boolean ready;
+
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong removedSinceRebuild = new AtomicLong();
+
+    // Costruttore: JdbcTemplate dedicato con la fetch size (il driver legge gli utenti a blocchi), template per le
+    // transazioni in sola lettura (postgres usa il cursore solo con l'autocommit disattivato) e i parametri del filtro
+    public RegistrationBloomFilter(DataSource dataSource,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${auth.registration-filter.expected-entries:100000}") int expectedEntries,
+                                   @Value("${auth.registration-filter.max-age-hours:24}") long maxAgeHours) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(1000);
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.expectedEntries = Math.max(1024, expectedEntries);
+        this.maxAgeMillis = Math.max(1, maxAgeHours) * 3_600_000L;
+        this.snapshot = newSnapshot(this.expectedEntries);
+    }
+
+    // All'avvio carico email e username dal db
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild();
+    }
+
+    // Controllo periodico: ricostruisco se le cancellazioni sono più del 10% dei valori o se il filtro è troppo vecchio
+    @Scheduled(fixedDelayString = "${auth.registration-filter.check-interval-ms:60000}",
+            initialDelayString = "${auth.registration-filter.check-interval-ms:60000}")
+    public void rebuildIfStale() {
+        boolean tooManyRemoved = removedSinceRebuild.get() > entries.get() / 10;
+        boolean tooOld = System.currentTimeMillis() - snapshot.createdAtMillis() > maxAgeMillis;
+        if (tooManyRemoved || tooOld) {
+            rebuild();
+        }
+    }
+
+    // Metodo 1 - ricostruisco i filtri leggendo tutte le email e gli username dal db
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+        // Il filtro è dimensionato per il doppio degli utenti attuali, così resta preciso anche se crescono
+        Snapshot rebuilt = newSnapshot((int) Math.min(Integer.MAX_VALUE / BloomFilter.BITS_PER_ENTRY,
+                Math.max(expectedEntries, (count != null ? count : 0) * 2)));
+        long removedBefore = removedSinceRebuild.get();
+        building = rebuilt;
+        long[] loaded = {0};
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(LOAD_SQL, rs -> {
+                addTo(rebuilt, rs.getString(1), rs.getString(2));
+                loaded[0]++;
+            }));
+            snapshot = rebuilt;
+            ready = true;
+        } finally {
+            building = null;
+        }
+        entries.set(loaded[0]);
+        removedSinceRebuild.addAndGet(-removedBefore);
+        log.info("Filtro delle registrazioni ricostruito: {} utenti in {} ms",
+                loaded[0], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Metodo 2 - l'email potrebbe essere registrata? false --> sicuramente no, nessuna query necessaria
+    public boolean mightContainEmail(String email) {
+        return !ready || email == null || snapshot.emails().mightContain(email);
+    }
+
+    // Metodo 3 - lo username potrebbe essere registrato? false --> sicuramente no, nessuna query necessaria
+    public boolean mightContainUsername(String username) {
+        return !ready || username == null || snapshot.usernames().mightContain(username);
+    }
+
+    // Metodo 4 - un utente è stato salvato: aggiungo email e username (anche al filtro in costruzione, se c'è)
+    public void added(String email, String username) {
+        addTo(snapshot, email, username);
+        Snapshot next = building;
+        if (next != null) {
+            addTo(next, email, username);
+        }
+        entries.incrementAndGet();
+    }
+
+    // Metodo 5 - sono stati cancellati degli utenti: i loro bit restano accesi, li conto per decidere quando ricostruire
+    public void removed(long count) {
+        removedSinceRebuild.addAndGet(count);
+    }
+
+    private static void addTo(Snapshot target, String email, String username) {
+        if (email != null) {
+            target.emails().add(email);
+        }
+        if (username != null) {
+            target.usernames().add(username);
+        }
+    }
+
+    private static Snapshot newSnapshot(int entries) {
+        return new Snapshot(new BloomFilter(entries), new BloomFilter(entries), System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,554 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.DailySalesDTO;
+import aiman.projectbackend.dto_rev.OrderEventDTO;
+import aiman.projectbackend.dto_rev.SalesStatDTO;
+import aiman.projectbackend.entity_rev.Category;
+import aiman.projectbackend.entity_rev.OrderEventType;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.entity_rev.Product;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.repository_rev.CategoryRepository;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.service_rev.event_rev.OrderEventConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Qui tengo in memoria le statistiche di vendita già aggregate (incasso giornaliero, vendite per prodotto e per categoria),
+ * così i report della direzione non fanno GROUP BY su orders e order_items mentre i clienti stanno comprando
+ *
+ * Come sono organizzati i dati:
+ * 1) Una finestra circolare di N giorni (analytics.window-days), ogni giorno occupa uno "slot" = epochDay % N, quando
+ * arriva un giorno nuovo lo slot del giorno uscito dalla finestra viene azzerato e riusato
+ * 2) Per ogni slot ho array di primitivi (long/double) indicizzati per prodotto e per categoria, gli id del db vengono
+ * tradotti in un indice compatto con una mappa id --> indice
+ * 3) Un ReadWriteLock protegge tutto: le letture dei report possono andare in parallelo, gli aggiornamenti sono brevi
+ *
+ * Come vengono riempiti:
+ * 1) All'avvio scansiono in parallelo gli ordini della finestra, a blocchi di id
+ * 2) Poi ricevo gli eventi degli ordini dalla outbox (sono un OrderEventConsumer): ogni ordine creato viene aggiunto,
+ * e ogni ordine annullato viene tolto
+ * 3) La scansione legge una sola fotografia del db (transazione REPEATABLE READ, condivisa dai thread paralleli con
+ * pg_export_snapshot). Un evento è scritto nella stessa transazione del suo ordine, quindi gli eventi visibili nella
+ * fotografia sono esattamente quelli degli ordini già letti: li ignoro (evito di contarli due volte), tutti gli altri li
+ * applico. Non uso "id evento <= ultimo id": con la sequenza a blocchi e i commit fuori ordine un evento con id più
+ * basso può arrivare dopo la scansione senza esserne compreso
+ *
+ * Il costo di un report dipende dai giorni richiesti e dal numero di prodotti/categorie, non dal numero di ordini storici
+ *
+ * Con più istanze dell'applicazione ogni evento viene consegnato a una sola istanza, quindi le statistiche sono complete
+ * solo sull'istanza che ha il dispatcher attivo (outbox.dispatcher.enabled, vedi OrderEventDispatcher): i report vanno
+ * chiesti a quella
+ */
+@Service
+public class SalesAnalyticsService implements OrderEventConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesAnalyticsService.class);
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Esporto la fotografia della transazione di ricostruzione, così i thread della scansione leggono la stessa
+    private static final String EXPORT_SNAPSHOT_SQL = "SELECT pg_export_snapshot()";
+    // Eventi già scritti nella fotografia ma non ancora consegnati: arriveranno dopo, ma i loro ordini sono già letti
+    private static final String UNDISPATCHED_SQL = "SELECT id FROM order_outbox WHERE dispatched_at IS NULL";
+    // Quali degli eventi arrivati durante la ricostruzione sono visibili nella fotografia
+    private static final String VISIBLE_EVENTS_SQL = "SELECT id FROM order_outbox WHERE id = ANY(?)";
+
+    private final OrderRepository orderRepository;
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+    private final int windowDays;
+    private final int parallelism;
+    private final int chunkSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Evito due ricostruzioni nello stesso momento
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    // STATO PROTETTO DAL LOCK
+    // Giorno (epochDay) contenuto in ogni slot, -1 se lo slot è vuoto
+    private final long[] slotDay;
+    private final long[] dailyOrders;
+    private final double[] dailyRevenue;
+    // [slot][indice prodotto] e [slot][indice categoria]
+    private final long[][] productUnits;
+    private final double[][] productRevenue;
+    private final long[][] categoryUnits;
+    private final double[][] categoryRevenue;
+    // Traduzione id del db --> indice compatto negli array (e viceversa)
+    private final Map<Long, Integer> productIndex = new HashMap<>();
+    private long[] productIds = new long[INITIAL_CAPACITY];
+    private final Map<Long, Integer> categoryIndex = new HashMap<>();
+    private long[] categoryIds = new long[INITIAL_CAPACITY];
+    // Durante la ricostruzione gli eventi arrivati vengono messi da parte e applicati alla fine
+    private boolean building = false;
+    // Eventi outbox già compresi nella scansione del db e non ancora consegnati al momento della scansione
+    private Set<Long> coveredEvents = Set.of();
+    private final List<PendingUpdate> pending = new ArrayList<>();
+
+    // Costruttore che inietta le repository, JdbcTemplate e il template per le transazioni (la scansione usa transazioni
+    // REPEATABLE READ in sola lettura) e i parametri (con valori di default)
+    public SalesAnalyticsService(OrderRepository orderRepository,
+                                 ProductRepository productRepository,
+                                 CategoryRepository categoryRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${analytics.window-days:90}") int windowDays,
+                                 @Value("${analytics.build.parallelism:4}") int parallelism,
+                                 @Value("${analytics.build.chunk-size:5000}") int chunkSize) {
+        this.orderRepository = orderRepository;
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTransaction.setReadOnly(true);
+        this.windowDays = Math.max(1, windowDays);
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(1, chunkSize);
+
+        this.slotDay = new long[this.windowDays];
+        Arrays.fill(slotDay, -1);
+        this.dailyOrders = new long[this.windowDays];
+        this.dailyRevenue = new double[this.windowDays];
+        this.productUnits = new long[this.windowDays][INITIAL_CAPACITY];
+        this.productRevenue = new double[this.windowDays][INITIAL_CAPACITY];
+        this.categoryUnits = new long[this.windowDays][INITIAL_CAPACITY];
+        this.categoryRevenue = new double[this.windowDays][INITIAL_CAPACITY];
+    }
+
+    private record PendingUpdate(OrderEventDTO event, int sign) {}
+
+    // AGGIORNAMENTI INCREMENTALI (eventi dalla outbox)
+
+    @Override
+    public String name() {
+        return "sales-analytics";
+    }
+
+    // Metodo 1 - ordine creato --> aggiungo, ordine annullato --> tolgo, gli altri cambi di status non cambiano le vendite
+    @Override
+    public void onEvent(OrderEventDTO event) {
+        if (event.getEventType() == OrderEventType.ORDER_PLACED) {
+            apply(event, 1);
+        } else if (event.getEventType() == OrderEventType.ORDER_STATUS_CHANGED
+                && event.getNewStatus() == OrderStatus.CANCELLED
+                && event.getOldStatus() != OrderStatus.CANCELLED) {
+            apply(event, -1);
+        }
+    }
+
+    private void apply(OrderEventDTO event, int sign) {
+        lock.writeLock().lock();
+        try {
+            if (building) {
+                pending.add(new PendingUpdate(event, sign));
+                return;
+            }
+            if (event.getEventId() != null && coveredEvents.contains(event.getEventId())) {
+                return;
+            }
+            applyLocked(event, sign);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyLocked(OrderEventDTO event, int sign) {
+        // Ordine senza data o fuori dalla finestra, non mi interessa
+        if (event.getOrderDate() == null) {
+            return;
+        }
+        int slot = writableSlot(event.getOrderDate().toLocalDate().toEpochDay());
+        if (slot < 0) {
+            return;
+        }
+        dailyOrders[slot] += sign;
+        dailyRevenue[slot] += sign * (event.getTotalAmount() != null ? event.getTotalAmount() : 0);
+        for (OrderEventDTO.OrderEventLineDTO line : event.getLines()) {
+            if (line.getProductId() == null) {
+                continue;
+            }
+            double lineRevenue = line.getQuantity() * line.getPriceAtPurchase();
+            int p = productSlot(line.getProductId());
+            productUnits[slot][p] += (long) sign * line.getQuantity();
+            productRevenue[slot][p] += sign * lineRevenue;
+            if (line.getCategoryId() != null) {
+                int c = categorySlot(line.getCategoryId());
+                categoryUnits[slot][c] += (long) sign * line.getQuantity();
+                categoryRevenue[slot][c] += sign * lineRevenue;
+            }
+        }
+    }
+
+    // COSTRUZIONE ALL'AVVIO (scansione parallela)
+
+    // Metodo 3 - all'avvio dell'applicazione riempio le statistiche con gli ordini della finestra
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    // Metodo 4 - ricostruisco da zero le statistiche leggendo gli ordini della finestra dal db
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new ValidationException(List.of("ricostruzione delle statistiche di vendita già in corso"));
+        }
+        long start = System.nanoTime();
+        LocalDateTime since = LocalDate.now().minusDays(windowDays - 1L).atStartOfDay();
+        try {
+            // Azzero tutto e da qui in poi metto da parte gli eventi in arrivo
+            lock.writeLock().lock();
+            try {
+                resetLocked();
+                building = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // Tutto quello che segue vede la stessa fotografia del db
+            snapshotTransaction.executeWithoutResult(status -> {
+                String snapshotId = jdbcTemplate.queryForObject(EXPORT_SNAPSHOT_SQL, String.class);
+                Set<Long> undispatched = new HashSet<>(jdbcTemplate.queryForList(UNDISPATCHED_SQL, Long.class));
+                Object[] range = orderRepository.findIdRangeSince(since).get(0);
+                if (range[0] != null) {
+                    scanInParallel(((Number) range[0]).longValue(), ((Number) range[1]).longValue(), since, snapshotId);
+                }
+                // Chiudo la ricostruzione dentro la transazione, così posso ancora chiedere alla fotografia quali degli
+                // eventi messi da parte erano già compresi nella scansione
+                finishBuild(undispatched, true);
+            });
+            log.info("Statistiche di vendita costruite in {} ms (finestra di {} giorni)",
+                    (System.nanoTime() - start) / 1_000_000, windowDays);
+        } finally {
+            // Se la scansione è fallita applico comunque gli eventi messi da parte (le statistiche restano parziali)
+            finishBuild(Set.of(), false);
+            rebuilding.set(false);
+        }
+    }
+
+    private void scanInParallel(long minId, long maxId, LocalDateTime since, String snapshotId) {
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(parallelism)) {
+            for (long from = minId; from <= maxId; from += chunkSize) {
+                long fromId = from;
+                long toId = Math.min(maxId, from + chunkSize - 1);
+                futures.add(pool.submit(() -> {
+                    // Ogni blocco nella sua transazione, ma sulla fotografia della ricostruzione (deve essere la prima
+                    // istruzione della transazione; l'id arriva da postgres, non dall'utente)
+                    List<Object[]> rows = snapshotTransaction.execute(status -> {
+                        jdbcTemplate.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+                        return orderRepository.findSalesRowsInRange(fromId, toId, since);
+                    });
+                    // La query gira in parallelo, l'applicazione al blocco di memoria è breve e sotto lock
+                    lock.writeLock().lock();
+                    try {
+                        applyRowsLocked(rows);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("costruzione delle statistiche di vendita interrotta", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("costruzione delle statistiche di vendita fallita: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Le righe arrivano ordinate per id ordine, quindi conto l'ordine solo alla prima riga che lo riguarda
+    private void applyRowsLocked(List<Object[]> rows) {
+        long currentOrder = -1;
+        int slot = -1;
+        for (Object[] row : rows) {
+            long orderId = ((Number) row[0]).longValue();
+            if (orderId != currentOrder) {
+                currentOrder = orderId;
+                slot = writableSlot(toLocalDateTime(row[1]).toLocalDate().toEpochDay());
+                if (slot >= 0) {
+                    dailyOrders[slot]++;
+                    dailyRevenue[slot] += row[2] != null ? ((Number) row[2]).doubleValue() : 0;
+                }
+            }
+            // Ordine fuori finestra o senza righe (LEFT JOIN con colonne null)
+            if (slot < 0 || row[3] == null) {
+                continue;
+            }
+            int quantity = row[5] != null ? ((Number) row[5]).intValue() : 0;
+            double lineRevenue = quantity * (row[6] != null ? ((Number) row[6]).doubleValue() : 0);
+            int p = productSlot(((Number) row[3]).longValue());
+            productUnits[slot][p] += quantity;
+            productRevenue[slot][p] += lineRevenue;
+            if (row[4] != null) {
+                int c = categorySlot(((Number) row[4]).longValue());
+                categoryUnits[slot][c] += quantity;
+                categoryRevenue[slot][c] += lineRevenue;
+            }
+        }
+    }
+
+    // Applico gli eventi messi da parte, saltando quelli già compresi nella scansione (visibili nella fotografia)
+    // inSnapshot --> sono ancora nella transazione della fotografia e posso chiederle quali eventi vedeva
+    private void finishBuild(Set<Long> undispatched, boolean inSnapshot) {
+        lock.writeLock().lock();
+        try {
+            if (!building) {
+                return;
+            }
+            Set<Long> visible = inSnapshot ? visibleInSnapshot(pending) : Set.of();
+            for (PendingUpdate update : pending) {
+                Long eventId = update.event().getEventId();
+                if (eventId != null && visible.contains(eventId)) {
+                    continue;
+                }
+                applyLocked(update.event(), update.sign());
+            }
+            pending.clear();
+            coveredEvents = undispatched;
+            building = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Id degli eventi messi da parte che la fotografia vedeva già (una sola query con l'array degli id)
+    private Set<Long> visibleInSnapshot(List<PendingUpdate> updates) {
+        Object[] ids = updates.stream().map(update -> update.event().getEventId()).filter(Objects::nonNull).toArray();
+        if (ids.length == 0) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.query(VISIBLE_EVENTS_SQL, ps -> {
+            Array array = ps.getConnection().createArrayOf("bigint", ids);
+            ps.setArray(1, array);
+        }, (rs, rowNum) -> rs.getLong(1)));
+    }
+
+    private void resetLocked() {
+        Arrays.fill(slotDay, -1);
+        Arrays.fill(dailyOrders, 0);
+        Arrays.fill(dailyRevenue, 0);
+        for (int s = 0; s < windowDays; s++) {
+            Arrays.fill(productUnits[s], 0);
+            Arrays.fill(productRevenue[s], 0);
+            Arrays.fill(categoryUnits[s], 0);
+            Arrays.fill(categoryRevenue[s], 0);
+        }
+        pending.clear();
+    }
+
+    // REPORT
+
+    // Metodo 5 - incasso e numero di ordini per ogni giorno tra from e to (compresi)
+    public List<DailySalesDTO> getDailySales(LocalDate from, LocalDate to) {
+        LocalDate today = LocalDate.now();
+        LocalDate windowStart = today.minusDays(windowDays - 1L);
+        LocalDate start = from != null ? from : windowStart;
+        LocalDate end = to != null ? to : today;
+        if (start.isAfter(end)) {
+            throw new ValidationException(List.of("la data from deve essere precedente o uguale a to"));
+        }
+        // Fuori dalla finestra non ho dati, quindi taglio l'intervallo
+        if (start.isBefore(windowStart)) {
+            start = windowStart;
+        }
+        if (end.isAfter(today)) {
+            end = today;
+        }
+
+        List<DailySalesDTO> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                int slot = readableSlot(day.toEpochDay());
+                result.add(slot >= 0
+                        ? new DailySalesDTO(day, dailyOrders[slot], dailyRevenue[slot])
+                        : new DailySalesDTO(day, 0, 0));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // Metodo 6 - i prodotti più venduti (per incasso) negli ultimi "days" giorni
+    public List<SalesStatDTO> getTopProducts(int days, int limit) {
+        validateDays(days);
+        int top = Math.max(1, Math.min(limit, 100));
+        List<SalesStatDTO> stats;
+        lock.readLock().lock();
+        try {
+            stats = sumLastDays(days, productIndex.size(), productIds, productUnits, productRevenue);
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Ordino per incasso e tengo solo i primi, poi recupero i nomi solo di quelli (al massimo "top" righe dal db)
+        stats.sort(Comparator.comparingDouble(SalesStatDTO::getRevenue).reversed());
+        List<SalesStatDTO> result = new ArrayList<>(stats.subList(0, Math.min(top, stats.size())));
+        if (!result.isEmpty()) {
+            Map<Long, String> names = new HashMap<>();
+            for (Product product : productRepository.findAllById(idsOf(result))) {
+                names.put(product.getId(), product.getName());
+            }
+            result.forEach(stat -> stat.setName(names.get(stat.getId())));
+        }
+        return result;
+    }
+
+    // Metodo 7 - vendite per categoria negli ultimi "days" giorni, dalla più venduta
+    public List<SalesStatDTO> getCategorySales(int days) {
+        validateDays(days);
+        List<SalesStatDTO> stats;
+        lock.readLock().lock();
+        try {
+            stats = sumLastDays(days, categoryIndex.size(), categoryIds, categoryUnits, categoryRevenue);
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.sort(Comparator.comparingDouble(SalesStatDTO::getRevenue).reversed());
+        if (!stats.isEmpty()) {
+            Map<Long, String> names = new HashMap<>();
+            for (Category category : categoryRepository.findAllById(idsOf(stats))) {
+                names.put(category.getId(), category.getName());
+            }
+            stats.forEach(stat -> stat.setName(names.get(stat.getId())));
+        }
+        return stats;
+    }
+
+    // Sommo gli slot degli ultimi giorni in due array temporanei e restituisco solo le voci con vendite
+    private List<SalesStatDTO> sumLastDays(int days, int size, long[] ids, long[][] units, double[][] revenue) {
+        long[] totalUnits = new long[size];
+        double[] totalRevenue = new double[size];
+        long today = LocalDate.now().toEpochDay();
+        for (long day = today - days + 1; day <= today; day++) {
+            int slot = readableSlot(day);
+            if (slot < 0) {
+                continue;
+            }
+            long[] slotUnits = units[slot];
+            double[] slotRevenue = revenue[slot];
+            for (int i = 0; i < size; i++) {
+                totalUnits[i] += slotUnits[i];
+                totalRevenue[i] += slotRevenue[i];
+            }
+        }
+        List<SalesStatDTO> stats = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (totalUnits[i] != 0 || totalRevenue[i] != 0) {
+                stats.add(new SalesStatDTO(ids[i], null, totalUnits[i], totalRevenue[i]));
+            }
+        }
+        return stats;
+    }
+
+    private static List<Long> idsOf(List<SalesStatDTO> stats) {
+        return stats.stream().map(SalesStatDTO::getId).toList();
+    }
+
+    private void validateDays(int days) {
+        if (days < 1 || days > windowDays) {
+            throw new ValidationException(List.of("days deve essere compreso tra 1 e " + windowDays));
+        }
+    }
+
+    // GESTIONE DEGLI SLOT E DEGLI INDICI (da chiamare sotto lock)
+
+    // Slot in cui scrivere il giorno indicato, se lo slot contiene un giorno vecchio lo azzero, -1 se fuori finestra
+    private int writableSlot(long epochDay) {
+        long today = LocalDate.now().toEpochDay();
+        if (epochDay <= today - windowDays || epochDay > today) {
+            return -1;
+        }
+        int slot = (int) Math.floorMod(epochDay, (long) windowDays);
+        if (slotDay[slot] != epochDay) {
+            dailyOrders[slot] = 0;
+            dailyRevenue[slot] = 0;
+            Arrays.fill(productUnits[slot], 0);
+            Arrays.fill(productRevenue[slot], 0);
+            Arrays.fill(categoryUnits[slot], 0);
+            Arrays.fill(categoryRevenue[slot], 0);
+            slotDay[slot] = epochDay;
+        }
+        return slot;
+    }
+
+    // Slot da cui leggere il giorno indicato, -1 se non ho dati per quel giorno
+    private int readableSlot(long epochDay) {
+        int slot = (int) Math.floorMod(epochDay, (long) windowDays);
+        return slotDay[slot] == epochDay ? slot : -1;
+    }
+
+    // Indice compatto del prodotto, se è nuovo lo registro e se serve allargo le colonne
+    private int productSlot(long productId) {
+        Integer index = productIndex.get(productId);
+        if (index != null) {
+            return index;
+        }
+        int next = productIndex.size();
+        if (next == productIds.length) {
+            int capacity = productIds.length * 2;
+            productIds = Arrays.copyOf(productIds, capacity);
+            for (int s = 0; s < windowDays; s++) {
+                productUnits[s] = Arrays.copyOf(productUnits[s], capacity);
+                productRevenue[s] = Arrays.copyOf(productRevenue[s], capacity);
+            }
+        }
+        productIds[next] = productId;
+        productIndex.put(productId, next);
+        return next;
+    }
+
+    // Indice compatto della categoria, stessa logica dei prodotti
+    private int categorySlot(long categoryId) {
+        Integer index = categoryIndex.get(categoryId);
+        if (index != null) {
+            return index;
+        }
+        int next = categoryIndex.size();
+        if (next == categoryIds.length) {
+            int capacity = categoryIds.length * 2;
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            for (int s = 0; s < windowDays; s++) {
+                categoryUnits[s] = Arrays.copyOf(categoryUnits[s], capacity);
+                categoryRevenue[s] = Arrays.copyOf(categoryRevenue[s], capacity);
+            }
+        }
+        categoryIds[next] = categoryId;
+        categoryIndex.put(categoryId, next);
+        return next;
+    }
+
+    // Il driver restituisce le date delle query native come Timestamp
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+}
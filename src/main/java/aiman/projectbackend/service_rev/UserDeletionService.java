@@ -0,0 +1,180 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.UserDeletionDTO;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.entity_rev.Role;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.security_rev.UserPrincipalCache;
+import aiman.projectbackend.security_rev.UserTokenVersions;
+import aiman.projectbackend.service_rev.archive_rev.OrderArchiveStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Qui gestisco la cancellazione degli utenti con tutti i loro dati (ordini, righe, indirizzo, spesa aggregata, carrello
+ * salvato, refresh token)
+ *
+ * Rispetto a deleteAll / deleteById di JPA, che con CascadeType.ALL caricano in memoria ogni utente, indirizzo, ordine e
+ * riga e li cancellano uno alla volta:
+ * 1) Gli utenti da cancellare li prendo a blocchi di id (users.delete.user-chunk-size, in ordine di id)
+ * 2) Per ogni blocco di utenti cancello gli ordini a blocchi di id (users.delete.order-chunk-size): prima le righe poi gli
+ * ordini, con un DELETE ... WHERE ... IN (...) per tabella, ogni blocco nella sua transazione breve
+ * 3) Poi, in una transazione, cancello gli eventuali ordini arrivati nel frattempo e le altre tabelle collegate nell'ordine
+ * delle foreign key (indirizzi, spesa, carrello, refresh token) e infine gli utenti
+ *
+ * Così la memoria usata non dipende da quanti utenti e ordini ci sono e il db non resta bloccato da una transazione enorme.
+ * Se la cancellazione si interrompe a metà, gli ordini già cancellati restano cancellati e l'utente esiste ancora:
+ * basta ripetere la richiesta.
+ * 4) Gli ordini già spostati nell'archivio su file non sono nel db: dopo il commit scrivo gli id degli utenti cancellati
+ * nel file degli utenti cancellati dell'archivio (OrderArchiveStore.markUsersDeleted) e i loro ordini archiviati non
+ * vengono più letti, anche dalle altre istanze che condividono la cartella dell'archivio
+ */
+@Service
+public class UserDeletionService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDeletionService.class);
+
+    // Avanzamento della cancellazione in corso, aggiornato blocco per blocco
+    private static final class Progress {
+        long users;
+        long orders;
+        int blocks;
+    }
+
+    private final UserRepository userRepository;
+    private final OrderRepository orderRepository;
+    private final OrderStatusCounter orderStatusCounter;
+    private final UserPrincipalCache userPrincipalCache;
+    private final UserTokenVersions userTokenVersions;
+    private final RegistrationBloomFilter registrationBloomFilter;
+    private final OrderArchiveStore orderArchiveStore;
+    private final TransactionTemplate transactionTemplate;
+    private final int userChunkSize;
+    private final int orderChunkSize;
+
+    // Costruttore che inietta repository, contatori, la cache e le versioni dei token degli utenti autenticati, il filtro delle registrazioni,
+    // l'archivio degli ordini, il template per le transazioni e la dimensione dei blocchi (con valori di default)
+    public UserDeletionService(UserRepository userRepository,
+                               OrderRepository orderRepository,
+                               OrderStatusCounter orderStatusCounter,
+                               UserPrincipalCache userPrincipalCache,
+                               UserTokenVersions userTokenVersions,
+                               RegistrationBloomFilter registrationBloomFilter,
+                               OrderArchiveStore orderArchiveStore,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${users.delete.user-chunk-size:500}") int userChunkSize,
+                               @Value("${users.delete.order-chunk-size:1000}") int orderChunkSize) {
+        this.userRepository = userRepository;
+        this.orderRepository = orderRepository;
+        this.orderStatusCounter = orderStatusCounter;
+        this.userPrincipalCache = userPrincipalCache;
+        this.userTokenVersions = userTokenVersions;
+        this.registrationBloomFilter = registrationBloomFilter;
+        this.orderArchiveStore = orderArchiveStore;
+        this.transactionTemplate = transactionTemplate;
+        this.userChunkSize = Math.max(1, userChunkSize);
+        this.orderChunkSize = Math.max(1, orderChunkSize);
+    }
+
+    // Metodo 1 - logica di business --> cancello un utente con tutti i suoi dati, restituisco quanti ordini aveva
+    public long deleteUser(Long id) {
+        Progress progress = new Progress();
+        deleteBlock(List.of(id), progress);
+        return progress.orders;
+    }
+
+    // Metodo 2 - logica di business --> cancello tutti gli utenti che rispettano i filtri (null = nessun filtro)
+    public UserDeletionDTO deleteUsers(Role role, LocalDateTime registeredBefore) {
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        // Cursore sull'id: anche se un blocco lascia qualche utente (es. ordini arrivati durante la cancellazione) il giro
+        // successivo va comunque avanti
+        long afterId = 0L;
+        List<Long> ids;
+        while (!(ids = userRepository.findIdsToDelete(role, registeredBefore, afterId,
+                PageRequest.of(0, userChunkSize))).isEmpty()) {
+            afterId = ids.get(ids.size() - 1);
+            deleteBlock(ids, progress);
+        }
+
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        if (progress.users > 0) {
+            log.info("Cancellati {} utenti e {} ordini in {} blocchi ({} ms)",
+                    progress.users, progress.orders, progress.blocks, durationMs);
+        }
+        return new UserDeletionDTO(progress.users, progress.orders, progress.blocks, durationMs);
+    }
+
+    // Cancello un blocco di utenti: prima i loro ordini a blocchi, poi il resto in una transazione
+    private void deleteBlock(List<Long> userIds, Progress progress) {
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> deleteOrderChunk(userIds, progress)))) {
+            progress.blocks++;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            // Ordini creati mentre cancellavo i precedenti (di solito nessuno, quindi solo la SELECT)
+            while (deleteOrderChunk(userIds, progress)) {
+                // continuo finché ce ne sono
+            }
+            userRepository.deleteAddressesByUserIds(userIds);
+            userRepository.deleteSpendingByUserIds(userIds);
+            userRepository.deleteCartsByUserIds(userIds);
+            userRepository.deleteRefreshTokensByUserIds(userIds);
+            int deleted = userRepository.deleteUsersByIds(userIds);
+            progress.users += deleted;
+            // Tolgo gli utenti dalla cache solo dopo il commit, così i token già emessi per loro non valgono più, conto le
+            // cancellazioni nel filtro delle registrazioni (lo ricostruisce quando sono troppe) e nascondo i loro ordini
+            // archiviati (prima del commit no: con un rollback gli utenti esisterebbero ancora)
+            OrderService.afterCommit(() -> {
+                userIds.forEach(id -> {
+                    userTokenVersions.remove(id);
+                    userPrincipalCache.invalidate(id);
+                });
+                registrationBloomFilter.removed(deleted);
+                purgeArchive(userIds);
+            });
+        });
+        progress.blocks++;
+    }
+
+    // Lapide nell'archivio per gli utenti cancellati, se fallisce lo scrivo nel log con gli id (non posso più annullare
+    // la cancellazione nel db, ma ripetere la richiesta non trova più questi utenti)
+    private void purgeArchive(List<Long> userIds) {
+        try {
+            orderArchiveStore.markUsersDeleted(userIds);
+        } catch (IOException e) {
+            log.error("Ordini archiviati degli utenti cancellati {} non nascosti: {}", userIds, e.getMessage());
+        }
+    }
+
+    // Cancello il prossimo blocco di ordini degli utenti (prima le righe, poi gli ordini), false se non ce ne sono più
+    private boolean deleteOrderChunk(List<Long> userIds, Progress progress) {
+        List<Long> orderIds = orderRepository.findIdsByUserIds(userIds, orderChunkSize);
+        if (orderIds.isEmpty()) {
+            return false;
+        }
+        Map<OrderStatus, Long> countByStatus = new EnumMap<>(OrderStatus.class);
+        for (Object[] row : orderRepository.countByStatusForIds(orderIds)) {
+            if (row[0] != null) {
+                countByStatus.put(OrderStatus.valueOf((String) row[0]), ((Number) row[1]).longValue());
+            }
+        }
+        orderRepository.deleteItemsByOrderIds(orderIds);
+        orderRepository.deleteOrdersByIds(orderIds);
+        progress.orders += orderIds.size();
+        // Gli ordini cancellati escono anche dai contatori per status (solo dopo il commit)
+        OrderService.afterCommit(() -> countByStatus.forEach((orderStatus, count) ->
+                orderStatusCounter.add(orderStatus, -count)));
+        return true;
+    }
+}
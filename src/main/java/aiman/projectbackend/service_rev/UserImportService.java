@@ -0,0 +1,465 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.config_rev.SequenceBlocks;
+import aiman.projectbackend.dto_rev.UserImportReportDTO;
+import aiman.projectbackend.entity_rev.Address;
+import aiman.projectbackend.entity_rev.Role;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.security_rev.UserTokenVersions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Qui gestisco l'importazione massiva degli utenti da file CSV o NDJSON (POST /api/users/import)
+ *
+ * Rispetto a N chiamate a saveUser:
+ * 1) Il file viene letto riga per riga e lavorato a blocchi di import.chunk-size righe, quindi in memoria c'è solo un
+ * blocco alla volta (più le email e gli username già visti, per trovare i doppioni dentro al file)
+ * 2) Email e username già registrati li controllo con 2 query per blocco (WHERE ... IN (...)), non 1 per riga
+ * 3) L'hashing delle password (la parte più lenta) gira in parallelo su un ForkJoinPool dedicato, grande quanto i core
+ * (import.hash-parallelism), separato dal pool del login così l'importazione non rallenta gli accessi degli utenti
+ * 4) Utenti e indirizzi vengono salvati con JDBC batch, gli id li prendo in blocco dalle sequenze delle entità;
+ * ogni blocco è una transazione
+ *
+ * Le righe con errori (dati non validi, doppioni nel file o già registrati) vengono scartate con il numero di riga e il
+ * motivo, le altre vengono create. Alla fine restituisco il riepilogo con righe al secondo
+ *
+ * Formato CSV: prima riga con i nomi delle colonne (username, email, password, firstName, lastName e facoltative street,
+ * city, zipCode), separatore virgola, valori tra doppi apici se contengono virgole
+ * Formato NDJSON: un oggetto JSON per riga con gli stessi campi (l'indirizzo anche come oggetto "address")
+ */
+@Service
+public class UserImportService {
+
+    public enum Format { CSV, NDJSON }
+
+    // Quante righe per ogni invio del batch JDBC
+    private static final int BATCH_SIZE = 100;
+
+    private static final List<String> REQUIRED_COLUMNS = List.of("username", "email", "password", "firstName", "lastName");
+    private static final List<String> ADDRESS_COLUMNS = List.of("street", "city", "zipCode");
+
+    private static final String EXISTING_EMAILS_SQL = "SELECT email FROM users WHERE email IN (:values)";
+
+    private static final String EXISTING_USERNAMES_SQL = "SELECT username FROM users WHERE username IN (:values)";
+
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO users (id, username, password, email, first_name, last_name, registration_date, role, token_version) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_ADDRESS_SQL =
+            "INSERT INTO addresses (id, street, city, zip_code, user_id) VALUES (?, ?, ?, ?, ?)";
+
+    // Una riga del file: i dati letti, gli errori trovati e, se valida, l'hash della password e l'id assegnato
+    private static final class ImportRow {
+        final long line;
+        final Map<String, String> values;
+        final List<String> errors = new ArrayList<>();
+        String passwordHash;
+        long userId;
+
+        ImportRow(long line, Map<String, String> values) {
+            this.line = line;
+            this.values = values;
+        }
+
+        String get(String column) {
+            return values.get(column);
+        }
+
+        boolean hasAddress() {
+            return ADDRESS_COLUMNS.stream().anyMatch(column -> values.get(column) != null);
+        }
+    }
+
+    // Contatori e righe scartate dell'importazione in corso
+    private final class Report {
+        long total;
+        long created;
+        long rejected;
+        final List<UserImportReportDTO.RowError> errors = new ArrayList<>();
+
+        void reject(ImportRow row) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new UserImportReportDTO.RowError(row.line, List.copyOf(row.errors)));
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final RegistrationBloomFilter registrationBloomFilter;
+    private final UserTokenVersions userTokenVersions;
+    private final SequenceBlocks sequenceBlocks;
+    private final ForkJoinPool hashPool;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+
+    // Costruttore che inietta gli strumenti JDBC / transazioni, l'encoder delle password, il validatore delle entità, il
+    // filtro delle registrazioni, le versioni dei token, gli id dalle sequenze e i parametri dell'importazione (con valori di default), import.hash-parallelism = 0 --> tanti thread quanti i core
+    public UserImportService(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             PasswordEncoder passwordEncoder,
+                             Validator validator,
+                             ObjectMapper objectMapper,
+                             RegistrationBloomFilter registrationBloomFilter,
+                             UserTokenVersions userTokenVersions,
+                             SequenceBlocks sequenceBlocks,
+                             @Value("${import.hash-parallelism:0}") int hashParallelism,
+                             @Value("${import.chunk-size:500}") int chunkSize,
+                             @Value("${import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.registrationBloomFilter = registrationBloomFilter;
+        this.userTokenVersions = userTokenVersions;
+        this.sequenceBlocks = sequenceBlocks;
+        this.hashPool = new ForkJoinPool(hashParallelism > 0 ? hashParallelism : Runtime.getRuntime().availableProcessors());
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxReportedErrors = Math.max(0, maxReportedErrors);
+    }
+
+    // Allo spegnimento dell'applicazione fermo i thread dell'hashing
+    @PreDestroy
+    public void shutdown() {
+        hashPool.shutdownNow();
+    }
+
+    // Metodo 1 - controllo il formato prima di leggere il file
+    public Format validate(String format) {
+        try {
+            return Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(List.of("formato non supportato: " + format + " (ammessi: csv, ndjson)"));
+        }
+    }
+
+    // Metodo 2 - logica di business --> leggo il file a blocchi, creo gli utenti validi e restituisco il riepilogo
+    public UserImportReportDTO importUsers(Format format, InputStream in) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        Report report = new Report();
+        // Email e username già presenti nel file: il primo vince, i successivi sono doppioni
+        Set<String> seenEmails = new HashSet<>();
+        Set<String> seenUsernames = new HashSet<>();
+
+        // CSV: la prima riga indica l'ordine delle colonne
+        long lineNumber = 0;
+        List<String> header = null;
+        if (format == Format.CSV) {
+            String first = reader.readLine();
+            lineNumber++;
+            if (first == null) {
+                throw new ValidationException(List.of("il file è vuoto"));
+            }
+            header = readHeader(first);
+        }
+
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            report.total++;
+            ImportRow row = format == Format.CSV ? parseCsvRow(lineNumber, line, header) : parseJsonRow(lineNumber, line);
+            if (row.errors.isEmpty()) {
+                validateRow(row);
+            }
+            if (row.errors.isEmpty()) {
+                if (!seenEmails.add(row.get("email"))) {
+                    row.errors.add("email duplicata nel file: " + row.get("email"));
+                }
+                if (!seenUsernames.add(row.get("username"))) {
+                    row.errors.add("username duplicato nel file: " + row.get("username"));
+                }
+            }
+            if (!row.errors.isEmpty()) {
+                report.reject(row);
+                continue;
+            }
+            chunk.add(row);
+            if (chunk.size() == chunkSize) {
+                processChunk(chunk, report);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, report);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        double rowsPerSecond = elapsedNanos > 0 ? report.total * 1_000_000_000.0 / elapsedNanos : 0;
+        return new UserImportReportDTO(report.total, report.created, report.rejected, elapsedNanos / 1_000_000,
+                Math.round(rowsPerSecond * 10) / 10.0, report.rejected > report.errors.size(), report.errors);
+    }
+
+    // Blocco di righe valide: scarto quelle già registrate, calcolo gli hash in parallelo e salvo il resto
+    private void processChunk(List<ImportRow> rows, Report report) {
+        rejectExisting(rows, report);
+        if (rows.isEmpty()) {
+            return;
+        }
+        hashPasswords(rows);
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(rows));
+        } catch (DuplicateKeyException e) {
+            // Qualcuno si è registrato con la stessa email o username mentre importavo questo blocco (la transazione è
+            // stata annullata): ricontrollo e riprovo una volta con le righe rimaste
+            rejectExisting(rows, report);
+            if (rows.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> persist(rows));
+            } catch (DuplicateKeyException again) {
+                for (ImportRow row : rows) {
+                    row.errors.add("email o username registrati da un altro utente durante l'importazione");
+                    report.reject(row);
+                }
+                return;
+            }
+        }
+        report.created += rows.size();
+    }
+
+    // Due query per blocco (email e username) invece di una per riga, tolgo dal blocco le righe già registrate
+    private void rejectExisting(List<ImportRow> rows, Report report) {
+        Set<String> emails = existing(EXISTING_EMAILS_SQL, rows.stream().map(row -> row.get("email")).toList());
+        Set<String> usernames = existing(EXISTING_USERNAMES_SQL, rows.stream().map(row -> row.get("username")).toList());
+        rows.removeIf(row -> {
+            if (emails.contains(row.get("email"))) {
+                row.errors.add("email già registrata: " + row.get("email"));
+            }
+            if (usernames.contains(row.get("username"))) {
+                row.errors.add("username già registrato: " + row.get("username"));
+            }
+            if (row.errors.isEmpty()) {
+                return false;
+            }
+            report.reject(row);
+            return true;
+        });
+    }
+
+    private Set<String> existing(String sql, List<String> values) {
+        return new HashSet<>(namedJdbcTemplate.queryForList(sql, Map.of("values", values), String.class));
+    }
+
+    // Un task per password sul pool dedicato, poi aspetto che siano finiti tutti (il pool ha tanti thread quanti i core)
+    private void hashPasswords(List<ImportRow> rows) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            tasks.add(hashPool.submit(() -> row.passwordHash = passwordEncoder.encode(row.get("password"))));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    // Scrivo utenti e indirizzi con JDBC batch (gira dentro la transazione)
+    private void persist(List<ImportRow> rows) {
+        List<Long> userIds = sequenceBlocks.nextIds("users_seq", rows.size());
+        List<ImportRow> withAddress = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).userId = userIds.get(i);
+            if (rows.get(i).hasAddress()) {
+                withAddress.add(rows.get(i));
+            }
+        }
+        Timestamp registrationDate = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_USER_SQL, rows, BATCH_SIZE, (ps, row) -> {
+            ps.setLong(1, row.userId);
+            ps.setString(2, row.get("username"));
+            ps.setString(3, row.passwordHash);
+            ps.setString(4, row.get("email"));
+            ps.setString(5, row.get("firstName"));
+            ps.setString(6, row.get("lastName"));
+            ps.setTimestamp(7, registrationDate);
+            ps.setString(8, Role.USER.name());
+        });
+
+        List<Long> addressIds = sequenceBlocks.nextIds("addresses_seq", withAddress.size());
+        Iterator<Long> addressId = addressIds.iterator();
+        jdbcTemplate.batchUpdate(INSERT_ADDRESS_SQL, withAddress, BATCH_SIZE, (ps, row) -> {
+            ps.setLong(1, addressId.next());
+            ps.setString(2, row.get("street"));
+            ps.setString(3, row.get("city"));
+            ps.setString(4, row.get("zipCode"));
+            ps.setLong(5, row.userId);
+        });
+
+        // Email e username dei nuovi utenti entrano nel filtro delle registrazioni dopo il commit, e da allora i loro
+        // token sono validi (versione 0)
+        OrderService.afterCommit(() -> rows.forEach(row -> {
+            registrationBloomFilter.added(row.get("email"), row.get("username"));
+            userTokenVersions.register(row.userId, 0L);
+        }));
+    }
+
+    // Stessi vincoli dell'entità (@NotBlank, @Size, @Email) controllati con il validatore, senza passare da JPA
+    private void validateRow(ImportRow row) {
+        User user = new User();
+        user.setUsername(row.get("username"));
+        user.setEmail(row.get("email"));
+        user.setPassword(row.get("password"));
+        user.setFirstName(row.get("firstName"));
+        user.setLastName(row.get("lastName"));
+        addViolations(row, validator.validate(user));
+        // L'indirizzo è facoltativo, ma se c'è deve essere completo
+        if (row.hasAddress()) {
+            Address address = new Address();
+            address.setStreet(row.get("street"));
+            address.setCity(row.get("city"));
+            address.setZipCode(row.get("zipCode"));
+            addViolations(row, validator.validate(address));
+        }
+    }
+
+    private static <T> void addViolations(ImportRow row, Set<ConstraintViolation<T>> violations) {
+        violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .forEach(row.errors::add);
+    }
+
+    // Colonne del CSV in ordine, controllo che ci siano tutte quelle obbligatorie
+    private static List<String> readHeader(String line) {
+        List<String> header = new ArrayList<>();
+        for (String column : splitCsv(stripBom(line))) {
+            header.add(column == null ? "" : column.trim());
+        }
+        List<String> missing = REQUIRED_COLUMNS.stream().filter(column -> !header.contains(column)).toList();
+        if (!missing.isEmpty()) {
+            throw new ValidationException(List.of("colonne mancanti nell'intestazione del CSV: " + String.join(", ", missing)));
+        }
+        return header;
+    }
+
+    private static ImportRow parseCsvRow(long lineNumber, String line, List<String> header) {
+        List<String> fields = splitCsv(line);
+        Map<String, String> values = new HashMap<>();
+        ImportRow row = new ImportRow(lineNumber, values);
+        if (fields == null) {
+            row.errors.add("riga CSV non valida: doppi apici non chiusi");
+            return row;
+        }
+        if (fields.size() != header.size()) {
+            row.errors.add("riga CSV non valida: " + fields.size() + " colonne invece di " + header.size());
+            return row;
+        }
+        for (int i = 0; i < header.size(); i++) {
+            values.put(header.get(i), clean(fields.get(i)));
+        }
+        return row;
+    }
+
+    private ImportRow parseJsonRow(long lineNumber, String line) {
+        Map<String, String> values = new HashMap<>();
+        ImportRow row = new ImportRow(lineNumber, values);
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            row.errors.add("riga JSON non valida: " + e.getOriginalMessage());
+            return row;
+        }
+        if (node == null || !node.isObject()) {
+            row.errors.add("riga JSON non valida: è richiesto un oggetto");
+            return row;
+        }
+        for (String column : REQUIRED_COLUMNS) {
+            values.put(column, text(node, column));
+        }
+        // L'indirizzo può essere nei campi di primo livello oppure nell'oggetto "address" (come nel JSON dell'utente)
+        JsonNode address = node.path("address").isObject() ? node.path("address") : node;
+        for (String column : ADDRESS_COLUMNS) {
+            values.put(column, text(address, column));
+        }
+        return row;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && value.isValueNode() && !value.isNull() ? clean(value.asText()) : null;
+    }
+
+    // Valori vuoti --> null, così le annotazioni @NotBlank danno il messaggio giusto e l'indirizzo risulta assente
+    private static String clean(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+
+    // Divido una riga CSV sulle virgole, rispettando i valori tra doppi apici ("" dentro gli apici = un doppio apice)
+    // Restituisco null se gli apici non sono chiusi (valori su più righe non sono supportati)
+    // Package-private per il test
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
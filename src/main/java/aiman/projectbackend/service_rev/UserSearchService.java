@@ -0,0 +1,92 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.AddressDTO;
+import aiman.projectbackend.dto_rev.UserDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Qui gestisco la lista degli utenti con il loro indirizzo (GET /api/users e GET /api/users/page)
+ *
+ * Come nella ricerca degli ordini (OrderSearchService) costruisco la WHERE con le sole condizioni indicate, invece di una
+ * query fissa con "(:q IS NULL OR ...)": con la condizione fissa postgres prepara un solo piano per tutti i casi e una
+ * ricerca selettiva finiva per scorrere tutta la chiave primaria (ORDER BY id) filtrando riga per riga
+ * 1) nessuna ricerca --> chiave primaria da afterId in poi, si ferma dopo "limit" righe
+ * 2) ricerca per inizio di email o username --> indici idx_users_email_prefix e idx_users_username_prefix su
+ * lower(...) text_pattern_ops (SearchIndexMigration), uniti con un BitmapOr e poi ordinati per id
+ * La query è JPQL con proiezione: una sola istruzione per pagina, l'indirizzo arriva nella stessa riga (LEFT JOIN)
+ */
+@Service
+public class UserSearchService {
+
+    private final EntityManager entityManager;
+
+    // Costruttore che inietta l'EntityManager (le query JPQL costruite a runtime)
+    public UserSearchService(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    // Metodo 1 - logica di business --> utenti con id dopo afterId (null = dall'inizio) il cui email o username inizia
+    // con q (null o vuoto = tutti), al massimo limit (null = senza limite)
+    public List<UserDTO> findPage(String q, Long afterId, Integer limit) {
+        SearchQuery query = buildQuery(q, afterId);
+        TypedQuery<Object[]> typed = entityManager.createQuery(query.jpql(), Object[].class);
+        query.params().forEach(typed::setParameter);
+        if (limit != null) {
+            typed.setMaxResults(limit);
+        }
+        return typed.getResultList().stream().map(UserSearchService::rowToDTO).toList();
+    }
+
+    // La query di una pagina: testo JPQL e parametri
+    private record SearchQuery(String jpql, Map<String, Object> params) {}
+
+    // Costruisco la query con le sole condizioni indicate
+    private SearchQuery buildQuery(String q, Long afterId) {
+        StringBuilder jpql = new StringBuilder(
+                "SELECT u.id, u.username, u.email, u.firstName, u.lastName, u.registrationDate, u.profileImageUrl, " +
+                "a.id, a.street, a.city, a.zipCode " +
+                "FROM User u LEFT JOIN u.address a " +
+                "WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+
+        if (afterId != null) {
+            // Paginazione keyset sull'id dell'ultimo utente della pagina precedente
+            jpql.append(" AND u.id > :afterId");
+            params.put("afterId", afterId);
+        }
+        if (q != null && !q.isBlank()) {
+            // Inizio di email o username senza distinguere maiuscole e minuscole (% e _ del testo cercato non sono jolly)
+            jpql.append(" AND (LOWER(u.email) LIKE :q ESCAPE '\\' OR LOWER(u.username) LIKE :q ESCAPE '\\')");
+            params.put("q", q.trim().toLowerCase(Locale.ROOT)
+                    .replace("\\", "\\\\")
+                    .replace("%", "\\%")
+                    .replace("_", "\\_") + "%");
+        }
+        jpql.append(" ORDER BY u.id");
+        return new SearchQuery(jpql.toString(), params);
+    }
+
+    // Conversione di una riga della query nel dto (indirizzo null se l'utente non ce l'ha)
+    private static UserDTO rowToDTO(Object[] row) {
+        AddressDTO addressDto = row[7] == null ? null
+                : new AddressDTO((Long) row[7], (String) row[8], (String) row[9], (String) row[10]);
+        return new UserDTO(
+                (Long) row[0],
+                (String) row[1],
+                (String) row[2],
+                (String) row[3],
+                (String) row[4],
+                (LocalDateTime) row[5],
+                (String) row[6],
+                addressDto
+        );
+    }
+}
@@ -1,16 +1,22 @@
 package aiman.projectbackend.service_rev;
 
 import aiman.projectbackend.dto_rev.AddressDTO;
+import aiman.projectbackend.dto_rev.PrincipalCacheStatsDTO;
 import aiman.projectbackend.dto_rev.UserDTO;
+import aiman.projectbackend.dto_rev.UserDeletionDTO;
 import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.exception_rev.ValidationException;
 import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.security_rev.PasswordHasher;
+import aiman.projectbackend.security_rev.UserPrincipalCache;
+import aiman.projectbackend.security_rev.UserTokenVersions;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import aiman.projectbackend.entity_rev.Role;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /** BREVE TEORIA DEL SERVICE
  * DEF: Nel service ho la mia logica di business, quindi qui mostro come deve funzionare la mia applicazione back-end
@@ -29,27 +35,52 @@ public class UserService {
     // inizializzate non cambiano più "final"
     private final UserRepository userRepository;
 
-    private final PasswordEncoder passwordEncoder;
+    // Dimensione massima di una pagina di utenti
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final PasswordHasher passwordHasher;
+
+    private final UserPrincipalCache userPrincipalCache;
+
+    private final UserTokenVersions userTokenVersions;
+
+    private final UserDeletionService userDeletionService;
+
+    private final RegistrationBloomFilter registrationBloomFilter;
+
+    private final UserSearchService userSearchService;
 
     // Costruttore che inietta le repository, quindi spring crea le istanze delle repository e le inietta nel mio servizio
-    // Passwordencoder (configurato in securityconfig) mi serve per hashare la password prima di salvarlo in db
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    // PasswordHasher mi serve per hashare la password prima di salvarlo in db (sul pool dedicato, non sul thread della richiesta)
+    // UserPrincipalCache tiene in memoria gli utenti autenticati, la invalido ad ogni modifica dell'utente
+    // UserTokenVersions tiene in memoria utenti esistenti e versione dei token, la aggiorno ad ogni modifica che li riguarda
+    // UserDeletionService cancella gli utenti e i loro dati a blocchi, senza caricare le entità
+    // RegistrationBloomFilter mi dice senza query se email e username sono sicuramente liberi
+    // UserSearchService costruisce la query della lista utenti con le sole condizioni indicate
+    public UserService(UserRepository userRepository, PasswordHasher passwordHasher, UserPrincipalCache userPrincipalCache,
+                       UserTokenVersions userTokenVersions, UserDeletionService userDeletionService, RegistrationBloomFilter registrationBloomFilter,
+                       UserSearchService userSearchService) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
+        this.userPrincipalCache = userPrincipalCache;
+        this.userTokenVersions = userTokenVersions;
+        this.userDeletionService = userDeletionService;
+        this.registrationBloomFilter = registrationBloomFilter;
+        this.userSearchService = userSearchService;
     }
-    // Metodo 1 - logica di business --> recupero tutti gli utenti e li converto in DTO
+    // Metodo 1 - logica di business --> recupero tutti gli utenti già convertiti in DTO
     public List<UserDTO> getAllUsers() {
-        /** Recapone:
-         * fidAll() --> recupero tutti i prodotti nel db
-         * stream() --> converto questa lista in uno stream per elaborarli
-         * map(this::convertToDTO) --> prende lo user e lo passi come argomento a convertToDTO, map(user -> this.convertToDTO(user))
-         * collect(Collectors.toList()) --> prendo l'output e lo metto in una lista
-         */
-        return userRepository
-                .findAll()
-                .stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        // findPage(null, null, null) --> tutti gli utenti con il loro indirizzo in una sola query (prima findAll() + una
+        // SELECT dell'indirizzo per ogni utente)
+        return userSearchService.findPage(null, null, null);
+    }
+
+    // Metodo 1b - logica di business --> pagina di utenti (keyset sull'id) con ricerca per inizio di email o username
+    public List<UserDTO> getUsersPage(String q, Long afterId, int size) {
+        // Limito la dimensione della pagina tra 1 e MAX_PAGE_SIZE
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // La posizione la decide il cursore keyset (afterId), la ricerca è per inizio di email o username
+        return userSearchService.findPage(q, afterId, pageSize);
     }
 
     // Metodo 2 - logica di business --> salvo l'utente creato
@@ -58,10 +89,15 @@ public class UserService {
         if (user.getRegistrationDate() == null) {
             user.setRegistrationDate(LocalDateTime.now());
         }
+        // Email o username già registrati? Lo scopro prima di calcolare l'hash (il filtro evita quasi sempre la query)
+        checkNotRegistered(user);
         // Qui avviene hashing della password in chairo prima di fare il save nel db
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        // Salviamo il dato nel db attraverso la repo
-        User savedUser = userRepository.save(user);
+        user.setPassword(passwordHasher.encode(user.getPassword()));
+        // Salviamo il dato nel db attraverso la repo (e aggiungo email e username al filtro delle registrazioni)
+        User savedUser = saveNew(user);
+        // Da ora i token di questo utente sono validi e tolgo l'eventuale voce vecchia dalla cache degli utenti autenticati
+        userTokenVersions.register(savedUser.getId(), savedUser.getTokenVersion());
+        userPrincipalCache.invalidate(savedUser.getId());
         // Ritorno il dto dell'utente salvato
         return convertToDTO(savedUser);
     }
@@ -74,10 +110,15 @@ public class UserService {
         if (user.getRegistrationDate() == null) {
             user.setRegistrationDate(LocalDateTime.now());
         }
+        // Email o username già registrati? Lo scopro prima di calcolare l'hash (il filtro evita quasi sempre la query)
+        checkNotRegistered(user);
         // Qui avviene hashing della password in chairo prima di fare il save nel db
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        // Salviamo il dato nel db attraverso la repo
-        User savedUser = userRepository.save(user);
+        user.setPassword(passwordHasher.encode(user.getPassword()));
+        // Salviamo il dato nel db attraverso la repo (e aggiungo email e username al filtro delle registrazioni)
+        User savedUser = saveNew(user);
+        // Da ora i token di questo utente sono validi e tolgo l'eventuale voce vecchia dalla cache degli utenti autenticati
+        userTokenVersions.register(savedUser.getId(), savedUser.getTokenVersion());
+        userPrincipalCache.invalidate(savedUser.getId());
         // Ritorno il dto dell'utente salvato
         return convertToDTO(savedUser);
     }
@@ -90,10 +131,15 @@ public class UserService {
         if (user.getRegistrationDate() == null) {
             user.setRegistrationDate(LocalDateTime.now());
         }
+        // Email o username già registrati? Lo scopro prima di calcolare l'hash (il filtro evita quasi sempre la query)
+        checkNotRegistered(user);
         // Qui avviene hashing della password in chairo prima di fare il save nel db
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        // Salviamo il dato nel db attraverso la repo
-        User savedUser = userRepository.save(user);
+        user.setPassword(passwordHasher.encode(user.getPassword()));
+        // Salviamo il dato nel db attraverso la repo (e aggiungo email e username al filtro delle registrazioni)
+        User savedUser = saveNew(user);
+        // Da ora i token di questo utente sono validi e tolgo l'eventuale voce vecchia dalla cache degli utenti autenticati
+        userTokenVersions.register(savedUser.getId(), savedUser.getTokenVersion());
+        userPrincipalCache.invalidate(savedUser.getId());
         // Ritorno il dto dell'utente salvato
         return convertToDTO(savedUser);
     }
@@ -107,6 +153,8 @@ public class UserService {
         user.setProfileImageUrl(imageUrl);
         // Aggiorno il db cercando l'utente (facendo update visto che aggiorno un campo e non tutti)
         User updatedUser = userRepository.save(user);
+        // Tolgo la voce dalla cache degli utenti autenticati
+        userPrincipalCache.invalidate(updatedUser.getId());
         // Ritorno il dto dell'utente aggiornato
         return convertToDTO(updatedUser);
     }
@@ -125,14 +173,50 @@ public class UserService {
         if (!userRepository.existsById(id)) {
             throw new RuntimeException("utente con id " + id + " non è stato trovato, perciò fallimento dell'eliminazione dell'utente");
         }
-        // Cancello l'utente con quel id nel db
-        userRepository.deleteById(id);
+        // Cancello l'utente con quel id nel db insieme ai suoi dati (ordini a blocchi, poi indirizzo, spesa, carrello e
+        // token), senza caricare le entità; la voce nella cache la toglie il servizio dopo il commit
+        userDeletionService.deleteUser(id);
     }
 
     // Metodo 8 - logica di business --> cancella tutti gli utenti (può servire sia come logica di business in cui si vuole pulire il db
     // , ma anche per velocizzare i test durante la creazione degli utenti)
     public void deleteAllUsers() {
-        userRepository.deleteAll();
+        // Prima deleteAll() caricava in memoria tutti gli utenti con indirizzi, ordini e righe e li cancellava uno alla volta
+        userDeletionService.deleteUsers(null, null);
+        userTokenVersions.clear();
+        userPrincipalCache.invalidateAll();
+    }
+
+    // Metodo 8a - logica di business --> cancella gli utenti filtrati per ruolo e/o data di registrazione, senza filtri
+    // solo se viene chiesto esplicitamente (all = true), così una richiesta incompleta non svuota la tabella
+    public UserDeletionDTO deleteUsers(Role role, LocalDateTime registeredBefore, boolean all) {
+        if (role == null && registeredBefore == null && !all) {
+            throw new ValidationException(List.of("indicare almeno un filtro (role, registeredBefore) oppure all=true"));
+        }
+        return userDeletionService.deleteUsers(role, registeredBefore);
+    }
+
+    // Metodo 8b - logica di business --> cambio il ruolo dell'utente e revoco i token già emessi (contengono il ruolo vecchio)
+    public UserDTO updateRole(Long id, Role role) {
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("utente con id " + id + " non è stato trovato"));
+        user.setRole(role);
+        // Versione + 1 --> i token con la versione precedente vengono rifiutati dal filtro, l'utente deve rifare il login
+        user.setTokenVersion((user.getTokenVersion() != null ? user.getTokenVersion() : 0L) + 1);
+        User updatedUser = userRepository.save(user);
+        userTokenVersions.register(updatedUser.getId(), updatedUser.getTokenVersion());
+        userPrincipalCache.invalidate(updatedUser.getId());
+        return convertToDTO(updatedUser);
+    }
+
+    // Metodo 8c - logica di business --> salvo il nuovo hash della password (ricalcolato al login con l'algoritmo o il costo attuale)
+    public void updatePasswordHash(Long id, String encodedPassword) {
+        userRepository.updatePassword(id, encodedPassword);
+    }
+
+    // Metodo 8d - statistiche della cache degli utenti autenticati
+    public PrincipalCacheStatsDTO getPrincipalCacheStats() {
+        return userPrincipalCache.getStats();
     }
 
     // Metodo 9 e 10 - logica di business --> questi metodi servono a AutheService per accedere ai ruoili e password criptate da verificare in login
@@ -146,6 +230,39 @@ public class UserService {
     }
 
     // Metodo 11 - logica di business --> conversione utente entity nel suo dto (privato perchè lo uso solo qui dentro il metodo)
+    // Email e username devono essere liberi: se il filtro dice "sicuramente libero" non faccio nessuna query, se dice
+    // "forse registrato" lo confermo con il db. Un utente con id è un aggiornamento, non lo controllo
+    private void checkNotRegistered(User user) {
+        if (user.getId() != null) {
+            return;
+        }
+        List<String> errors = new ArrayList<>();
+        if (registrationBloomFilter.mightContainEmail(user.getEmail()) && userRepository.existsByEmail(user.getEmail())) {
+            errors.add("email già registrata: " + user.getEmail());
+        }
+        if (registrationBloomFilter.mightContainUsername(user.getUsername())
+                && userRepository.existsByUsername(user.getUsername())) {
+            errors.add("username già registrato: " + user.getUsername());
+        }
+        if (!errors.isEmpty()) {
+            throw new ValidationException(errors);
+        }
+    }
+
+    // Salvo il nuovo utente e lo aggiungo al filtro delle registrazioni
+    private User saveNew(User user) {
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // Registrato nel frattempo da un'altra richiesta (o da un'altra istanza): il vincolo unique del db resta la
+            // difesa finale
+            throw new ValidationException(List.of("email o username già registrati"));
+        }
+        registrationBloomFilter.added(savedUser.getEmail(), savedUser.getUsername());
+        return savedUser;
+    }
+
     private UserDTO convertToDTO(User user) {
         // inizializzo address visto che update lo faccio dopo quando l'utente lo aggiorna
         AddressDTO addressDto = null;
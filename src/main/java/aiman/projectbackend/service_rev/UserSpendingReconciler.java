@@ -0,0 +1,218 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.SpendingReconciliationDTO;
+import aiman.projectbackend.entity_rev.UserSpending;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.repository_rev.UserSpendingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Qui ricalcolo periodicamente la spesa degli utenti partendo dagli ordini e la confronto con la tabella user_spending.
+ * In condizioni normali non trovo differenze, se le trovo (drift) vuol dire che qualcuno ha modificato gli ordini senza
+ * passare dal service (es: a mano su pgadmin), quindi le segnalo nel resoconto e correggo la riga
+ *
+ * Come funziona:
+ * 1) Divido gli id utente in blocchi di dimensione fissa
+ * 2) Ogni blocco viene elaborato da un thread diverso, ognuno nella sua transazione (una GROUP BY sugli ordini del blocco
+ * + lettura delle righe aggregate del blocco)
+ * 3) Per ogni utente con differenze blocco la riga aggregata e la ricalcolo, così non perdo ordini creati nel frattempo
+ */
+@Service
+public class UserSpendingReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSpendingReconciler.class);
+
+    // Quanti id con drift riporto al massimo nel resoconto
+    private static final int MAX_SAMPLE = 20;
+    // Differenza minima sul totale per considerarlo sbagliato (arrotondamenti dei double)
+    private static final double TOLERANCE = 0.005;
+
+    private final UserSpendingRepository userSpendingRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+
+    // Evito che due riconciliazioni (quella pianificata e quella chiesta dall'admin) girino insieme
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile SpendingReconciliationDTO lastReport;
+
+    // Costruttore che inietta la repository, il template per le transazioni programmatiche e i parametri (con valori di default)
+    public UserSpendingReconciler(UserSpendingRepository userSpendingRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${spending.reconcile.chunk-size:1000}") int chunkSize,
+                                  @Value("${spending.reconcile.parallelism:4}") int parallelism) {
+        this.userSpendingRepository = userSpendingRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Metodo 1 - lavoro pianificato --> la prima esecuzione poco dopo l'avvio riempie anche la tabella per gli ordini già esistenti
+    // Nel frattempo la spesa di un utente senza riga viene sommata dagli ordini e il suo primo nuovo ordine crea la riga
+    // completa (OrderService), quindi l'attesa iniziale non dà mai totali sbagliati
+    @Scheduled(initialDelayString = "${spending.reconcile.initial-delay-ms:60000}",
+            fixedDelayString = "${spending.reconcile.interval-ms:21600000}")
+    public void scheduledReconcile() {
+        if (running.get()) {
+            return;
+        }
+        reconcile();
+    }
+
+    // Metodo 2 - logica di business --> eseguo la riconciliazione e restituisco il resoconto
+    public SpendingReconciliationDTO reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            throw new ValidationException(List.of("riconciliazione della spesa utenti già in corso"));
+        }
+        try {
+            return doReconcile();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Metodo 3 - ultimo resoconto disponibile (null se non è ancora stata eseguita)
+    public SpendingReconciliationDTO getLastReport() {
+        return lastReport;
+    }
+
+    private SpendingReconciliationDTO doReconcile() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long start = System.nanoTime();
+
+        // Se non ci sono utenti non ho nulla da controllare
+        Object[] range = userSpendingRepository.findUserIdRange().get(0);
+        if (range[0] == null) {
+            return saveReport(new SpendingReconciliationDTO(startedAt, 0, 0, 0, 0, 0, List.of()));
+        }
+        long minId = ((Number) range[0]).longValue();
+        long maxId = ((Number) range[1]).longValue();
+
+        // Preparo i blocchi [from, to] e li affido al pool di thread
+        List<Future<ChunkResult>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(parallelism)) {
+            for (long from = minId; from <= maxId; from += chunkSize) {
+                long fromId = from;
+                long toId = Math.min(maxId, from + chunkSize - 1);
+                futures.add(pool.submit(() -> transactionTemplate.execute(status -> reconcileChunk(fromId, toId))));
+            }
+
+            // Unisco i risultati dei blocchi
+            long checked = 0;
+            long drifted = 0;
+            double totalDrift = 0;
+            List<Long> sample = new ArrayList<>();
+            for (Future<ChunkResult> future : futures) {
+                ChunkResult result = future.get();
+                checked += result.checked;
+                drifted += result.driftedIds.size();
+                totalDrift += result.drift;
+                for (Long id : result.driftedIds) {
+                    if (sample.size() < MAX_SAMPLE) {
+                        sample.add(id);
+                    }
+                }
+            }
+
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            SpendingReconciliationDTO report = new SpendingReconciliationDTO(
+                    startedAt, durationMs, futures.size(), checked, drifted, totalDrift, sample);
+            if (drifted > 0) {
+                log.warn("Riconciliazione spesa utenti: {} utenti con drift su {} (differenza totale {}), esempi: {}",
+                        drifted, checked, totalDrift, sample);
+            } else {
+                log.info("Riconciliazione spesa utenti: nessun drift su {} utenti in {} ms", checked, durationMs);
+            }
+            return saveReport(report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("riconciliazione della spesa utenti interrotta", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("riconciliazione della spesa utenti fallita: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Elaboro un blocco di utenti (gira dentro la sua transazione)
+    private ChunkResult reconcileChunk(long fromId, long toId) {
+        // Valori attesi calcolati dagli ordini
+        Map<Long, Object[]> expected = new HashMap<>();
+        for (Object[] row : userSpendingRepository.computeExpectedInRange(fromId, toId)) {
+            expected.put(((Number) row[0]).longValue(), row);
+        }
+        // Valori salvati nella tabella aggregata
+        Map<Long, UserSpending> actual = new HashMap<>();
+        for (UserSpending spending : userSpendingRepository.findByUserIdBetween(fromId, toId)) {
+            actual.put(spending.getUserId(), spending);
+        }
+
+        // Unisco gli id delle due parti, un utente può mancare da una delle due
+        Set<Long> userIds = new TreeSet<>(expected.keySet());
+        userIds.addAll(actual.keySet());
+
+        ChunkResult result = new ChunkResult();
+        for (Long userId : userIds) {
+            Object[] exp = expected.get(userId);
+            UserSpending act = actual.get(userId);
+
+            double actTotal = act != null && act.getTotalSpent() != null ? act.getTotalSpent() : 0;
+            long actCount = act != null && act.getOrderCount() != null ? act.getOrderCount() : 0;
+            LocalDateTime actLast = act != null ? act.getLastOrderDate() : null;
+            // La parte archiviata non è più nella tabella orders, quindi la prendo dalla riga stessa
+            double archivedSpent = act != null && act.getArchivedSpent() != null ? act.getArchivedSpent() : 0;
+            long archivedCount = act != null && act.getArchivedCount() != null ? act.getArchivedCount() : 0;
+
+            double expTotal = (exp != null ? ((Number) exp[1]).doubleValue() : 0) + archivedSpent;
+            long expCount = (exp != null ? ((Number) exp[2]).longValue() : 0) + archivedCount;
+            LocalDateTime liveLast = exp != null ? toLocalDateTime(exp[3]) : null;
+            // Se tutti gli ordini sono archiviati la data dell'ultimo ordine resta quella salvata
+            LocalDateTime expLast = liveLast != null || archivedCount == 0 ? liveLast : actLast;
+
+            result.checked++;
+            boolean drift = Math.abs(expTotal - actTotal) > TOLERANCE
+                    || expCount != actCount
+                    || !Objects.equals(expLast, actLast);
+            if (drift) {
+                // Blocco la riga e ricalcolo dagli ordini con i dati aggiornati a questo momento
+                userSpendingRepository.lockRow(userId);
+                userSpendingRepository.recomputeRow(userId);
+                result.driftedIds.add(userId);
+                result.drift += Math.abs(expTotal - actTotal);
+            }
+        }
+        return result;
+    }
+
+    private SpendingReconciliationDTO saveReport(SpendingReconciliationDTO report) {
+        lastReport = report;
+        return report;
+    }
+
+    // Il driver restituisce le date delle query native come Timestamp
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    // Risultato parziale di un blocco
+    private static class ChunkResult {
+        long checked;
+        double drift;
+        List<Long> driftedIds = new ArrayList<>();
+    }
+}
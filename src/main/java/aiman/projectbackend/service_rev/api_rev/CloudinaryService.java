@@ -3,8 +3,8 @@ package aiman.projectbackend.service_rev.api_rev;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 
@@ -31,20 +31,29 @@ public class CloudinaryService {
         this.cloudinary = cloudinary;
     }
 
-    // Metodo 1 - logica di business --> caricamento dell'immagine
+    // Metodo 1 - logica di business --> caricamento dell'immagine salvata su disco
 
     /**
-     * MultipartFile --> file binario che l'utente carica tramite postman, contiene oltre l'immagine anche altri dati
+     * File --> immagine già copiata su disco (vedi ProfileImageUploadService), cloudinary la legge dal file a blocchi
+     * mentre la invia, quindi non serve un array di byte grande quanto tutto il file
      * throws IOException --> per gestire problematiche in caso di caricamento dell'immagine
      */
-    public String uploadImage(MultipartFile file) throws IOException {
+    public String uploadImage(File file) throws IOException {
+        return upload(file);
+    }
+
+    // Metodo 2 - logica di business --> caricamento di un'immagine piccola già in memoria
+    public String uploadImage(byte[] bytes) throws IOException {
+        return upload(bytes);
+    }
+
+    private String upload(Object source) throws IOException {
         /**
-         * cloudinary.uploader().upload() --> qui ho la chiamata API, invio a cloudinary i byte e poi si costruisce l'immagine, lo salva e genera url
-         * file.getBytes() --> il file immagine è trasformato in un array di byte e poi trasmesso a cloduinary
+         * cloudinary.uploader().upload() --> qui ho la chiamata API, invio a cloudinary il file (o i byte) e poi si costruisce l'immagine, lo salva e genera url
          * ObjectUtils.emptyMap() --> qui posso passare opzioni come taglio o ridimensionamento dell'immagine, qui passo una mappa vuota quindi le impostazioni sono default
          */
-        Map uploadResult = cloudinary.uploader().upload(file.getBytes(), ObjectUtils.emptyMap());
+        Map uploadResult = cloudinary.uploader().upload(source, ObjectUtils.emptyMap());
         // Qui faccio un ritorno del url trasformato in stringa che lo salvo nel user
         return uploadResult.get("url").toString();
     }
-}
\ No newline at end of file
+}
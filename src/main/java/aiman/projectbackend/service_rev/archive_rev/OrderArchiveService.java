@@ -0,0 +1,263 @@
+package aiman.projectbackend.service_rev.archive_rev;
+
+import aiman.projectbackend.dto_rev.ArchiveRunDTO;
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import aiman.projectbackend.repository_rev.UserSpendingRepository;
+import aiman.projectbackend.service_rev.OrderService;
+import aiman.projectbackend.service_rev.OrderStatusCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Qui sposto gli ordini vecchi dalla tabella orders all'archivio su file (OrderArchiveStore)
+ *
+ * Funzionamento:
+ * 1) Ogni notte prendo a blocchi gli ordini più vecchi di archive.age-days giorni (in ordine di id)
+ * 2) Scrivo il blocco nell'archivio (già nello stesso formato dello storico ordini) e solo dopo, in una transazione,
+ * cancello ordini e righe dal db e sposto il loro importo nella parte "archiviata" della spesa aggregata dell'utente
+ * 3) Se l'applicazione si ferma tra la scrittura del file e la transazione, al giro successivo gli ordini già presenti
+ * nell'archivio (con lo stesso contenuto) non vengono riscritti ma solo cancellati, quindi non ho né ordini persi né
+ * ordini doppi
+ * 4) Nella transazione di cancellazione rileggo il blocco con FOR UPDATE e lo confronto con quello scritto nel file: un
+ * ordine cambiato nel frattempo (es. cambio di status) non lo cancello e resta per il giro successivo, che lo riscrive
+ * aggiornato (l'archivio restituisce la versione scritta per ultima). Così spesa archiviata e contatori per status
+ * partono sempre dai dati che cancello davvero
+ *
+ * Così la tabella orders (e i suoi indici) contiene solo gli ordini recenti, mentre lo storico completo del cliente
+ * resta disponibile: OrderService legge prima dal db e completa la pagina con l'archivio
+ *
+ * Solo lo storico del cliente legge l'archivio: lista admin, ricerca, filtro per status, conteggi per status, export e
+ * GET /api/orders coprono solo gli ordini nel db (quelli recenti). Con più istanze vedi OrderArchiveStore (cartella
+ * condivisa, una sola istanza che archivia)
+ */
+@Service
+public class OrderArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveService.class);
+
+    private final OrderRepository orderRepository;
+    private final UserSpendingRepository userSpendingRepository;
+    private final OrderStatusCounter orderStatusCounter;
+    private final OrderArchiveStore archiveStore;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int ageDays;
+    private final int batchSize;
+
+    // Evito che due archiviazioni (quella pianificata e quella chiesta dal superadmin) girino insieme
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Costruttore che inietta repository, contatori, archivio su file, il template per le transazioni e i parametri
+    // (con valori di default: l'archiviazione pianificata è spenta finchè non viene abilitata nelle properties)
+    public OrderArchiveService(OrderRepository orderRepository,
+                               UserSpendingRepository userSpendingRepository,
+                               OrderStatusCounter orderStatusCounter,
+                               OrderArchiveStore archiveStore,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${archive.enabled:false}") boolean enabled,
+                               @Value("${archive.age-days:365}") int ageDays,
+                               @Value("${archive.batch-size:500}") int batchSize) {
+        this.orderRepository = orderRepository;
+        this.userSpendingRepository = userSpendingRepository;
+        this.orderStatusCounter = orderStatusCounter;
+        this.archiveStore = archiveStore;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.ageDays = Math.max(1, ageDays);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    // Metodo 1 - lavoro pianificato --> di notte, quando il traffico è basso
+    @Scheduled(cron = "${archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (!enabled || running.get()) {
+            return;
+        }
+        archiveOldOrders();
+    }
+
+    // Metodo 2 - logica di business --> archivio tutti gli ordini più vecchi della data limite e restituisco il resoconto
+    public ArchiveRunDTO archiveOldOrders() {
+        if (!running.compareAndSet(false, true)) {
+            throw new ValidationException(List.of("archiviazione degli ordini già in corso"));
+        }
+        try {
+            LocalDateTime startedAt = LocalDateTime.now();
+            LocalDateTime cutoff = startedAt.minusDays(ageDays);
+            long start = System.nanoTime();
+            long archived = 0;
+            int blocks = 0;
+
+            // Scorro gli id in avanti (keyset): gli ordini saltati in un blocco non li ripropongo nello stesso giro
+            long afterId = 0;
+            List<Long> ids;
+            while (!(ids = orderRepository.findIdsToArchive(cutoff, afterId, batchSize)).isEmpty()) {
+                archived += archiveBatch(ids);
+                blocks++;
+                afterId = ids.get(ids.size() - 1);
+            }
+
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            if (archived > 0) {
+                log.info("Archiviati {} ordini precedenti a {} in {} blocchi ({} ms)", archived, cutoff, blocks, durationMs);
+            }
+            return new ArchiveRunDTO(startedAt, cutoff, archived, blocks, archiveStore.blockCount(), durationMs);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Metodo 3 - storico archiviato dell'utente (stesso cursore keyset dello storico nel db)
+    public List<OrderHistoryDTO> findUserHistory(Long userId, LocalDateTime lastDate, Long lastId, int limit) {
+        try {
+            return archiveStore.findByUser(userId, lastDate, lastId, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("lettura dell'archivio ordini fallita", e);
+        }
+    }
+
+    // Archivio un blocco di ordini: prima il file, poi la cancellazione dal db (solo degli ordini rimasti uguali)
+    private int archiveBatch(List<Long> ids) {
+        List<OrderArchiveStore.ArchivedOrder> orders = loadOrders(orderRepository.findArchiveRows(ids));
+
+        try {
+            // Gli ordini già presenti nell'archivio con lo stesso contenuto (giro precedente interrotto) non li riscrivo,
+            // quelli cambiati dopo la scrittura sì
+            Map<Long, OrderHistoryDTO> alreadyArchived = archiveStore.findArchived(ids);
+            List<OrderArchiveStore.ArchivedOrder> toWrite = new ArrayList<>();
+            for (OrderArchiveStore.ArchivedOrder order : orders) {
+                OrderHistoryDTO previous = alreadyArchived.get(order.order().getId());
+                if (previous == null || !sameOrder(previous, order.order())) {
+                    toWrite.add(order);
+                }
+            }
+            archiveStore.append(toWrite);
+        } catch (IOException e) {
+            // Se la scrittura fallisce non cancello nulla, gli ordini restano nel db
+            throw new UncheckedIOException("scrittura dell'archivio ordini fallita", e);
+        }
+
+        Integer deleted = transactionTemplate.execute(status -> {
+            // Rileggo il blocco bloccando gli ordini: da qui alla fine della transazione nessuno li può cambiare
+            Map<Long, OrderArchiveStore.ArchivedOrder> locked = new HashMap<>();
+            for (OrderArchiveStore.ArchivedOrder current : loadOrders(orderRepository.findArchiveRowsForUpdate(ids))) {
+                locked.put(current.order().getId(), current);
+            }
+            // Cancello solo gli ordini uguali a quelli scritti nel file, gli altri (cambiati o già cancellati) li lascio
+            List<OrderArchiveStore.ArchivedOrder> unchanged = new ArrayList<>();
+            for (OrderArchiveStore.ArchivedOrder written : orders) {
+                OrderArchiveStore.ArchivedOrder current = locked.get(written.order().getId());
+                if (current != null && Objects.equals(current.userId(), written.userId())
+                        && sameOrder(current.order(), written.order())) {
+                    unchanged.add(written);
+                }
+            }
+            if (unchanged.isEmpty()) {
+                return 0;
+            }
+
+            // Spesa archiviata per utente (gli annullati non contano, come nella spesa aggregata) e conteggio per status
+            Map<Long, double[]> spendingByUser = new HashMap<>();
+            Map<OrderStatus, Long> countByStatus = new EnumMap<>(OrderStatus.class);
+            List<Long> unchangedIds = new ArrayList<>(unchanged.size());
+            for (OrderArchiveStore.ArchivedOrder archived : unchanged) {
+                OrderHistoryDTO order = archived.order();
+                unchangedIds.add(order.getId());
+                if (order.getStatus() != null) {
+                    countByStatus.merge(order.getStatus(), 1L, Long::sum);
+                }
+                if (archived.userId() != null && order.getStatus() != OrderStatus.CANCELLED) {
+                    double[] spending = spendingByUser.computeIfAbsent(archived.userId(), id -> new double[2]);
+                    spending[0] += order.getTotalAmount() != null ? order.getTotalAmount() : 0.0;
+                    spending[1]++;
+                }
+            }
+
+            orderRepository.deleteItemsByOrderIds(unchangedIds);
+            orderRepository.deleteOrdersByIds(unchangedIds);
+            spendingByUser.forEach((userId, spending) ->
+                    userSpendingRepository.addArchived(userId, spending[0], (long) spending[1]));
+            // Gli ordini archiviati escono anche dai contatori per status (solo dopo il commit)
+            OrderService.afterCommit(() -> countByStatus.forEach((orderStatus, count) ->
+                    orderStatusCounter.add(orderStatus, -count)));
+            return unchanged.size();
+        });
+
+        int skipped = orders.size() - deleted;
+        if (skipped > 0) {
+            log.info("{} ordini cambiati durante l'archiviazione, restano nel db fino al prossimo giro", skipped);
+        }
+        return deleted;
+    }
+
+    // Stesso ordine con lo stesso contenuto? (dati dell'ordine e righe, nello stesso ordine della query)
+    private static boolean sameOrder(OrderHistoryDTO a, OrderHistoryDTO b) {
+        if (!Objects.equals(a.getId(), b.getId()) || !Objects.equals(a.getOrderDate(), b.getOrderDate())
+                || a.getStatus() != b.getStatus() || !Objects.equals(a.getTotalAmount(), b.getTotalAmount())
+                || !Objects.equals(a.getShippingCost(), b.getShippingCost())
+                || a.getItems().size() != b.getItems().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.getItems().size(); i++) {
+            OrderHistoryDTO.OrderHistoryItemDTO x = a.getItems().get(i);
+            OrderHistoryDTO.OrderHistoryItemDTO y = b.getItems().get(i);
+            if (!Objects.equals(x.getProductId(), y.getProductId()) || !Objects.equals(x.getProductName(), y.getProductName())
+                    || !Objects.equals(x.getQuantity(), y.getQuantity())
+                    || !Objects.equals(x.getPriceAtPurchase(), y.getPriceAtPurchase())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Raggruppo per ordine le righe del blocco (ordini con righe e nome prodotto)
+    private static List<OrderArchiveStore.ArchivedOrder> loadOrders(List<Object[]> rows) {
+        Map<Long, OrderArchiveStore.ArchivedOrder> orders = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            OrderArchiveStore.ArchivedOrder archived = orders.computeIfAbsent(((Number) row[0]).longValue(), id ->
+                    new OrderArchiveStore.ArchivedOrder(
+                            row[1] != null ? ((Number) row[1]).longValue() : null,
+                            new OrderHistoryDTO(
+                                    id,
+                                    toLocalDateTime(row[2]),
+                                    row[3] != null ? OrderStatus.valueOf((String) row[3]) : null,
+                                    toDouble(row[4]),
+                                    toDouble(row[5]))));
+            // Ordine senza righe --> la LEFT JOIN restituisce colonne null
+            if (row[6] != null) {
+                archived.order().getItems().add(new OrderHistoryDTO.OrderHistoryItemDTO(
+                        row[8] != null ? ((Number) row[8]).longValue() : null,
+                        (String) row[9],
+                        ((Number) row[6]).intValue(),
+                        toDouble(row[7])));
+            }
+        }
+        return new ArrayList<>(orders.values());
+    }
+
+    // Metodi di supporto per convertire le colonne della query nativa (il driver restituisce Timestamp e Number)
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    private static Double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
+}
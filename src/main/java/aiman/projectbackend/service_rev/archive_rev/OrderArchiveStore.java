@@ -0,0 +1,475 @@
+package aiman.projectbackend.service_rev.archive_rev;
+
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Qui gestisco i file dell'archivio degli ordini su disco locale
+ *
+ * Formato:
+ * 1) Segmenti "orders-N.seg" solo in aggiunta (append-only): ogni scrittura aggiunge un blocco, ovvero un membro gzip
+ * che contiene un ordine per riga in JSON (NDJSON). Più membri gzip uno dopo l'altro sono ancora un file gzip valido
+ * 2) Un indice "orders.idx" (anche lui solo in aggiunta), una riga per blocco: segmento, posizione, lunghezza, id minimo e
+ * massimo, data minima e massima e gli utenti presenti nel blocco. È un indice "sparso": non punta al singolo ordine ma
+ * al blocco, poi il blocco viene letto e filtrato
+ * 3) All'avvio l'indice viene caricato in memoria, con una mappa utente --> blocchi
+ * 4) Prima di ogni lettura controllo se l'indice su disco è cresciuto e leggo solo le righe nuove
+ * 5) Utenti cancellati: un file "deleted-users.idx" (solo in aggiunta) con un id utente per riga. I loro ordini non
+ * vengono più restituiti e i loro blocchi escono dalla mappa utente --> blocchi. Gli id utente vengono dalla sequenza e
+ * non vengono mai riusati, quindi la lapide (tombstone) vale per sempre
+ *
+ * Prima scrivo e forzo su disco il blocco, poi la riga di indice: se l'applicazione si ferma a metà, il blocco senza
+ * indice viene semplicemente ignorato e la riga di indice incompleta viene scartata al caricamento
+ *
+ * Più istanze: archive.dir deve essere una cartella condivisa (es. volume NFS) e l'archiviazione (archive.enabled) va
+ * attivata su una sola istanza, che è l'unica a scrivere. Le altre vedono i nuovi blocchi grazie al punto 4; con una
+ * cartella locale per istanza ogni nodo vedrebbe solo gli ordini archiviati da lui
+ */
+@Component
+public class OrderArchiveStore {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveStore.class);
+    private static final String INDEX_FILE = "orders.idx";
+    private static final String DELETED_USERS_FILE = "deleted-users.idx";
+    // Dimensione oltre la quale inizio un nuovo segmento
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final Path dir;
+    private final ObjectMapper objectMapper;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // STATO PROTETTO DAL LOCK
+    private final List<BlockEntry> blocks = new ArrayList<>();
+    private final Map<Long, List<BlockEntry>> blocksByUser = new HashMap<>();
+    private final Set<Long> deletedUsers = new HashSet<>();
+    // Byte dell'indice e del file degli utenti cancellati già letti (solo righe complete), volatile perchè catchUp li
+    // confronta senza lock
+    private volatile long indexPosition;
+    private volatile long deletedUsersPosition;
+
+    // Un ordine archiviato: l'utente (serve per l'indice) e lo stesso DTO dello storico ordini
+    public record ArchivedOrder(Long userId, OrderHistoryDTO order) {}
+
+    // Righe complete lette dalla coda di un file e quanti byte occupano
+    private record Tail(List<String> lines, int bytes) {}
+
+    // Una riga dell'indice
+    private record BlockEntry(int segment, long offset, int length, long minOrderId, long maxOrderId,
+                              LocalDateTime minDate, LocalDateTime maxDate, long[] userIds) {
+
+        String toLine() {
+            StringJoiner users = new StringJoiner(",");
+            for (long userId : userIds) {
+                users.add(Long.toString(userId));
+            }
+            return segment + "\t" + offset + "\t" + length + "\t" + minOrderId + "\t" + maxOrderId + "\t"
+                    + minDate + "\t" + maxDate + "\t" + users + "\n";
+        }
+
+        static BlockEntry parse(String line) {
+            String[] parts = line.split("\t", -1);
+            if (parts.length != 8) {
+                throw new IllegalArgumentException("riga di indice incompleta");
+            }
+            long[] userIds = parts[7].isEmpty()
+                    ? new long[0]
+                    : Arrays.stream(parts[7].split(",")).mapToLong(Long::parseLong).toArray();
+            return new BlockEntry(
+                    Integer.parseInt(parts[0]),
+                    Long.parseLong(parts[1]),
+                    Integer.parseInt(parts[2]),
+                    Long.parseLong(parts[3]),
+                    Long.parseLong(parts[4]),
+                    LocalDateTime.parse(parts[5]),
+                    LocalDateTime.parse(parts[6]),
+                    userIds);
+        }
+
+        // Blocco scritto dopo l'altro? (segmenti e blocchi dentro il segmento crescono solo in aggiunta)
+        boolean writtenAfter(BlockEntry other) {
+            return segment != other.segment ? segment > other.segment : offset > other.offset;
+        }
+    }
+
+    // Costruttore che inietta la cartella dell'archivio (con valore di default) e l'ObjectMapper di spring
+    public OrderArchiveStore(@Value("${archive.dir:./order-archive}") String dir, ObjectMapper objectMapper) {
+        this.dir = Paths.get(dir);
+        this.objectMapper = objectMapper;
+    }
+
+    // Metodo 1 - all'avvio carico l'indice in memoria
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(dir);
+        lock.writeLock().lock();
+        try {
+            readNewIndexLines();
+            readNewDeletedUsers();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Archivio ordini: {} blocchi e {} utenti cancellati caricati da {}",
+                blocks.size(), deletedUsers.size(), dir.toAbsolutePath());
+    }
+
+    // Metodo 2 - aggiungo un blocco di ordini all'archivio
+    public void append(List<ArchivedOrder> orders) throws IOException {
+        if (orders.isEmpty()) {
+            return;
+        }
+        // Preparo il blocco compresso fuori dal lock
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            for (ArchivedOrder order : orders) {
+                writer.write(objectMapper.writeValueAsString(order));
+                writer.write('\n');
+            }
+        }
+        byte[] block = bytes.toByteArray();
+
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        LocalDateTime minDate = LocalDateTime.MAX;
+        LocalDateTime maxDate = LocalDateTime.MIN;
+        SortedSet<Long> users = new TreeSet<>();
+        for (ArchivedOrder archived : orders) {
+            OrderHistoryDTO order = archived.order();
+            minId = Math.min(minId, order.getId());
+            maxId = Math.max(maxId, order.getId());
+            if (order.getOrderDate() != null) {
+                minDate = order.getOrderDate().isBefore(minDate) ? order.getOrderDate() : minDate;
+                maxDate = order.getOrderDate().isAfter(maxDate) ? order.getOrderDate() : maxDate;
+            }
+            if (archived.userId() != null) {
+                users.add(archived.userId());
+            }
+        }
+        // Ordini senza data: metto un intervallo che li comprende sempre
+        if (minDate.isAfter(maxDate)) {
+            minDate = LocalDateTime.of(1970, 1, 1, 0, 0);
+            maxDate = minDate;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Prima leggo i blocchi aggiunti da un'altra istanza, così scelgo il segmento giusto
+            readNewIndexLines();
+            int segment = blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).segment();
+            Path segmentPath = segmentPath(segment);
+            if (Files.exists(segmentPath) && Files.size(segmentPath) + block.length > MAX_SEGMENT_BYTES) {
+                segment++;
+                segmentPath = segmentPath(segment);
+            }
+
+            // 1) blocco in coda al segmento e forzato su disco
+            long offset;
+            try (FileChannel channel = FileChannel.open(segmentPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                offset = channel.size();
+                writeFully(channel, block);
+                channel.force(true);
+            }
+
+            // 2) riga di indice in coda e forzata su disco
+            BlockEntry entry = new BlockEntry(segment, offset, block.length, minId, maxId, minDate, maxDate,
+                    users.stream().mapToLong(Long::longValue).toArray());
+            appendLines(INDEX_FILE, indexPosition, entry.toLine());
+
+            // Registro il blocco rileggendo la coda dell'indice, come farebbe un'altra istanza
+            readNewIndexLines();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Metodo 2b - lapide per gli utenti cancellati dal db: i loro ordini archiviati non vengono più restituiti
+    public void markUsersDeleted(Collection<Long> userIds) throws IOException {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Long userId : userIds) {
+            lines.append(userId).append('\n');
+        }
+        lock.writeLock().lock();
+        try {
+            // Prima leggo le righe già scritte da un'altra istanza, così dopo deletedUsersPosition resta solo una riga interrotta
+            readNewDeletedUsers();
+            appendLines(DELETED_USERS_FILE, deletedUsersPosition, lines.toString());
+            readNewDeletedUsers();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Metodo 3 - tra gli id indicati, quali sono già nell'archivio e con quale contenuto (uso gli intervalli di id
+    // dell'indice per leggere solo i blocchi che possono contenerli). Se un ordine è stato archiviato più volte tengo la
+    // versione scritta per ultima
+    public Map<Long, OrderHistoryDTO> findArchived(Collection<Long> orderIds) throws IOException {
+        if (orderIds.isEmpty()) {
+            return Map.of();
+        }
+        catchUp();
+        long min = Collections.min(orderIds);
+        long max = Collections.max(orderIds);
+        List<BlockEntry> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // blocks è in ordine di scrittura
+            for (BlockEntry entry : blocks) {
+                if (entry.maxOrderId() >= min && entry.minOrderId() <= max) {
+                    candidates.add(entry);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Set<Long> wanted = new HashSet<>(orderIds);
+        Map<Long, OrderHistoryDTO> found = new HashMap<>();
+        for (BlockEntry entry : candidates) {
+            for (ArchivedOrder archived : readBlock(entry)) {
+                if (wanted.contains(archived.order().getId())) {
+                    found.put(archived.order().getId(), archived.order());
+                }
+            }
+        }
+        return found;
+    }
+
+    // Metodo 4 - storico archiviato di un utente, dal più recente, con lo stesso cursore keyset dello storico nel db
+    public List<OrderHistoryDTO> findByUser(Long userId, LocalDateTime lastDate, Long lastId, int limit) throws IOException {
+        catchUp();
+        List<BlockEntry> candidates;
+        lock.readLock().lock();
+        try {
+            // Utente cancellato --> blocksByUser non ha più i suoi blocchi, quindi nessun ordine
+            candidates = new ArrayList<>(blocksByUser.getOrDefault(userId, List.of()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Salto i blocchi che contengono solo ordini più recenti del cursore
+        if (lastDate != null) {
+            candidates.removeIf(entry -> entry.minDate().isAfter(lastDate));
+        }
+        // Leggo prima i blocchi più recenti, mi fermo quando i blocchi rimasti non possono più entrare nella pagina
+        candidates.sort(Comparator.comparing(BlockEntry::maxDate).reversed());
+
+        Comparator<OrderHistoryDTO> newestFirst = Comparator
+                .comparing(OrderHistoryDTO::getOrderDate, Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(OrderHistoryDTO::getId, Comparator.reverseOrder());
+        Map<Long, OrderHistoryDTO> found = new HashMap<>();
+        Map<Long, BlockEntry> foundIn = new HashMap<>();
+        for (BlockEntry entry : candidates) {
+            if (found.size() >= limit) {
+                List<OrderHistoryDTO> sorted = new ArrayList<>(found.values());
+                sorted.sort(newestFirst);
+                LocalDateTime oldestKept = sorted.get(limit - 1).getOrderDate();
+                if (oldestKept != null && entry.maxDate().isBefore(oldestKept)) {
+                    break;
+                }
+            }
+            for (ArchivedOrder archived : readBlock(entry)) {
+                OrderHistoryDTO order = archived.order();
+                if (!userId.equals(archived.userId()) || !isBeforeCursor(order, lastDate, lastId)) {
+                    continue;
+                }
+                // Lo stesso ordine archiviato più volte (ripresa dopo un errore, o ordine cambiato prima della
+                // cancellazione e riscritto al giro dopo) lo conto una volta, con la versione scritta per ultima
+                BlockEntry previous = foundIn.get(order.getId());
+                if (previous == null || entry.writtenAfter(previous)) {
+                    found.put(order.getId(), order);
+                    foundIn.put(order.getId(), entry);
+                }
+            }
+        }
+        List<OrderHistoryDTO> result = new ArrayList<>(found.values());
+        result.sort(newestFirst);
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    // Metodo 5 - numero di blocchi archiviati (per il resoconto)
+    public int blockCount() {
+        lock.readLock().lock();
+        try {
+            return blocks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean isBeforeCursor(OrderHistoryDTO order, LocalDateTime lastDate, Long lastId) {
+        if (lastDate == null) {
+            return true;
+        }
+        if (order.getOrderDate() == null) {
+            return true;
+        }
+        int cmp = order.getOrderDate().compareTo(lastDate);
+        return cmp < 0 || (cmp == 0 && order.getId() < lastId);
+    }
+
+    // Leggo e decomprimo un solo blocco (posizione e lunghezza dall'indice)
+    private List<ArchivedOrder> readBlock(BlockEntry entry) throws IOException {
+        byte[] block = new byte[entry.length()];
+        try (FileChannel channel = FileChannel.open(segmentPath(entry.segment()), StandardOpenOption.READ)) {
+            readFully(channel, block, entry.offset());
+        }
+        List<ArchivedOrder> orders = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(block)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    orders.add(objectMapper.readValue(line, ArchivedOrder.class));
+                }
+            }
+        }
+        return orders;
+    }
+
+    // Se l'indice o il file degli utenti cancellati su disco sono cresciuti rispetto alla memoria (scritti da un'altra
+    // istanza sulla stessa cartella condivisa) leggo le righe nuove, il controllo normale costa solo la dimensione dei file
+    private void catchUp() throws IOException {
+        if (!grown(INDEX_FILE, indexPosition) && !grown(DELETED_USERS_FILE, deletedUsersPosition)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            readNewIndexLines();
+            readNewDeletedUsers();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean grown(String file, long position) throws IOException {
+        Path path = dir.resolve(file);
+        return Files.exists(path) && Files.size(path) != position;
+    }
+
+    // Leggo le righe complete dell'indice dopo indexPosition e registro i blocchi (da chiamare con il write lock)
+    private void readNewIndexLines() throws IOException {
+        Tail tail = readTail(INDEX_FILE, indexPosition);
+        for (String line : tail.lines()) {
+            try {
+                BlockEntry entry = BlockEntry.parse(line);
+                // Scarto le righe che puntano oltre la fine del segmento (scrittura interrotta)
+                Path segment = segmentPath(entry.segment());
+                if (!Files.exists(segment) || Files.size(segment) < entry.offset() + entry.length()) {
+                    log.warn("Blocco di archivio non valido ignorato: {}", line);
+                    continue;
+                }
+                register(entry);
+            } catch (RuntimeException e) {
+                log.warn("Riga di indice dell'archivio ignorata ({}): {}", e.getMessage(), line);
+            }
+        }
+        indexPosition += tail.bytes();
+    }
+
+    // Leggo i nuovi utenti cancellati e tolgo i loro blocchi dalla mappa utente --> blocchi (da chiamare con il write lock)
+    private void readNewDeletedUsers() throws IOException {
+        Tail tail = readTail(DELETED_USERS_FILE, deletedUsersPosition);
+        for (String line : tail.lines()) {
+            try {
+                long userId = Long.parseLong(line.trim());
+                deletedUsers.add(userId);
+                blocksByUser.remove(userId);
+            } catch (NumberFormatException e) {
+                log.warn("Riga degli utenti cancellati dell'archivio ignorata: {}", line);
+            }
+        }
+        deletedUsersPosition += tail.bytes();
+    }
+
+    private void register(BlockEntry entry) {
+        blocks.add(entry);
+        for (long userId : entry.userIds()) {
+            if (!deletedUsers.contains(userId)) {
+                blocksByUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    // Righe complete di un file dopo position (da chiamare con il write lock)
+    // Una riga senza "\n" finale è ancora in scrittura (o interrotta), la rileggo al prossimo giro
+    private Tail readTail(String file, long position) throws IOException {
+        Path path = dir.resolve(file);
+        if (!Files.exists(path)) {
+            return new Tail(List.of(), 0);
+        }
+        byte[] tail;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= position) {
+                return new Tail(List.of(), 0);
+            }
+            tail = new byte[(int) (size - position)];
+            readFully(channel, tail, position);
+        }
+        int complete = tail.length;
+        while (complete > 0 && tail[complete - 1] != '\n') {
+            complete--;
+        }
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(tail, 0, complete, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(line);
+            }
+        }
+        return new Tail(lines, complete);
+    }
+
+    // Aggiungo righe in coda a un file e le forzo su disco (da chiamare con il write lock)
+    // Se il file finisce con una riga interrotta la chiudo, altrimenti la prima riga nuova si attaccherebbe a lei
+    private void appendLines(String file, long position, String lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(file),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            String data = channel.size() > position ? "\n" + lines : lines;
+            writeFully(channel, data.getBytes(StandardCharsets.UTF_8));
+            channel.force(true);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve("orders-" + segment + ".seg");
+    }
+
+    private static void readFully(FileChannel channel, byte[] data, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("file dell'archivio troncato");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package aiman.projectbackend.service_rev.cart_rev;
+
+import aiman.projectbackend.dto_rev.CartDTO;
+import aiman.projectbackend.dto_rev.OrderSummaryDTO;
+import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.repository_rev.CartSnapshotRepository;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.service_rev.OrderService;
+import aiman.projectbackend.service_rev.api_rev.ShippingService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Qui gestisco il carrello del cliente lato server
+ *
+ * Funzionamento:
+ * 1) I carrelli stanno in memoria in una mappa limitata (cart.max-size): quando è piena esce il carrello usato meno di
+ * recente (LRU), i carrelli non toccati da più di cart.ttl-minutes scadono. Un carrello che esce dalla mappa viene
+ * segnato removed, così una richiesta che lo aveva già in mano ne carica uno nuovo invece di perdere la modifica
+ * 2) Ogni modifica aggiorna solo quello che cambia: il totale della riga e il subtotale (niente ricalcolo di tutto il
+ * carrello), la stima della spedizione viene chiesta a ORS una volta sola quando il carrello viene creato
+ * 3) Il checkout ricontrolla prezzi e magazzino (se un prezzo è cambiato aggiorna il carrello e chiede di ripetere il
+ * checkout), richiede la spedizione per l'indirizzo attuale e crea l'ordine con un solo passaggio (OrderService.placeOrder)
+ * 4) Persistenza opzionale (cart.persistence.enabled): ogni modifica salva anche una copia JSON nel db, così il carrello
+ * si ritrova dopo un riavvio o dopo che è uscito dalla memoria
+ *
+ * Le modifiche dello stesso carrello sono sincronizzate sul carrello, quindi carrelli diversi non si bloccano tra loro
+ */
+@Service
+public class CartService {
+
+    private static final Logger log = LoggerFactory.getLogger(CartService.class);
+
+    // Quantità massima di un prodotto in una riga del carrello
+    private static final int MAX_QUANTITY = 1000;
+    // Numero massimo di righe diverse in un carrello
+    private static final int MAX_LINES = 200;
+
+    private final ProductRepository productRepository;
+    private final UserRepository userRepository;
+    private final ShippingService shippingService;
+    private final OrderService orderService;
+    private final CartSnapshotRepository cartSnapshotRepository;
+    private final ObjectMapper objectMapper;
+    private final boolean persistenceEnabled;
+    private final Duration ttl;
+
+    // Mappa dei carrelli in memoria, accessOrder = true --> l'ordine di iterazione va dal meno usato al più usato,
+    // removeEldestEntry --> quando supero la dimensione massima tolgo il carrello usato meno di recente
+    private final Map<Long, Cart> carts;
+
+    // Costruttore che inietta repository e servizi e i parametri del carrello (con valori di default)
+    public CartService(ProductRepository productRepository,
+                       UserRepository userRepository,
+                       ShippingService shippingService,
+                       OrderService orderService,
+                       CartSnapshotRepository cartSnapshotRepository,
+                       ObjectMapper objectMapper,
+                       @Value("${cart.max-size:10000}") int maxSize,
+                       @Value("${cart.ttl-minutes:120}") long ttlMinutes,
+                       @Value("${cart.persistence.enabled:false}") boolean persistenceEnabled) {
+        this.productRepository = productRepository;
+        this.userRepository = userRepository;
+        this.shippingService = shippingService;
+        this.orderService = orderService;
+        this.cartSnapshotRepository = cartSnapshotRepository;
+        this.objectMapper = objectMapper;
+        this.persistenceEnabled = persistenceEnabled;
+        this.ttl = Duration.ofMinutes(Math.max(1, ttlMinutes));
+        int capacity = Math.max(1, maxSize);
+        this.carts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Cart> eldest) {
+                if (size() > capacity) {
+                    // Una richiesta che ha ancora in mano questo carrello deve caricarne uno nuovo, non modificare un
+                    // carrello che non è più nella mappa
+                    eldest.getValue().removed = true;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Metodo 1 - logica di business --> il carrello dell'utente (vuoto se non ne ha ancora uno)
+    public CartDTO getCart(Long userId) {
+        return withCart(userId, Cart::toDTO);
+    }
+
+    // Metodo 2 - logica di business --> aggiungo un prodotto (se è già nel carrello sommo la quantità)
+    public CartDTO addItem(Long userId, Long productId, int quantity) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new RuntimeException("il prodotto con id: " + productId + " non è stato trovato"));
+        return withCart(userId, cart -> {
+            CartLine line = cart.lines.get(productId);
+            int newQuantity = (line != null ? line.quantity() : 0) + quantity;
+            checkQuantity(newQuantity);
+            if (line == null && cart.lines.size() >= MAX_LINES) {
+                throw new ValidationException(List.of("il carrello può contenere al massimo " + MAX_LINES + " prodotti diversi"));
+            }
+            // Tolgo il vecchio totale della riga e aggiungo quello nuovo (prezzo aggiornato a quello attuale)
+            cart.setLine(productId, product.getName(), product.getPrice(), newQuantity);
+            return saveAndReturn(cart);
+        });
+    }
+
+    // Metodo 3 - logica di business --> cambio la quantità di una riga (0 la rimuove)
+    public CartDTO updateItem(Long userId, Long productId, int quantity) {
+        return withCart(userId, cart -> {
+            CartLine line = cart.lines.get(productId);
+            if (line == null) {
+                throw new RuntimeException("il prodotto con id: " + productId + " non è nel carrello");
+            }
+            if (quantity == 0) {
+                cart.removeLine(productId);
+            } else {
+                checkQuantity(quantity);
+                cart.setLine(productId, line.productName(), line.unitPrice(), quantity);
+            }
+            return saveAndReturn(cart);
+        });
+    }
+
+    // Metodo 4 - logica di business --> rimuovo una riga
+    public CartDTO removeItem(Long userId, Long productId) {
+        return withCart(userId, cart -> {
+            if (cart.removeLine(productId) == null) {
+                throw new RuntimeException("il prodotto con id: " + productId + " non è nel carrello");
+            }
+            return saveAndReturn(cart);
+        });
+    }
+
+    // Metodo 5 - logica di business --> svuoto il carrello
+    public void clear(Long userId) {
+        Cart removed;
+        synchronized (carts) {
+            removed = carts.remove(userId);
+        }
+        if (removed != null) {
+            removed.removed = true;
+        }
+        if (persistenceEnabled) {
+            cartSnapshotRepository.deleteById(userId);
+        }
+    }
+
+    // Metodo 6 - logica di business --> trasformo il carrello in un ordine e lo svuoto
+    public OrderSummaryDTO checkout(Long userId) {
+        // Tengo il lock del carrello fino alla fine, così due checkout contemporanei non creano due ordini
+        return withCart(userId, cart -> {
+            if (cart.lines.isEmpty()) {
+                throw new ValidationException(List.of("il carrello è vuoto"));
+            }
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("l'utente con id: " + userId + " non è stato trovato"));
+            // Una query per tutti i prodotti: il carrello può avere fino a cart.ttl-minutes, quindi prima dell'ordine
+            // ricontrollo che i prodotti esistano ancora, che il magazzino basti e che il prezzo sia ancora quello
+            Map<Long, Product> products = productRepository.findAllWithCategoryByIdIn(cart.lines.keySet()).stream()
+                    .collect(Collectors.toMap(Product::getId, Function.identity()));
+            List<String> errors = new ArrayList<>();
+            List<String> priceChanges = new ArrayList<>();
+            for (CartLine line : new ArrayList<>(cart.lines.values())) {
+                Product product = products.get(line.productId());
+                if (product == null) {
+                    errors.add("il prodotto con id: " + line.productId() + " non è più disponibile");
+                    continue;
+                }
+                int stock = product.getStockQuantity() != null ? product.getStockQuantity() : 0;
+                if (stock < line.quantity()) {
+                    errors.add("il prodotto " + product.getName() + " ha solo " + stock + " pezzi disponibili");
+                }
+                if (Double.compare(product.getPrice(), line.unitPrice()) != 0) {
+                    // Aggiorno la riga al prezzo attuale, il cliente lo vede nel carrello e ripete il checkout
+                    priceChanges.add("il prezzo di " + product.getName() + " è cambiato da " + line.unitPrice()
+                            + " a " + product.getPrice());
+                    cart.setLine(line.productId(), product.getName(), product.getPrice(), line.quantity());
+                }
+            }
+            if (!priceChanges.isEmpty()) {
+                saveAndReturn(cart);
+                errors.addAll(priceChanges);
+            }
+            if (!errors.isEmpty()) {
+                throw new ValidationException(errors);
+            }
+
+            // La spedizione del carrello è una stima fatta alla creazione: la richiedo per l'indirizzo attuale
+            Double shippingCost = null;
+            Address address = user.getAddress();
+            if (address != null) {
+                shippingCost = shippingService.calculateShippingCost(address.getStreet(), address.getCity(), address.getZipCode());
+            }
+
+            Order order = new Order();
+            order.setUser(user);
+            order.setOrderDate(LocalDateTime.now());
+            order.setStatus(OrderStatus.PENDING);
+            List<OrderItem> items = new ArrayList<>();
+            for (CartLine line : cart.lines.values()) {
+                OrderItem item = new OrderItem();
+                item.setProduct(products.get(line.productId()));
+                item.setQuantity(line.quantity());
+                item.setPriceAtPurchase(line.unitPrice());
+                item.setOrder(order);
+                items.add(item);
+            }
+            order.setItems(items);
+            order.setShippingCost(shippingCost);
+            order.setTotalAmount(cart.subtotal + (shippingCost != null ? shippingCost : 0));
+
+            Order saved = orderService.placeOrder(order);
+
+            // Ordine creato --> il carrello non serve più
+            clear(userId);
+
+            return new OrderSummaryDTO(saved.getId(), saved.getOrderDate(), saved.getStatus(), user.getEmail(),
+                    saved.getTotalAmount(), saved.getShippingCost(), (long) items.size());
+        });
+    }
+
+    // Metodo 7 - lavoro pianificato --> tolgo dalla memoria i carrelli scaduti e dal db le copie abbandonate
+    @Scheduled(fixedDelayString = "${cart.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        synchronized (carts) {
+            Iterator<Cart> iterator = carts.values().iterator();
+            while (iterator.hasNext()) {
+                Cart cart = iterator.next();
+                if (cart.isExpired(now, ttl)) {
+                    cart.removed = true;
+                    iterator.remove();
+                    evicted++;
+                }
+            }
+        }
+        if (persistenceEnabled) {
+            evicted += cartSnapshotRepository.deleteUpdatedBefore(LocalDateTime.now().minus(ttl));
+        }
+        if (evicted > 0) {
+            log.debug("Carrelli scaduti rimossi: {}", evicted);
+        }
+    }
+
+    // Eseguo l'azione con il lock del carrello dell'utente; se nel frattempo il carrello è stato svuotato, trasformato
+    // in ordine o tolto dalla mappa (removed) riprovo con il carrello nuovo
+    private <T> T withCart(Long userId, Function<Cart, T> action) {
+        while (true) {
+            Cart cart = loadCart(userId);
+            synchronized (cart) {
+                if (!cart.removed) {
+                    return action.apply(cart);
+                }
+            }
+        }
+    }
+
+    // Recupero il carrello dalla memoria, altrimenti dalla copia nel db, altrimenti ne creo uno nuovo
+    private Cart loadCart(Long userId) {
+        long now = System.nanoTime();
+        synchronized (carts) {
+            Cart cart = carts.get(userId);
+            if (cart != null && !cart.removed && !cart.isExpired(now, ttl)) {
+                cart.lastAccess = now;
+                return cart;
+            }
+            if (cart != null) {
+                // Carrello scaduto --> esce dalla mappa come nelle altre rimozioni
+                cart.removed = true;
+                carts.remove(userId);
+            }
+        }
+
+        // Costruisco il carrello fuori dal lock della mappa (può servire il db o ORS)
+        Cart created = persistenceEnabled ? restore(userId) : null;
+        if (created == null) {
+            created = newCart(userId);
+        }
+        synchronized (carts) {
+            // Se nel frattempo un'altra richiesta ha già creato il carrello uso quello
+            Cart existing = carts.get(userId);
+            if (existing != null && !existing.removed) {
+                existing.lastAccess = now;
+                return existing;
+            }
+            carts.put(userId, created);
+            return created;
+        }
+    }
+
+    // Nuovo carrello vuoto con la stima della spedizione verso l'indirizzo del cliente
+    private Cart newCart(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("l'utente con id: " + userId + " non è stato trovato"));
+        Double shippingCost = null;
+        Address address = user.getAddress();
+        if (address != null) {
+            shippingCost = shippingService.calculateShippingCost(address.getStreet(), address.getCity(), address.getZipCode());
+        }
+        return new Cart(userId, shippingCost);
+    }
+
+    // Ricostruisco il carrello dalla copia JSON (null se non c'è, è scaduta o non è leggibile)
+    private Cart restore(Long userId) {
+        Optional<CartSnapshot> snapshot = cartSnapshotRepository.findById(userId);
+        if (snapshot.isEmpty() || snapshot.get().getUpdatedAt().isBefore(LocalDateTime.now().minus(ttl))) {
+            return null;
+        }
+        try {
+            CartDTO dto = objectMapper.readValue(snapshot.get().getPayload(), CartDTO.class);
+            Cart cart = new Cart(userId, dto.getShippingCost());
+            for (CartDTO.CartLineDTO line : dto.getLines()) {
+                cart.setLine(line.getProductId(), line.getProductName(), line.getUnitPrice(), line.getQuantity());
+            }
+            cart.updatedAt = dto.getUpdatedAt();
+            return cart;
+        } catch (JsonProcessingException e) {
+            log.warn("Copia del carrello dell'utente {} non leggibile, creo un carrello nuovo", userId, e);
+            return null;
+        }
+    }
+
+    // Dopo ogni modifica: aggiorno la data, salvo la copia (se attiva) e restituisco il DTO (gira con il lock del carrello)
+    private CartDTO saveAndReturn(Cart cart) {
+        cart.updatedAt = LocalDateTime.now();
+        CartDTO dto = cart.toDTO();
+        if (persistenceEnabled) {
+            try {
+                cartSnapshotRepository.upsert(cart.userId, objectMapper.writeValueAsString(dto), cart.updatedAt);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("salvataggio del carrello fallito", e);
+            }
+        }
+        return dto;
+    }
+
+    private static void checkQuantity(int quantity) {
+        if (quantity < 1 || quantity > MAX_QUANTITY) {
+            throw new ValidationException(List.of("la quantità deve essere tra 1 e " + MAX_QUANTITY));
+        }
+    }
+
+    // Stato del singolo carrello (protetto dal lock del carrello stesso)
+    private static class Cart {
+        private final Long userId;
+        // LinkedHashMap --> le righe restano nell'ordine in cui sono state aggiunte
+        private final Map<Long, CartLine> lines = new LinkedHashMap<>();
+        private final Double shippingCost;
+        private double subtotal;
+        private int itemCount;
+        private LocalDateTime updatedAt = LocalDateTime.now();
+        private volatile long lastAccess = System.nanoTime();
+        // true dopo lo svuotamento, il checkout, la scadenza o l'uscita LRU: una richiesta che lo aveva già in mano ne
+        // carica uno nuovo
+        private volatile boolean removed;
+
+        Cart(Long userId, Double shippingCost) {
+            this.userId = userId;
+            this.shippingCost = shippingCost;
+        }
+
+        // Aggiorno solo la riga cambiata: tolgo il suo vecchio contributo e aggiungo quello nuovo
+        void setLine(Long productId, String productName, double unitPrice, int quantity) {
+            CartLine old = lines.put(productId, new CartLine(productId, productName, unitPrice, quantity));
+            if (old != null) {
+                subtotal -= old.lineTotal();
+                itemCount -= old.quantity();
+            }
+            subtotal += unitPrice * quantity;
+            itemCount += quantity;
+        }
+
+        CartLine removeLine(Long productId) {
+            CartLine old = lines.remove(productId);
+            if (old != null) {
+                subtotal -= old.lineTotal();
+                itemCount -= old.quantity();
+            }
+            // Carrello vuoto --> azzero, così non resta un residuo degli arrotondamenti dei double
+            if (lines.isEmpty()) {
+                subtotal = 0;
+            }
+            return old;
+        }
+
+        double total() {
+            return subtotal + (shippingCost != null ? shippingCost : 0);
+        }
+
+        boolean isExpired(long now, Duration ttl) {
+            return now - lastAccess > ttl.toNanos();
+        }
+
+        CartDTO toDTO() {
+            List<CartDTO.CartLineDTO> lineDtos = new ArrayList<>(lines.size());
+            for (CartLine line : lines.values()) {
+                lineDtos.add(new CartDTO.CartLineDTO(line.productId(), line.productName(), line.unitPrice(), line.quantity(),
+                        line.lineTotal()));
+            }
+            return new CartDTO(userId, lineDtos, subtotal, shippingCost, total(), itemCount, updatedAt);
+        }
+    }
+
+    private record CartLine(Long productId, String productName, double unitPrice, int quantity) {
+        double lineTotal() {
+            return unitPrice * quantity;
+        }
+    }
+}
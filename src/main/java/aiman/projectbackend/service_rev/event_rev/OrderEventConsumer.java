@@ -0,0 +1,19 @@
+package aiman.projectbackend.service_rev.event_rev;
+
+import aiman.projectbackend.dto_rev.OrderEventDTO;
+
+/**
+ * Un consumatore degli eventi degli ordini (statistiche, notifiche, sincronizzazione ERP ...)
+ * Basta creare un bean che implementa questa interfaccia e il dispatcher lo chiama per ogni evento
+ *
+ * OSSERVAZIONE: la consegna è "almeno una volta", quindi dopo un errore o un riavvio lo stesso evento può arrivare di
+ * nuovo (anche a consumatori che lo avevano già elaborato). Se il consumatore lancia un'eccezione l'evento non viene
+ * confermato e sarà ripreso alla scadenza del lease
+ */
+public interface OrderEventConsumer {
+
+    // Nome del consumatore, mi serve solo per i log
+    String name();
+
+    void onEvent(OrderEventDTO event);
+}
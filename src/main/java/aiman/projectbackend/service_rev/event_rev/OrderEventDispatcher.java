@@ -0,0 +1,285 @@
+package aiman.projectbackend.service_rev.event_rev;
+
+import aiman.projectbackend.dto_rev.OrderEventDTO;
+import aiman.projectbackend.dto_rev.OutboxStatsDTO;
+import aiman.projectbackend.repository_rev.OrderOutboxRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Qui consegno gli eventi della outbox ai consumatori (OrderEventConsumer), fuori dalle richieste HTTP
+ *
+ * Come funziona:
+ * 1) Ogni pochi millisecondi il dispatcher "prende in carico" un blocco di eventi non consegnati con una sola UPDATE
+ * (lease + FOR UPDATE SKIP LOCKED, quindi anche più istanze dell'applicazione non prendono gli stessi eventi)
+ * 2) Gli eventi finiscono in un buffer circolare limitato (ArrayBlockingQueue), se il buffer è pieno il dispatcher non
+ * legge altro dal db finché i worker non lo svuotano (backpressure), quindi la memoria resta limitata
+ * 3) I worker prendono gli eventi dal buffer e li passano a tutti i consumatori, se tutti vanno a buon fine l'evento
+ * viene confermato (dispatched_at), le conferme vengono scritte a blocchi con una sola UPDATE
+ * 4) Se un consumatore fallisce, o l'applicazione si ferma prima della conferma, il lease scade e l'evento viene
+ * ripreso: consegna "almeno una volta"
+ * 5) Dopo outbox.max-attempts prese in carico senza conferma, o subito se il payload è illeggibile, l'evento viene
+ * scartato (failed_at + last_error, dead letter): non blocca più il dispatcher e resta nella tabella per il controllo a mano
+ *
+ * Con più istanze dell'applicazione ogni evento arriva a una sola istanza (SKIP LOCKED). Per i consumatori che tengono
+ * stato in memoria (es. SalesAnalyticsService) ogni istanza vedrebbe solo una parte degli eventi: in quel caso il
+ * dispatcher va tenuto attivo su una sola istanza (outbox.dispatcher.enabled=false sulle altre), che riceve tutti gli
+ * eventi e a cui vanno chieste le statistiche
+ */
+@Service
+public class OrderEventDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderEventDispatcher.class);
+
+    // Prendo in carico gli eventi più vecchi non consegnati e con lease libero o scaduto
+    // RETURNING --> in un solo giro ottengo le righe prese in carico
+    private static final String CLAIM_SQL =
+            "UPDATE order_outbox SET lease_until = now() + make_interval(secs => ?), attempts = attempts + 1 " +
+            "WHERE id IN (SELECT id FROM order_outbox " +
+            "             WHERE dispatched_at IS NULL AND failed_at IS NULL " +
+            "             AND (lease_until IS NULL OR lease_until < now()) " +
+            "             ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, payload, attempts";
+
+    private static final String ACK_SQL = "UPDATE order_outbox SET dispatched_at = now() WHERE id = ANY(?)";
+
+    private static final String DEAD_LETTER_SQL =
+            "UPDATE order_outbox SET failed_at = now(), last_error = ? WHERE id = ?";
+
+    private static final String CLEANUP_SQL =
+            "DELETE FROM order_outbox WHERE dispatched_at < now() - make_interval(hours => ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderOutboxRepository orderOutboxRepository;
+    private final ObjectMapper objectMapper;
+    private final List<OrderEventConsumer> consumers;
+    private final int batchSize;
+    private final int leaseSeconds;
+    private final int workerCount;
+    private final int retentionHours;
+    private final int maxAttempts;
+    private final boolean enabled;
+
+    // Buffer circolare limitato tra dispatcher e worker
+    private final BlockingQueue<OrderEventDTO> buffer;
+    // Eventi presi in carico e non ancora confermati, così non li rimetto nel buffer due volte
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    // Conferme in attesa di essere scritte sul db
+    private final ConcurrentLinkedQueue<Long> acks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong backpressureSkips = new AtomicLong();
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = false;
+
+    // Costruttore che inietta JdbcTemplate, la repository, l'ObjectMapper, tutti i consumatori registrati e i parametri
+    public OrderEventDispatcher(JdbcTemplate jdbcTemplate,
+                                OrderOutboxRepository orderOutboxRepository,
+                                ObjectMapper objectMapper,
+                                List<OrderEventConsumer> consumers,
+                                @Value("${outbox.buffer-size:1024}") int bufferSize,
+                                @Value("${outbox.batch-size:200}") int batchSize,
+                                @Value("${outbox.lease-seconds:60}") int leaseSeconds,
+                                @Value("${outbox.workers:2}") int workerCount,
+                                @Value("${outbox.retention-hours:24}") int retentionHours,
+                                @Value("${outbox.max-attempts:10}") int maxAttempts,
+                                @Value("${outbox.dispatcher.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderOutboxRepository = orderOutboxRepository;
+        this.objectMapper = objectMapper;
+        this.consumers = consumers;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseSeconds = Math.max(1, leaseSeconds);
+        this.workerCount = Math.max(1, workerCount);
+        this.retentionHours = Math.max(1, retentionHours);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.enabled = enabled;
+    }
+
+    // Metodo 1 - avvio i worker quando l'applicazione è pronta
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Dispatcher degli eventi outbox disattivato su questa istanza (outbox.dispatcher.enabled=false)");
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::workLoop, "order-events-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    // Metodo 2 - fermo i worker alla chiusura, gli eventi non confermati verranno ripresi al prossimo avvio
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        flushAcks();
+    }
+
+    // Metodo 3 - lavoro pianificato: scrivo le conferme e prendo in carico nuovi eventi (se c'è posto nel buffer)
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:500}")
+    public void poll() {
+        if (!running) {
+            return;
+        }
+        flushAcks();
+
+        // Backpressure: leggo dal db al massimo quanti eventi stanno nel buffer
+        int free = buffer.remainingCapacity();
+        if (free == 0) {
+            backpressureSkips.incrementAndGet();
+            return;
+        }
+        List<Object[]> claimed = jdbcTemplate.query(CLAIM_SQL,
+                (rs, rowNum) -> new Object[]{rs.getLong("id"), rs.getString("payload"), rs.getInt("attempts")},
+                leaseSeconds, Math.min(batchSize, free));
+        // RETURNING non garantisce l'ordine, quindi riordino per id
+        claimed.sort(Comparator.comparingLong(row -> (Long) row[0]));
+
+        for (Object[] row : claimed) {
+            Long id = (Long) row[0];
+            int attempts = (Integer) row[2];
+            if (!inFlight.add(id)) {
+                // Già nel buffer da una presa in carico precedente (lease scaduto mentre aspettava)
+                continue;
+            }
+            if (attempts > maxAttempts) {
+                // Preso in carico troppe volte senza conferma (es. l'istanza si ferma ogni volta durante la consegna)
+                deadLetter(id, "nessuna conferma dopo " + maxAttempts + " tentativi");
+                continue;
+            }
+            try {
+                OrderEventDTO event = objectMapper.readValue((String) row[1], OrderEventDTO.class);
+                event.setEventId(id);
+                event.setAttempts(attempts);
+                // Il posto c'è sempre perchè solo questo metodo riempie il buffer e ho controllato prima
+                buffer.add(event);
+            } catch (Exception e) {
+                // Payload illeggibile: riprovare non serve, lo scarto subito
+                failed.incrementAndGet();
+                deadLetter(id, "payload illeggibile: " + e.getMessage());
+            }
+        }
+    }
+
+    // Metodo 4 - pulizia pianificata degli eventi consegnati più vecchi del periodo di conservazione
+    @Scheduled(fixedDelayString = "${outbox.cleanup-interval-ms:3600000}")
+    public void cleanup() {
+        int deleted = jdbcTemplate.update(CLEANUP_SQL, retentionHours);
+        if (deleted > 0) {
+            log.info("Eliminati {} eventi outbox già consegnati", deleted);
+        }
+    }
+
+    // Metodo 5 - statistiche della pipeline
+    public OutboxStatsDTO getStats() {
+        return new OutboxStatsDTO(
+                buffer.size(),
+                buffer.size() + buffer.remainingCapacity(),
+                inFlight.size(),
+                delivered.get(),
+                failed.get(),
+                backpressureSkips.get(),
+                orderOutboxRepository.countByDispatchedAtIsNullAndFailedAtIsNull(),
+                orderOutboxRepository.countByFailedAtIsNotNull());
+    }
+
+    // Ciclo dei worker: prendo un evento dal buffer e lo passo a tutti i consumatori
+    private void workLoop() {
+        while (running) {
+            OrderEventDTO event;
+            try {
+                event = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            boolean ok = true;
+            String error = null;
+            for (OrderEventConsumer consumer : consumers) {
+                try {
+                    consumer.onEvent(event);
+                } catch (Exception e) {
+                    ok = false;
+                    error = consumer.name() + ": " + e.getMessage();
+                    log.warn("Il consumatore {} ha fallito l'evento {} ({}): {}",
+                            consumer.name(), event.getEventId(), event.getEventType(), e.getMessage());
+                }
+            }
+            if (ok) {
+                delivered.incrementAndGet();
+                acks.add(event.getEventId());
+            } else if (event.getAttempts() >= maxAttempts) {
+                // Ultimo tentativo fallito: lo scarto con il motivo
+                failed.incrementAndGet();
+                deadLetter(event.getEventId(), error);
+            } else {
+                // Non confermo: il lease scadrà e l'evento verrà ripreso
+                failed.incrementAndGet();
+                inFlight.remove(event.getEventId());
+            }
+        }
+    }
+
+    // Scarto l'evento (dead letter): non viene più preso in carico e il motivo resta nella riga
+    private void deadLetter(Long id, String error) {
+        try {
+            jdbcTemplate.update(DEAD_LETTER_SQL, error, id);
+            log.error("Evento outbox {} scartato: {}", id, error);
+        } catch (RuntimeException e) {
+            // Se non riesco a scriverlo il lease scadrà e l'evento verrà ripreso (e scartato al giro successivo)
+            log.error("Impossibile scartare l'evento outbox {}: {}", id, e.getMessage());
+        } finally {
+            inFlight.remove(id);
+        }
+    }
+
+    // Scrivo tutte le conferme accumulate con una sola UPDATE
+    private void flushAcks() {
+        List<Long> ids = new ArrayList<>();
+        Long id;
+        while ((id = acks.poll()) != null) {
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(ACK_SQL, ps -> {
+                Array array = ps.getConnection().createArrayOf("bigint", ids.toArray());
+                ps.setArray(1, array);
+            });
+            ids.forEach(inFlight::remove);
+        } catch (RuntimeException e) {
+            // Riprovo al prossimo giro
+            acks.addAll(ids);
+            throw e;
+        }
+    }
+}
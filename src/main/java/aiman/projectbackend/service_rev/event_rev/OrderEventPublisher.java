@@ -0,0 +1,92 @@
+package aiman.projectbackend.service_rev.event_rev;
+
+import aiman.projectbackend.dto_rev.OrderEventDTO;
+import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.repository_rev.OrderOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Qui scrivo gli eventi degli ordini nella outbox. Va chiamato dentro la transazione che salva l'ordine, così l'evento
+ * esiste solo se l'ordine è stato salvato. Per la richiesta HTTP il costo è una sola INSERT in più
+ */
+@Service
+public class OrderEventPublisher {
+
+    private final OrderOutboxRepository orderOutboxRepository;
+    private final ObjectMapper objectMapper;
+
+    // Costruttore che inietta la repository della outbox e l'ObjectMapper di spring (già configurato per le date)
+    public OrderEventPublisher(OrderOutboxRepository orderOutboxRepository, ObjectMapper objectMapper) {
+        this.orderOutboxRepository = orderOutboxRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    // Metodo 1 - è stato creato un ordine
+    public void publishPlaced(Order order) {
+        OrderEventDTO event = toEvent(OrderEventType.ORDER_PLACED, order);
+        event.setNewStatus(order.getStatus());
+        save(event);
+    }
+
+    // Metodo 2 - sono stati creati più ordini insieme (invio massivo), salvo tutti gli eventi con una saveAll
+    public void publishPlacedAll(List<Order> orders) {
+        List<OrderOutboxEvent> events = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            OrderEventDTO event = toEvent(OrderEventType.ORDER_PLACED, order);
+            event.setNewStatus(order.getStatus());
+            events.add(toOutboxEvent(event));
+        }
+        orderOutboxRepository.saveAll(events);
+    }
+
+    // Metodo 3 - lo status di un ordine è cambiato
+    public void publishStatusChanged(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+        OrderEventDTO event = toEvent(OrderEventType.ORDER_STATUS_CHANGED, order);
+        event.setOldStatus(oldStatus);
+        event.setNewStatus(newStatus);
+        save(event);
+    }
+
+    // Copio nell'evento i dati dell'ordine e delle sue righe
+    private static OrderEventDTO toEvent(OrderEventType type, Order order) {
+        OrderEventDTO event = new OrderEventDTO();
+        event.setEventType(type);
+        event.setOrderId(order.getId());
+        event.setUserId(order.getUser() != null ? order.getUser().getId() : null);
+        event.setOrderDate(order.getOrderDate());
+        event.setTotalAmount(order.getTotalAmount());
+        event.setShippingCost(order.getShippingCost());
+        if (order.getItems() != null) {
+            for (OrderItem item : order.getItems()) {
+                Product product = item.getProduct();
+                if (product == null) {
+                    continue;
+                }
+                event.getLines().add(new OrderEventDTO.OrderEventLineDTO(
+                        product.getId(),
+                        product.getCategory() != null ? product.getCategory().getId() : null,
+                        item.getQuantity() != null ? item.getQuantity() : 0,
+                        item.getPriceAtPurchase() != null ? item.getPriceAtPurchase() : 0.0));
+            }
+        }
+        return event;
+    }
+
+    private void save(OrderEventDTO event) {
+        orderOutboxRepository.save(toOutboxEvent(event));
+    }
+
+    private OrderOutboxEvent toOutboxEvent(OrderEventDTO event) {
+        try {
+            return new OrderOutboxEvent(event.getEventType(), event.getOrderId(), objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            // Se non riesco a scrivere l'evento faccio fallire anche l'ordine (rollback), così non perdo eventi
+            throw new RuntimeException("scrittura dell'evento " + event.getEventType() + " fallita per l'ordine " + event.getOrderId(), e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package aiman.projectbackend.util_rev;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro di Bloom condiviso tra i thread, senza lock (usato da TokenRevocationList e RegistrationBloomFilter)
+ *
+ * Funzionamento:
+ * 1) Ogni valore accende HASHES bit di un array di BITS_PER_ENTRY bit per elemento previsto (circa 1% di falsi positivi)
+ * 2) I bit li calcolo da due hash indipendenti del valore (doppio hashing: bit i = h1 + i * h2), quindi ogni valore
+ * costa due hash e non HASHES
+ * 3) mightContain false --> il valore sicuramente non è stato aggiunto; true --> probabilmente sì (o falso positivo)
+ * 4) I valori non si possono togliere: chi lo usa lo ricostruisce da capo quando serve
+ *
+ * Per le stringhe calcolo io i due hash (add / mightContain con String); chi ha già due hash indipendenti (es. le due
+ * metà di un UUID casuale) li passa direttamente
+ */
+public final class BloomFilter {
+
+    public static final int HASHES = 7;
+    public static final int BITS_PER_ENTRY = 10;
+
+    // Semi diversi per i due hash di ogni stringa
+    private static final long SEED_1 = 0xcbf29ce484222325L;
+    private static final long SEED_2 = 0x84222325cbf29ce4L;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+
+    public BloomFilter(int expectedEntries) {
+        long bits = (long) Math.max(1, expectedEntries) * BITS_PER_ENTRY;
+        int wordCount = (int) ((bits + 63) >>> 6);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+    }
+
+    public void add(String value) {
+        add(hash(value, SEED_1), hash(value, SEED_2));
+    }
+
+    public boolean mightContain(String value) {
+        return mightContain(hash(value, SEED_1), hash(value, SEED_2));
+    }
+
+    public void add(long h1, long h2) {
+        // Dispari --> il passo tra un bit e il successivo non è mai zero
+        long step = h2 | 1L;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * step, bitCount);
+            long mask = 1L << bit;
+            words.accumulateAndGet((int) (bit >>> 6), mask, (a, b) -> a | b);
+        }
+    }
+
+    public boolean mightContain(long h1, long h2) {
+        long step = h2 | 1L;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * step, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                // Almeno un bit spento --> sicuramente non aggiunto
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Rimescolo i bit di un hash (finalizzatore di MurmurHash3), ogni bit in ingresso cambia metà dei bit in uscita
+    public static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    // FNV-1a a 64 bit sui caratteri, poi rimescolato: semi diversi danno due hash indipendenti dello stesso valore
+    private static long hash(String value, long seed) {
+        long h = seed;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+}
@@ -0,0 +1,46 @@
+package aiman.projectbackend.entity_rev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Macchina a stati dell'ordine: ogni passaggio ammesso e ogni passaggio vietato
+class OrderStatusTest {
+
+    @Test
+    void allowedTransitions() {
+        assertThat(OrderStatus.PENDING.allowedTransitions()).containsExactlyInAnyOrder(OrderStatus.PAID, OrderStatus.CANCELLED);
+        assertThat(OrderStatus.PAID.allowedTransitions()).containsExactlyInAnyOrder(OrderStatus.SHIPPED, OrderStatus.CANCELLED);
+        assertThat(OrderStatus.SHIPPED.allowedTransitions()).containsExactly(OrderStatus.DELIVERED);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = OrderStatus.class, names = {"DELIVERED", "CANCELLED"})
+    void finalStatesCannotMove(OrderStatus status) {
+        assertThat(status.allowedTransitions()).isEmpty();
+        for (OrderStatus next : OrderStatus.values()) {
+            assertThat(status.canTransitionTo(next)).isFalse();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(OrderStatus.class)
+    void canTransitionToMatchesAllowedTransitions(OrderStatus status) {
+        for (OrderStatus next : OrderStatus.values()) {
+            assertThat(status.canTransitionTo(next)).isEqualTo(status.allowedTransitions().contains(next));
+        }
+        // Nessuno stato può restare uguale a se stesso o tornare a PENDING
+        assertThat(status.canTransitionTo(status)).isFalse();
+        assertThat(status.canTransitionTo(OrderStatus.PENDING)).isFalse();
+    }
+
+    @Test
+    void shippedOrdersCannotBeCancelled() {
+        assertThat(EnumSet.of(OrderStatus.SHIPPED, OrderStatus.DELIVERED))
+                .allSatisfy(status -> assertThat(status.canTransitionTo(OrderStatus.CANCELLED)).isFalse());
+    }
+}
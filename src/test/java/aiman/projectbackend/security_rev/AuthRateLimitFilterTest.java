@@ -0,0 +1,102 @@
+package aiman.projectbackend.security_rev;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Filtro dei limiti di /auth/**: limite per email anche da ip diversi e corpi gonfiati rifiutati prima del controller
+class AuthRateLimitFilterTest {
+
+    // 100 tentativi per ip (mai raggiunto qui), 5 per email
+    private final AuthRateLimitFilter filter = new AuthRateLimitFilter(new ObjectMapper(), true, 100, 100, 5, 5);
+
+    @Test
+    void sameEmailIsThrottledAcrossIps() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(login("10.0.0." + i, body("vittima@test.it", 0)).getStatus()).isEqualTo(200);
+        }
+        MockHttpServletResponse blocked = login("10.0.1.1", body("VITTIMA@test.it", 0));
+        assertThat(blocked.getStatus()).isEqualTo(429);
+        assertThat(blocked.getHeader("Retry-After")).isNotNull();
+    }
+
+    @Test
+    void paddedBodyIsRejectedBeforeTheController() throws Exception {
+        // Campo lungo prima dell'email: prima la richiesta passava senza il limite per email
+        MockHttpServletRequest request = request("10.0.2.1", body("vittima@test.it", 20 * 1024));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(chain.getRequest()).as("richiesta arrivata al controller").isNull();
+    }
+
+    @Test
+    void paddedBodyWithoutContentLengthIsRejected() throws Exception {
+        // Corpo chunked: la dimensione si scopre solo leggendo
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/login") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        request.setServletPath("/auth/login");
+        request.setRemoteAddr("10.0.2.2");
+        request.setContent(body("vittima@test.it", 20 * 1024));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void paddingCannotBypassAnExhaustedEmailBucket() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            login("10.0.3." + i, body("altra@test.it", 0));
+        }
+        // Con il secchio dell'email vuoto nessuna variante della richiesta arriva al controller
+        assertThat(login("10.0.4.1", body("altra@test.it", 0)).getStatus()).isEqualTo(429);
+        assertThat(login("10.0.4.2", body("altra@test.it", 20 * 1024)).getStatus()).isEqualTo(413);
+    }
+
+    @Test
+    void controllerCanReadTheBodyAgain() throws Exception {
+        byte[] body = body("lettura@test.it", 1024);
+        MockHttpServletRequest request = request("10.0.5.1", body);
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(chain.getRequest().getInputStream().readAllBytes()).isEqualTo(body);
+    }
+
+    private MockHttpServletResponse login(String ip, byte[] body) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(ip, body), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String ip, byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/login");
+        request.setServletPath("/auth/login");
+        request.setRemoteAddr(ip);
+        request.setContentType("application/json");
+        request.setContent(body);
+        return request;
+    }
+
+    // Corpo di login con un campo di riempimento lungo padding caratteri prima dell'email
+    private static byte[] body(String email, int padding) {
+        return ("{\"pad\":\"" + "x".repeat(padding) + "\",\"email\":\"" + email + "\",\"password\":\"segreta\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
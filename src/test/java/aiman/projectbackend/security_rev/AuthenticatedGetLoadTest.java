@@ -0,0 +1,91 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.dto_rev.PrincipalCacheStatsDTO;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.HttpLoad;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test di carico delle GET autenticate: tanti client in parallelo con token di utenti diversi su GET /api/cart/{userId}
+ * (il carrello è in memoria, quindi il costo della richiesta è quasi tutto nel filtro JWT)
+ *
+ * Misuro richieste al secondo e latenze (p50, p99) e controllo con le statistiche della UserPrincipalCache che il principal
+ * venga creato circa una volta per utente: tutte le altre richieste trovano l'utente in memoria (la revoca la controlla
+ * UserTokenVersions, anche lei in memoria, quindi l'autenticazione non fa query)
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AuthenticatedGetLoadTest extends PostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthenticatedGetLoadTest.class);
+
+    private static final int USERS = 200;
+    private static final int CLIENTS = 32;
+    private static final int REQUESTS_PER_CLIENT = 1000;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private JWTTools jwtTools;
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+    @Autowired
+    private UserTokenVersions userTokenVersions;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void authenticatedGetsUnderLoad() throws Exception {
+        TestData data = new TestData(userRepository, productRepository);
+        List<User> users = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = data.user("load");
+            // Salvato con la repository e non con UserService: i suoi token li rendo validi io
+            userTokenVersions.register(user.getId(), user.getTokenVersion());
+            users.add(user);
+            tokens.add(jwtTools.createToken(user));
+        }
+        PrincipalCacheStatsDTO before = userPrincipalCache.getStats();
+
+        HttpLoad.Result result = HttpLoad.run(CLIENTS, REQUESTS_PER_CLIENT, (client, iteration) -> {
+            // Ogni client parte da un utente diverso
+            int u = (client * (USERS / CLIENTS) + iteration) % USERS;
+            return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/cart/" + users.get(u).getId()))
+                    .header("Authorization", "Bearer " + tokens.get(u))
+                    .GET()
+                    .build();
+        });
+
+        PrincipalCacheStatsDTO after = userPrincipalCache.getStats();
+        long misses = after.getMisses() - before.getMisses();
+        long hits = after.getHits() - before.getHits();
+        log.info("[benchmark] GET autenticate con {} client: {}, cache utenti {} hit / {} miss",
+                CLIENTS, result.summary(), hits, misses);
+
+        assertThat(result.count(200)).as("richieste riuscite").isEqualTo(CLIENTS * REQUESTS_PER_CLIENT);
+        // Un principal creato per utente (più qualche prima richiesta contemporanea sullo stesso utente), le altre
+        // richieste sono servite dalla cache
+        assertThat(misses).isLessThanOrEqualTo(USERS + CLIENTS);
+        assertThat(hits).isGreaterThanOrEqualTo((long) CLIENTS * REQUESTS_PER_CLIENT - USERS - CLIENTS);
+    }
+}
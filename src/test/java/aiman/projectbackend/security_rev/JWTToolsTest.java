@@ -0,0 +1,82 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.Role;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.exception_rev.UnauthorizedException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Verifica dei token in un solo passaggio e cache dei token già verificati (limitata, senza lock comune)
+class JWTToolsTest {
+
+    private JwtKeyStore keyStore;
+
+    @BeforeEach
+    void setUp() {
+        KeyPair keys = Jwts.SIG.ES256.keyPair().build();
+        keyStore = mock(JwtKeyStore.class);
+        when(keyStore.signingKid()).thenReturn("k1");
+        when(keyStore.signingKey()).thenReturn(keys.getPrivate());
+        when(keyStore.verificationKey("k1")).thenReturn(keys.getPublic());
+    }
+
+    @Test
+    void verifiesTokenAndBuildsPrincipal() {
+        JWTTools tools = newTools(100);
+        String token = tools.createToken(user(7L));
+
+        AuthenticatedUser principal = tools.toPrincipal(tools.verify(token));
+        assertThat(principal.getId()).isEqualTo(7L);
+        assertThat(principal.getTokenVersion()).isEqualTo(3L);
+        // Seconda verifica dalla cache, stesso risultato
+        assertThat(tools.toPrincipal(tools.verify(token)).getId()).isEqualTo(7L);
+    }
+
+    @Test
+    void rejectsTamperedToken() {
+        JWTTools tools = newTools(100);
+        String token = tools.createToken(user(7L));
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertThatThrownBy(() -> tools.verify(tampered)).isInstanceOf(UnauthorizedException.class);
+    }
+
+    @Test
+    void cacheNeverGrowsPastMaxSize() {
+        JWTTools tools = newTools(2);
+        for (long id = 1; id <= 5; id++) {
+            String token = tools.createToken(user(id));
+            // Con la cache piena il token viene comunque verificato, solo non resta in memoria
+            assertThat(tools.toPrincipal(tools.verify(token)).getId()).isEqualTo(id);
+        }
+        Map<?, ?> verified = (Map<?, ?>) ReflectionTestUtils.getField(tools, "verified");
+        assertThat(verified).hasSize(2);
+    }
+
+    private JWTTools newTools(int cacheMaxSize) {
+        JWTTools tools = new JWTTools();
+        ReflectionTestUtils.setField(tools, "keyStore", keyStore);
+        ReflectionTestUtils.setField(tools, "cacheMaxSize", cacheMaxSize);
+        ReflectionTestUtils.setField(tools, "accessTtlMinutes", 15L);
+        tools.init();
+        return tools;
+    }
+
+    private static User user(Long id) {
+        User user = new User("utente" + id, "password", "utente" + id + "@test.it", "Mario", "Rossi");
+        user.setId(id);
+        user.setRole(Role.USER);
+        user.setTokenVersion(3L);
+        return user;
+    }
+}
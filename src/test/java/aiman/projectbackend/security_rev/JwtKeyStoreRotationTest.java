@@ -0,0 +1,103 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.repository_rev.JwtSigningKeyRepository;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Rotazione delle chiavi JWT con più istanze sullo stesso db: una sola ruota, nessuna resta senza chiave di firma, e un
+// kid sconosciuto non fa aspettare la richiesta
+class JwtKeyStoreRotationTest extends PostgresIntegrationTest {
+
+    private static final int INSTANCES = 4;
+
+    @Autowired
+    private JwtSigningKeyRepository keyRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Value("${jwt.secret}")
+    private String secret;
+
+    @Test
+    void concurrentRotationLeavesExactlyOneActiveKey() throws Exception {
+        List<JwtKeyStore> stores = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            JwtKeyStore store = newStore();
+            store.init();
+            stores.add(store);
+        }
+        String before = stores.get(0).signingKid();
+        makeActiveKeysDue();
+
+        // Tutte le istanze si accorgono insieme che la chiave va ruotata
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService pool = Executors.newFixedThreadPool(INSTANCES)) {
+            List<Future<?>> refreshes = new ArrayList<>();
+            for (JwtKeyStore store : stores) {
+                refreshes.add(pool.submit(() -> {
+                    start.await();
+                    store.refresh();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> refresh : refreshes) {
+                refresh.get();
+            }
+        }
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM jwt_signing_keys WHERE expires_at IS NULL", Long.class)).isEqualTo(1L);
+        String after = stores.get(0).signingKid();
+        assertThat(after).isNotNull().isNotEqualTo(before);
+        for (JwtKeyStore store : stores) {
+            assertThat(store.signingKid()).isEqualTo(after);
+            assertThat(store.signingKey()).isNotNull();
+            // La chiave ritirata verifica ancora i token che ha firmato
+            assertThat(store.verificationKey(before)).isNotNull();
+        }
+    }
+
+    @Test
+    void unknownKidIsRejectedAtOnceAndLoadedInBackground() throws Exception {
+        JwtKeyStore local = newStore();
+        local.init();
+        JwtKeyStore other = newStore();
+        other.init();
+        makeActiveKeysDue();
+        other.refresh();
+        String rotatedElsewhere = other.signingKid();
+
+        // Dopo l'intervallo minimo tra due riletture il kid nuovo fa partire la rilettura, ma la richiesta non la aspetta
+        Thread.sleep(5_100);
+        assertThat(local.verificationKey(rotatedElsewhere)).isNull();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (local.verificationKey(rotatedElsewhere) == null && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(local.verificationKey(rotatedElsewhere)).isNotNull();
+    }
+
+    // Chiavi attive create due giorni fa: per tutte le istanze è ora di ruotare
+    private void makeActiveKeysDue() {
+        jdbcTemplate.update("UPDATE jwt_signing_keys SET created_at = created_at - INTERVAL '2 days' WHERE expires_at IS NULL");
+    }
+
+    private JwtKeyStore newStore() {
+        return new JwtKeyStore(keyRepository, jdbcTemplate, transactionTemplate, secret, 24, 15);
+    }
+}
@@ -0,0 +1,79 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.Role;
+import aiman.projectbackend.entity_rev.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmark JMH del percorso del filtro JWT (JWTTools.verify + toPrincipal) con 4 thread, come più richieste insieme
+ *
+ * cached --> token già verificati, lettura dalla ConcurrentHashMap (nessun lock comune tra i thread)
+ * uncached --> cache spenta (jwt.cache.max-size=0), ogni chiamata verifica la firma ES256 e legge il JSON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class JwtVerifyJmh {
+
+    private static final int TOKENS = 1000;
+
+    private JWTTools cached;
+    private JWTTools uncached;
+    private String[] tokens;
+
+    @Setup
+    public void setUp() {
+        KeyPair keys = Jwts.SIG.ES256.keyPair().build();
+        JwtKeyStore keyStore = mock(JwtKeyStore.class);
+        when(keyStore.signingKid()).thenReturn("bench");
+        when(keyStore.signingKey()).thenReturn(keys.getPrivate());
+        when(keyStore.verificationKey("bench")).thenReturn(keys.getPublic());
+
+        cached = newTools(keyStore, 10_000);
+        uncached = newTools(keyStore, 0);
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            User user = new User("utente" + i, "password", "utente" + i + "@test.it", "Mario", "Rossi");
+            user.setId((long) i + 1);
+            user.setRole(Role.USER);
+            tokens[i] = cached.createToken(user);
+            // Riempio la cache prima delle misure
+            cached.verify(tokens[i]);
+        }
+    }
+
+    @Benchmark
+    public AuthenticatedUser cached() {
+        return verify(cached);
+    }
+
+    @Benchmark
+    public AuthenticatedUser uncached() {
+        return verify(uncached);
+    }
+
+    private AuthenticatedUser verify(JWTTools tools) {
+        Claims claims = tools.verify(tokens[ThreadLocalRandom.current().nextInt(TOKENS)]);
+        return tools.toPrincipal(claims);
+    }
+
+    private static JWTTools newTools(JwtKeyStore keyStore, int cacheMaxSize) {
+        JWTTools tools = new JWTTools();
+        ReflectionTestUtils.setField(tools, "keyStore", keyStore);
+        ReflectionTestUtils.setField(tools, "cacheMaxSize", cacheMaxSize);
+        ReflectionTestUtils.setField(tools, "accessTtlMinutes", 15L);
+        tools.init();
+        return tools;
+    }
+}
@@ -0,0 +1,107 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.Product;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.Benchmark;
+import aiman.projectbackend.support_rev.HttpLoad;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark di traffico misto: una raffica di login (bcrypt sul pool PasswordHasher) insieme alle letture del catalogo
+ *
+ * 1) Misuro il catalogo da solo (GET /api/products/search)
+ * 2) Misuro lo stesso carico di catalogo mentre tanti client fanno login di continuo
+ * Il catalogo deve restare servito (gli hash non occupano i thread di tomcat) e i login in più rispetto al pool devono
+ * ricevere subito 503, mai errori o attese infinite. Il rate limit di /auth è spento, qui misuro solo il pool
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "auth.rate-limit.enabled=false")
+class MixedLoginCatalogBenchmarkTest extends PostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MixedLoginCatalogBenchmarkTest.class);
+
+    private static final String PASSWORD = "Password123!";
+    private static final int USERS = 50;
+    private static final int CATALOG_CLIENTS = 16;
+    private static final int CATALOG_REQUESTS = 300;
+    private static final int LOGIN_CLIENTS = 64;
+    private static final int LOGIN_REQUESTS = 20;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void catalogStaysServedDuringLoginBurst() throws Exception {
+        TestData data = new TestData(userRepository, productRepository);
+        String hash = passwordEncoder.encode(PASSWORD);
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = data.user("mix");
+            user.setPassword(hash);
+            emails.add(userRepository.save(user).getEmail());
+        }
+        List<Product> products = data.products(20);
+        // Nome comune ai prodotti appena creati ("Chiave <suffisso>-<n>")
+        String query = products.get(0).getName().substring("Chiave ".length()).split("-")[0];
+        HttpLoad.Requests catalog = (client, iteration) -> HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/api/products/search?name=" + query)).GET().build();
+
+        // Riscaldamento e catalogo da solo
+        HttpLoad.run(CATALOG_CLIENTS, CATALOG_REQUESTS / 3, catalog);
+        HttpLoad.Result alone = HttpLoad.run(CATALOG_CLIENTS, CATALOG_REQUESTS, catalog);
+        log.info("[benchmark] catalogo da solo: {}", alone.summary());
+
+        // Raffica di login e, mentre è in corso, lo stesso carico di catalogo
+        CompletableFuture<HttpLoad.Result> logins = CompletableFuture.supplyAsync(() -> {
+            try {
+                return HttpLoad.run(LOGIN_CLIENTS, LOGIN_REQUESTS, (client, iteration) -> HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + port + "/auth/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"" + emails.get((client + iteration) % USERS)
+                                + "\",\"password\":\"" + PASSWORD + "\"}"))
+                        .build());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // Lascio partire la raffica prima di misurare il catalogo
+        Thread.sleep(500);
+        HttpLoad.Result mixed = HttpLoad.run(CATALOG_CLIENTS, CATALOG_REQUESTS, catalog);
+        HttpLoad.Result loginResult = logins.get();
+        log.info("[benchmark] catalogo durante i login: {}", mixed.summary());
+        log.info("[benchmark] login: {}", loginResult.summary());
+        Benchmark.compare("p99 del catalogo, da solo --> durante i login", alone.p99Millis(), mixed.p99Millis());
+
+        assertThat(alone.count(200)).isEqualTo(CATALOG_CLIENTS * CATALOG_REQUESTS);
+        assertThat(mixed.count(200)).as("catalogo durante i login").isEqualTo(CATALOG_CLIENTS * CATALOG_REQUESTS);
+        // I login riescono (200) o vengono rifiutati subito dal pool pieno (503), nient'altro
+        assertThat(loginResult.count(200)).isPositive();
+        assertThat(loginResult.count(200) + loginResult.count(503)).isEqualTo(LOGIN_CLIENTS * LOGIN_REQUESTS);
+    }
+}
@@ -0,0 +1,100 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.Benchmark;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark della corsia veloce per le letture pubbliche del catalogo (catena @Order(0) di SecurityConfig)
+ *
+ * Misuro solo il costo della sicurezza: la richiesta GET /api/products/search passa per i filtri di spring security e
+ * arriva a una fine catena vuota (niente controller e niente db), così la differenza è tutta nei filtri
+ * 1) corsia veloce --> la catena di sicurezza dell'applicazione, la richiesta è riconosciuta da PublicEndpoints
+ * 2) prima --> solo la catena principale, come quando il catalogo chiedeva il token: filtro JWT, principal dalla cache,
+ * contesto di sicurezza e autorizzazione
+ * 3) prima, senza token --> catena principale senza token: il filtro JWT lancia UnauthorizedException e risponde 401
+ */
+@Tag("benchmark")
+class PublicCatalogFastLaneBenchmarkTest extends PostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PublicCatalogFastLaneBenchmarkTest.class);
+
+    private static final String PATH = "/api/products/search";
+    private static final int REQUESTS_PER_RUN = 50_000;
+
+    @Autowired
+    @Qualifier("springSecurityFilterChain")
+    private Filter applicationChain;
+    @Autowired
+    @Qualifier("securityFilterChain")
+    private SecurityFilterChain mainChain;
+    @Autowired
+    private JWTTools jwtTools;
+    @Autowired
+    private UserTokenVersions userTokenVersions;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void fastLaneVersusFullChain() {
+        User user = new TestData(userRepository, productRepository).user("lane");
+        // Salvato con la repository e non con UserService: il suo token lo rendo valido io
+        userTokenVersions.register(user.getId(), user.getTokenVersion());
+        String token = jwtTools.createToken(user);
+        FilterChainProxy mainOnly = new FilterChainProxy(mainChain);
+        AtomicInteger reached = new AtomicInteger();
+        FilterChain controller = (request, response) -> reached.incrementAndGet();
+
+        double fast = Benchmark.medianMillis("corsia veloce, " + REQUESTS_PER_RUN + " GET anonime", 3, 10,
+                i -> send(applicationChain, null, controller));
+        double full = Benchmark.medianMillis("catena principale con token, " + REQUESTS_PER_RUN + " GET", 3, 10,
+                i -> send(mainOnly, token, controller));
+        double rejected = Benchmark.medianMillis("catena principale senza token, " + REQUESTS_PER_RUN + " GET", 3, 10,
+                i -> send(mainOnly, null, controller));
+        log.info("[benchmark] richieste al secondo nei filtri: corsia veloce {}, con token {}, senza token {}",
+                perSecond(fast), perSecond(full), perSecond(rejected));
+        Benchmark.compare("catalogo con token --> corsia veloce", full, fast);
+        Benchmark.compare("catalogo senza token --> corsia veloce", rejected, fast);
+
+        // Corsia veloce e catena con token arrivano al controller (13 giri ciascuna), quella senza token mai
+        assertThat(reached.get()).isEqualTo(2 * 13 * REQUESTS_PER_RUN);
+    }
+
+    private static void send(Filter chain, String token, FilterChain controller) throws Exception {
+        for (int i = 0; i < REQUESTS_PER_RUN; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", PATH);
+            request.setServletPath(PATH);
+            request.setQueryString("name=chiave");
+            request.addParameter("name", "chiave");
+            if (token != null) {
+                request.addHeader("Authorization", "Bearer " + token);
+            }
+            chain.doFilter(request, new MockHttpServletResponse(), controller);
+        }
+    }
+
+    private static long perSecond(double millis) {
+        return Math.round(REQUESTS_PER_RUN / (millis / 1000.0));
+    }
+}
@@ -0,0 +1,63 @@
+package aiman.projectbackend.security_rev;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Token bucket: raffica fino alla capacità, riempimento nel tempo, chiavi indipendenti e pulizia dei secchi pieni
+class TokenBucketLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstUpToCapacityThenAsksToWait() {
+        // 5 gettoni, 1 ogni 12 secondi
+        TokenBucketLimiter limiter = new TokenBucketLimiter(5, 5);
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryConsume("a@test.it", now)).isZero();
+        }
+        long wait = limiter.tryConsume("a@test.it", now);
+        assertThat(wait).isPositive().isLessThanOrEqualTo(12 * SECOND);
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(2, 60);
+        long now = 1_000 * SECOND;
+        assertThat(limiter.tryConsume("10.0.0.1", now)).isZero();
+        assertThat(limiter.tryConsume("10.0.0.1", now)).isZero();
+        assertThat(limiter.tryConsume("10.0.0.1", now)).isPositive();
+        // Dopo un secondo è tornato un gettone, uno solo
+        assertThat(limiter.tryConsume("10.0.0.1", now + SECOND)).isZero();
+        assertThat(limiter.tryConsume("10.0.0.1", now + SECOND)).isPositive();
+    }
+
+    @Test
+    void keysHaveSeparateBuckets() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1);
+        long now = 1_000 * SECOND;
+        assertThat(limiter.tryConsume("10.0.0.1", now)).isZero();
+        assertThat(limiter.tryConsume("10.0.0.1", now)).isPositive();
+        assertThat(limiter.tryConsume("10.0.0.2", now)).isZero();
+        assertThat(limiter.size()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsOnlyBucketsThatAreFullAgain() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(3, 60);
+        long now = 1_000 * SECOND;
+        limiter.tryConsume("vecchio", now);
+        limiter.tryConsume("nuovo", now + 10 * SECOND);
+
+        // "vecchio" è di nuovo pieno da un pezzo, "nuovo" lo sarà solo tra mezzo secondo
+        assertThat(limiter.evictIdle(now + 10 * SECOND + SECOND / 2)).isEqualTo(1);
+        assertThat(limiter.size()).isEqualTo(1);
+        // Un secchio rimosso riparte pieno
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryConsume("vecchio", now + 11 * SECOND)).isZero();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.repository_rev.RefreshTokenRepository;
+import aiman.projectbackend.repository_rev.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Lista dei token revocati: revoche locali, revoche delle altre istanze lette per differenza e ricostruzione dal db
+class TokenRevocationListTest {
+
+    private final RevokedTokenRepository revokedTokenRepository = mock(RevokedTokenRepository.class);
+    private final RefreshTokenRepository refreshTokenRepository = mock(RefreshTokenRepository.class);
+    private TokenRevocationList list;
+
+    @BeforeEach
+    void setUp() {
+        when(revokedTokenRepository.findActive(any())).thenReturn(new ArrayList<>());
+        when(revokedTokenRepository.findRevokedSince(any(), any())).thenReturn(new ArrayList<>());
+        list = new TokenRevocationList(revokedTokenRepository, refreshTokenRepository, 1024);
+    }
+
+    @Test
+    void revokedTokenIsRejectedOthersAreNot() {
+        String jti = UUID.randomUUID().toString();
+        list.revoke(jti, LocalDateTime.now().plusMinutes(15));
+
+        verify(revokedTokenRepository).insertIgnore(eq(jti), any());
+        assertThat(list.isRevoked(jti)).isTrue();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(list.isRevoked(UUID.randomUUID().toString())).isFalse();
+        }
+    }
+
+    @Test
+    void pollPicksUpRevocationsFromOtherInstancesSinceTheLastSeen() {
+        LocalDateTime revokedAt = LocalDateTime.now().minusSeconds(2);
+        String first = UUID.randomUUID().toString();
+        when(revokedTokenRepository.findRevokedSince(any(), any()))
+                .thenReturn(rows(row(first, LocalDateTime.now().plusMinutes(15), revokedAt)));
+
+        list.pollNewRevocations();
+        assertThat(list.isRevoked(first)).isTrue();
+
+        // Il controllo successivo chiede solo le righe dopo l'ultima vista (meno la finestra di sovrapposizione)
+        String second = UUID.randomUUID().toString();
+        when(revokedTokenRepository.findRevokedSince(any(), any()))
+                .thenReturn(rows(row(second, LocalDateTime.now().plusMinutes(15), revokedAt.plusSeconds(1))));
+        list.pollNewRevocations();
+
+        verify(revokedTokenRepository).findRevokedSince(eq(revokedAt.minusSeconds(30)), any());
+        assertThat(list.isRevoked(first)).isTrue();
+        assertThat(list.isRevoked(second)).isTrue();
+    }
+
+    @Test
+    void rebuildLoadsActiveRevocationsAndStartsPollingAfterThem() {
+        LocalDateTime revokedAt = LocalDateTime.now().minusMinutes(1);
+        String jti = UUID.randomUUID().toString();
+        // Riga senza revoked_at (salvata prima della colonna) e riga con revoked_at
+        when(revokedTokenRepository.findActive(any())).thenReturn(rows(
+                row(UUID.randomUUID().toString(), LocalDateTime.now().plusMinutes(5), null),
+                row(jti, LocalDateTime.now().plusMinutes(15), revokedAt)));
+
+        list.rebuild();
+        assertThat(list.isRevoked(jti)).isTrue();
+
+        list.pollNewRevocations();
+        verify(revokedTokenRepository).findRevokedSince(eq(revokedAt.minusSeconds(30)), any());
+    }
+
+    @Test
+    void rebuildDropsExpiredRevocations() {
+        String expired = UUID.randomUUID().toString();
+        list.revoke(expired, LocalDateTime.now().minusSeconds(1));
+        assertThat(list.isRevoked(expired)).isTrue();
+
+        // Il db non la restituisce più (scaduta) e in memoria è scaduta --> esce dalla lista
+        list.rebuild();
+        assertThat(list.isRevoked(expired)).isFalse();
+    }
+
+    private static Object[] row(String jti, LocalDateTime expiresAt, LocalDateTime revokedAt) {
+        return new Object[]{jti, expiresAt, revokedAt};
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+}
@@ -0,0 +1,109 @@
+package aiman.projectbackend.security_rev;
+
+import aiman.projectbackend.entity_rev.Role;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Cache degli utenti autenticati sopra le versioni dei token in memoria: revoca senza query, cache e riletture dal db
+class UserPrincipalCacheTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    // Righe (id, token_version) restituite dalla prossima lettura degli utenti
+    private final List<long[]> usersInDb = new ArrayList<>();
+    private UserTokenVersions versions;
+    private UserPrincipalCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (long[] user : usersInDb) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(user[0]);
+                when(rs.getLong(2)).thenReturn(user[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        usersInDb.add(new long[]{1, 0});
+        usersInDb.add(new long[]{2, 3});
+        versions = new UserTokenVersions(jdbcTemplate);
+        versions.load();
+        cache = new UserPrincipalCache(versions, 100, 300);
+    }
+
+    @Test
+    void currentTokensAreServedFromMemory() {
+        AuthenticatedUser first = cache.get(token(1, 0));
+        AuthenticatedUser again = cache.get(token(1, 0));
+
+        assertThat(first).isNotNull();
+        assertThat(again).isSameAs(first);
+        assertThat(cache.get(token(2, 3))).isNotNull();
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+        assertThat(cache.getStats().getMisses()).isEqualTo(2);
+        // Solo la lettura iniziale, nessuna query per le richieste
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void oldVersionsAndUnknownUsersAreRejected() {
+        assertThat(cache.get(token(2, 2))).isNull();
+        assertThat(cache.get(token(99, 0))).isNull();
+    }
+
+    @Test
+    void roleChangeAndDeleteRevokeCachedPrincipals() {
+        assertThat(cache.get(token(1, 0))).isNotNull();
+
+        // Cambio ruolo: versione + 1, il token vecchio non vale più anche se il principal era in cache
+        versions.register(1L, 1L);
+        cache.invalidate(1L);
+        assertThat(cache.get(token(1, 0))).isNull();
+        assertThat(cache.get(token(1, 1))).isNotNull();
+
+        versions.remove(1L);
+        cache.invalidate(1L);
+        assertThat(cache.get(token(1, 1))).isNull();
+    }
+
+    @Test
+    void reloadPicksUpChangesFromOtherInstances() {
+        assertThat(cache.get(token(2, 3))).isNotNull();
+
+        // Un'altra istanza ha cancellato l'utente 2 e creato l'utente 5
+        usersInDb.removeIf(user -> user[0] == 2);
+        usersInDb.add(new long[]{5, 0});
+        versions.load();
+
+        assertThat(cache.get(token(2, 3))).isNull();
+        assertThat(cache.get(token(5, 0))).isNotNull();
+    }
+
+    @Test
+    void changesMadeDuringReloadAreKept() {
+        // Utente registrato qui mentre la rilettura è in corso (la lettura del db non lo vede ancora)
+        doAnswer(invocation -> {
+            versions.register(7L, 0L);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        versions.load();
+
+        assertThat(cache.get(token(7, 0))).isNotNull();
+    }
+
+    private static AuthenticatedUser token(long id, long version) {
+        return new AuthenticatedUser(id, "utente" + id, Role.USER, version);
+    }
+}
@@ -0,0 +1,95 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.BulkOrderResultDTO;
+import aiman.projectbackend.dto_rev.OrderRequestDTO;
+import aiman.projectbackend.entity_rev.Product;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.service_rev.api_rev.ShippingService;
+import aiman.projectbackend.support_rev.Benchmark;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+// Benchmark di POST /api/orders/bulk contro N chiamate singole a createOrderFromDto con gli stessi ordini
+// ORS è sostituito da uno stub con una latenza fissa, così il benchmark conta anche il riuso dei preventivi per indirizzo
+@Tag("benchmark")
+class BulkOrderBenchmarkTest extends PostgresIntegrationTest {
+
+    private static final int ORDERS = 50;
+    private static final int ITEMS_PER_ORDER = 10;
+    private static final int CUSTOMERS = 10;
+    private static final long ORS_LATENCY_MS = 20;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private BulkOrderService bulkOrderService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    @MockitoBean
+    private ShippingService shippingService;
+
+    private List<OrderRequestDTO> requests;
+
+    @BeforeEach
+    void setUp() {
+        when(shippingService.calculateShippingCost(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+            Thread.sleep(ORS_LATENCY_MS);
+            return 9.9;
+        });
+
+        TestData data = new TestData(userRepository, productRepository);
+        List<User> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(data.userWithAddress("bulk"));
+        }
+        List<Product> products = data.products(ITEMS_PER_ORDER);
+
+        // Ogni cliente (installatore) manda 5 ordini da 10 righe
+        requests = new ArrayList<>();
+        for (int n = 0; n < ORDERS; n++) {
+            OrderRequestDTO request = new OrderRequestDTO();
+            request.setUserId(customers.get(n % CUSTOMERS).getId());
+            List<OrderRequestDTO.OrderItemRequestDTO> items = new ArrayList<>();
+            for (Product product : products) {
+                OrderRequestDTO.OrderItemRequestDTO item = new OrderRequestDTO.OrderItemRequestDTO();
+                item.setProductId(product.getId());
+                item.setQuantity(1 + n % 3);
+                items.add(item);
+            }
+            request.setItems(items);
+            requests.add(request);
+        }
+    }
+
+    @Test
+    void bulkSubmissionBeatsSingleCalls() {
+        double single = Benchmark.medianMillis(ORDERS + " ordini con " + ORDERS + " POST /api/orders", 2, 5,
+                iteration -> requests.forEach(orderService::createOrderFromDto));
+        double bulk = Benchmark.medianMillis(ORDERS + " ordini con una POST /api/orders/bulk", 2, 5, iteration -> {
+            List<BulkOrderResultDTO> results = bulkOrderService.createOrders(requests);
+            assertThat(results).extracting(BulkOrderResultDTO::getOutcome).containsOnly(BulkOrderResultDTO.CREATED);
+        });
+        Benchmark.compare("singoli --> bulk", single, bulk);
+
+        // Le chiamate singole pagano almeno un preventivo ORS per ordine, il bulk uno per indirizzo
+        assertThat(single).isGreaterThan(ORDERS * ORS_LATENCY_MS);
+        assertThat(bulk).isLessThan(single);
+    }
+}
@@ -0,0 +1,97 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.OrderRequestDTO;
+import aiman.projectbackend.entity_rev.Product;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.Benchmark;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark delle INSERT prima/dopo gli id da sequenza: un ordine da 100 righe e 1000 prodotti salvati insieme
+ *
+ * Il "prima" (id IDENTITY) non esiste più nel codice, lo simulo con jdbc batch size 1 sulla sessione: come con IDENTITY
+ * ogni riga è una INSERT con il suo giro verso il db. Il "dopo" usa la configurazione dell'applicazione (batch da 50,
+ * reWriteBatchedInserts sull'url del container)
+ */
+@Tag("benchmark")
+class InsertBatchingBenchmarkTest extends PostgresIntegrationTest {
+
+    private static final int ORDER_ITEMS = 100;
+    private static final int BULK_PRODUCTS = 1000;
+    private static final Integer ONE_ROW_PER_STATEMENT = 1;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TestData data;
+    private OrderRequestDTO request;
+
+    @BeforeEach
+    void setUp() {
+        data = new TestData(userRepository, productRepository);
+        // Utente senza indirizzo, così l'ordine non chiede il preventivo a ORS
+        User user = data.user("batch");
+        List<OrderRequestDTO.OrderItemRequestDTO> items = new ArrayList<>();
+        for (Product product : data.products(ORDER_ITEMS)) {
+            OrderRequestDTO.OrderItemRequestDTO item = new OrderRequestDTO.OrderItemRequestDTO();
+            item.setProductId(product.getId());
+            item.setQuantity(1);
+            items.add(item);
+        }
+        request = new OrderRequestDTO();
+        request.setUserId(user.getId());
+        request.setItems(items);
+    }
+
+    @Test
+    void orderWithHundredItems() {
+        double before = measure("ordine da " + ORDER_ITEMS + " righe, una INSERT per riga", ONE_ROW_PER_STATEMENT,
+                () -> assertThat(orderService.createOrderFromDto(request).getItems()).hasSize(ORDER_ITEMS));
+        double after = measure("ordine da " + ORDER_ITEMS + " righe, INSERT a batch", null,
+                () -> assertThat(orderService.createOrderFromDto(request).getItems()).hasSize(ORDER_ITEMS));
+        Benchmark.compare("ordine da " + ORDER_ITEMS + " righe", before, after);
+        assertThat(after).isLessThan(before);
+    }
+
+    @Test
+    void bulkProductInsert() {
+        double before = measure(BULK_PRODUCTS + " prodotti, una INSERT per riga", ONE_ROW_PER_STATEMENT,
+                () -> assertThat(data.products(BULK_PRODUCTS)).hasSize(BULK_PRODUCTS));
+        double after = measure(BULK_PRODUCTS + " prodotti, INSERT a batch", null,
+                () -> assertThat(data.products(BULK_PRODUCTS)).hasSize(BULK_PRODUCTS));
+        Benchmark.compare(BULK_PRODUCTS + " prodotti", before, after);
+        assertThat(after).isLessThan(before);
+    }
+
+    // Ogni giro è una transazione, batchSize null --> quello configurato in application.properties
+    private double measure(String name, Integer batchSize, Runnable action) {
+        return Benchmark.medianMillis(name, 2, 7, iteration -> transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            action.run();
+        }));
+    }
+}
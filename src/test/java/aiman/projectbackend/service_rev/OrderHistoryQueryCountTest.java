@@ -0,0 +1,97 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
+import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.QueryCounter;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Regressione sul numero di query dello storico ordini (GET /api/orders/user/{userId}): ogni pagina deve costare una
+// sola istruzione SQL, qualunque sia il numero di ordini dell'utente e di righe per ordine
+class OrderHistoryQueryCountTest extends PostgresIntegrationTest {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int ITEMS_PER_ORDER = 3;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 500})
+    void everyHistoryPageIsOneStatement(int orderCount) {
+        User user = createUserWithOrders(orderCount);
+
+        Set<Long> seen = new HashSet<>();
+        LocalDateTime lastDate = null;
+        Long lastId = null;
+        while (true) {
+            QueryCounter.reset();
+            List<OrderHistoryDTO> page = orderService.getOrdersByUser(user.getId(), lastDate, lastId, PAGE_SIZE);
+            assertThat(QueryCounter.count()).as("query per la pagina dopo %s ordini", seen.size()).isEqualTo(1);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (OrderHistoryDTO order : page) {
+                assertThat(seen.add(order.getId())).as("ordine %s ripetuto", order.getId()).isTrue();
+                assertThat(order.getItems()).hasSize(ITEMS_PER_ORDER);
+                assertThat(order.getItems()).allSatisfy(item -> assertThat(item.getProductName()).isNotNull());
+            }
+            OrderHistoryDTO last = page.get(page.size() - 1);
+            lastDate = last.getOrderDate();
+            lastId = last.getId();
+        }
+        assertThat(seen).hasSize(orderCount);
+    }
+
+    // Un utente con orderCount ordini da ITEMS_PER_ORDER righe, ognuna su un prodotto diverso
+    private User createUserWithOrders(int orderCount) {
+        TestData data = new TestData(userRepository, productRepository);
+        User user = data.user("hist");
+        List<Product> products = data.products(ITEMS_PER_ORDER);
+
+        LocalDateTime start = LocalDateTime.now().minusDays(orderCount);
+        List<Order> orders = new ArrayList<>();
+        for (int n = 0; n < orderCount; n++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setOrderDate(start.plusDays(n));
+            order.setStatus(OrderStatus.PENDING);
+            List<OrderItem> items = new ArrayList<>();
+            double total = 0;
+            for (Product product : products) {
+                OrderItem item = new OrderItem();
+                item.setOrder(order);
+                item.setProduct(product);
+                item.setQuantity(2);
+                item.setPriceAtPurchase(product.getPrice());
+                items.add(item);
+                total += product.getPrice() * 2;
+            }
+            order.setItems(items);
+            order.setTotalAmount(total);
+            orders.add(order);
+        }
+        orderRepository.saveAll(orders);
+        return user;
+    }
+}
@@ -0,0 +1,183 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.OrderSearchDTO;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.entity_rev.Product;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.Benchmark;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark della ricerca admin (GET /api/orders/search) su una tabella ordini sintetica, con i piani di esecuzione
+ *
+ * Gli ordini (2 righe ciascuno) vengono generati in SQL con generate_series: di default 1M, per la misura completa
+ * mvn test -Pbenchmark -Dbenchmark.orders=10000000. Per ogni combinazione di criteri controllo con EXPLAIN che postgres
+ * usi gli indici compositi (nessuna Seq Scan su orders o order_items) e misuro la mediana della prima pagina
+ */
+@Tag("benchmark")
+class OrderSearchPlanBenchmarkTest extends PostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderSearchPlanBenchmarkTest.class);
+
+    private static final long ORDERS = Long.getLong("benchmark.orders", 1_000_000L);
+    private static final int USERS = 200;
+    private static final int PRODUCTS = 50;
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    // Un ordine ogni 13 secondi: 10M ordini coprono circa 4 anni
+    private static final int SECONDS_BETWEEN_ORDERS = 13;
+
+    @Autowired
+    private OrderSearchService orderSearchService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void searchUsesIndexRangePlans() {
+        TestData data = new TestData(userRepository, productRepository);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(data.user("srch"));
+        }
+        List<Product> products = data.products(PRODUCTS);
+        seedOrders(users, products);
+
+        LocalDateTime middle = START.plusSeconds(ORDERS / 2 * SECONDS_BETWEEN_ORDERS);
+        Map<String, OrderSearchDTO> cases = new LinkedHashMap<>();
+        cases.put("nessun criterio", criteria());
+        OrderSearchDTO byStatus = criteria();
+        byStatus.setStatus(OrderStatus.SHIPPED);
+        byStatus.setFrom(middle.minusDays(30));
+        byStatus.setTo(middle);
+        cases.put("status + periodo", byStatus);
+        OrderSearchDTO byEmail = criteria();
+        byEmail.setEmail(users.get(USERS / 2).getEmail());
+        cases.put("email", byEmail);
+        OrderSearchDTO byEmailAndPeriod = criteria();
+        byEmailAndPeriod.setEmail(users.get(USERS / 2).getEmail());
+        byEmailAndPeriod.setFrom(middle.minusDays(90));
+        byEmailAndPeriod.setTo(middle);
+        cases.put("email + periodo", byEmailAndPeriod);
+        OrderSearchDTO byTotal = criteria();
+        byTotal.setFrom(middle.minusDays(7));
+        byTotal.setTo(middle);
+        byTotal.setMinTotal(900.0);
+        cases.put("periodo + totale minimo", byTotal);
+        OrderSearchDTO byProduct = criteria();
+        byProduct.setProductId(products.get(PRODUCTS / 2).getId());
+        cases.put("prodotto", byProduct);
+        OrderSearchDTO nextPage = criteria();
+        nextPage.setStatus(OrderStatus.PAID);
+        nextPage.setLastDate(middle);
+        nextPage.setLastId(Long.MAX_VALUE);
+        cases.put("status, pagina successiva", nextPage);
+
+        Map<String, String> expectedIndex = Map.of(
+                "nessun criterio", "idx_orders_order_date",
+                "status + periodo", "idx_orders_status_date",
+                "email", "idx_orders_user_date",
+                "email + periodo", "idx_orders_user_date",
+                "status, pagina successiva", "idx_orders_status_date");
+
+        cases.forEach((name, criteria) -> {
+            String plan = explain(criteria);
+            log.info("[benchmark] piano per {}:\n{}", name, plan);
+            assertThat(plan).as("piano per %s", name)
+                    .doesNotContain("Seq Scan on orders")
+                    .doesNotContain("Seq Scan on order_items");
+            if (expectedIndex.containsKey(name)) {
+                assertThat(plan).as("piano per %s", name).contains(expectedIndex.get(name));
+            }
+            Benchmark.medianMillis("ricerca per " + name + " su " + ORDERS + " ordini", 3, 11,
+                    iteration -> assertThat(orderSearchService.search(criteria)).isNotNull());
+        });
+    }
+
+    private static OrderSearchDTO criteria() {
+        OrderSearchDTO criteria = new OrderSearchDTO();
+        criteria.setSize(50);
+        return criteria;
+    }
+
+    // EXPLAIN della stessa query che esegue la ricerca, con gli stessi parametri
+    private String explain(OrderSearchDTO criteria) {
+        OrderSearchService.SearchQuery query = orderSearchService.buildQuery(criteria);
+        return String.join("\n", namedJdbcTemplate.queryForList("EXPLAIN " + query.sql(), query.params(), String.class));
+    }
+
+    // Genero gli ordini e le righe in SQL, con id riservati dalle sequenze (così non si scontrano con quelli di hibernate)
+    private void seedOrders(List<User> users, List<Product> products) {
+        long orderBase = reserveIds("orders_seq", ORDERS);
+        long itemBase = reserveIds("order_items_seq", ORDERS * 2);
+        Long[] userIds = users.stream().map(User::getId).toArray(Long[]::new);
+        Long[] productIds = products.stream().map(Product::getId).toArray(Long[]::new);
+
+        long start = System.nanoTime();
+        jdbcTemplate.update("""
+                INSERT INTO orders (id, order_date, status, total_amount, shipping_cost, user_id)
+                SELECT ? + g,
+                       CAST(? AS timestamp) + g * make_interval(secs => ?),
+                       (ARRAY['PENDING', 'PAID', 'SHIPPED', 'DELIVERED', 'CANCELLED'])[1 + g % 5],
+                       (g * 37) % 1000 + 0.5,
+                       5.0,
+                       (CAST(? AS bigint[]))[1 + g % ?]
+                FROM generate_series(1, ?) g
+                """, ps -> {
+            ps.setLong(1, orderBase);
+            ps.setObject(2, START);
+            ps.setInt(3, SECONDS_BETWEEN_ORDERS);
+            ps.setArray(4, ps.getConnection().createArrayOf("bigint", userIds));
+            ps.setInt(5, userIds.length);
+            ps.setLong(6, ORDERS);
+        });
+        jdbcTemplate.update("""
+                INSERT INTO order_items (id, order_id, product_id, quantity, price_at_purchase)
+                SELECT ? + g * 2 - k,
+                       ? + g,
+                       (CAST(? AS bigint[]))[1 + (g * 7 + k * 3) % ?],
+                       1 + k,
+                       10.0
+                FROM generate_series(1, ?) g CROSS JOIN generate_series(0, 1) k
+                """, ps -> {
+            ps.setLong(1, itemBase);
+            ps.setLong(2, orderBase);
+            ps.setArray(3, ps.getConnection().createArrayOf("bigint", productIds));
+            ps.setInt(4, productIds.length);
+            ps.setLong(5, ORDERS);
+        });
+        jdbcTemplate.execute("ANALYZE orders");
+        jdbcTemplate.execute("ANALYZE order_items");
+        log.info("[benchmark] {} ordini sintetici generati in {} s", ORDERS, (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    // Riservo count id dalla sequenza: uso (base, base + count], poi sposto la sequenza oltre l'ultimo id usato
+    // (con allocationSize 50 il prossimo blocco di hibernate parte da base + count + 1)
+    private long reserveIds(String sequence, long count) {
+        Long base = jdbcTemplate.queryForObject("SELECT nextval(CAST(? AS regclass))", Long.class, sequence);
+        jdbcTemplate.queryForObject("SELECT setval(CAST(? AS regclass), ?)", Long.class, sequence, base + count);
+        return base;
+    }
+}
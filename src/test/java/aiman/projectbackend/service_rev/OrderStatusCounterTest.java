@@ -0,0 +1,49 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.entity_rev.OrderStatus;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Contatori per status: lettura iniziale dal db (prima del web server) e aggiornamenti successivi
+class OrderStatusCounterTest {
+
+    @Test
+    void startSeedsFromDatabaseThenAppliesChanges() {
+        OrderRepository repository = mock(OrderRepository.class);
+        when(repository.countOrdersGroupedByStatus()).thenReturn(List.of(
+                new Object[]{OrderStatus.PENDING, 3L},
+                new Object[]{OrderStatus.PAID, 2L},
+                new Object[]{null, 7L}));
+        OrderStatusCounter counter = new OrderStatusCounter(repository);
+
+        counter.start();
+        assertThat(counter.isRunning()).isTrue();
+        // Gli ordini vecchi senza status non vengono contati
+        assertThat(counter.snapshot()).containsEntry(OrderStatus.PENDING, 3L)
+                .containsEntry(OrderStatus.PAID, 2L)
+                .containsEntry(OrderStatus.SHIPPED, 0L);
+
+        counter.increment(OrderStatus.PENDING);
+        counter.transition(OrderStatus.PAID, OrderStatus.SHIPPED);
+        counter.transition(null, OrderStatus.CANCELLED);
+        counter.add(OrderStatus.PENDING, -2);
+
+        assertThat(counter.snapshot()).containsEntry(OrderStatus.PENDING, 2L)
+                .containsEntry(OrderStatus.PAID, 1L)
+                .containsEntry(OrderStatus.SHIPPED, 1L)
+                .containsEntry(OrderStatus.CANCELLED, 1L);
+    }
+
+    @Test
+    void seedsBeforeTheWebServer() {
+        OrderStatusCounter counter = new OrderStatusCounter(mock(OrderRepository.class));
+        // Il web server parte nelle fasi più alte (vicine a Integer.MAX_VALUE)
+        assertThat(counter.getPhase()).isLessThan(Integer.MAX_VALUE - 2048);
+    }
+}
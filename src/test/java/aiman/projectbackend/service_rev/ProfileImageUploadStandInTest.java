@@ -0,0 +1,259 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.ProfileImageUploadDTO;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.security_rev.JWTTools;
+import aiman.projectbackend.security_rev.UserTokenVersions;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Caricamento dell'immagine profilo contro un finto cloudinary locale (cloudinary.upload-prefix), con file grandi
+ *
+ * Il finto cloudinary è un HttpServer del jdk: legge il corpo a blocchi contando i byte, aspetta un po' (come un invio
+ * lento) e risponde con un url. Controllo che:
+ * 1) PATCH /api/users/{id}/profile-image risponda subito 202 con l'indirizzo dello stato, anche per file di 18 MB
+ * 2) A invio finito lo stato sia COMPLETED e l'url sia salvato sull'utente (UserService.updateProfileImage)
+ * 3) Ogni file arrivi intero a cloudinary, sia quello piccolo tenuto in memoria sia quelli grandi copiati su disco
+ * 4) Gli invii insieme non siano mai più di upload.max-concurrent e i file temporanei vengano cancellati
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "upload.max-concurrent=2",
+        "upload.spool-dir=target/test-upload-spool"
+})
+class ProfileImageUploadStandInTest extends PostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileImageUploadStandInTest.class);
+
+    private static final int MAX_CONCURRENT = 2;
+    private static final Path SPOOL_DIR = Path.of("target/test-upload-spool");
+    private static final String BOUNDARY = "----profile-image-" + UUID.randomUUID();
+    // Piccolo (in memoria, sotto upload.memory-threshold-kb) e grandi (copiati su disco), tutti sotto il limite di 20 MB
+    private static final long[] SIZES = {100 * 1024, 5L << 20, 5L << 20, 8L << 20, 12L << 20, 18L << 20};
+
+    // Finto cloudinary: byte ricevuti per ogni invio, invii in corso e il massimo visto insieme
+    private static final HttpServer STAND_IN;
+    private static final Queue<Long> RECEIVED = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final AtomicInteger PEAK_IN_FLIGHT = new AtomicInteger();
+    private static final AtomicInteger UPLOADS = new AtomicInteger();
+
+    static {
+        try {
+            STAND_IN = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        STAND_IN.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // Stesso percorso delle API vere: /v1_1/{cloud_name}/image/upload
+        STAND_IN.createContext("/v1_1/", exchange -> {
+            int now = IN_FLIGHT.incrementAndGet();
+            PEAK_IN_FLIGHT.accumulateAndGet(now, Math::max);
+            try {
+                RECEIVED.add(exchange.getRequestBody().transferTo(OutputStream.nullOutputStream()));
+                Thread.sleep(300);
+                byte[] body = ("{\"url\":\"http://stand-in.test/image/upload/" + UPLOADS.incrementAndGet() + ".jpg\"}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                IN_FLIGHT.decrementAndGet();
+                exchange.close();
+            }
+        });
+        STAND_IN.start();
+    }
+
+    @DynamicPropertySource
+    static void cloudinaryStandIn(DynamicPropertyRegistry registry) {
+        registry.add("cloudinary.upload-prefix", () -> "http://localhost:" + STAND_IN.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        STAND_IN.stop(0);
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private JWTTools jwtTools;
+    @Autowired
+    private UserTokenVersions userTokenVersions;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void largeImagesAreAcceptedAtOnceAndUploadedInBackground() throws Exception {
+        TestData data = new TestData(userRepository, productRepository);
+        List<User> users = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        for (long size : SIZES) {
+            User user = data.user("img");
+            // Salvato con la repository e non con UserService: i suoi token li rendo validi io
+            userTokenVersions.register(user.getId(), user.getTokenVersion());
+            users.add(user);
+            files.add(imageFile(size));
+        }
+
+        // Tutti i caricamenti insieme: ognuno deve avere il suo 202 senza aspettare cloudinary
+        List<ProfileImageUploadDTO> accepted = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ProfileImageUploadDTO>> responses = new ArrayList<>();
+            for (int i = 0; i < SIZES.length; i++) {
+                User user = users.get(i);
+                Path file = files.get(i);
+                responses.add(clients.submit(() -> upload(user, file)));
+            }
+            for (Future<ProfileImageUploadDTO> response : responses) {
+                accepted.add(response.get());
+            }
+        }
+        long acceptedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<ProfileImageUploadDTO> finished = new ArrayList<>();
+        for (int i = 0; i < SIZES.length; i++) {
+            finished.add(awaitFinished(users.get(i), accepted.get(i)));
+        }
+        long finishedMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Caricati {} file ({} MB in tutto): tutti accettati in {} ms, tutti su cloudinary in {} ms, " +
+                        "al massimo {} invii insieme", SIZES.length, Arrays.stream(SIZES).sum() >> 20,
+                acceptedMillis, finishedMillis, PEAK_IN_FLIGHT.get());
+
+        for (int i = 0; i < SIZES.length; i++) {
+            ProfileImageUploadDTO upload = finished.get(i);
+            assertThat(upload.getStatus()).as("stato del file %s (%s)", i, upload.getError())
+                    .isEqualTo(ProfileImageUploadDTO.COMPLETED);
+            assertThat(upload.getImageUrl()).startsWith("http://stand-in.test/");
+            assertThat(userRepository.findById(users.get(i).getId()).orElseThrow().getProfileImageUrl())
+                    .isEqualTo(upload.getImageUrl());
+        }
+
+        // Ogni file è arrivato intero (il corpo multipart è un po' più grande del file)
+        List<Long> received = RECEIVED.stream().sorted().toList();
+        assertThat(received).hasSize(SIZES.length);
+        long[] sortedSizes = SIZES.clone();
+        Arrays.sort(sortedSizes);
+        for (int i = 0; i < sortedSizes.length; i++) {
+            assertThat(received.get(i)).isGreaterThanOrEqualTo(sortedSizes[i]);
+        }
+        assertThat(PEAK_IN_FLIGHT.get()).isBetween(1, MAX_CONCURRENT);
+
+        // Nessun file temporaneo rimasto
+        try (Stream<Path> leftovers = Files.list(SPOOL_DIR)) {
+            assertThat(leftovers.filter(p -> p.getFileName().toString().startsWith("profile-image-"))).isEmpty();
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // PATCH multipart letto dal file a blocchi (il test non tiene in memoria le immagini)
+    private ProfileImageUploadDTO upload(User user, Path file) throws Exception {
+        byte[] head = ("--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getFileName() + "\"\r\n" +
+                "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url("/api/users/" + user.getId() + "/profile-image")))
+                .header("Authorization", "Bearer " + jwtTools.createToken(user))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .method("PATCH", HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofByteArray(head),
+                        HttpRequest.BodyPublishers.ofFile(file),
+                        HttpRequest.BodyPublishers.ofByteArray(tail)))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).as("risposta al file %s: %s", file, response.body()).isEqualTo(202);
+        ProfileImageUploadDTO upload = objectMapper.readValue(response.body(), ProfileImageUploadDTO.class);
+        assertThat(response.headers().firstValue("Location")).contains(upload.getStatusUrl());
+        return upload;
+    }
+
+    // Chiedo lo stato finchè il caricamento non è finito (COMPLETED o FAILED)
+    private ProfileImageUploadDTO awaitFinished(User user, ProfileImageUploadDTO upload) throws Exception {
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (true) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url(upload.getStatusUrl())))
+                    .header("Authorization", "Bearer " + jwtTools.createToken(user))
+                    .GET()
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(200);
+            ProfileImageUploadDTO status = objectMapper.readValue(response.body(), ProfileImageUploadDTO.class);
+            if (ProfileImageUploadDTO.COMPLETED.equals(status.getStatus())
+                    || ProfileImageUploadDTO.FAILED.equals(status.getStatus())) {
+                return status;
+            }
+            assertThat(System.nanoTime()).as("caricamento %s non finito", upload.getUploadId()).isLessThan(deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    // File di byte casuali (non comprimibili) della dimensione indicata, scritto a blocchi da 1 MB
+    private static Path imageFile(long size) throws IOException {
+        Files.createDirectories(Path.of("target"));
+        Path file = Files.createTempFile(Path.of("target"), "stand-in-image-", ".jpg");
+        Random random = new Random(size);
+        byte[] chunk = new byte[1 << 20];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -0,0 +1,32 @@
+package aiman.projectbackend.service_rev;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Divisione delle righe CSV dell'importazione utenti: virgole, valori tra doppi apici e apici non chiusi
+class UserImportCsvTest {
+
+    @Test
+    void splitsOnCommas() {
+        assertThat(UserImportService.splitCsv("mario,mario@test.it,Password1!,Mario,Rossi"))
+                .containsExactly("mario", "mario@test.it", "Password1!", "Mario", "Rossi");
+    }
+
+    @Test
+    void keepsEmptyFields() {
+        assertThat(UserImportService.splitCsv("a,,c,")).containsExactly("a", "", "c", "");
+        assertThat(UserImportService.splitCsv("")).containsExactly("");
+    }
+
+    @Test
+    void quotedValuesKeepCommasAndDoubledQuotes() {
+        assertThat(UserImportService.splitCsv("\"Via Roma, 1\",\"Milano\",\"il \"\"centro\"\"\""))
+                .containsExactly("Via Roma, 1", "Milano", "il \"centro\"");
+    }
+
+    @Test
+    void unclosedQuoteIsRejected() {
+        assertThat(UserImportService.splitCsv("mario,\"Via Roma, 1")).isNull();
+    }
+}
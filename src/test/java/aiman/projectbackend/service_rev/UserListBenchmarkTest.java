@@ -0,0 +1,108 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.UserDTO;
+import aiman.projectbackend.support_rev.Benchmark;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark della lista utenti (GET /api/users/page) su una tabella utenti sintetica, con i piani di esecuzione
+ *
+ * Gli utenti (metà con indirizzo) vengono generati in SQL con generate_series: di default 100k, per una misura più grande
+ * mvn test -Pbenchmark -Dbenchmark.users=1000000. Controllo con EXPLAIN che la pagina senza ricerca usi la chiave
+ * primaria e che la ricerca per inizio di email o username usi gli indici lower(...) text_pattern_ops
+ * (SearchIndexMigration), poi misuro la mediana di una pagina per ogni caso
+ */
+@Tag("benchmark")
+class UserListBenchmarkTest extends PostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(UserListBenchmarkTest.class);
+
+    private static final long USERS = Long.getLong("benchmark.users", 100_000L);
+    private static final int PAGE_SIZE = 50;
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void userPagesUseIndexes() {
+        // Prefisso comune agli utenti di questo giro: username = prefisso + numero
+        String prefix = "bu" + TestData.unique().substring(0, 5);
+        long base = seedUsers(prefix);
+
+        // Ricerca selettiva: prefisso + "4242" trova 4242, 42420-42429, 424200-424299 ...
+        String selective = prefix + "4242";
+        String plan = explain("WHERE (lower(u.email) LIKE ? OR lower(u.username) LIKE ?)", selective + "%", selective + "%");
+        log.info("[benchmark] piano della ricerca per inizio di email o username:\n{}", plan);
+        assertThat(plan).doesNotContain("Seq Scan on users")
+                .contains("idx_users_email_prefix")
+                .contains("idx_users_username_prefix");
+
+        String keysetPlan = explain("WHERE u.id > ?", base + USERS / 2);
+        log.info("[benchmark] piano della pagina senza ricerca:\n{}", keysetPlan);
+        assertThat(keysetPlan).doesNotContain("Seq Scan on users");
+
+        Benchmark.medianMillis("prima pagina su " + USERS + " utenti", 3, 11,
+                i -> assertThat(userService.getUsersPage(null, null, PAGE_SIZE)).hasSize(PAGE_SIZE));
+        Benchmark.medianMillis("pagina a metà su " + USERS + " utenti", 3, 11,
+                i -> assertThat(userService.getUsersPage(null, base + USERS / 2, PAGE_SIZE)).hasSize(PAGE_SIZE));
+        Benchmark.medianMillis("ricerca selettiva su " + USERS + " utenti", 3, 11,
+                i -> assertThat(userService.getUsersPage(selective.toUpperCase(), null, PAGE_SIZE)).isNotEmpty());
+        Benchmark.medianMillis("ricerca per email su " + USERS + " utenti", 3, 11,
+                i -> assertThat(userService.getUsersPage(prefix + "99999@test", null, PAGE_SIZE)).hasSizeLessThanOrEqualTo(1));
+
+        // La pagina cercata ha gli indirizzi degli utenti pari già dentro (una sola query, niente SELECT per utente)
+        List<UserDTO> page = userService.getUsersPage(selective, null, PAGE_SIZE);
+        assertThat(page).allSatisfy(user -> assertThat(user.getUsername()).startsWith(selective));
+        assertThat(page).anySatisfy(user -> assertThat(user.getAddress()).isNotNull());
+    }
+
+    // Inserisco USERS utenti e un indirizzo per ogni utente pari, con gli id riservati dalle sequenze
+    private long seedUsers(String prefix) {
+        long userBase = reserveIds("users_seq", USERS);
+        long addressBase = reserveIds("addresses_seq", USERS);
+
+        long start = System.nanoTime();
+        jdbcTemplate.update("""
+                INSERT INTO users (id, username, password, email, first_name, last_name, registration_date, role, token_version)
+                SELECT ? + g, ? || g, 'password-non-usata', ? || g || '@test.it', 'Mario', 'Rossi',
+                       LOCALTIMESTAMP - make_interval(mins => g), 'USER', 0
+                FROM generate_series(1, ?) g
+                """, userBase, prefix, prefix, USERS);
+        jdbcTemplate.update("""
+                INSERT INTO addresses (id, street, city, zip_code, user_id)
+                SELECT ? + g, 'Via Roma ' || g, 'Milano', '20100', ? + g
+                FROM generate_series(2, ?, 2) g
+                """, addressBase, userBase, USERS);
+        jdbcTemplate.execute("ANALYZE users");
+        jdbcTemplate.execute("ANALYZE addresses");
+        log.info("[benchmark] {} utenti generati in {} s", USERS, (System.nanoTime() - start) / 1_000_000_000);
+        return userBase;
+    }
+
+    // EXPLAIN della query della lista (stessa forma di quella generata da UserSearchService) con la WHERE indicata
+    private String explain(String where, Object... params) {
+        return String.join("\n", jdbcTemplate.queryForList(
+                "EXPLAIN SELECT u.id, u.username, u.email, a.id, a.city FROM users u " +
+                        "LEFT JOIN addresses a ON a.user_id = u.id " + where + " ORDER BY u.id LIMIT " + PAGE_SIZE,
+                String.class, params));
+    }
+
+    private long reserveIds(String sequence, long count) {
+        Long base = jdbcTemplate.queryForObject("SELECT nextval(CAST(? AS regclass))", Long.class, sequence);
+        jdbcTemplate.queryForObject("SELECT setval(CAST(? AS regclass), ?)", Long.class, sequence, base + count);
+        return base;
+    }
+}
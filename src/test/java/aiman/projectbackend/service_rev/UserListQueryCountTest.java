@@ -0,0 +1,67 @@
+package aiman.projectbackend.service_rev;
+
+import aiman.projectbackend.dto_rev.UserDTO;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.QueryCounter;
+import aiman.projectbackend.support_rev.TestData;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Regressione sul numero di query della lista utenti (GET /api/users/page): ogni pagina, con o senza ricerca, deve
+// costare una sola istruzione SQL con gli indirizzi già dentro, qualunque sia il numero di utenti
+class UserListQueryCountTest extends PostgresIntegrationTest {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 500})
+    void everyUserPageIsOneStatement(int userCount) {
+        // Prefisso comune ai soli utenti di questo giro, così la ricerca trova esattamente loro
+        String prefix = "u" + TestData.unique().substring(0, 6);
+        TestData data = new TestData(userRepository, productRepository);
+        for (int i = 0; i < userCount; i++) {
+            data.userWithAddress(prefix);
+        }
+
+        Set<Long> seen = new HashSet<>();
+        Long afterId = null;
+        while (true) {
+            QueryCounter.reset();
+            // Maiuscole nel testo cercato: la ricerca non le distingue
+            List<UserDTO> page = userService.getUsersPage(prefix.toUpperCase(), afterId, PAGE_SIZE);
+            assertThat(QueryCounter.count()).as("query per la pagina dopo %s utenti", seen.size()).isEqualTo(1);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (UserDTO user : page) {
+                assertThat(seen.add(user.getId())).as("utente %s ripetuto", user.getId()).isTrue();
+                assertThat(user.getUsername()).startsWith(prefix);
+                assertThat(user.getAddress()).isNotNull();
+                assertThat(user.getAddress().getCity()).isEqualTo("Milano");
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+        assertThat(seen).hasSize(userCount);
+
+        // Anche la lista completa è una sola istruzione
+        QueryCounter.reset();
+        assertThat(userService.getAllUsers()).hasSizeGreaterThanOrEqualTo(userCount);
+        assertThat(QueryCounter.count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,124 @@
+package aiman.projectbackend.service_rev.archive_rev;
+
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
+import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.repository_rev.OrderRepository;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.repository_rev.UserSpendingRepository;
+import aiman.projectbackend.service_rev.OrderService;
+import aiman.projectbackend.service_rev.OrderStatusCounter;
+import aiman.projectbackend.support_rev.PostgresIntegrationTest;
+import aiman.projectbackend.support_rev.TestData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Archiviazione con un cambio di status concorrente: l'ordine cambiato dopo la scrittura del file non viene cancellato
+// (nè contato nella spesa archiviata e nei contatori) e al giro successivo viene archiviato con lo status nuovo
+class OrderArchiveServiceTest extends PostgresIntegrationTest {
+
+    // Ordini di 30 anni fa e soglia di 20 anni: l'archiviazione non tocca gli ordini degli altri test sul db condiviso
+    private static final int AGE_DAYS = 20 * 365;
+
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private UserSpendingRepository userSpendingRepository;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void orderChangedDuringArchivingIsLeftForTheNextRun() throws IOException {
+        TestData data = new TestData(userRepository, productRepository);
+        User user = data.user("arch");
+        Product product = data.products(1).get(0);
+        List<Order> orders = new ArrayList<>();
+        for (int n = 0; n < 3; n++) {
+            orders.add(oldOrder(user, product, n));
+        }
+        orders = orderRepository.saveAll(orders);
+        Long changedId = orders.get(1).getId();
+
+        // Il cambio di status arriva dopo la scrittura del file e prima della transazione di cancellazione
+        OrderArchiveStore store = new OrderArchiveStore(dir.toString(), objectMapper) {
+            private boolean changed;
+
+            @Override
+            public void append(List<ArchivedOrder> archived) throws IOException {
+                super.append(archived);
+                if (!changed) {
+                    changed = true;
+                    orderService.updateOrderStatus(changedId, OrderStatus.CANCELLED);
+                }
+            }
+        };
+        store.load();
+        OrderArchiveService archiveService = new OrderArchiveService(orderRepository, userSpendingRepository,
+                orderStatusCounter, store, transactionTemplate, true, AGE_DAYS, 500);
+        long pendingBefore = orderStatusCounter.snapshot().getOrDefault(OrderStatus.PENDING, 0L);
+
+        assertThat(archiveService.archiveOldOrders().getArchivedOrders()).isEqualTo(2);
+        assertThat(orderRepository.findById(changedId)).hasValueSatisfying(order ->
+                assertThat(order.getStatus()).isEqualTo(OrderStatus.CANCELLED));
+        // Solo i due ordini cancellati escono dai PENDING (il terzo è uscito con il cambio di status)
+        assertThat(orderStatusCounter.snapshot().getOrDefault(OrderStatus.PENDING, 0L)).isEqualTo(pendingBefore - 3);
+        assertThat(archivedCount(user)).isEqualTo(2);
+
+        // Giro successivo: l'ordine viene riscritto con lo status nuovo e cancellato, l'annullato non entra nella spesa
+        assertThat(archiveService.archiveOldOrders().getArchivedOrders()).isEqualTo(1);
+        assertThat(orderRepository.findById(changedId)).isEmpty();
+        assertThat(archivedCount(user)).isEqualTo(2);
+        List<OrderHistoryDTO> history = archiveService.findUserHistory(user.getId(), null, null, 10);
+        assertThat(history).hasSize(3);
+        assertThat(history).filteredOn(order -> order.getId().equals(changedId)).singleElement()
+                .satisfies(order -> assertThat(order.getStatus()).isEqualTo(OrderStatus.CANCELLED));
+    }
+
+    private long archivedCount(User user) {
+        return jdbcTemplate.queryForObject("SELECT archived_count FROM user_spending WHERE user_id = ?",
+                Long.class, user.getId());
+    }
+
+    // Ordine PENDING di 30 anni fa (più n giorni) con una riga
+    private static Order oldOrder(User user, Product product, int n) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(LocalDateTime.now().minusYears(30).plusDays(n));
+        order.setStatus(OrderStatus.PENDING);
+        OrderItem item = new OrderItem();
+        item.setOrder(order);
+        item.setProduct(product);
+        item.setQuantity(1);
+        item.setPriceAtPurchase(product.getPrice());
+        order.setItems(new ArrayList<>(List.of(item)));
+        order.setTotalAmount(product.getPrice());
+        return order;
+    }
+}
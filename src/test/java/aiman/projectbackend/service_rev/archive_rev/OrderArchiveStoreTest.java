@@ -0,0 +1,132 @@
+package aiman.projectbackend.service_rev.archive_rev;
+
+import aiman.projectbackend.dto_rev.OrderHistoryDTO;
+import aiman.projectbackend.entity_rev.OrderStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Archivio su file: scrittura di segmenti e indice, rilettura da una nuova istanza e letture con il cursore keyset
+class OrderArchiveStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 1, 1, 10, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripThroughSegmentAndIndex() throws IOException {
+        OrderArchiveStore store = newStore();
+        store.append(List.of(order(1L, 1, 0), order(1L, 2, 1), order(1L, 3, 2), order(2L, 4, 3)));
+        store.append(List.of(order(1L, 10, 10), order(1L, 11, 11)));
+
+        assertThat(ids(store.findByUser(1L, null, null, 10))).containsExactly(11L, 10L, 3L, 2L, 1L);
+        // Pagina successiva dopo l'ordine 10
+        assertThat(ids(store.findByUser(1L, START.plusDays(10), 10L, 2))).containsExactly(3L, 2L);
+        assertThat(store.findArchived(List.of(2L, 4L, 99L))).containsOnlyKeys(2L, 4L);
+
+        // Una nuova istanza legge segmenti e indice dal disco e restituisce gli stessi ordini, righe comprese
+        OrderArchiveStore reloaded = newStore();
+        assertThat(reloaded.blockCount()).isEqualTo(2);
+        List<OrderHistoryDTO> history = reloaded.findByUser(2L, null, null, 10);
+        assertThat(ids(history)).containsExactly(4L);
+        OrderHistoryDTO order = history.get(0);
+        assertThat(order.getOrderDate()).isEqualTo(START.plusDays(3));
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.DELIVERED);
+        assertThat(order.getItems()).singleElement().satisfies(item -> {
+            assertThat(item.getProductName()).isEqualTo("prodotto 4");
+            assertThat(item.getQuantity()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void ignoresBrokenAndUnfinishedIndexLines() throws IOException {
+        newStore().append(List.of(order(1L, 1, 0)));
+        Path index = dir.resolve("orders.idx");
+        // Riga che punta oltre la fine del segmento e riga ancora in scrittura (senza a capo)
+        Files.writeString(index, "0\t999999\t10\t5\t5\t" + START + "\t" + START + "\t1\n0\t0",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        OrderArchiveStore reloaded = newStore();
+        assertThat(reloaded.blockCount()).isEqualTo(1);
+        assertThat(ids(reloaded.findByUser(1L, null, null, 10))).containsExactly(1L);
+
+        // Il blocco scritto dopo non si perde attaccato alla riga interrotta
+        reloaded.append(List.of(order(1L, 2, 1)));
+        assertThat(newStore().blockCount()).isEqualTo(2);
+    }
+
+    @Test
+    void readerSeesBlocksAppendedByAnotherInstance() throws IOException {
+        OrderArchiveStore reader = newStore();
+        OrderArchiveStore writer = newStore();
+        writer.append(List.of(order(7L, 1, 0)));
+        writer.append(List.of(order(7L, 2, 1)));
+
+        assertThat(ids(reader.findByUser(7L, null, null, 10))).containsExactly(2L, 1L);
+        assertThat(reader.blockCount()).isEqualTo(2);
+    }
+
+    @Test
+    void deletedUsersOrdersAreNoLongerRead() throws IOException {
+        OrderArchiveStore store = newStore();
+        OrderArchiveStore otherInstance = newStore();
+        // Stesso blocco con ordini di due utenti
+        store.append(List.of(order(1L, 1, 0), order(2L, 2, 1)));
+
+        store.markUsersDeleted(List.of(1L));
+        assertThat(store.findByUser(1L, null, null, 10)).isEmpty();
+        assertThat(ids(store.findByUser(2L, null, null, 10))).containsExactly(2L);
+        // L'altra istanza vede la lapide alla lettura successiva, una nuova istanza al caricamento
+        assertThat(otherInstance.findByUser(1L, null, null, 10)).isEmpty();
+        assertThat(newStore().findByUser(1L, null, null, 10)).isEmpty();
+
+        // Un blocco registrato dopo la lapide (es. indice letto in ritardo) non riporta indietro l'utente cancellato
+        store.append(List.of(order(1L, 3, 2)));
+        assertThat(newStore().findByUser(1L, null, null, 10)).isEmpty();
+    }
+
+    @Test
+    void orderArchivedAgainIsReadWithTheLatestVersion() throws IOException {
+        OrderArchiveStore store = newStore();
+        store.append(List.of(order(3L, 1, 0), order(3L, 2, 1)));
+        // L'ordine 2 è cambiato nel db prima della cancellazione ed è stato riscritto al giro successivo
+        OrderArchiveStore.ArchivedOrder cancelled = order(3L, 2, 1);
+        cancelled.order().setStatus(OrderStatus.CANCELLED);
+        store.append(List.of(cancelled));
+
+        assertThat(store.findArchived(List.of(2L)).get(2L).getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        List<OrderHistoryDTO> history = newStore().findByUser(3L, null, null, 10);
+        assertThat(ids(history)).containsExactly(2L, 1L);
+        assertThat(history.get(0).getStatus()).isEqualTo(OrderStatus.CANCELLED);
+    }
+
+    private OrderArchiveStore newStore() throws IOException {
+        OrderArchiveStore store = new OrderArchiveStore(dir.toString(), objectMapper);
+        store.load();
+        return store;
+    }
+
+    // Ordine consegnato di userId con una riga, datato START + days
+    private static OrderArchiveStore.ArchivedOrder order(Long userId, long orderId, int days) {
+        OrderHistoryDTO order = new OrderHistoryDTO(orderId, START.plusDays(days), OrderStatus.DELIVERED, 20.0, 0.0);
+        order.getItems().add(new OrderHistoryDTO.OrderHistoryItemDTO(orderId * 100, "prodotto " + orderId, 2, 10.0));
+        return new OrderArchiveStore.ArchivedOrder(userId, order);
+    }
+
+    private static List<Long> ids(List<OrderHistoryDTO> orders) {
+        return orders.stream().map(OrderHistoryDTO::getId).toList();
+    }
+}
@@ -0,0 +1,104 @@
+package aiman.projectbackend.service_rev.cart_rev;
+
+import aiman.projectbackend.dto_rev.CartDTO;
+import aiman.projectbackend.dto_rev.OrderSummaryDTO;
+import aiman.projectbackend.entity_rev.Order;
+import aiman.projectbackend.entity_rev.Product;
+import aiman.projectbackend.entity_rev.Tool;
+import aiman.projectbackend.entity_rev.User;
+import aiman.projectbackend.exception_rev.ValidationException;
+import aiman.projectbackend.repository_rev.CartSnapshotRepository;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+import aiman.projectbackend.service_rev.OrderService;
+import aiman.projectbackend.service_rev.api_rev.ShippingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+// Carrello in memoria: checkout con prezzi e magazzino ricontrollati e carrelli che escono dalla mappa LRU
+class CartServiceTest {
+
+    private static final Long USER_ID = 1L;
+    private static final Long PRODUCT_ID = 10L;
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final OrderService orderService = mock(OrderService.class);
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        product = new Tool("Trapano", "trapano a batteria", 10.0, 5, null, "Test", true);
+        product.setId(PRODUCT_ID);
+        when(productRepository.findById(PRODUCT_ID)).thenReturn(Optional.of(product));
+        when(productRepository.findAllWithCategoryByIdIn(anyCollection())).thenAnswer(invocation -> List.of(product));
+        // Utenti senza indirizzo --> nessuna spedizione
+        when(userRepository.findById(any())).thenAnswer(invocation -> {
+            User user = new User("mario", "password", "mario@test.it", "Mario", "Rossi");
+            user.setId(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+        when(orderService.placeOrder(any())).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(100L);
+            return order;
+        });
+    }
+
+    @Test
+    void checkoutRepricesChangedProductsAndAsksToRetry() {
+        CartService service = newService(100);
+        service.addItem(USER_ID, PRODUCT_ID, 2);
+        product.setPrice(12.0);
+
+        assertThatThrownBy(() -> service.checkout(USER_ID))
+                .isInstanceOf(ValidationException.class)
+                .satisfies(e -> assertThat(((ValidationException) e).getErrorsList())
+                        .singleElement().asString().contains("Trapano"));
+        verify(orderService, never()).placeOrder(any());
+        // Il carrello ora mostra il prezzo attuale
+        CartDTO cart = service.getCart(USER_ID);
+        assertThat(cart.getTotal()).isEqualTo(24.0);
+
+        OrderSummaryDTO order = service.checkout(USER_ID);
+        assertThat(order.getTotalAmount()).isEqualTo(24.0);
+    }
+
+    @Test
+    void checkoutRejectsQuantitiesAboveStock() {
+        CartService service = newService(100);
+        service.addItem(USER_ID, PRODUCT_ID, 4);
+        product.setStockQuantity(3);
+
+        assertThatThrownBy(() -> service.checkout(USER_ID)).isInstanceOf(ValidationException.class);
+        verify(orderService, never()).placeOrder(any());
+    }
+
+    @Test
+    void cartLeavingTheLruMapIsReplacedNotMutated() {
+        CartService service = newService(1);
+        service.addItem(USER_ID, PRODUCT_ID, 1);
+        // Il carrello di un altro utente fa uscire quello del primo (capacità 1)
+        service.getCart(2L);
+
+        // Il primo utente riparte da un carrello nuovo, la modifica finisce nel carrello che sta nella mappa
+        CartDTO cart = service.addItem(USER_ID, PRODUCT_ID, 1);
+        assertThat(cart.getLines()).singleElement().satisfies(line -> assertThat(line.getQuantity()).isEqualTo(1));
+        assertThat(service.getCart(USER_ID).getLines()).hasSize(1);
+    }
+
+    private CartService newService(int maxSize) {
+        return new CartService(productRepository, userRepository, mock(ShippingService.class), orderService,
+                mock(CartSnapshotRepository.class), new ObjectMapper().findAndRegisterModules(), maxSize, 120, false);
+    }
+}
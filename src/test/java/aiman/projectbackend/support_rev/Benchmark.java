@@ -0,0 +1,57 @@
+package aiman.projectbackend.support_rev;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Misuro il tempo di un'operazione nei benchmark con il db (@Tag("benchmark"), mvn test -Pbenchmark)
+ *
+ * Prima eseguo qualche giro di riscaldamento senza misurare (JIT, cache di postgres, pool di connessioni), poi misuro
+ * ogni giro e restituisco la mediana, meno sensibile di una media a un giro lento isolato (GC, checkpoint del db).
+ * Per il codice che non tocca il db uso JMH (classi *Jmh)
+ */
+public final class Benchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(Benchmark.class);
+
+    private Benchmark() {}
+
+    // Un giro misurato: setup non viene misurato (es. preparare i dati), action sì
+    public interface Run {
+        void run(int iteration) throws Exception;
+    }
+
+    // Eseguo warmups giri senza misurare e runs giri misurati, restituisco la mediana in millisecondi
+    public static double medianMillis(String name, int warmups, int runs, Run action) {
+        try {
+            for (int i = 0; i < warmups; i++) {
+                action.run(i);
+            }
+            double[] millis = new double[runs];
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                action.run(warmups + i);
+                millis[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+            Arrays.sort(millis);
+            double median = millis[runs / 2];
+            log.info("[benchmark] {}: mediana {} ms (min {} ms, max {} ms, {} giri)",
+                    name, format(median), format(millis[0]), format(millis[runs - 1]), runs);
+            return median;
+        } catch (Exception e) {
+            throw new IllegalStateException("benchmark " + name + " fallito", e);
+        }
+    }
+
+    // Scrivo il confronto tra due misure nel log (es. prima/dopo)
+    public static void compare(String name, double baselineMillis, double candidateMillis) {
+        log.info("[benchmark] {}: {} ms --> {} ms ({}x)",
+                name, format(baselineMillis), format(candidateMillis), format(baselineMillis / candidateMillis));
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
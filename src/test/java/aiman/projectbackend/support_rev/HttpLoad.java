@@ -0,0 +1,88 @@
+package aiman.projectbackend.support_rev;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Carico http per i test di carico (@Tag("benchmark")): clients client in parallelo (virtual thread), ognuno manda
+ * requestsPerClient richieste una dopo l'altra e aspetta la risposta prima della successiva
+ *
+ * Restituisco richieste al secondo, latenze (p50, p99) e quante risposte per ogni status http
+ */
+public final class HttpLoad {
+
+    private HttpLoad() {}
+
+    // La richiesta numero iteration del client numero client
+    public interface Requests {
+        HttpRequest build(int client, int iteration);
+    }
+
+    public record Result(int requests, double seconds, long[] sortedLatencyNanos, Map<Integer, Integer> statusCounts) {
+
+        public double perSecond() {
+            return requests / seconds;
+        }
+
+        public double p50Millis() {
+            return percentileMillis(0.50);
+        }
+
+        public double p99Millis() {
+            return percentileMillis(0.99);
+        }
+
+        public int count(int status) {
+            return statusCounts.getOrDefault(status, 0);
+        }
+
+        public String summary() {
+            return String.format("%d richieste, %.0f richieste/s, p50 %.2f ms, p99 %.2f ms, status %s",
+                    requests, perSecond(), p50Millis(), p99Millis(), statusCounts);
+        }
+
+        private double percentileMillis(double percentile) {
+            int index = Math.min(sortedLatencyNanos.length - 1, (int) (sortedLatencyNanos.length * percentile));
+            return sortedLatencyNanos[index] / 1_000_000.0;
+        }
+    }
+
+    public static Result run(int clients, int requestsPerClient, Requests requests) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        long[][] latencies = new long[clients][requestsPerClient];
+        Map<Integer, Integer> statusCounts = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int clientIndex = c;
+                running.add(executor.submit(() -> {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        long sent = System.nanoTime();
+                        HttpResponse<Void> response = client.send(requests.build(clientIndex, i),
+                                HttpResponse.BodyHandlers.discarding());
+                        latencies[clientIndex][i] = System.nanoTime() - sent;
+                        statusCounts.merge(response.statusCode(), 1, Integer::sum);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long[] sorted = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(sorted.length, seconds, sorted, new TreeMap<>(statusCounts));
+    }
+}
@@ -0,0 +1,42 @@
+package aiman.projectbackend.support_rev;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Lancio i benchmark JMH (classi *Jmh dei test) insieme agli altri benchmark: mvn test -Pbenchmark
+ *
+ * Per lanciarne solo alcuni: -Djmh.include=JwtVerifyJmh (espressione regolare sul nome del benchmark).
+ * I risultati finiscono anche in target/jmh-results.json
+ */
+@Tag("benchmark")
+class JmhBenchmarksTest {
+
+    @Test
+    void runJmhBenchmarks() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("jmh.include", ".*Jmh\\."))
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .forks(1)
+                .shouldFailOnError(true)
+                .result("target/jmh-results.json")
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertThat(results).isNotEmpty();
+    }
+}
@@ -0,0 +1,33 @@
+package aiman.projectbackend.support_rev;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Base dei test che hanno bisogno del db vero: le query native usano sql di postgres (generate_series, SKIP LOCKED,
+ * partizioni ...), quindi niente db in memoria
+ *
+ * Il container parte una sola volta per tutta l'esecuzione dei test e viene condiviso da tutte le classi (così anche il
+ * contesto di spring, che è in cache, resta valido). Lo ferma testcontainers alla fine
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public abstract class PostgresIntegrationTest {
+
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    static {
+        POSTGRES.start();
+    }
+
+    // Collego il datasource al container (con le insert a batch riscritte dal driver, come in produzione)
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl() + "&reWriteBatchedInserts=true");
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+}
@@ -0,0 +1,33 @@
+package aiman.projectbackend.support_rev;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Conto le istruzioni SQL che Hibernate prepara (query JPQL, derivate e native), separatamente per ogni thread
+ *
+ * Le statistiche di Hibernate sono globali: i lavori pianificati (outbox, riconciliazioni ...) girano in parallelo al
+ * test e sporcherebbero il conteggio. Contando per thread vedo solo le query del metodo chiamato dal test
+ *
+ * Si registra con spring.jpa.properties.hibernate.session_factory.statement_inspector (application-test.properties).
+ * Le query fatte con JdbcTemplate non passano da Hibernate e non vengono contate
+ */
+public class QueryCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    // Azzero il conteggio del thread corrente (da chiamare subito prima del metodo da misurare)
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    // Istruzioni preparate dal thread corrente dall'ultimo reset
+    public static int count() {
+        return COUNT.get()[0];
+    }
+}
@@ -0,0 +1,66 @@
+package aiman.projectbackend.support_rev;
+
+import aiman.projectbackend.entity_rev.*;
+import aiman.projectbackend.repository_rev.ProductRepository;
+import aiman.projectbackend.repository_rev.UserRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Dati di prova condivisi dai test con il db: utenti e prodotti salvati con le repository, con nomi sempre diversi
+ * (il db del container è condiviso da tutte le classi di test, quindi email e username non devono mai ripetersi)
+ */
+public class TestData {
+
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+
+    public TestData(UserRepository userRepository, ProductRepository productRepository) {
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+    }
+
+    // Suffisso casuale corto (lo username può avere al massimo 20 caratteri)
+    public static String unique() {
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 10);
+    }
+
+    // Utente USER senza indirizzo (gli ordini non chiedono la spedizione a ORS)
+    public User user(String prefix) {
+        return userRepository.save(newUser(prefix));
+    }
+
+    // Utente USER con indirizzo (gli ordini chiedono il preventivo di spedizione)
+    public User userWithAddress(String prefix) {
+        User user = newUser(prefix);
+        Address address = new Address();
+        address.setStreet("Via Roma " + unique());
+        address.setCity("Milano");
+        address.setZipCode("20100");
+        address.setUser(user);
+        user.setAddress(address);
+        return userRepository.save(user);
+    }
+
+    // count attrezzi con prezzi diversi e magazzino abbondante
+    public List<Product> products(int count) {
+        String suffix = unique();
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Tool("Chiave " + suffix + "-" + i, "chiave a pappagallo", 10.0 + i, 1_000_000, null,
+                    "Test", false));
+        }
+        return productRepository.saveAll(products);
+    }
+
+    private static User newUser(String prefix) {
+        String username = prefix + unique();
+        User user = new User(username, "password-non-usata", username + "@test.it", "Mario", "Rossi");
+        user.setRole(Role.USER);
+        user.setRegistrationDate(LocalDateTime.now());
+        return user;
+    }
+}
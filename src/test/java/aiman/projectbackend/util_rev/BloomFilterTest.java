@@ -0,0 +1,68 @@
+package aiman.projectbackend.util_rev;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Filtro di Bloom: nessun falso negativo, falsi positivi intorno all'1% con il dimensionamento previsto
+class BloomFilterTest {
+
+    private static final int ENTRIES = 10_000;
+
+    @Test
+    void stringsAddedAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.add("utente" + i + "@test.it");
+        }
+        for (int i = 0; i < ENTRIES; i++) {
+            assertThat(filter.mightContain("utente" + i + "@test.it")).as("utente %s", i).isTrue();
+        }
+    }
+
+    @Test
+    void stringFalsePositivesStayNearOnePercent() {
+        BloomFilter filter = new BloomFilter(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.add("utente" + i + "@test.it");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (filter.mightContain("altro" + i + "@test.it")) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(ENTRIES * 3 / 100);
+    }
+
+    @Test
+    void preHashedValuesUseTheSameBits() {
+        // Le due metà di un UUID casuale sono già due hash indipendenti (come i jti dei token)
+        BloomFilter filter = new BloomFilter(ENTRIES);
+        UUID[] added = new UUID[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            added[i] = UUID.randomUUID();
+            filter.add(added[i].getMostSignificantBits(), added[i].getLeastSignificantBits());
+        }
+        for (UUID id : added) {
+            assertThat(filter.mightContain(id.getMostSignificantBits(), id.getLeastSignificantBits())).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            UUID other = UUID.randomUUID();
+            if (filter.mightContain(other.getMostSignificantBits(), other.getLeastSignificantBits())) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(ENTRIES * 3 / 100);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(0);
+        assertThat(filter.mightContain("a@test.it")).isFalse();
+        assertThat(filter.mightContain(1L, 2L)).isFalse();
+    }
+}